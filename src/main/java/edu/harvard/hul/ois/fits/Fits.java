@@ -10,8 +10,6 @@
 
 package edu.harvard.hul.ois.fits;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -20,21 +18,22 @@ import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Templates;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -54,8 +53,9 @@ import org.jdom.output.XMLOutputter;
 import edu.harvard.hul.ois.fits.consolidation.ToolOutputConsolidator;
 import edu.harvard.hul.ois.fits.exceptions.FitsConfigurationException;
 import edu.harvard.hul.ois.fits.exceptions.FitsException;
-import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.mapping.FitsXmlMapper;
+import edu.harvard.hul.ois.fits.serialization.OutputFormat;
+import edu.harvard.hul.ois.fits.tools.FileContext;
 import edu.harvard.hul.ois.fits.tools.Tool;
 import edu.harvard.hul.ois.fits.tools.Tool.RunStatus;
 import edu.harvard.hul.ois.fits.tools.ToolBelt;
@@ -81,6 +81,7 @@ public class Fits {
 
   private static final String FITS_CONFIG_FILE_NAME = "fits.xml";
   private static final String VERSION_PROPERTIES_FILE = "version.properties";
+  private static final String CHECKSUM_SIDECAR_SUFFIX = ".checksums";
   
   private XMLConfiguration config;
   private FitsXmlMapper mapper;
@@ -89,6 +90,12 @@ public class Fits {
   private String internalOutputSchema;
   private boolean validateToolOutput;
   private int maxThreads = 20;
+  private int fileContextHeaderKb = 64;
+  private int fileContextTrailerKb = 16;
+  private boolean deferredChecksumSidecar = true;
+  private boolean deferredChecksumRewrite = false;
+  // work left running after the output was written, e.g. writing deferred checksums
+  private final List<CompletableFuture<?>> pendingBackgroundWork = new ArrayList<CompletableFuture<?>>();
   private ToolOutputConsolidator consolidator;
   private ToolBelt toolbelt;
   private boolean resetToolOutput = true; // should always be true except for unit tests
@@ -232,6 +239,18 @@ public class Fits {
     }
     logger.debug( "Maximum threads = " + maxThreads );
 
+    // size of the header and trailer buffers shared by the tools
+    fileContextHeaderKb = config.getInt( "process.file-context[@header-kb]", fileContextHeaderKb );
+    fileContextTrailerKb = config.getInt( "process.file-context[@trailer-kb]", fileContextTrailerKb );
+    if (fileContextHeaderKb < 0 || fileContextTrailerKb < 0) {
+      fileContextHeaderKb = 64;
+      fileContextTrailerKb = 16;
+    }
+
+    // what to do with checksums finished after the output has been written
+    deferredChecksumSidecar = config.getBoolean( "output.deferred-checksum[@sidecar]", true );
+    deferredChecksumRewrite = config.getBoolean( "output.deferred-checksum[@rewrite-output]", false );
+
     String consolidatorClassFullyQualifiedName = config.getString( "output.dataConsolidator[@class]" );
     try {
 		// Instantiate the Consolidator class using Reflection by passing Fits into the constructor.
@@ -264,6 +283,10 @@ public class Fits {
     outputOptions.addOption( stdxml );
     outputOptions.addOption( combinedStd );
     options.addOptionGroup( outputOptions );
+    OptionGroup formatOptions = new OptionGroup();
+    formatOptions.addOption( new Option( "j", false, "output FITS results as JSON rather than XML (combine with -xc to include standard metadata schemas)" ) );
+    formatOptions.addOption( new Option( "cb", false, "output FITS results as CBOR (binary JSON) rather than XML (combine with -xc to include standard metadata schemas)" ) );
+    options.addOptionGroup( formatOptions );
 
     CommandLineParser parser = new GnuParser();
     CommandLine cmd = null;
@@ -293,8 +316,18 @@ public class Fits {
       nestDirs = false;
     }
     
+    OutputFormat outputFormat = OutputFormat.XML;
+    if (cmd.hasOption( "j" )) {
+      outputFormat = OutputFormat.JSON;
+    } else if (cmd.hasOption( "cb" )) {
+      outputFormat = OutputFormat.CBOR;
+    }
+
     File fitsConfigFile = null;
     try {
+    	if (outputFormat != OutputFormat.XML && cmd.hasOption( "x" )) {
+    		throw new FitsException("The -x option cannot be combined with -j or -cb; use -xc to include standard metadata schemas." );
+    	}
     	if (cmd.hasOption( 'f' )) {
     		String input = cmd.getOptionValue( 'f' );
     		if (StringUtils.isEmpty(input)) {
@@ -317,7 +350,8 @@ public class Fits {
     						"When FITS is run in directory processing mode the output location must be a directory." );
     			}
     			Fits fits = constructFits(fitsConfigFile);
-    			fits.doDirectory( inputFile, new File( outputDir ), cmd.hasOption( "x" ), cmd.hasOption( "xc" ) );
+    			fits.doDirectory( inputFile, new File( outputDir ), cmd.hasOption( "x" ), cmd.hasOption( "xc" ), outputFormat );
+    			fits.awaitBackgroundWork();
     		} else { // inputFile is a file so output -o must either be a file or not set at all
     			String outputFile = cmd.getOptionValue( "o" );
     			if (outputFile != null && (new File( outputFile ).isDirectory())) {
@@ -326,7 +360,8 @@ public class Fits {
     			}
     			Fits fits = constructFits(fitsConfigFile);
     			FitsOutput result = fits.doSingleFile( inputFile );
-    			fits.outputResults( result, cmd.getOptionValue( "o" ), cmd.hasOption( "x" ), cmd.hasOption( "xc" ), false );
+    			fits.outputResults( result, cmd.getOptionValue( "o" ), cmd.hasOption( "x" ), cmd.hasOption( "xc" ), outputFormat, false );
+    			fits.awaitBackgroundWork();
     		}
     	} else {
     		System.err.println( "Invalid CLI options: -i <arg> is required." );
@@ -391,11 +426,13 @@ public class Fits {
    *
    * @param intputFile
    * @param useStandardSchemas
+   * @param outputFormat
    * @throws IOException
    * @throws XMLStreamException
    * @throws FitsException
    */
-	private void doDirectory(File inputDir, File outputDir, boolean useStandardSchemas, boolean standardCombinedFormat) throws FitsException, XMLStreamException, IOException {
+	private void doDirectory(File inputDir, File outputDir, boolean useStandardSchemas, boolean standardCombinedFormat,
+			OutputFormat outputFormat) throws FitsException, XMLStreamException, IOException {
 		if(inputDir.listFiles() == null) {
 			return;
 		}
@@ -419,7 +456,7 @@ public class Fits {
 						outputDir.mkdir();
 					}
 				}
-				doDirectory(f, outputDir, useStandardSchemas, standardCombinedFormat);
+				doDirectory(f, outputDir, useStandardSchemas, standardCombinedFormat, outputFormat);
 				outputDir = savedDir;
 			} else if (f.isFile()) {
 				if (".DS_Store".equals(f.getName())) {
@@ -428,12 +465,13 @@ public class Fits {
 					continue;
 				}
 				FitsOutput result = doSingleFile(f);
-				String outputFile = outputDir.getPath() + File.separator + f.getName() + "." + FITS_CONFIG_FILE_NAME;
+				String outputSuffix = outputFormat == OutputFormat.XML ? FITS_CONFIG_FILE_NAME : "fits." + outputFormat.getFileExtension();
+				String outputFile = outputDir.getPath() + File.separator + f.getName() + "." + outputSuffix;
 				File output = new File(outputFile);
 				if (output.exists()) {
 					int cnt = 1;
 					while (true) {
-						outputFile = outputDir.getPath() + File.separator + f.getName() + "-" + cnt + "." + FITS_CONFIG_FILE_NAME;
+						outputFile = outputDir.getPath() + File.separator + f.getName() + "-" + cnt + "." + outputSuffix;
 						output = new File(outputFile);
 						if (!output.exists()) {
 							break;
@@ -442,7 +480,7 @@ public class Fits {
 					}
 				}
 				outputResults(result, outputFile, useStandardSchemas,
-						standardCombinedFormat, true);
+						standardCombinedFormat, outputFormat, true);
 			}
 		}
 	}
@@ -467,9 +505,19 @@ public class Fits {
   }
 
   private void outputResults( FitsOutput result, String outputLocation, boolean standardSchema,
-      boolean standardCombinedFormat, boolean dirMode ) throws XMLStreamException, IOException, FitsException {
+      boolean standardCombinedFormat, OutputFormat outputFormat, boolean dirMode ) throws XMLStreamException, IOException, FitsException {
     OutputStream out = null;
     logger.debug( "Outputting results" );
+    CompletableFuture<Map<String,String>> deferredChecksums = result.getDeferredChecksums();
+    if (deferredChecksums != null && outputLocation == null) {
+      // console output can't be completed later, so wait for the checksums
+      try {
+        result.addChecksums( deferredChecksums.join() );
+      } catch (CompletionException e) {
+        logger.error( "Could not calculate the checksums: " + e.getCause().getMessage(), e.getCause() );
+      }
+      deferredChecksums = null;
+    }
     try {
       // figure out the output location
       if (outputLocation != null) {
@@ -479,33 +527,138 @@ public class Fits {
       } else {
         throw new FitsException( "The output location must be provided when running FITS in directory mode" );
       }
+      writeResults( result, out, standardSchema, standardCombinedFormat, outputFormat );
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+    }
+
+    if (deferredChecksums != null) {
+      completeDeferredChecksums( result, new File( outputLocation ), standardSchema, standardCombinedFormat,
+          outputFormat, deferredChecksums );
+    }
+  }
+
+  private static void writeResults( FitsOutput result, OutputStream out, boolean standardSchema,
+      boolean standardCombinedFormat, OutputFormat outputFormat ) throws XMLStreamException, IOException, FitsException {
+    // if -j or -cb is set, output JSON or CBOR, including standard metadata schemas if -xc is set
+    if (outputFormat == OutputFormat.JSON) {
+      result.outputJson( out, standardCombinedFormat );
+    }
+    else if (outputFormat == OutputFormat.CBOR) {
+      result.outputCbor( out, standardCombinedFormat );
+    }
+    // if -x is set, then convert to standard metadata schema and output to -o
+    else if (standardSchema) {
+      outputStandardSchemaXml( result, out );
+    }
+    // if we are using -xc output FITS xml and standard format
+    else if (standardCombinedFormat) {
+      outputStandardCombinedFormat( result, out );
+    }
+    // else output FITS XML to -o
+    else {
+      Document doc = result.getFitsXml();
+      XMLOutputter serializer = new XMLOutputter( Format.getPrettyFormat() );
+      serializer.output( doc, out );
+    }
+  }
 
-      // if -x is set, then convert to standard metadata schema and output to -o
-      if (standardSchema) {
-        outputStandardSchemaXml( result, out );
+  /*
+   * Once checksums deferred for a large file are available, writes them to a sidecar
+   * next to the output file and/or rewrites the output file to include them, as
+   * configured by output/deferred-checksum in fits.xml.
+   */
+  private void completeDeferredChecksums( final FitsOutput result, final File outputFile, final boolean standardSchema,
+      final boolean standardCombinedFormat, final OutputFormat outputFormat, CompletableFuture<Map<String,String>> checksums ) {
+    FitsMetadataElement fileNameElement = result.getMetadataElement( "filename" );
+    final String fileName = fileNameElement == null ? outputFile.getName() : fileNameElement.getValue();
+    CompletableFuture<Void> done = checksums.thenAccept( values -> {
+      try {
+        if (deferredChecksumSidecar) {
+          writeChecksumSidecar( new File( outputFile.getPath() + CHECKSUM_SIDECAR_SUFFIX ), fileName, values );
+        }
+        // the standard schemas carry no checksums, so -x output is left as it is
+        if (deferredChecksumRewrite && !standardSchema) {
+          result.addChecksums( values );
+          rewriteOutput( result, outputFile, standardCombinedFormat, outputFormat );
+        }
+      } catch (IOException | XMLStreamException | FitsException e) {
+        throw new CompletionException( e );
       }
-      // if we are using -xc output FITS xml and standard format
-      else if (standardCombinedFormat) {
-        outputStandardCombinedFormat( result, out );
+    } ).exceptionally( e -> {
+      Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+      logger.error( "Could not complete the checksums for " + fileName + ": " + cause.getMessage(), cause );
+      return null;
+    } );
+    trackBackgroundWork( done );
+  }
+
+  private void trackBackgroundWork( CompletableFuture<?> work ) {
+    synchronized (pendingBackgroundWork) {
+      pendingBackgroundWork.removeIf( CompletableFuture::isDone );
+      pendingBackgroundWork.add( work );
+    }
+  }
+
+  /*
+   * Writes the checksums in the BSD tag format produced by e.g. "sha256sum --tag".
+   */
+  private static void writeChecksumSidecar( File sidecar, String fileName, Map<String,String> checksums ) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String,String> checksum : checksums.entrySet()) {
+      sb.append( checksum.getKey().replace( "-", "" ) ).append( " (" ).append( fileName ).append( ") = " )
+          .append( checksum.getValue() ).append( '\n' );
+    }
+    Files.write( sidecar.toPath(), sb.toString().getBytes( StandardCharsets.UTF_8 ) );
+    logger.debug( "Wrote checksums to " + sidecar.getPath() );
+  }
+
+  /*
+   * Writes the output again to a temporary file in the same directory and moves it
+   * over the original, so readers never see a partially written file.
+   */
+  private static void rewriteOutput( FitsOutput result, File outputFile, boolean standardCombinedFormat,
+      OutputFormat outputFormat ) throws IOException, XMLStreamException, FitsException {
+    Path target = outputFile.getAbsoluteFile().toPath();
+    Path tmp = Files.createTempFile( target.getParent(), outputFile.getName(), ".tmp" );
+    try {
+      try (OutputStream out = Files.newOutputStream( tmp )) {
+        writeResults( result, out, false, standardCombinedFormat, outputFormat );
       }
-      // else output FITS XML to -o
-      else {
-        Document doc = result.getFitsXml();
-        XMLOutputter serializer = new XMLOutputter( Format.getPrettyFormat() );
-        serializer.output( doc, out );
+      try {
+        Files.move( tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move( tmp, target, StandardCopyOption.REPLACE_EXISTING );
       }
-
     } finally {
-      if (out != null) {
-        out.close();
-      }
+      Files.deleteIfExists( tmp );
+    }
+  }
+
+  /*
+   * Waits until the background work, such as writing deferred checksums, has
+   * finished, as the I/O threads doing it do not keep the JVM running. Failures
+   * have already been logged by the work itself.
+   */
+  private void awaitBackgroundWork() {
+    List<CompletableFuture<?>> pending;
+    synchronized (pendingBackgroundWork) {
+      pending = new ArrayList<CompletableFuture<?>>( pendingBackgroundWork );
+      pendingBackgroundWork.clear();
+    }
+    for (CompletableFuture<?> work : pending) {
+      work.handle( (value, e) -> null ).join();
     }
   }
 
   public static void outputStandardCombinedFormat( FitsOutput result, OutputStream out ) throws XMLStreamException,
       IOException, FitsException {
-    // add the normal fits xml output
-    result.addStandardCombinedFormat();
+    // add the normal fits xml output, unless an earlier call already has
+    if (!result.hasStandardCombinedFormat()) {
+      result.addStandardCombinedFormat();
+    }
 
     // output the merged JDOM Document
     XMLOutputter serializer = new XMLOutputter( Format.getPrettyFormat() );
@@ -519,54 +672,26 @@ public class Fits {
 	FitsMetadataElement fileNameElement = fitsOutput.getMetadataElement("filename");
 	String inputFilename = fileNameElement == null ? null : fileNameElement.getValue();
 
-    // create an xml output factory
-    Transformer transformer = null;
-
-    // initialize transformer for pretty print xslt
-    TransformerFactory tFactory = null;
-	String factoryImpl = "net.sf.saxon.TransformerFactoryImpl";
-	try {
-		Class<?> clazz = Class.forName(factoryImpl);
-		tFactory = (TransformerFactory)clazz.newInstance();
-	} catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
-		throw new FitsToolException("Could not access or instantiate class: " + factoryImpl, e);
-	}
-
-    String prettyPrintXslt = FITS_XML_DIR + "prettyprint.xslt";
-    try {
-      Templates template = tFactory.newTemplates( new StreamSource( prettyPrintXslt ) );
-      transformer = template.newTransformer();
-    } catch (Exception e) {
-      transformer = null;
-    }
-
-    if (xml != null && transformer != null) {
+    if (xml != null) {
 
       xml.setRoot( true );
-      ByteArrayOutputStream xmlOutStream = new ByteArrayOutputStream();
-      OutputStream xsltOutStream = new ByteArrayOutputStream();
-
+      XMLStreamWriter sw = null;
       try {
-        // send standard xml to the output stream
-        XMLStreamWriter sw = xmlOutputFactory.createXMLStreamWriter( xmlOutStream );
+        // stream the standard xml straight to the provided OutputStream, indenting as it is written
+        sw = new IndentingXMLStreamWriter( xmlOutputFactory.createXMLStreamWriter( out, "UTF-8" ) );
+        // with the declaration that prettyprint.xslt wrote
+        sw.writeStartDocument( "UTF-8", "1.0" );
         xml.output( sw );
-
-        // convert output stream to byte array and read back in as inputstream
-        Source source = new StreamSource( new ByteArrayInputStream( xmlOutStream.toByteArray() ) );
-        Result rstream = new StreamResult( xsltOutStream );
-
-        // apply the xslt
-        transformer.transform( source, rstream );
-
-        // send to the providedOutpuStream
-        out.write( xsltOutStream.toString().getBytes( "UTF-8" ) );
+        sw.writeEndDocument();
+        sw.flush();
         out.flush();
 
       } catch (Exception e) {
         System.err.println( "error converting output to a standard schema format for input file: [" + inputFilename + "]");
       } finally {
-        xmlOutStream.close();
-        xsltOutStream.close();
+        if (sw != null) {
+          sw.close();
+        }
       }
 
     } else {
@@ -587,6 +712,14 @@ public class Fits {
 
     List<ToolOutput> toolResults = new ArrayList<ToolOutput>();
 
+    // stat the file once and share its header and trailer bytes between the tools
+    FileContext fileContext = null;
+    try {
+      fileContext = new FileContext( input, fileContextHeaderKb * 1024, fileContextTrailerKb * 1024 );
+    } catch (IOException e) {
+      logger.warn( "Could not read attributes of " + input.getPath() + ", tools will read the file themselves: " + e.getMessage() );
+    }
+
     // run file through each tool, catching exceptions thrown by tools
     List<Throwable> caughtThrowables = new ArrayList<Throwable>();
     String path = input.getPath().toLowerCase();
@@ -631,6 +764,7 @@ public class Fits {
             }
           }
           // spin up new threads
+          t.setFileContext( fileContext );
           t.setInputFile( input );
           // GDM 16-Nov-12: Name the threads as a debugging aid
           Thread thread = new Thread( t, t.getToolInfo().getName() );
@@ -641,15 +775,34 @@ public class Fits {
       }
     }
 
-    // wait for them all to finish
+    // wait for them all to finish, even when interrupted, as the tools still hold
+    // views of the shared buffers; the interrupt is passed on once they are done
+    boolean interrupted = false;
     for (Thread thread : threads) {
-      try {
-        thread.join();
-      } catch (InterruptedException e) {
-        logger.error("Caught exception while waiting for tools to finish running: " + e.getMessage(), e);
+      while (true) {
+        try {
+          thread.join();
+          break;
+        } catch (InterruptedException e) {
+          if (!interrupted) {
+            logger.error("Interrupted while waiting for tools to finish running, waiting for them to finish: " + e.getMessage(), e);
+          }
+          interrupted = true;
+        }
       }
     }
 
+    // the shared buffers go back to the pool once all tools are done with them
+    for (Tool t : toolbelt.getTools()) {
+      t.setFileContext( null );
+    }
+    if (fileContext != null) {
+      fileContext.close();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
     // get all output from the tools
     for (Tool t : toolbelt.getTools()) {
       toolResults.add( t.getOutput() );
@@ -661,6 +814,14 @@ public class Fits {
     // consolidate the results into a single DOM
     FitsOutput result = consolidator.processResults( toolResults );
     result.setCaughtThrowables( caughtThrowables );
+    if (fileContext != null) {
+      if (fileContext.getDeferredChecksums() != null) {
+        result.setDeferredChecksums( fileContext.getDeferredChecksums(), fileContext.getDeferredChecksumTool() );
+      }
+      for (CompletableFuture<?> work : fileContext.getBackgroundWork()) {
+        trackBackgroundWork( work );
+      }
+    }
 
     long t2 = System.currentTimeMillis();
     if (enableStatistics) {
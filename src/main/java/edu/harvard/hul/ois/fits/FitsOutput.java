@@ -10,7 +10,6 @@
 
 package edu.harvard.hul.ois.fits;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -18,11 +17,13 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
 
 import org.jdom.Attribute;
 import org.jdom.Document;
@@ -32,12 +33,15 @@ import org.jdom.Namespace;
 import org.jdom.input.SAXBuilder;
 import org.jdom.output.Format;
 import org.jdom.output.XMLOutputter;
-import org.jdom.xpath.XPath;
 
 import edu.harvard.hul.ois.fits.exceptions.FitsException;
 import edu.harvard.hul.ois.fits.identity.ExternalIdentifier;
 import edu.harvard.hul.ois.fits.identity.FitsIdentity;
 import edu.harvard.hul.ois.fits.identity.FormatVersion;
+import edu.harvard.hul.ois.fits.serialization.CborStructuredWriter;
+import edu.harvard.hul.ois.fits.serialization.FitsOutputSerializer;
+import edu.harvard.hul.ois.fits.serialization.JsonStructuredWriter;
+import edu.harvard.hul.ois.fits.serialization.StructuredWriter;
 import edu.harvard.hul.ois.fits.tools.Tool;
 import edu.harvard.hul.ois.fits.tools.Tool.RunStatus;
 import edu.harvard.hul.ois.fits.tools.ToolBelt;
@@ -65,7 +69,12 @@ public class FitsOutput {
 	private Document fitsXml;          // This is in the FITS XML format
 	private List<Throwable> caughtThrowables = new ArrayList<Throwable>();
 	private Namespace ns = Namespace.getNamespace(Fits.XML_NAMESPACE);
-	private XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+	// FITS namespace elements by local name, in document order. Built on first query
+	// and discarded whenever this class changes the document.
+	private volatile Map<String,List<Element>> elementIndex;
+	// checksums of large files, completed after the output was produced
+	private CompletableFuture<Map<String,String>> deferredChecksums;
+	private ToolInfo deferredChecksumTool;
 
 	private static final Logger logger = LoggerFactory.getLogger(FitsOutput.class);
 
@@ -82,6 +91,7 @@ public class FitsOutput {
 
 	public void setFitsXml(Document fitsXml) {
 		this.fitsXml = fitsXml;
+		elementIndex = null;
 	}
 
 	public Document getFitsXml() {
@@ -96,6 +106,51 @@ public class FitsOutput {
 		this.caughtThrowables = caughtThrowables;
 	}
 
+	/**
+	 * Returns the checksums that were still being computed when this output was
+	 * produced, or null if all checksums are already in the fileinfo section. This
+	 * happens for files above the output/deferred-checksum size in fits.xml. The future
+	 * gives a map from algorithm (e.g. MD5, SHA-256) to hex value; pass it to
+	 * {@link #addChecksums(Map)} to add the values to this output.
+	 */
+	public CompletableFuture<Map<String,String>> getDeferredChecksums() {
+		return deferredChecksums;
+	}
+
+	public void setDeferredChecksums(CompletableFuture<Map<String,String>> deferredChecksums, ToolInfo tool) {
+		this.deferredChecksums = deferredChecksums;
+		this.deferredChecksumTool = tool;
+	}
+
+	/**
+	 * Adds checksums to the fileinfo section, after the file size, using the element
+	 * names FileInfo gives them (md5checksum, sha256checksum, ...).
+	 *
+	 * @param checksums map from algorithm (e.g. MD5, SHA-256) to hex value
+	 */
+	public void addChecksums(Map<String,String> checksums) {
+		Element fileInfo = fitsXml.getRootElement().getChild("fileinfo",ns);
+		if (fileInfo == null) {
+			return;
+		}
+		int index = fileInfo.getContentSize();
+		List<?> sizes = fileInfo.getChildren("size",ns);
+		if (!sizes.isEmpty()) {
+			index = fileInfo.indexOf((Element)sizes.get(sizes.size() - 1)) + 1;
+		}
+		for (Map.Entry<String,String> checksum : checksums.entrySet()) {
+			Element e = new Element(checksum.getKey().replace("-", "").toLowerCase() + "checksum",ns);
+			if (deferredChecksumTool != null) {
+				e.setAttribute("toolname",deferredChecksumTool.getName());
+				e.setAttribute("toolversion",deferredChecksumTool.getVersion());
+			}
+			e.setAttribute("status","SINGLE_RESULT");
+			e.setText(checksum.getValue());
+			fileInfo.addContent(index++,e);
+		}
+		elementIndex = null;
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<FitsMetadataElement> getFileInfoElements() {
 		Element root = fitsXml.getRootElement();
@@ -135,52 +190,39 @@ public class FitsOutput {
 		}
 	}
 
+	/**
+	 * Returns the first element with the given name anywhere in the FITS output.
+	 * Lookups use an index of the document that is built on the first query; if the
+	 * Document returned by {@link #getFitsXml()} is modified directly, pass it to
+	 * {@link #setFitsXml(Document)} so that the index is rebuilt.
+	 */
 	public FitsMetadataElement getMetadataElement(String name) {
-		try {
-			XPath xpath = XPath.newInstance("//fits:"+name);
-			xpath.addNamespace("fits",Fits.XML_NAMESPACE);
-			Element node = (Element)xpath.selectSingleNode(fitsXml);
-			if(node != null) {
-				FitsMetadataElement element = buildMetdataIElements(node);
-				return element;
-			}
-		} catch (JDOMException e) {
-			//do nothing
+		List<Element> nodes = getElementIndex().get(name);
+		if(nodes != null) {
+			return buildMetdataIElements(nodes.get(0));
 		}
 		return null;
 	}
 
-	@SuppressWarnings("unchecked")
 	public List<FitsMetadataElement> getMetadataElements(String name) {
 		List<FitsMetadataElement> elements = new ArrayList<FitsMetadataElement>();
-		try {
-			XPath xpath = XPath.newInstance("//fits:"+name);
-			xpath.addNamespace("fits",Fits.XML_NAMESPACE);
-			List<Element> nodes = xpath.selectNodes(fitsXml);
+		List<Element> nodes = getElementIndex().get(name);
+		if(nodes != null) {
 			for(Element e : nodes) {
 				elements.add(buildMetdataIElements(e));
 			}
-			return elements;
-		} catch (JDOMException e) {
-			//do nothing
 		}
-		return null;
+		return elements;
 	}
 
 	public boolean hasMetadataElement(String name) {
-		FitsMetadataElement element = getMetadataElement(name);
-		if(element != null) {
-			return true;
-		}
-		else {
-			return false;
-		}
+		return getElementIndex().containsKey(name);
 	}
 
 	public Boolean hasConflictingMetadataElements(String name) {
-		List<FitsMetadataElement> elements = getMetadataElements(name);
-		if(elements.size() > 1) {
-			String elementStatus = elements.get(0).getStatus();
+		List<Element> elements = getElementIndex().get(name);
+		if(elements != null && elements.size() > 1) {
+			String elementStatus = elements.get(0).getAttributeValue("status");
 			if(elementStatus != null && elementStatus.equalsIgnoreCase("conflict")) {
 				return true;
 			}
@@ -193,6 +235,36 @@ public class FitsOutput {
 		}
 	}
 
+	private Map<String,List<Element>> getElementIndex() {
+		Map<String,List<Element>> index = elementIndex;
+		if(index == null) {
+			Map<String,List<Element>> building = new HashMap<String,List<Element>>();
+			indexElement(fitsXml.getRootElement(), building);
+			for(Map.Entry<String,List<Element>> entry : building.entrySet()) {
+				entry.setValue(Collections.unmodifiableList(entry.getValue()));
+			}
+			index = Collections.unmodifiableMap(building);
+			elementIndex = index;
+		}
+		return index;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void indexElement(Element element, Map<String,List<Element>> index) {
+		// same elements, in the same order, as a //fits:name query
+		if(ns.getURI().equals(element.getNamespaceURI())) {
+			List<Element> named = index.get(element.getName());
+			if(named == null) {
+				named = new ArrayList<Element>(1);
+				index.put(element.getName(), named);
+			}
+			named.add(element);
+		}
+		for(Element child : (List<Element>)element.getChildren()) {
+			indexElement(child, index);
+		}
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private List buildMetadataList(Element parent) {
 		List<FitsMetadataElement> data = new ArrayList<FitsMetadataElement>();
@@ -238,6 +310,34 @@ public class FitsOutput {
 		out.close();
 	}
 
+	/**
+	 * Write this output as compact UTF-8 JSON. The layout is described in {@link FitsOutputSerializer}.
+	 *
+	 * @param outstream stream to write to; it is flushed but not closed
+	 * @param includeStandardSchemas whether to include the standard schema (MIX, TextMD, ...) block
+	 */
+	public void outputJson(OutputStream outstream, boolean includeStandardSchemas) throws IOException, XMLStreamException, FitsException {
+		outputStructured(new JsonStructuredWriter(outstream), includeStandardSchemas);
+	}
+
+	/**
+	 * Write this output as CBOR (RFC 7049), using the same layout as {@link #outputJson(OutputStream, boolean)}.
+	 *
+	 * @param outstream stream to write to; it is flushed but not closed
+	 * @param includeStandardSchemas whether to include the standard schema (MIX, TextMD, ...) block
+	 */
+	public void outputCbor(OutputStream outstream, boolean includeStandardSchemas) throws IOException, XMLStreamException, FitsException {
+		outputStructured(new CborStructuredWriter(outstream), includeStandardSchemas);
+	}
+
+	private void outputStructured(StructuredWriter writer, boolean includeStandardSchemas) throws IOException, XMLStreamException, FitsException {
+		if (includeStandardSchemas && !hasStandardCombinedFormat()) {
+			addStandardCombinedFormat();
+		}
+		new FitsOutputSerializer(includeStandardSchemas).serialize(fitsXml, writer);
+		writer.flush();
+	}
+
     public Boolean checkWellFormed() {
 		FitsMetadataElement wellFormed = getMetadataElement("well-formed");
 		if(wellFormed != null) {
@@ -325,39 +425,39 @@ public class FitsOutput {
 
 		//if we have technical metadata convert it to the standard form
 		if(techmd != null && techmd.getChildren().size() > 0) {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
 			XmlContent xml = getStandardXmlContent();
 			if(xml != null) {
-				XMLStreamWriter sw = xmlOutputFactory.createXMLStreamWriter(baos);
+				//build the std xml directly as JDOM elements so we can insert it into the fitsXml Document
+				JDOMStreamWriter sw = new JDOMStreamWriter();
 				xml.output(sw);
-
-				String stdxml = baos.toString("UTF-8");
-
-				//convert the std xml back to a JDOM element so we can insert it back into the fitsXml Document
-				try {
-					StringReader sReader = new StringReader(stdxml);
-					SAXBuilder saxBuilder = new SAXBuilder();
-					Document stdXmlDoc = saxBuilder.build(sReader);
-					Element stdElement = new Element("standard",ns);
-					stdElement.addContent(stdXmlDoc.getRootElement().detach());
-					techmd.addContent(stdElement);
-
-				}
-				catch(JDOMException e) {
-					throw new FitsException("error converting standard XML", e);
+				Element stdRoot = sw.getRootElement();
+				if(stdRoot == null) {
+					throw new FitsException("error converting standard XML: no content was produced");
 				}
+				Element stdElement = new Element("standard",ns);
+				stdElement.addContent(stdRoot);
+				techmd.addContent(stdElement);
+				elementIndex = null;
 			}
 		}
     }
 
+	boolean hasStandardCombinedFormat() {
+		Element metadata = fitsXml.getRootElement().getChild("metadata",ns);
+		if(metadata == null || metadata.getChildren().isEmpty()) {
+			return false;
+		}
+		Element techmd = (Element) metadata.getChildren().get(0);
+		return techmd.getChild("standard",ns) != null;
+	}
+
 	@SuppressWarnings("unchecked")
 	public List<FitsIdentity> getIdentities() {
 		List<FitsIdentity> identities = new ArrayList<FitsIdentity>();
-		try {
-			XPath xpath = XPath.newInstance("//fits:identity");
-			Namespace ns = Namespace.getNamespace("fits",Fits.XML_NAMESPACE);
-			xpath.addNamespace(ns);
-			List<Element> identElements = xpath.selectNodes(fitsXml);
+		// the consolidated identities are always at fits/identification/identity
+		Element identification = fitsXml.getRootElement().getChild("identification",ns);
+		if(identification != null) {
+			List<Element> identElements = identification.getChildren("identity",ns);
 			for(Element element : identElements) {
 				FitsIdentity fileIdentSect = new FitsIdentity();
 
@@ -422,8 +522,6 @@ public class FitsOutput {
 				}
 				identities.add(fileIdentSect);
 			}
-		} catch (JDOMException e) {
-			logger.error("Error parsing DOC with XPath", e);
 		}
 		return identities;
 	}
@@ -462,6 +560,7 @@ public class FitsOutput {
 		statistics.setAttribute("fitsExecutionTime",String.valueOf(totalExecutionTime));
 
 		root.addContent(statistics);
+		elementIndex = null;
 
 	}
 	
@@ -0,0 +1,298 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits;
+
+import java.util.Arrays;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * An XMLStreamWriter wrapper that pretty prints the events it passes on to the
+ * underlying writer. Elements that contain child elements are broken over several
+ * lines and indented; elements containing only text are kept on a single line.
+ * This replaces a separate pretty print XSLT pass over already serialized output.
+ */
+public class IndentingXMLStreamWriter implements XMLStreamWriter {
+
+	// as written by prettyprint.xslt, whose newline text is followed by four spaces
+	private static final String NEWLINE = "\n    ";
+	private static final String INDENT = "   ";
+
+	private final XMLStreamWriter out;
+
+	private int depth = 0;
+	// whether the element currently open at each depth has child elements
+	private boolean[] hasChildElement = new boolean[16];
+	// whether the element currently open at each depth has text other than whitespace,
+	// in which case the whitespace around its child elements is kept as it is
+	private boolean[] hasText = new boolean[16];
+	// whitespace held back until the next event shows whether it separates elements,
+	// where it is dropped, or is the content of an element with only text
+	private final StringBuilder whitespace = new StringBuilder();
+
+	public IndentingXMLStreamWriter(XMLStreamWriter out) {
+		this.out = out;
+	}
+
+	private boolean hasText() {
+		return depth > 0 && hasText[depth - 1];
+	}
+
+	private void beforeText() throws XMLStreamException {
+		writeWhitespace();
+		if (depth > 0) {
+			hasText[depth - 1] = true;
+		}
+	}
+
+	private void beforeMarkup() throws XMLStreamException {
+		boolean text = hasText();
+		if (text) {
+			writeWhitespace();
+		}
+		whitespace.setLength(0);
+		if (depth > 0) {
+			hasChildElement[depth - 1] = true;
+		}
+		if (!text) {
+			writeNewline(depth);
+		}
+	}
+
+	private void beforeStartElement() throws XMLStreamException {
+		beforeMarkup();
+		if (depth == hasChildElement.length) {
+			hasChildElement = Arrays.copyOf(hasChildElement, depth * 2);
+			hasText = Arrays.copyOf(hasText, depth * 2);
+		}
+		hasChildElement[depth] = false;
+		hasText[depth] = false;
+		depth++;
+	}
+
+	private void beforeEndElement() throws XMLStreamException {
+		boolean text = hasText();
+		depth--;
+		if (!hasChildElement[depth] || text) {
+			writeWhitespace();
+		}
+		whitespace.setLength(0);
+		if (hasChildElement[depth] && !text) {
+			writeNewline(depth);
+		}
+	}
+
+	private void writeWhitespace() throws XMLStreamException {
+		if (whitespace.length() > 0) {
+			out.writeCharacters(whitespace.toString());
+			whitespace.setLength(0);
+		}
+	}
+
+	private void writeNewline(int level) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder(NEWLINE.length() + level * INDENT.length());
+		sb.append(NEWLINE);
+		for (int i = 0; i < level; i++) {
+			sb.append(INDENT);
+		}
+		out.writeCharacters(sb.toString());
+	}
+
+	@Override
+	public void writeStartElement(String localName) throws XMLStreamException {
+		beforeStartElement();
+		out.writeStartElement(localName);
+	}
+
+	@Override
+	public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+		beforeStartElement();
+		out.writeStartElement(namespaceURI, localName);
+	}
+
+	@Override
+	public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		beforeStartElement();
+		out.writeStartElement(prefix, localName, namespaceURI);
+	}
+
+	@Override
+	public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+		beforeMarkup();
+		out.writeEmptyElement(namespaceURI, localName);
+	}
+
+	@Override
+	public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		beforeMarkup();
+		out.writeEmptyElement(prefix, localName, namespaceURI);
+	}
+
+	@Override
+	public void writeEmptyElement(String localName) throws XMLStreamException {
+		beforeMarkup();
+		out.writeEmptyElement(localName);
+	}
+
+	@Override
+	public void writeEndElement() throws XMLStreamException {
+		beforeEndElement();
+		out.writeEndElement();
+	}
+
+	@Override
+	public void writeEndDocument() throws XMLStreamException {
+		while (depth > 0) {
+			writeEndElement();
+		}
+		out.writeEndDocument();
+	}
+
+	@Override
+	public void close() throws XMLStreamException {
+		out.close();
+	}
+
+	@Override
+	public void flush() throws XMLStreamException {
+		out.flush();
+	}
+
+	@Override
+	public void writeAttribute(String localName, String value) throws XMLStreamException {
+		out.writeAttribute(localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+			throws XMLStreamException {
+		out.writeAttribute(prefix, namespaceURI, localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+		out.writeAttribute(namespaceURI, localName, value);
+	}
+
+	@Override
+	public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+		out.writeNamespace(prefix, namespaceURI);
+	}
+
+	@Override
+	public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+		out.writeDefaultNamespace(namespaceURI);
+	}
+
+	@Override
+	public void writeComment(String data) throws XMLStreamException {
+		beforeMarkup();
+		out.writeComment(data);
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target) throws XMLStreamException {
+		beforeMarkup();
+		out.writeProcessingInstruction(target);
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+		beforeMarkup();
+		out.writeProcessingInstruction(target, data);
+	}
+
+	@Override
+	public void writeCData(String data) throws XMLStreamException {
+		beforeText();
+		out.writeCData(data);
+	}
+
+	@Override
+	public void writeDTD(String dtd) throws XMLStreamException {
+		out.writeDTD(dtd);
+	}
+
+	@Override
+	public void writeEntityRef(String name) throws XMLStreamException {
+		beforeText();
+		out.writeEntityRef(name);
+	}
+
+	@Override
+	public void writeStartDocument() throws XMLStreamException {
+		out.writeStartDocument();
+	}
+
+	@Override
+	public void writeStartDocument(String version) throws XMLStreamException {
+		out.writeStartDocument(version);
+	}
+
+	@Override
+	public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+		out.writeStartDocument(encoding, version);
+	}
+
+	@Override
+	public void writeCharacters(String text) throws XMLStreamException {
+		if (text == null || text.length() == 0) {
+			return;
+		}
+		if (text.trim().length() == 0) {
+			// whitespace outside of the root element is dropped
+			if (depth > 0) {
+				whitespace.append(text);
+			}
+			return;
+		}
+		beforeText();
+		out.writeCharacters(text);
+	}
+
+	@Override
+	public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+		writeCharacters(new String(text, start, len));
+	}
+
+	@Override
+	public String getPrefix(String uri) throws XMLStreamException {
+		return out.getPrefix(uri);
+	}
+
+	@Override
+	public void setPrefix(String prefix, String uri) throws XMLStreamException {
+		out.setPrefix(prefix, uri);
+	}
+
+	@Override
+	public void setDefaultNamespace(String uri) throws XMLStreamException {
+		out.setDefaultNamespace(uri);
+	}
+
+	@Override
+	public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+		out.setNamespaceContext(context);
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return out.getNamespaceContext();
+	}
+
+	@Override
+	public Object getProperty(String name) throws IllegalArgumentException {
+		return out.getProperty(name);
+	}
+
+}
@@ -0,0 +1,363 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.jdom.Attribute;
+import org.jdom.CDATA;
+import org.jdom.Comment;
+import org.jdom.Element;
+import org.jdom.EntityRef;
+import org.jdom.Namespace;
+import org.jdom.ProcessingInstruction;
+import org.jdom.Text;
+
+/**
+ * An XMLStreamWriter that builds a JDOM element tree from the events written to it,
+ * so that XML produced by StAX writers (e.g. the standard schema XmlContent classes)
+ * can be added to a JDOM Document without serializing it and parsing it again.
+ * Call {@link #getRootElement()} once the content has been written.
+ */
+public class JDOMStreamWriter implements XMLStreamWriter {
+
+	private final Deque<Element> stack = new ArrayDeque<Element>();
+	private final Deque<Map<String,String>> prefixBindings = new ArrayDeque<Map<String,String>>();
+	private Element root;
+	// consulted for prefixes not bound by the writer itself
+	private NamespaceContext namespaceContext;
+	// element started with writeEmptyElement(), closed by the next event
+	private boolean pendingEmpty = false;
+
+	public JDOMStreamWriter() {
+		prefixBindings.push(new HashMap<String,String>());
+	}
+
+	/**
+	 * @return the root of the element tree written so far, or null if nothing was written
+	 */
+	public Element getRootElement() {
+		return root;
+	}
+
+	private void closePendingEmpty() {
+		if (pendingEmpty) {
+			pendingEmpty = false;
+			stack.pop();
+			prefixBindings.pop();
+		}
+	}
+
+	private void startElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		closePendingEmpty();
+		if (prefix == null) {
+			prefix = namespaceURI == null ? null : getBoundPrefix(namespaceURI);
+			if (prefix == null) {
+				prefix = "";
+			}
+		}
+		if (namespaceURI == null) {
+			namespaceURI = getBoundURI(prefix);
+		}
+		Element element;
+		try {
+			element = new Element(localName, Namespace.getNamespace(prefix, namespaceURI == null ? "" : namespaceURI));
+		}
+		catch (IllegalArgumentException e) {
+			throw new XMLStreamException("Invalid element: " + localName, e);
+		}
+		if (stack.isEmpty()) {
+			if (root != null) {
+				throw new XMLStreamException("Only one root element may be written");
+			}
+			root = element;
+		}
+		else {
+			stack.peek().addContent(element);
+		}
+		stack.push(element);
+		prefixBindings.push(new HashMap<String,String>());
+	}
+
+	private Element current() throws XMLStreamException {
+		if (stack.isEmpty()) {
+			throw new XMLStreamException("No element is open");
+		}
+		return stack.peek();
+	}
+
+	private String getBoundURI(String prefix) {
+		for (Map<String,String> bindings : prefixBindings) {
+			String uri = bindings.get(prefix);
+			if (uri != null) {
+				return uri;
+			}
+		}
+		if (namespaceContext != null) {
+			String uri = namespaceContext.getNamespaceURI(prefix);
+			if (uri != null && uri.length() > 0) {
+				return uri;
+			}
+		}
+		return null;
+	}
+
+	// returns null if no prefix is bound to the namespace
+	private String getBoundPrefix(String namespaceURI) {
+		for (Map<String,String> bindings : prefixBindings) {
+			for (Map.Entry<String,String> binding : bindings.entrySet()) {
+				if (binding.getValue().equals(namespaceURI)) {
+					return binding.getKey();
+				}
+			}
+		}
+		return namespaceContext == null ? null : namespaceContext.getPrefix(namespaceURI);
+	}
+
+	@Override
+	public void writeStartElement(String localName) throws XMLStreamException {
+		startElement("", localName, null);
+	}
+
+	@Override
+	public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+		startElement(null, localName, namespaceURI);
+	}
+
+	@Override
+	public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		startElement(prefix, localName, namespaceURI);
+	}
+
+	@Override
+	public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+		startElement(null, localName, namespaceURI);
+		pendingEmpty = true;
+	}
+
+	@Override
+	public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+		startElement(prefix, localName, namespaceURI);
+		pendingEmpty = true;
+	}
+
+	@Override
+	public void writeEmptyElement(String localName) throws XMLStreamException {
+		startElement("", localName, null);
+		pendingEmpty = true;
+	}
+
+	@Override
+	public void writeEndElement() throws XMLStreamException {
+		closePendingEmpty();
+		current();
+		stack.pop();
+		prefixBindings.pop();
+	}
+
+	@Override
+	public void writeEndDocument() throws XMLStreamException {
+		closePendingEmpty();
+		while (!stack.isEmpty()) {
+			writeEndElement();
+		}
+	}
+
+	@Override
+	public void close() throws XMLStreamException {
+	}
+
+	@Override
+	public void flush() throws XMLStreamException {
+	}
+
+	@Override
+	public void writeAttribute(String localName, String value) throws XMLStreamException {
+		current().setAttribute(localName, value);
+	}
+
+	@Override
+	public void writeAttribute(String prefix, String namespaceURI, String localName, String value)
+			throws XMLStreamException {
+		Element element = current();
+		if (namespaceURI == null || namespaceURI.length() == 0) {
+			element.setAttribute(localName, value);
+		}
+		else if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(namespaceURI)) {
+			writeNamespace(localName, value);
+		}
+		else {
+			try {
+				element.setAttribute(new Attribute(localName, value, Namespace.getNamespace(prefix, namespaceURI)));
+			}
+			catch (IllegalArgumentException e) {
+				throw new XMLStreamException("Invalid attribute: " + localName, e);
+			}
+		}
+	}
+
+	@Override
+	public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+		String prefix = namespaceURI == null ? null : getBoundPrefix(namespaceURI);
+		writeAttribute(prefix == null ? "" : prefix, namespaceURI, localName, value);
+	}
+
+	@Override
+	public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+		if (prefix == null || prefix.length() == 0 || XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+			writeDefaultNamespace(namespaceURI);
+			return;
+		}
+		Element element = current();
+		prefixBindings.peek().put(prefix, namespaceURI);
+		Namespace namespace = Namespace.getNamespace(prefix, namespaceURI);
+		if (!namespace.equals(element.getNamespace())) {
+			element.addNamespaceDeclaration(namespace);
+		}
+	}
+
+	@Override
+	public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+		Element element = current();
+		prefixBindings.peek().put("", namespaceURI);
+		// JDOM carries the default namespace on the element itself
+		if ("".equals(element.getNamespacePrefix()) && !namespaceURI.equals(element.getNamespaceURI())) {
+			element.setNamespace(Namespace.getNamespace(namespaceURI));
+		}
+	}
+
+	@Override
+	public void writeComment(String data) throws XMLStreamException {
+		closePendingEmpty();
+		if (!stack.isEmpty()) {
+			stack.peek().addContent(new Comment(data));
+		}
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target) throws XMLStreamException {
+		writeProcessingInstruction(target, "");
+	}
+
+	@Override
+	public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+		closePendingEmpty();
+		if (!stack.isEmpty()) {
+			stack.peek().addContent(new ProcessingInstruction(target, data));
+		}
+	}
+
+	@Override
+	public void writeCData(String data) throws XMLStreamException {
+		closePendingEmpty();
+		current().addContent(new CDATA(data));
+	}
+
+	@Override
+	public void writeDTD(String dtd) throws XMLStreamException {
+		// a DTD has no place inside an existing document
+	}
+
+	@Override
+	public void writeEntityRef(String name) throws XMLStreamException {
+		closePendingEmpty();
+		current().addContent(new EntityRef(name));
+	}
+
+	@Override
+	public void writeStartDocument() throws XMLStreamException {
+	}
+
+	@Override
+	public void writeStartDocument(String version) throws XMLStreamException {
+	}
+
+	@Override
+	public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+	}
+
+	@Override
+	public void writeCharacters(String text) throws XMLStreamException {
+		closePendingEmpty();
+		if (stack.isEmpty()) {
+			// whitespace outside of the root element
+			return;
+		}
+		stack.peek().addContent(new Text(text));
+	}
+
+	@Override
+	public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+		writeCharacters(new String(text, start, len));
+	}
+
+	@Override
+	public String getPrefix(String uri) throws XMLStreamException {
+		return getBoundPrefix(uri);
+	}
+
+	@Override
+	public void setPrefix(String prefix, String uri) throws XMLStreamException {
+		prefixBindings.peek().put(prefix, uri);
+	}
+
+	@Override
+	public void setDefaultNamespace(String uri) throws XMLStreamException {
+		prefixBindings.peek().put("", uri);
+	}
+
+	@Override
+	public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+		this.namespaceContext = context;
+	}
+
+	@Override
+	public NamespaceContext getNamespaceContext() {
+		return new NamespaceContext() {
+			@Override
+			public String getNamespaceURI(String prefix) {
+				String uri = getBoundURI(prefix);
+				return uri == null ? XMLConstants.NULL_NS_URI : uri;
+			}
+
+			@Override
+			public String getPrefix(String namespaceURI) {
+				return getBoundPrefix(namespaceURI);
+			}
+
+			@Override
+			public Iterator<String> getPrefixes(String namespaceURI) {
+				String prefix = getBoundPrefix(namespaceURI);
+				return prefix == null ? Collections.<String>emptyIterator() : Collections.singletonList(prefix).iterator();
+			}
+		};
+	}
+
+	@Override
+	public Object getProperty(String name) throws IllegalArgumentException {
+		if (XMLOutputFactory.IS_REPAIRING_NAMESPACES.equals(name)) {
+			return Boolean.FALSE;
+		}
+		throw new IllegalArgumentException("Unsupported property: " + name);
+	}
+
+}
@@ -24,7 +24,6 @@ import org.jdom.Element;
 import org.jdom.JDOMException;
 import org.jdom.Namespace;
 import org.jdom.input.SAXBuilder;
-import org.jdom.xpath.XPath;
 
 import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.FitsOutput;
@@ -36,6 +35,7 @@ import edu.harvard.hul.ois.fits.identity.ToolIdentity;
 import edu.harvard.hul.ois.fits.tools.Tool;
 import edu.harvard.hul.ois.fits.tools.ToolInfo;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.utils.XPathRegistry;
 import edu.harvard.hul.ois.fits.tools.utils.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -105,9 +105,7 @@ public class OISConsolidator implements ToolOutputConsolidator {
 			try {
 				//only look at non null dom structures
 				if(dom != null) {
-					XPath xpath = XPath.newInstance(xpath_query);
-					xpath.addNamespace("fits",Fits.XML_NAMESPACE);
-					Element e = (Element)xpath.selectSingleNode(dom);
+					Element e = (Element)XPathRegistry.selectSingleNode(xpath_query, dom);
 					if(e != null && e.getChildren().size() > 0) {
 						if(useChildren) {
 							e = (Element)e.getChildren().get(0);
@@ -217,6 +215,8 @@ public class OISConsolidator implements ToolOutputConsolidator {
 	private List<Element> mergeXmlResults(List<ToolOutput> results, Element element) {
 		//holder for consolidated elements
 		List<Element> consolidatedElements = new ArrayList<Element>();
+		//the names of the element and its ancestors below the root, looked up the same way in each result
+		List<String> path = getElementPath(element);
 		//Get the element from each ToolOutput result
 		List<Element> fitsElements = new ArrayList<Element>();
 		for(ToolOutput result : results) {
@@ -226,19 +226,12 @@ public class OISConsolidator implements ToolOutputConsolidator {
 				continue;
 			}
 			ToolInfo toolInfo = result.getTool().getToolInfo();
-			try {
-				XPath xpath = XPath.newInstance("//fits:"+element.getName());
-				xpath.addNamespace("fits",Fits.XML_NAMESPACE);
-				Element e = (Element)xpath.selectSingleNode(dom);
-				if(e != null) {
-					e.setAttribute("toolname",toolInfo.getName());
-					e.setAttribute("toolversion",toolInfo.getVersion());
-					fitsElements.add(e);
-					e.getParent().removeContent(e);
-				}
-			}
-			catch(JDOMException e) {
-				logger.error("Error parsing XML with XPath expression.", e);
+			Element e = findElement(dom, path);
+			if(e != null) {
+				e.setAttribute("toolname",toolInfo.getName());
+				e.setAttribute("toolversion",toolInfo.getVersion());
+				fitsElements.add(e);
+				e.getParent().removeContent(e);
 			}
 		}
 
@@ -288,6 +281,25 @@ public class OISConsolidator implements ToolOutputConsolidator {
 		return consolidatedElements;
 	}
 
+	private static List<String> getElementPath(Element element) {
+		List<String> path = new ArrayList<String>();
+		for(Element e = element; e.getParentElement() != null; e = e.getParentElement()) {
+			path.add(0, e.getName());
+		}
+		return path;
+	}
+
+	private static Element findElement(Document dom, List<String> path) {
+		Element e = dom.getRootElement();
+		for(String name : path) {
+			e = e.getChild(name, fitsNS);
+			if(e == null) {
+				return null;
+			}
+		}
+		return e;
+	}
+
 	private boolean isRepeatableElement(List<Element> fitsElements) {
 		String name = fitsElements.get(0).getName();
 		if(repeatableElements.contains(name)) {
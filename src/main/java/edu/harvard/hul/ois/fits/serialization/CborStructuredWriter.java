@@ -0,0 +1,104 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.serialization;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes CBOR (RFC 7049) using definite-length maps, arrays and text strings.
+ * Only the subset of the data model needed for FITS output is supported.
+ */
+public class CborStructuredWriter implements StructuredWriter {
+
+	private static final int MAJOR_TYPE_TEXT = 3;
+	private static final int MAJOR_TYPE_ARRAY = 4;
+	private static final int MAJOR_TYPE_MAP = 5;
+
+	private final OutputStream out;
+
+	public CborStructuredWriter(OutputStream out) {
+		this.out = new BufferedOutputStream(out);
+	}
+
+	@Override
+	public void beginObject(int size) throws IOException {
+		writeTypeAndLength(MAJOR_TYPE_MAP, size);
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		// definite length maps have no terminator
+	}
+
+	@Override
+	public void beginArray(int size) throws IOException {
+		writeTypeAndLength(MAJOR_TYPE_ARRAY, size);
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		// definite length arrays have no terminator
+	}
+
+	@Override
+	public void name(String name) throws IOException {
+		value(name);
+	}
+
+	@Override
+	public void value(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeTypeAndLength(MAJOR_TYPE_TEXT, bytes.length);
+		out.write(bytes);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeTypeAndLength(int majorType, long length) throws IOException {
+		int type = majorType << 5;
+		if (length < 24) {
+			out.write(type | (int)length);
+		}
+		else if (length < 0x100) {
+			out.write(type | 24);
+			out.write((int)length);
+		}
+		else if (length < 0x10000) {
+			out.write(type | 25);
+			out.write((int)(length >> 8));
+			out.write((int)length);
+		}
+		else if (length < 0x100000000L) {
+			out.write(type | 26);
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				out.write((int)(length >> shift));
+			}
+		}
+		else {
+			out.write(type | 27);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				out.write((int)(length >> shift));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.serialization;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.Attribute;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+import edu.harvard.hul.ois.fits.Fits;
+
+/**
+ * Streams the consolidated FITS output to a {@link StructuredWriter} as JSON or CBOR.
+ * <p>
+ * The document is a single object. Its members are the attributes of the FITS root
+ * element (<code>version</code>, <code>timestamp</code>) followed by, when present,
+ * <code>identification</code>, <code>fileinfo</code>, <code>filestatus</code>,
+ * <code>metadata</code> and <code>statistics</code>, in that order. Raw tool output
+ * is never included.
+ * <p>
+ * Each of those sections, and every element below them, is converted with the same rules:
+ * <ul>
+ * <li>an element becomes an object;</li>
+ * <li>each attribute becomes a string member named after the attribute's qualified name
+ * (<code>xsi</code> attributes are dropped);</li>
+ * <li>non-blank text becomes a string member named <code>#text</code>, which no attribute
+ * or element can be named;</li>
+ * <li>child elements are grouped by name, in order of first appearance, and each group
+ * becomes a member holding an array of objects, even when there is only one child. FITS
+ * elements are named by their local name and elements of other namespaces, such as those
+ * of the standard schema blocks, by their qualified name (<code>prefix:name</code>), or
+ * by <code>{namespace}name</code> when they have no prefix.</li>
+ * </ul>
+ * All values are strings, exactly as they appear in the XML output. For example:
+ * <pre>
+ * "fileinfo": { "size": [ { "toolname": "Jhove", "toolversion": "1.20.1", "#text": "3608" } ] }
+ * </pre>
+ * Standard schema blocks (MIX, TextMD, ...) are only written when requested, as a
+ * <code>standard</code> member of the technical metadata object, using the same rules.
+ */
+public class FitsOutputSerializer {
+
+	private static final Namespace XSI_NS = Namespace.getNamespace("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+	private static final String TEXT_NAME = "#text";
+	private static final String STANDARD_NAME = "standard";
+	private static final String[] SECTIONS = {"identification", "fileinfo", "filestatus", "metadata", "statistics"};
+
+	private final Namespace ns = Namespace.getNamespace(Fits.XML_NAMESPACE);
+	private final boolean includeStandard;
+
+	/**
+	 * @param includeStandard whether standard schema blocks found in the technical metadata are written
+	 */
+	public FitsOutputSerializer(boolean includeStandard) {
+		this.includeStandard = includeStandard;
+	}
+
+	public void serialize(Document fitsXml, StructuredWriter writer) throws IOException {
+		Element root = fitsXml.getRootElement();
+		List<Attribute> attributes = getAttributes(root);
+		List<Element> sections = new ArrayList<Element>();
+		for (String name : SECTIONS) {
+			Element section = root.getChild(name, ns);
+			if (section != null) {
+				sections.add(section);
+			}
+		}
+
+		writer.beginObject(attributes.size() + sections.size());
+		for (Attribute attribute : attributes) {
+			writer.name(attribute.getName());
+			writer.value(attribute.getValue());
+		}
+		for (Element section : sections) {
+			writer.name(section.getName());
+			if ("metadata".equals(section.getName())) {
+				writeMetadata(section, writer);
+			}
+			else {
+				writeElement(section, writer, null);
+			}
+		}
+		writer.endObject();
+		writer.flush();
+	}
+
+	private void writeMetadata(Element metadata, StructuredWriter writer) throws IOException {
+		// the standard schema block sits directly under the technical metadata element
+		String excluded = includeStandard ? null : STANDARD_NAME;
+		Map<String,List<Element>> groups = groupChildren(metadata, null);
+		writer.beginObject(groups.size());
+		for (Map.Entry<String,List<Element>> group : groups.entrySet()) {
+			writer.name(group.getKey());
+			writer.beginArray(group.getValue().size());
+			for (Element techmd : group.getValue()) {
+				writeElement(techmd, writer, excluded);
+			}
+			writer.endArray();
+		}
+		writer.endObject();
+	}
+
+	private void writeElement(Element element, StructuredWriter writer, String excludedChild) throws IOException {
+		List<Attribute> attributes = getAttributes(element);
+		Map<String,List<Element>> groups = groupChildren(element, excludedChild);
+		String text = groups.isEmpty() ? element.getText() : element.getTextTrim();
+		boolean hasText = text.trim().length() > 0;
+
+		writer.beginObject(attributes.size() + (hasText ? 1 : 0) + groups.size());
+		for (Attribute attribute : attributes) {
+			writer.name(attribute.getQualifiedName());
+			writer.value(attribute.getValue());
+		}
+		if (hasText) {
+			writer.name(TEXT_NAME);
+			writer.value(text);
+		}
+		for (Map.Entry<String,List<Element>> group : groups.entrySet()) {
+			writer.name(group.getKey());
+			writer.beginArray(group.getValue().size());
+			for (Element child : group.getValue()) {
+				writeElement(child, writer, null);
+			}
+			writer.endArray();
+		}
+		writer.endObject();
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Attribute> getAttributes(Element element) {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (Attribute attribute : (List<Attribute>)element.getAttributes()) {
+			if (!XSI_NS.getURI().equals(attribute.getNamespaceURI())) {
+				attributes.add(attribute);
+			}
+		}
+		return attributes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String,List<Element>> groupChildren(Element element, String excludedChild) {
+		Map<String,List<Element>> groups = new LinkedHashMap<String,List<Element>>();
+		for (Element child : (List<Element>)element.getChildren()) {
+			if (child.getName().equals(excludedChild) && ns.equals(child.getNamespace())) {
+				continue;
+			}
+			String name = getMemberName(child);
+			List<Element> group = groups.get(name);
+			if (group == null) {
+				group = new ArrayList<Element>();
+				groups.put(name, group);
+			}
+			group.add(child);
+		}
+		return groups;
+	}
+
+	private String getMemberName(Element element) {
+		if (ns.equals(element.getNamespace())) {
+			return element.getName();
+		}
+		if (element.getNamespacePrefix().length() > 0) {
+			return element.getQualifiedName();
+		}
+		// a default namespace other than that of FITS
+		return "{" + element.getNamespaceURI() + "}" + element.getName();
+	}
+
+}
@@ -0,0 +1,73 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.serialization;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes compact UTF-8 JSON using Gson's streaming JsonWriter.
+ */
+public class JsonStructuredWriter implements StructuredWriter {
+
+	private final JsonWriter writer;
+
+	public JsonStructuredWriter(OutputStream out) {
+		writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+		writer.setHtmlSafe(false);
+	}
+
+	@Override
+	public void beginObject(int size) throws IOException {
+		writer.beginObject();
+	}
+
+	@Override
+	public void endObject() throws IOException {
+		writer.endObject();
+	}
+
+	@Override
+	public void beginArray(int size) throws IOException {
+		writer.beginArray();
+	}
+
+	@Override
+	public void endArray() throws IOException {
+		writer.endArray();
+	}
+
+	@Override
+	public void name(String name) throws IOException {
+		writer.name(name);
+	}
+
+	@Override
+	public void value(String value) throws IOException {
+		writer.value(value);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+}
@@ -0,0 +1,35 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.serialization;
+
+/**
+ * The formats FITS output can be written in.
+ */
+public enum OutputFormat {
+
+	XML("xml"),
+	JSON("json"),
+	CBOR("cbor");
+
+	private final String fileExtension;
+
+	private OutputFormat(String fileExtension) {
+		this.fileExtension = fileExtension;
+	}
+
+	/**
+	 * @return the extension used for output files of this format, without a leading dot
+	 */
+	public String getFileExtension() {
+		return fileExtension;
+	}
+
+}
@@ -0,0 +1,47 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.serialization;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Minimal streaming writer for the JSON data model (objects, arrays and string values)
+ * so the same traversal of the FITS output can be written as either JSON or CBOR.
+ * Sizes are passed when an object or array is opened so that formats with
+ * length-prefixed containers can be written without buffering.
+ */
+public interface StructuredWriter extends Closeable {
+
+	/**
+	 * Begin an object that will hold the given number of name/value members.
+	 */
+	void beginObject(int size) throws IOException;
+
+	void endObject() throws IOException;
+
+	/**
+	 * Begin an array that will hold the given number of values.
+	 */
+	void beginArray(int size) throws IOException;
+
+	void endArray() throws IOException;
+
+	/**
+	 * The name of the next member of the current object.
+	 */
+	void name(String name) throws IOException;
+
+	void value(String value) throws IOException;
+
+	void flush() throws IOException;
+
+}
@@ -0,0 +1,258 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Information about the file being examined that is shared by all the tools run
+ * against it, so that each tool does not have to stat and open the file itself.
+ * One instance is created by Fits.examine() for each file and closed once all the
+ * tools have finished.
+ * <p>
+ * The file attributes are read when the context is created. The first and last
+ * bytes of the file are read together, on first request, using a single open of
+ * the file. The buffers they are read into are pooled and reused by later
+ * contexts, so the buffers returned by {@link #getHeader()} and {@link #getTrailer()}
+ * must not be used after the context has been closed.
+ */
+public class FileContext implements Closeable {
+
+	// pooled direct buffers, all of the capacity given by the most recent configuration
+	private static final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<ByteBuffer>();
+	private static final int MAX_POOLED_BUFFERS = 32;
+
+	private final File file;
+	private final BasicFileAttributes attributes;
+	private final int headerSize;
+	private final int trailerSize;
+
+	private ByteBuffer buffer;
+	private ByteBuffer header;
+	private ByteBuffer trailer;
+	private boolean closed = false;
+
+	private CompletableFuture<Map<String,String>> deferredChecksums;
+	private ToolInfo deferredChecksumTool;
+	private final List<CompletableFuture<?>> backgroundWork = new ArrayList<CompletableFuture<?>>();
+
+	/**
+	 * @param file the file being examined
+	 * @param headerSize the number of bytes at the start of the file to make available
+	 * @param trailerSize the number of bytes at the end of the file to make available
+	 * @throws IOException if the attributes of the file cannot be read
+	 */
+	public FileContext(File file, int headerSize, int trailerSize) throws IOException {
+		this.file = file;
+		this.attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		this.headerSize = Math.max(0, headerSize);
+		this.trailerSize = Math.max(0, trailerSize);
+	}
+
+	/** Returns the file this context is for. */
+	public File getFile() {
+		return file;
+	}
+
+	/** Returns true if this context is for the given file. */
+	public boolean isFor(File f) {
+		return f != null && file.getAbsoluteFile().equals(f.getAbsoluteFile());
+	}
+
+	/** Returns the size of the file in bytes. */
+	public long getSize() {
+		return attributes.size();
+	}
+
+	/** Returns the last modified time of the file in milliseconds since the epoch. */
+	public long getLastModified() {
+		return attributes.lastModifiedTime().toMillis();
+	}
+
+	/** Returns true if the file is a regular file. */
+	public boolean isRegularFile() {
+		return attributes.isRegularFile();
+	}
+
+	/**
+	 * Returns a read-only buffer holding the first bytes of the file: the configured
+	 * header size, or the whole file if it is smaller. Each call returns a new buffer
+	 * positioned at the start of the data.
+	 */
+	public synchronized ByteBuffer getHeader() throws IOException {
+		load();
+		return header.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Returns a read-only buffer holding the last bytes of the file: the configured
+	 * trailer size, or the whole file if it is smaller. Each call returns a new buffer
+	 * positioned at the start of the data.
+	 */
+	public synchronized ByteBuffer getTrailer() throws IOException {
+		load();
+		return trailer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Copies up to length bytes from the start of the file into a new array. Returns
+	 * null if more bytes are asked for than the header holds and the file has them,
+	 * in which case the caller has to read the file itself.
+	 */
+	public byte[] getHeaderBytes(int length) throws IOException {
+		ByteBuffer h = getHeader();
+		int available = (int)Math.min(length, getSize());
+		if (available > h.remaining()) {
+			return null;
+		}
+		byte[] bytes = new byte[available];
+		h.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Records checksums that are still being computed when the tool producing them
+	 * finishes, so that Fits can pass them on with its output rather than waiting.
+	 *
+	 * @param checksums future for a map from algorithm name (e.g. MD5, SHA-256) to hex value
+	 * @param tool the tool computing the checksums
+	 */
+	public synchronized void deferChecksums(CompletableFuture<Map<String,String>> checksums, ToolInfo tool) {
+		this.deferredChecksums = checksums;
+		this.deferredChecksumTool = tool;
+	}
+
+	/** Returns the checksums deferred by a tool, or null if there are none. */
+	public synchronized CompletableFuture<Map<String,String>> getDeferredChecksums() {
+		return deferredChecksums;
+	}
+
+	/** Returns the tool computing the deferred checksums, or null if there are none. */
+	public synchronized ToolInfo getDeferredChecksumTool() {
+		return deferredChecksumTool;
+	}
+
+	/**
+	 * Records work a tool has started in the background that does not affect its
+	 * output, such as verifying checksums, so that a command line run can wait for it
+	 * before exiting.
+	 */
+	public synchronized void addBackgroundWork(CompletableFuture<?> work) {
+		backgroundWork.add(work);
+	}
+
+	/** Returns the background work started by the tools. */
+	public synchronized List<CompletableFuture<?>> getBackgroundWork() {
+		return new ArrayList<CompletableFuture<?>>(backgroundWork);
+	}
+
+	private void load() throws IOException {
+		if (closed) {
+			throw new IOException("FileContext for " + file.getPath() + " has been closed");
+		}
+		if (header != null) {
+			return;
+		}
+		long size = getSize();
+		int capacity = headerSize + trailerSize;
+		buffer = borrowBuffer(capacity);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (size <= capacity) {
+				// the whole file fits, so header and trailer are views of the same bytes
+				// the views cover only the bytes read, so that a pooled buffer's old bytes are not exposed
+				buffer.limit((int)size);
+				int read = readFully(channel, buffer, 0);
+				header = slice(0, Math.min(headerSize, read));
+				trailer = slice(read - Math.min(trailerSize, read), read);
+			}
+			else {
+				buffer.limit(headerSize);
+				int headerRead = readFully(channel, buffer, 0);
+				buffer.position(headerSize);
+				buffer.limit(capacity);
+				int trailerRead = readFully(channel, buffer, size - trailerSize);
+				header = slice(0, headerRead);
+				trailer = slice(headerSize, headerSize + trailerRead);
+			}
+		}
+		catch (IOException e) {
+			releaseBuffer();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads from the position until the buffer is full or the file ends.
+	 * @return the number of bytes read, fewer than asked for if the file shrank since its size was read
+	 */
+	private static int readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+		int total = 0;
+		while (dst.hasRemaining()) {
+			int n = channel.read(dst, position);
+			if (n < 0) {
+				break;
+			}
+			position += n;
+			total += n;
+		}
+		return total;
+	}
+
+	private ByteBuffer slice(int from, int to) {
+		ByteBuffer view = buffer.duplicate();
+		view.limit(to);
+		view.position(from);
+		return view.slice();
+	}
+
+	private static ByteBuffer borrowBuffer(int capacity) {
+		ByteBuffer b;
+		while ((b = bufferPool.poll()) != null) {
+			if (b.capacity() == capacity) {
+				b.clear();
+				return b;
+			}
+			// configured size has changed; let the old buffer be collected
+		}
+		return ByteBuffer.allocateDirect(capacity);
+	}
+
+	private void releaseBuffer() {
+		if (buffer != null) {
+			if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+				bufferPool.offer(buffer);
+			}
+			buffer = null;
+		}
+		header = null;
+		trailer = null;
+	}
+
+	/** Returns the header and trailer buffer to the pool. */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		releaseBuffer();
+	}
+
+}
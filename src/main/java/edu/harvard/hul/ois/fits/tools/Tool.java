@@ -108,6 +108,14 @@ public interface Tool extends Runnable {
 
 	public void setInputFile(File file);
 
+	/**
+	 * Provides information about the input file that is shared by all the tools
+	 * examining it, or null once they have finished. Tools that do not use it
+	 * can ignore it.
+	 */
+	public default void setFileContext(FileContext context) {
+	}
+
 	public ToolOutput getOutput();
 
 	public long getDuration();
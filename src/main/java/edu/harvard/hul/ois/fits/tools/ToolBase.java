@@ -14,9 +14,12 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamSource;
 
@@ -29,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 //import org.w3c.dom.Node;
 
+import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.identity.ToolIdentity;
 
@@ -39,6 +43,9 @@ public abstract class ToolBase implements Tool {
 
 	private static final Logger logger = LoggerFactory.getLogger( ToolBase.class );
 
+	// Compiled stylesheets by path. Templates are thread safe and are shared by all tools.
+	private static final Map<String,Templates> templatesCache = new ConcurrentHashMap<String,Templates>();
+
 	protected ToolInfo info = null;
 	protected ToolOutput output = null;
 	protected SAXBuilder saxBuilder;
@@ -47,6 +54,7 @@ public abstract class ToolBase implements Tool {
 	protected Hashtable<String,String> transformMap;
 	private TransformerFactory tFactory;
     private File inputFile;
+    private volatile FileContext fileContext;
     private String name;
 
     private List<String> excludedExtensions;
@@ -100,6 +108,21 @@ public abstract class ToolBase implements Tool {
 		inputFile = file;
 	}
 
+	public void setFileContext(FileContext context) {
+		fileContext = context;
+	}
+
+	/** Returns the shared context for the given file, or null if there is none
+	 *  (for example when extractInfo() is called directly rather than by Fits).
+	 */
+	protected FileContext getFileContext(File file) {
+		FileContext context = fileContext;
+		if(context != null && context.isFor(file)) {
+			return context;
+		}
+		return null;
+	}
+
 	public boolean isIdentityKnown(ToolIdentity identity) {
 		if(!canIdentify()) {
 			return false;
@@ -131,7 +154,7 @@ public abstract class ToolBase implements Tool {
 		try {
 //			Configuration config = ((TransformerFactoryImpl)tFactory).getConfiguration();
 //			DocumentWrapper docw = new DocumentWrapper(input,null,config);
-			Templates templates = tFactory.newTemplates(new StreamSource(xslt));
+			Templates templates = getTemplates(xslt);
 			Transformer transformer = templates.newTransformer();
 //			transformer.transform(new DOMSource((Node)input), out);
 //			transformer.transform(docw, out);
@@ -151,6 +174,33 @@ public abstract class ToolBase implements Tool {
 		return doc;
 	}
 
+	private Templates getTemplates(String xslt) throws TransformerConfigurationException {
+		Templates templates = templatesCache.get(xslt);
+		if(templates == null) {
+			templates = tFactory.newTemplates(new StreamSource(xslt));
+			templatesCache.put(xslt, templates);
+		}
+		return templates;
+	}
+
+	/** Returns true if this tool is listed in the tools attribute of the
+	 *  process/native-mappers element of fits.xml, in which case it should convert
+	 *  its output with a {@link ToolOutputMapper} rather than its XSLT stylesheet.
+	 */
+	protected boolean isNativeMapperEnabled(Fits fits) {
+		if(fits == null || fits.getConfig() == null) {
+			return false;
+		}
+		@SuppressWarnings("unchecked")
+		List<String> toolNames = (List<String>)(List<?>)fits.getConfig().getList("process.native-mappers[@tools]");
+		for(String toolName : toolNames) {
+			if(toolName.trim().equals(getClass().getSimpleName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public void addExcludedExtension(String ext) {
 		excludedExtensions.add(ext);
 	}
@@ -20,10 +20,8 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import org.jdom.Attribute;
 import org.jdom.Document;
 import org.jdom.Element;
-import org.jdom.JDOMException;
 import org.jdom.Namespace;
 import org.jdom.output.XMLOutputter;
-import org.jdom.xpath.XPath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.InputSource;
@@ -136,11 +134,11 @@ public class ToolOutput {
 
 	private List<ToolIdentity> createFileIdentities(Document dom, ToolInfo info) {
 		List<ToolIdentity> identities = new ArrayList<ToolIdentity>();
-		try {
-			XPath xpath = XPath.newInstance("//fits:identity");
-			xpath.addNamespace(ns);
+		// identities are always at fits/identification/identity in tool output
+		Element identification = dom.getRootElement().getChild("identification",ns);
+		if(identification != null) {
 			@SuppressWarnings("unchecked")
-            List<Element> identElements = xpath.selectNodes(dom);
+			List<Element> identElements = identification.getChildren("identity",ns);
 			for(Element element : identElements) {
 				Attribute formatAttr = element.getAttribute("format");
 				Attribute mimetypeAttr = element.getAttribute("mimetype");
@@ -169,8 +167,6 @@ public class ToolOutput {
 				}
 				identities.add(identity);
 			}
-		} catch (JDOMException e) {
-			logger.error("Error parsing DOC with XPath", e);
 		}
 		return identities;
 	}
@@ -0,0 +1,32 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools;
+
+import org.jdom.Document;
+
+import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+
+/**
+ * Converts the raw XML output of a tool into FITS XML without going through an
+ * XSLT stylesheet. An implementation must produce the same document as the
+ * stylesheet it stands in for, which remains in use for tools that are not
+ * listed in the <code>process/native-mappers</code> element of fits.xml.
+ */
+public interface ToolOutputMapper {
+
+	/**
+	 * @param rawOutput the raw output of the tool, as passed to its XSLT stylesheet
+	 * @return a JDOM Document following the FITS output schema
+	 * @throws FitsToolException if the raw output cannot be mapped
+	 */
+	public Document map(Document rawOutput) throws FitsToolException;
+
+}
@@ -205,19 +205,7 @@ public abstract class ArchiveContentIdentifier {
 
         try {
             request.open(in);
-            IdentificationResultCollection results =
-                    getBinarySignatureIdentifier().matchBinarySignatures(request);
-            
-            if (results.getResults().isEmpty()) {
-            	results = binarySignatureIdentifier.matchExtensions(request, true);
-            }
-
-            final ResultPrinter resultPrinter =
-                    new ResultPrinter(getBinarySignatureIdentifier(),
-                            getContainerSignatureDefinitions(), newPath, getSlash(), getSlash1(), true,
-                            getExpandWebArchives(), aggregator, puidFormatMap);
-
-            resultPrinter.print(results, request);
+            identifyOpenRequest(request, newPath, aggregator);
             request.close();
         } catch (UnsupportedZipFeatureException e) {
         	// output: org.apache.commons.compress.archivers.zip.UnsupportedZipFeatureException: unsupported feature encryption used in entry Book_pdfx1a.pdf
@@ -235,4 +223,31 @@ public abstract class ArchiveContentIdentifier {
         }
     }
 
+    /**
+     * Identifies the contents of a request that has already been opened and adds
+     * the result to the aggregator. The caller is responsible for closing the request.
+     *
+     * @param request  The opened request
+     * @param newPath Path for the Container file
+     * @param aggregator Aggregates ZIP file container information
+     * @throws CommandExecutionException When an exception happens during execution
+     */
+    protected void identifyOpenRequest(IdentificationRequest request, String newPath, ContainerAggregator aggregator)
+        throws CommandExecutionException {
+
+        IdentificationResultCollection results =
+                getBinarySignatureIdentifier().matchBinarySignatures(request);
+
+        if (results.getResults().isEmpty()) {
+        	results = binarySignatureIdentifier.matchExtensions(request, true);
+        }
+
+        final ResultPrinter resultPrinter =
+                new ResultPrinter(getBinarySignatureIdentifier(),
+                        getContainerSignatureDefinitions(), newPath, getSlash(), getSlash1(), true,
+                        getExpandWebArchives(), aggregator, puidFormatMap);
+
+        resultPrinter.print(results, request);
+    }
+
 }
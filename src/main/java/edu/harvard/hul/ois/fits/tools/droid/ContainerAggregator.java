@@ -18,6 +18,8 @@ import java.util.zip.ZipEntry;
 
 /**
  * This class aggregates data from Droid about container (ZIP) type files.
+ * It is updated by several threads at once when the entries of a container are
+ * identified in parallel, so all access is synchronized.
  * 
  * @author dan179
  */
@@ -34,6 +36,16 @@ public class ContainerAggregator {
 	private long compressedSize;
 	
 	private boolean isEncrypted = false;
+
+	// Whether only a sample of the files within the ZIP file was identified.
+	private boolean isSampled = false;
+
+	// Number of files listed in the central directory of the ZIP file, and the number of them identified.
+	private int directoryEntriesCount;
+	private int examinedEntriesCount;
+
+	// Name of the compression method of a container that does not compress entries the ZIP way, such as a gzipped tar file.
+	private String compressionMethodName;
 	
 	private static final String UNKNOWN_FORMAT = "Unknown";
 
@@ -46,14 +58,14 @@ public class ContainerAggregator {
 	 * 
 	 * @return Original size of all files within ZIP file in bytes.
 	 */
-	public long getOriginalSize() {
+	public synchronized long getOriginalSize() {
 		return originalSize;
 	}
 
 	/**
 	 * Increment the calculated original size of the examined ZIP file by the original size of a contained file.
 	 */
-	public void incrementOriginalSize(long originalSize) {
+	public synchronized void incrementOriginalSize(long originalSize) {
 		this.originalSize += originalSize;
 	}
 
@@ -62,21 +74,21 @@ public class ContainerAggregator {
 	 * 
 	 * @return Compressed size of all files within ZIP file in bytes.
 	 */
-	public long getCompressedSize() {
+	public synchronized long getCompressedSize() {
 		return compressedSize;
 	}
 
 	/**
 	 * Increment the compressed size of the examined ZIP file by the original size of a contained file.
 	 */
-	public void incrementCompressedSize(long compressedSize) {
+	public synchronized void incrementCompressedSize(long compressedSize) {
 		this.compressedSize += compressedSize;
 	}
 	
 	/**
 	 * Add a format type to this collection and increment count for this type.
 	 */
-	public void addFormat(String format) {
+	public synchronized void addFormat(String format) {
 		if (format !=null) {
 			Integer cnt = formatToCount.get(format);
 			if (cnt == null) {
@@ -88,7 +100,7 @@ public class ContainerAggregator {
 		}
 	}
 	
-	public void incrementUnknownFormat() {
+	public synchronized void incrementUnknownFormat() {
 		Integer cnt = formatToCount.get(UNKNOWN_FORMAT);
 		if (cnt == null) {
 			formatToCount.put(UNKNOWN_FORMAT, 1);
@@ -103,16 +115,34 @@ public class ContainerAggregator {
 	 * 
 	 * @return Format to count mapping
 	 */
-	public Map<String, Integer> getFormatCounts() {
+	public synchronized Map<String, Integer> getFormatCounts() {
 		return Collections.unmodifiableMap(formatToCount);
 	}
 	
 	/**
-	 * Total number of all format types added to this collection.
+	 * Adds the format counts of another collection to this one.
+	 */
+	public void addFormats(ContainerAggregator other) {
+		Map<String, Integer> counts = new HashMap<>(other.getFormatCounts());
+		synchronized (this) {
+			for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+				Integer cnt = formatToCount.get(entry.getKey());
+				formatToCount.put(entry.getKey(), cnt == null ? entry.getValue() : cnt + entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Total number of files within the ZIP file. This is the number of format types
+	 * added to this collection unless only a sample of the files was identified, in
+	 * which case it is the number of files in the central directory.
 	 * 
-	 * @return Total number for formats added to this collection.
+	 * @return Total number of files within the ZIP file.
 	 */
-	public int getTotalEntriesCount() {
+	public synchronized int getTotalEntriesCount() {
+		if (isSampled) {
+			return directoryEntriesCount;
+		}
 		int total = 0;
 		for (Integer val : formatToCount.values()) {
 			total += val;
@@ -120,6 +150,29 @@ public class ContainerAggregator {
 		return total;
 	}
 	
+	/**
+	 * Number of files within the ZIP file that were identified.
+	 * 
+	 * @return Number of files identified.
+	 */
+	public synchronized int getExaminedEntriesCount() {
+		return examinedEntriesCount;
+	}
+	
+	/**
+	 * Sets the number of files within the ZIP file that were identified.
+	 */
+	public synchronized void setExaminedEntriesCount(int examinedEntriesCount) {
+		this.examinedEntriesCount = examinedEntriesCount;
+	}
+	
+	/**
+	 * Sets the number of files listed in the central directory of the ZIP file.
+	 */
+	public synchronized void setDirectoryEntriesCount(int directoryEntriesCount) {
+		this.directoryEntriesCount = directoryEntriesCount;
+	}
+	
 	/**
 	 * The compression method as defined the Java ZipEntry. Currently only values for 'stored' (uncompressed)
 	 * and 'deflate' (compressed) are used.
@@ -127,26 +180,55 @@ public class ContainerAggregator {
 	 * @return The value corresponding to
 	 * @see java.util.zip.ZipEntry
 	 */
-	public int getCompressionMethod() {
+	public synchronized int getCompressionMethod() {
 		return getCompressedSize() < getOriginalSize() ? ZipEntry.DEFLATED : ZipEntry.STORED;
 	}
 
+	/**
+	 * The name of the compression method of a container whose entries are not compressed the
+	 * way ZIP entries are, or null to report the method given by {@link #getCompressionMethod()}.
+	 */
+	public synchronized String getCompressionMethodName() {
+		return compressionMethodName;
+	}
+
+	/**
+	 * Sets the name of the compression method of the container.
+	 */
+	public synchronized void setCompressionMethodName(String compressionMethodName) {
+		this.compressionMethodName = compressionMethodName;
+	}
+
 	/**
 	 * Whether the container being examined is encrypted.
 	 */
-	public boolean isEncrypted() {
+	public synchronized boolean isEncrypted() {
 		return isEncrypted;
 	}
 
 	/**
 	 * Sets whether this container being examined is encrypted.
 	 */
-	public void setEncrypted(boolean isEncrypted) {
+	public synchronized void setEncrypted(boolean isEncrypted) {
 		this.isEncrypted = isEncrypted;
 	}
 
+	/**
+	 * Whether the format counts are for a sample of the files within the ZIP file rather than all of them.
+	 */
+	public synchronized boolean isSampled() {
+		return isSampled;
+	}
+
+	/**
+	 * Sets whether only a sample of the files within the ZIP file was identified.
+	 */
+	public synchronized void setSampled(boolean isSampled) {
+		this.isSampled = isSampled;
+	}
+
 	@Override
-	public String toString() {
+	public synchronized String toString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("ContainerAggregator [formatToCount=");
 		builder.append(formatToCount);
@@ -159,6 +241,12 @@ public class ContainerAggregator {
 		builder.append(compressedSize);
 		builder.append(", isEncrypted: ");
 		builder.append(isEncrypted);
+		builder.append(", isSampled: ");
+		builder.append(isSampled);
+		if (isSampled) {
+			builder.append(", examined entries: ");
+			builder.append(examinedEntriesCount);
+		}
 		return builder.toString();
 	}
 
@@ -0,0 +1,131 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+
+/**
+ * Limits on the work done identifying the entries of a container. When a
+ * container has more entries, or more uncompressed bytes, than allowed, only a
+ * sample of its entries is identified: every n-th entry in the order of the
+ * central directory, so that the same entries are chosen each time the container
+ * is examined.
+ * <p>
+ * A time budget is handled the same way. The entries of a smaller sample are
+ * identified first, and the rest of the entries after them; if the budget runs
+ * out before the rest are done, only the results for the smaller sample are kept.
+ * <p>
+ * A limit below 1 means no limit.
+ */
+public class ContainerLimits {
+
+	public static final int DEFAULT_SAMPLE_ENTRIES = 1000;
+
+	/** No limits: every entry is identified. */
+	public static final ContainerLimits NONE = new ContainerLimits(-1, -1, -1, DEFAULT_SAMPLE_ENTRIES);
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final long timeBudgetMillis;
+	private final int sampleEntries;
+
+	/**
+	 * @param maxEntries the most entries to identify
+	 * @param maxBytes the most uncompressed bytes of entries to identify
+	 * @param timeBudgetMillis the time after which only a sample of the entries is identified
+	 * @param sampleEntries the number of entries in the sample kept when the time budget runs out
+	 */
+	public ContainerLimits(int maxEntries, long maxBytes, long timeBudgetMillis, int sampleEntries) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.timeBudgetMillis = timeBudgetMillis;
+		this.sampleEntries = Math.max(1, sampleEntries);
+	}
+
+	/**
+	 * Reads the limits from the droid_container_limits element of the FITS configuration:
+	 * <pre>
+	 * &lt;droid_container_limits max-entries="100000" max-uncompressed-mb="10240"
+	 *     time-budget-seconds="300" sample-entries="1000" /&gt;
+	 * </pre>
+	 * Every entry is identified if the element is missing.
+	 *
+	 * @throws FitsToolException if a limit is not a number
+	 */
+	public static ContainerLimits fromConfig(HierarchicalConfiguration config) throws FitsToolException {
+		long maxEntries = parse(config, "droid_container_limits[@max-entries]", -1);
+		long maxMb = parse(config, "droid_container_limits[@max-uncompressed-mb]", -1);
+		long budgetSeconds = parse(config, "droid_container_limits[@time-budget-seconds]", -1);
+		long sample = parse(config, "droid_container_limits[@sample-entries]", DEFAULT_SAMPLE_ENTRIES);
+		return new ContainerLimits((int) Math.min(maxEntries, Integer.MAX_VALUE),
+				maxMb > 0 ? maxMb * 1024 * 1024 : -1,
+				budgetSeconds > 0 ? budgetSeconds * 1000 : -1,
+				(int) Math.min(sample, Integer.MAX_VALUE));
+	}
+
+	private static long parse(HierarchicalConfiguration config, String key, long defaultValue) throws FitsToolException {
+		String value = config.getString(key);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException nfe) {
+			throw new FitsToolException("Invalid long value in fits.xml " + key + ": " + value, nfe);
+		}
+	}
+
+	/**
+	 * Returns n, where every n-th entry of a container is to be identified, so
+	 * that the entries identified stay within the entry and byte limits.
+	 *
+	 * @param entries the number of entries in the container
+	 * @param uncompressedBytes the uncompressed size of all of the entries
+	 * @return 1 if every entry can be identified
+	 */
+	public int getStride(int entries, long uncompressedBytes) {
+		long stride = 1;
+		if (maxEntries > 0 && entries > maxEntries) {
+			stride = ceilDiv(entries, maxEntries);
+		}
+		if (maxBytes > 0 && uncompressedBytes > maxBytes) {
+			stride = Math.max(stride, ceilDiv(uncompressedBytes, maxBytes));
+		}
+		return (int) Math.min(stride, Math.max(1, entries));
+	}
+
+	/**
+	 * Returns n, where every n-th entry of a container is kept if the time budget
+	 * runs out. The entries chosen are a subset of those chosen by the given stride.
+	 *
+	 * @param entries the number of entries in the container
+	 * @param stride the stride returned by {@link #getStride(int, long)}
+	 */
+	public int getBudgetStride(int entries, int stride) {
+		long selected = ceilDiv(entries, stride);
+		if (timeBudgetMillis <= 0 || selected <= sampleEntries) {
+			return stride;
+		}
+		return (int) Math.min((long) stride * ceilDiv(selected, sampleEntries), Math.max(1, entries));
+	}
+
+	/** Returns the time budget in milliseconds, or a value below 1 if there is none. */
+	public long getTimeBudgetMillis() {
+		return timeBudgetMillis;
+	}
+
+	private static long ceilDiv(long a, long b) {
+		return a / b + (a % b == 0 ? 0 : 1);
+	}
+
+}
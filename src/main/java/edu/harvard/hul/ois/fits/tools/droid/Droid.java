@@ -18,6 +18,10 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.configuration.XMLConfiguration;
 
@@ -57,6 +61,9 @@ public class Droid extends ToolBase {
     private final Fits fits;
     private final List<String> includeExts;
     private long kbReadLimit;
+    private final DroidScanLimits scanLimits;
+    private long zipEntryInMemoryLimit;
+    private final ContainerLimits containerLimits;
 
     private static File sigFile;
     private static final BinarySignatureIdentifier sigIdentifier = new BinarySignatureIdentifier();
@@ -64,8 +71,19 @@ public class Droid extends ToolBase {
     private static final ArchiveFormatResolver containerFormatResolver = new ArchiveFormatResolverImpl();
     private static ContainerSignatureDefinitions containerSignatureDefinitions;
 	private static final Map<String, Format> puidFormatMap = new HashMap<>(2500);
+	// identifies the entries of ZIP files, shared by all instances
+	private static volatile ExecutorService zipEntryExecutor;
+	private static int zipEntryThreads;
 
     private final static List<String> CONTAINER_TYPE_MIMETYPES = Arrays.asList("application/zip");
+    // tar, gzip, bzip and bzip2 formats, whose files are profiled when they hold a tar file
+    private final static Map<String, TarArchiveContentIdentifier.Compression> TAR_TYPE_PUIDS = new HashMap<>();
+    static {
+    	TAR_TYPE_PUIDS.put("x-fmt/265", TarArchiveContentIdentifier.Compression.NONE);
+    	TAR_TYPE_PUIDS.put("x-fmt/266", TarArchiveContentIdentifier.Compression.GZIP);
+    	TAR_TYPE_PUIDS.put("x-fmt/267", TarArchiveContentIdentifier.Compression.BZIP2);
+    	TAR_TYPE_PUIDS.put("x-fmt/268", TarArchiveContentIdentifier.Compression.BZIP2);
+    }
 
 	private static final Logger logger = LoggerFactory.getLogger(Droid.class);
 
@@ -133,6 +151,11 @@ public class Droid extends ToolBase {
 	        		throw new FitsToolException("Invalid long value in fits.xml droid_read_limit[@read-limit-kb]: " + limit, nfe);
 	        	}
 	        }
+	        scanLimits = DroidScanLimits.fromConfig(config);
+
+	        zipEntryInMemoryLimit = config.getLong("droid_zip_content[@in-memory-kb]", ZipArchiveContentIdentifier.DEFAULT_IN_MEMORY_LIMIT / 1024) * 1024;
+	        containerLimits = ContainerLimits.fromConfig(config);
+	        initZipEntryExecutor(config.getInt("droid_zip_content[@threads]", Math.min(4, Runtime.getRuntime().availableProcessors())));
 		} catch (Throwable e) {
 			throw new FitsToolException("Error initilizing DROID",e);
 		}
@@ -144,11 +167,18 @@ public class Droid extends ToolBase {
 		long startTime = System.currentTimeMillis();
 		IdentificationResultCollection results;
 		ContainerAggregator aggregator = null;
+		long bytesRead;
+		long scanLimit;
 		try {
 			DroidQuery droidQuery = new DroidQuery (sigIdentifier, containerIdentifierFactory, containerFormatResolver,
-					puidFormatMap, containerSignatureDefinitions, includeExts, kbReadLimit, file);
+					puidFormatMap, containerSignatureDefinitions, includeExts, kbReadLimit, file, scanLimits, getFileContext(file));
+			droidQuery.setZipEntryIdentification(zipEntryExecutor, zipEntryThreads * 4, zipEntryInMemoryLimit);
+			droidQuery.setContainerLimits(containerLimits);
 			// the following will almost always return a single result
 		    results = droidQuery.queryFile();
+		    bytesRead = droidQuery.getBytesRead();
+		    scanLimit = droidQuery.getScanLimit();
+		    logger.debug("DROID read " + bytesRead + " of " + file.length() + " bytes of " + file.getName());
 	        for (IdentificationResult res : results.getResults()) {
 	            String mimeType = res.getMimeType();
 
@@ -166,6 +196,9 @@ public class Droid extends ToolBase {
 	            if (CONTAINER_TYPE_MIMETYPES.contains(mimeType) && "zip".equals(extension)) {
 	            	aggregator = droidQuery.queryContainerData(results);
 	            }
+	            else if (aggregator == null && TAR_TYPE_PUIDS.containsKey(res.getPuid())) {
+	            	aggregator = droidQuery.queryTarData(results, TAR_TYPE_PUIDS.get(res.getPuid()));
+	            }
 	        }
 
 		}
@@ -176,6 +209,7 @@ public class Droid extends ToolBase {
 			throw new FitsToolException("Problem with DROID signature file");
 		}
 		DroidToolOutputter outputter = new DroidToolOutputter(this, results, fits, aggregator);
+		outputter.setScanStatistics(bytesRead, scanLimit);
 		ToolOutput output = outputter.toToolOutput();
 
 		duration = System.currentTimeMillis()-startTime;
@@ -184,6 +218,22 @@ public class Droid extends ToolBase {
 		return output;
 	}
 
+	private static synchronized void initZipEntryExecutor(int threads) {
+		if (zipEntryExecutor != null || threads <= 1) {
+			return;
+		}
+		zipEntryThreads = threads;
+		zipEntryExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "FITS DROID zip entries " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
 	public boolean isEnabled() {
 		return enabled;
 	}
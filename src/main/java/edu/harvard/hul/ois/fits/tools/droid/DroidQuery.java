@@ -21,8 +21,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+import edu.harvard.hul.ois.fits.tools.FileContext;
 import uk.gov.nationalarchives.droid.command.action.CommandExecutionException;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureDefinitions;
 import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
@@ -35,7 +37,7 @@ import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ArchiveFormatResolver;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.archive.ContainerIdentifierFactory;
-import uk.gov.nationalarchives.droid.core.interfaces.resource.FileSystemIdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
 import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 
@@ -50,6 +52,14 @@ public class DroidQuery {
     private long bytesToRead = -1;
     private List<String> fileExtensions; // file extensions for files on which to apply file read limit
     private File file; // input file that is being processed
+    private DroidScanLimits scanLimits;
+    private FileContext fileContext; // may be null
+    private long bytesRead;
+    private long scanLimit = DroidScanLimits.UNLIMITED;
+    private ExecutorService zipEntryExecutor;
+    private int maxPendingZipEntries = 1;
+    private long zipEntryInMemoryLimit = ZipArchiveContentIdentifier.DEFAULT_IN_MEMORY_LIMIT;
+    private ContainerLimits containerLimits = ContainerLimits.NONE;
     
     
     /**
@@ -64,6 +74,8 @@ public class DroidQuery {
      * @param includeExts File extensions to include for possibly limiting number of bytes to read of file to process.
      * @param kbReadLimit Number of bytes to process in KB from the beginning of the file. -1 indicates read entire file.
      * @param file The file to be processed by DROID.
+     * @param scanLimits Limits on the number of bytes at each end of the file DROID scans for signatures.
+     * @param fileContext The shared context for the file, or null.
      * @throws SignatureParseException If there is a problem processing the DROID signature file.
      */
     public DroidQuery(BinarySignatureIdentifier sigIdentifier,
@@ -72,7 +84,8 @@ public class DroidQuery {
                       Map<String, Format> puidFormatMap,
                       ContainerSignatureDefinitions containerSignatureDefinitions,
                       List<String> includeExts,
-                      long kbReadLimit, File file)  throws SignatureParseException, FileNotFoundException    {
+                      long kbReadLimit, File file,
+                      DroidScanLimits scanLimits, FileContext fileContext)  throws SignatureParseException, FileNotFoundException    {
     	this.sigIdentifier = sigIdentifier;
         this.containerIdentifierFactory = containerIdentifierFactory;
         this.containerFormatResolver = containerFormatResolver;
@@ -83,6 +96,8 @@ public class DroidQuery {
             this.bytesToRead = (kbReadLimit * 1024) - 1;
         }
         this.file = file;
+        this.scanLimits = scanLimits;
+        this.fileContext = fileContext;
     }
 
     /**
@@ -107,14 +122,26 @@ public class DroidQuery {
     	}
         RequestMetaData metadata = new RequestMetaData(bytesToExamine, file.lastModified(), file.getName());
         RequestIdentifier identifier = new RequestIdentifier (file.toURI());
-        FileSystemIdentificationRequest req = null;
+        WindowedIdentificationRequest req = null;
         try {
-            req = new FileSystemIdentificationRequest(metadata, identifier);
+            scanLimit = scanLimits.getLimit(ResourceUtils.getExtension(filename));
+            req = new WindowedIdentificationRequest(metadata, identifier, scanLimit, fileContext);
             req.open(file.toPath());
 
             // This logic is based on https://github.com/digital-preservation/droid/blob/master/droid-results/src/main/java/uk/gov/nationalarchives/droid/submitter/SubmissionGateway.java
 
             IdentificationResultCollection results = sigIdentifier.matchBinarySignatures(req);
+
+            // Scan again if the format found has a limit of its own.
+            Long formatLimit = scanLimits.getFormatLimit(results);
+            if (formatLimit != null && formatLimit.longValue() != scanLimit) {
+                scanLimit = formatLimit;
+                req.setScanLimit(scanLimit);
+                results = sigIdentifier.matchBinarySignatures(req);
+            }
+
+            // Container identifiers read the structure of the whole file.
+            req.setScanLimit(DroidScanLimits.UNLIMITED);
             IdentificationResultCollection containerResults = handleContainer(req, results);
 
             if (containerResults != null) {
@@ -130,11 +157,27 @@ public class DroidQuery {
         }
         finally {
             if (req != null) {
+                bytesRead = req.getBytesRead();
                 req.close ();
             }
         }
     }
 
+    /**
+     * Returns the number of bytes of the file read by the last call to queryFile().
+     */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the number of bytes at each end of the file that the last call to
+     * queryFile() scanned for signatures, or a negative value if it scanned the whole file.
+     */
+    long getScanLimit() {
+        return scanLimit;
+    }
+
     private IdentificationResultCollection handleContainer(IdentificationRequest request,
                                                            IdentificationResultCollection results) throws IOException {
         String containerFormat = getContainerFormat(results);
@@ -182,24 +225,65 @@ public class DroidQuery {
      */
     ContainerAggregator queryContainerData(IdentificationResultCollection results) throws IOException, FitsToolException {
 
-        RequestMetaData metadata = new RequestMetaData(bytesToRead, file.lastModified(), file.getName());
-    	RequestIdentifier identifier = new RequestIdentifier (file.toURI());
-    	FileSystemIdentificationRequest request = null;
-    	request = new FileSystemIdentificationRequest(metadata, identifier);
-    	request.open(file.toPath());
-    	
     	ZipArchiveContentIdentifier zipArchiveIdentifier =
                 new ZipArchiveContentIdentifier(this.sigIdentifier,
                     containerSignatureDefinitions, "", File.separator, File.separator, puidFormatMap);
+        zipArchiveIdentifier.setExecutor(zipEntryExecutor, maxPendingZipEntries);
+        zipArchiveIdentifier.setInMemoryLimit(zipEntryInMemoryLimit);
+        zipArchiveIdentifier.setLimits(containerLimits);
         try {
-        	ContainerAggregator aggregator = zipArchiveIdentifier.identify(results.getUri(), request);
+        	ContainerAggregator aggregator = zipArchiveIdentifier.identify(results.getUri(), file);
         	return aggregator;
 		} catch (CommandExecutionException e) {
 			throw new FitsToolException("DROID can't execute zipArchiveIdentifier" , e);
-		} finally {
-            if (request != null) {
-            	request.close();
-            }
 		}
     }
+
+    /**
+     * Provides additional results from DROID for processing tar files, which may be
+     * compressed. The entries are identified as the file is read, without being
+     * written to disk.
+     * 
+     * @param results This is the same value returned from the call to queryFile().
+     * @param compression The compression of the file.
+     * @return Aggregated data of all files contained within the tar file, or null if a compressed file does not hold a tar file.
+     * @throws FitsToolException If the entries cannot be identified.
+     */
+    ContainerAggregator queryTarData(IdentificationResultCollection results, TarArchiveContentIdentifier.Compression compression) throws FitsToolException {
+
+        if (compression != TarArchiveContentIdentifier.Compression.NONE && !TarArchiveContentIdentifier.isTar(file, compression)) {
+            return null;
+        }
+        TarArchiveContentIdentifier tarArchiveIdentifier =
+                new TarArchiveContentIdentifier(this.sigIdentifier,
+                    containerSignatureDefinitions, "", File.separator, File.separator, puidFormatMap);
+        tarArchiveIdentifier.setInMemoryLimit(zipEntryInMemoryLimit);
+        try {
+            return tarArchiveIdentifier.identify(results.getUri(), file, compression);
+        } catch (CommandExecutionException e) {
+            throw new FitsToolException("DROID can't execute tarArchiveIdentifier" , e);
+        }
+    }
+
+    /**
+     * Sets how the entries of ZIP files are identified by queryContainerData().
+     *
+     * @param executor Executor to identify the entries on, or null to identify them on the calling thread.
+     * @param maxPendingEntries The most entries of one ZIP file waiting for or being identified at once.
+     * @param inMemoryLimit The size in bytes up to which entries, of tar files too, are read into memory.
+     */
+    void setZipEntryIdentification(ExecutorService executor, int maxPendingEntries, long inMemoryLimit) {
+        this.zipEntryExecutor = executor;
+        this.maxPendingZipEntries = maxPendingEntries;
+        this.zipEntryInMemoryLimit = inMemoryLimit;
+    }
+
+    /**
+     * Sets the limits beyond which queryContainerData() identifies only a sample of the entries of a ZIP file.
+     *
+     * @param limits The limits.
+     */
+    void setContainerLimits(ContainerLimits limits) {
+        this.containerLimits = limits;
+    }
 }
@@ -0,0 +1,127 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResult;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationResultCollection;
+
+/**
+ * How many bytes at each end of a file DROID may scan when matching binary
+ * signatures. There is a default limit for all files, which can be overridden for
+ * files with given extensions and for files identified as given formats.
+ * <p>
+ * An extension limit is applied to the first scan of the file. A format limit is
+ * applied by scanning the file again when the first scan identifies it as that
+ * format, so that formats whose signatures lie deep in the file, or which need
+ * only a few bytes, can be given their own limit.
+ * <p>
+ * Limits are in bytes; a negative limit scans the whole file.
+ */
+public class DroidScanLimits {
+
+	public static final long UNLIMITED = -1;
+
+	private final long defaultLimit;
+	private final Map<String,Long> extensionLimits = new HashMap<String,Long>();
+	private final Map<String,Long> formatLimits = new HashMap<String,Long>();
+
+	public DroidScanLimits(long defaultLimit) {
+		this.defaultLimit = defaultLimit < 0 ? UNLIMITED : defaultLimit;
+	}
+
+	/**
+	 * Reads the limits from the droid_scan_limit element of the FITS configuration:
+	 * <pre>
+	 * &lt;droid_scan_limit max-bytes-kb="1024"&gt;
+	 *     &lt;extension exts="mov,mxf" max-bytes-kb="64"/&gt;
+	 *     &lt;format puids="fmt/199" max-bytes-kb="-1"/&gt;
+	 * &lt;/droid_scan_limit&gt;
+	 * </pre>
+	 * The whole of each file is scanned if the element is missing.
+	 *
+	 * @throws FitsToolException if a limit is not a number
+	 */
+	public static DroidScanLimits fromConfig(HierarchicalConfiguration config) throws FitsToolException {
+		DroidScanLimits limits = new DroidScanLimits(parseKb(config.getString("droid_scan_limit[@max-bytes-kb]"), "droid_scan_limit[@max-bytes-kb]"));
+		for (Object o : config.configurationsAt("droid_scan_limit.extension")) {
+			HierarchicalConfiguration sub = (HierarchicalConfiguration) o;
+			long limit = parseKb(sub.getString("[@max-bytes-kb]"), "droid_scan_limit.extension[@max-bytes-kb]");
+			for (Object ext : sub.getList("[@exts]")) {
+				limits.setExtensionLimit(ext.toString(), limit);
+			}
+		}
+		for (Object o : config.configurationsAt("droid_scan_limit.format")) {
+			HierarchicalConfiguration sub = (HierarchicalConfiguration) o;
+			long limit = parseKb(sub.getString("[@max-bytes-kb]"), "droid_scan_limit.format[@max-bytes-kb]");
+			for (Object puid : sub.getList("[@puids]")) {
+				limits.setFormatLimit(puid.toString(), limit);
+			}
+		}
+		return limits;
+	}
+
+	private static long parseKb(String value, String key) throws FitsToolException {
+		if (value == null || value.trim().isEmpty()) {
+			return UNLIMITED;
+		}
+		try {
+			long kb = Long.parseLong(value.trim());
+			return kb < 0 ? UNLIMITED : kb * 1024;
+		} catch (NumberFormatException nfe) {
+			throw new FitsToolException("Invalid long value in fits.xml " + key + ": " + value, nfe);
+		}
+	}
+
+	public void setExtensionLimit(String extension, long limit) {
+		extensionLimits.put(extension.trim().toLowerCase(), limit < 0 ? UNLIMITED : limit);
+	}
+
+	public void setFormatLimit(String puid, long limit) {
+		formatLimits.put(puid.trim(), limit < 0 ? UNLIMITED : limit);
+	}
+
+	/** Returns the limit for the first scan of a file with the given extension, which may be null. */
+	public long getLimit(String extension) {
+		if (extension != null) {
+			Long limit = extensionLimits.get(extension.toLowerCase());
+			if (limit != null) {
+				return limit;
+			}
+		}
+		return defaultLimit;
+	}
+
+	/**
+	 * Returns the limit for the first of the results that has a format limit, or
+	 * null if none of them has one.
+	 */
+	public Long getFormatLimit(IdentificationResultCollection results) {
+		if (formatLimits.isEmpty()) {
+			return null;
+		}
+		List<IdentificationResult> list = results.getResults();
+		for (IdentificationResult result : list) {
+			Long limit = result.getPuid() == null ? null : formatLimits.get(result.getPuid());
+			if (limit != null) {
+				return limit;
+			}
+		}
+		return null;
+	}
+
+}
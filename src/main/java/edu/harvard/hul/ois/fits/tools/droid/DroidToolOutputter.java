@@ -51,6 +51,8 @@ public class DroidToolOutputter {
     private ToolBase toolBase;
     private Fits fits;
     private ContainerAggregator aggregator; // could be null!!!
+    private long bytesRead = -1; // not known unless set
+    private long scanLimit = DroidScanLimits.UNLIMITED;
     
     static {
     	COMPRESSION_METHOD_TO_STRING_VALUE = new HashMap<>();
@@ -65,6 +67,17 @@ public class DroidToolOutputter {
         this.aggregator = aggregator;
     }
 
+    /**
+     * Records how much of the file DROID read, to be reported in the raw output.
+     *
+     * @param bytesRead the number of bytes DROID read from the file
+     * @param scanLimit the number of bytes at each end of the file scanned for signatures, negative if unlimited
+     */
+    public void setScanStatistics(long bytesRead, long scanLimit) {
+        this.bytesRead = bytesRead;
+        this.scanLimit = scanLimit;
+    }
+
     /** Produce a JDOM document with fits as its root element. This
      *  will contain just identification, not metadata elements.
      */
@@ -147,12 +160,16 @@ public class DroidToolOutputter {
     		containerElem.addContent(origSizeElem);
         	
         	Element compressionMethodElem = new Element("compressionMethod", fitsNS);
-    		compressionMethodElem.addContent( COMPRESSION_METHOD_TO_STRING_VALUE.get( aggregator.getCompressionMethod() ) );
+    		compressionMethodElem.addContent( getCompressionMethodName() );
     		containerElem.addContent(compressionMethodElem);
         	
         	Element entriesElem = new Element("entries", fitsNS);
     		Attribute totalEntriesCountAttr = new Attribute("totalEntries", String.valueOf(aggregator.getTotalEntriesCount()) );
 			entriesElem.setAttribute(totalEntriesCountAttr);
+			if (aggregator.isSampled()) {
+				entriesElem.setAttribute(new Attribute("sampled", "true"));
+				entriesElem.setAttribute(new Attribute("examinedEntries", String.valueOf(aggregator.getExaminedEntriesCount())));
+			}
     		containerElem.addContent(entriesElem);
         	
         	for ( Map.Entry<String, Integer> formatEntry : aggregator.getFormatCounts().entrySet() ) {
@@ -171,6 +188,13 @@ public class DroidToolOutputter {
         return toolDoc;
     }
 
+    private String getCompressionMethodName() {
+        if (aggregator.getCompressionMethodName() != null) {
+            return aggregator.getCompressionMethodName();
+        }
+        return COMPRESSION_METHOD_TO_STRING_VALUE.get( aggregator.getCompressionMethod() );
+    }
+
     public static String mapFormatName(String formatName) {
 
     	if(formatName == null || formatName.length() == 0) {
@@ -234,7 +258,12 @@ public class DroidToolOutputter {
 
             out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
             out.write("\n");
-            out.write("<results>");
+            if (bytesRead >= 0) {
+                out.write("<results bytesRead='" + bytesRead + "' scanLimit='" + scanLimit + "'>");
+            }
+            else {
+                out.write("<results>");
+            }
             out.write("\n");
             for (IdentificationResult res : resList) {
                 String filePuid = res.getPuid();
@@ -257,7 +286,7 @@ public class DroidToolOutputter {
             	out.write("<container originalSize='");
             	out.write( String.valueOf(aggregator.getOriginalSize()) );
             	
-            	String method = COMPRESSION_METHOD_TO_STRING_VALUE.get( aggregator.getCompressionMethod() );
+            	String method = getCompressionMethodName();
             	out.write("' method='");
             	out.write(method);
             	
@@ -266,6 +295,10 @@ public class DroidToolOutputter {
             	
             	out.write("<entries totalEntries='");
             	out.write( String.valueOf(aggregator.getTotalEntriesCount()) );
+            	if (aggregator.isSampled()) {
+            		out.write("' sampled='true' examinedEntries='");
+            		out.write( String.valueOf(aggregator.getExaminedEntriesCount()) );
+            	}
             	out.write("'>");
                 out.write("\n");
 
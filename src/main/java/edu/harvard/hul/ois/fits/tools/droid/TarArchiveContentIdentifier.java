@@ -0,0 +1,188 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.gov.nationalarchives.droid.command.action.CommandExecutionException;
+import uk.gov.nationalarchives.droid.container.ContainerSignatureDefinitions;
+import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.profile.referencedata.Format;
+
+/**
+ * Identifier for files held in a tar archive, which may be compressed with gzip
+ * or bzip2.
+ * <p>
+ * The archive is read once, as a stream through the decompressor, and each entry
+ * is identified from its data as it goes past; nothing is written to disk. The
+ * aggregated data has the same form as for ZIP files. A tar file has no sizes of
+ * compressed entries, so the compressed size of a gzip or bzip2 file is the size
+ * of the whole file. The entries of a tar file that is not compressed are stored,
+ * as ZIP entries can be, so its compressed size is the size of its entries rather
+ * than a file length that includes tar headers and padding.
+ */
+public class TarArchiveContentIdentifier extends ArchiveContentIdentifier {
+
+	private static final Logger logger = LoggerFactory.getLogger(TarArchiveContentIdentifier.class);
+
+	/** The compression of a tar file, if any. */
+	public enum Compression {
+		NONE("stored"),
+		GZIP("deflate"),
+		BZIP2("bzip2");
+
+		private final String methodName;
+
+		private Compression(String methodName) {
+			this.methodName = methodName;
+		}
+
+		/** Returns the name of the compression method as it appears in the container output. */
+		public String getMethodName() {
+			return methodName;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int TAR_HEADER_SIZE = 512;
+
+	private long inMemoryLimit = ZipArchiveContentIdentifier.DEFAULT_IN_MEMORY_LIMIT;
+
+	/**
+	 * @param binarySignatureIdentifier     binary signature identifier
+	 * @param containerSignatureDefinitions container signatures
+	 * @param path                          current archive path
+	 * @param slash                         local path element delimiter
+	 * @param slash1                        local first container prefix delimiter
+	 * @param puidFormatMap                 map of puids to formats
+	 */
+	public TarArchiveContentIdentifier(final BinarySignatureIdentifier binarySignatureIdentifier,
+			final ContainerSignatureDefinitions containerSignatureDefinitions,
+			final String path, final String slash, final String slash1,
+			final Map<String, Format> puidFormatMap) {
+
+		super(binarySignatureIdentifier, containerSignatureDefinitions,
+				path, slash, slash1, false, puidFormatMap);
+	}
+
+	/**
+	 * @param inMemoryLimit the size in bytes up to which entries are read into memory
+	 */
+	public void setInMemoryLimit(long inMemoryLimit) {
+		this.inMemoryLimit = inMemoryLimit;
+	}
+
+	/**
+	 * Returns whether the file, once decompressed, starts with a tar header. This
+	 * tells a compressed tar file from any other gzip or bzip2 file.
+	 */
+	public static boolean isTar(File file, Compression compression) {
+		byte[] header = new byte[TAR_HEADER_SIZE];
+		try (InputStream in = open(file, compression)) {
+			int read = IOUtils.readFully(in, header);
+			return TarArchiveInputStream.matches(header, read);
+		} catch (IOException e) {
+			logger.debug("Not a tar file: " + file.getName() + ": " + e);
+			return false;
+		}
+	}
+
+	private static InputStream open(File file, Compression compression) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+		try {
+			switch (compression) {
+			case GZIP:
+				// decompresses every member of a multi-member file, as gunzip does
+				return new BufferedInputStream(new GzipCompressorInputStream(in, true), BUFFER_SIZE);
+			case BZIP2:
+				return new BufferedInputStream(new BZip2CompressorInputStream(in, true), BUFFER_SIZE);
+			default:
+				return in;
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param uri The URI of the file to identify
+	 * @param file The tar file
+	 * @param compression The compression of the tar file
+	 * @return The aggregated data of the examined tar file
+	 * @throws CommandExecutionException When an exception happens during execution
+	 */
+	public ContainerAggregator identify(final URI uri, final File file, final Compression compression)
+			throws CommandExecutionException {
+
+		final String newPath = makeContainerURI("tar", file.getName());
+		setSlash1("");
+		ContainerAggregator aggregator = new ContainerAggregator();
+		aggregator.setCompressionMethodName(compression.getMethodName());
+		try (TarArchiveInputStream in = new TarArchiveInputStream(open(file, compression), "UTF8")) {
+			TarArchiveEntry entry;
+			while ((entry = in.getNextTarEntry()) != null) {
+				// directories, links and devices have no data of their own
+				if (!entry.isFile()) {
+					continue;
+				}
+				aggregator.incrementOriginalSize(entry.getSize());
+				identifyEntry(in, entry, uri, newPath, aggregator);
+			}
+		} catch (IOException ioe) {
+			logger.warn(ioe + " (" + newPath + ")"); // continue after corrupt archive
+		}
+		if (compression == Compression.NONE) {
+			// stored entries, as in a ZIP file
+			aggregator.incrementCompressedSize(aggregator.getOriginalSize());
+		}
+		else {
+			aggregator.incrementCompressedSize(file.length());
+		}
+		// shows collection of files within tar file
+		logger.debug("--------------");
+		logger.debug("{}", aggregator);
+		logger.debug("--------------");
+		return aggregator;
+	}
+
+	private void identifyEntry(TarArchiveInputStream in, TarArchiveEntry entry, URI uri, String newPath,
+			ContainerAggregator aggregator) throws IOException {
+		final RequestMetaData metaData = new RequestMetaData(entry.getSize(), entry.getModTime().getTime(), entry.getName());
+		final RequestIdentifier identifier = new RequestIdentifier(uri);
+		final TarEntryIdentificationRequest request = new TarEntryIdentificationRequest(metaData, identifier, inMemoryLimit);
+		try {
+			request.open(in);
+			identifyOpenRequest(request, newPath, aggregator);
+		} catch (CommandExecutionException e) {
+			logger.warn(e + " " + newPath + entry.getName());
+		} finally {
+			request.close();
+		}
+	}
+
+}
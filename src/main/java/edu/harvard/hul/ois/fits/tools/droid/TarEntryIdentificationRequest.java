@@ -0,0 +1,146 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.utils.IOUtils;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
+import net.byteseek.io.reader.cache.TopAndTailStreamCache;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
+
+/**
+ * A DROID identification request for an entry of a tar file that is being read
+ * as a stream, positioned at the start of the entry's data, so that the entries
+ * can be identified in one pass without copying them to temporary files.
+ * <p>
+ * Entries up to a size limit are read into memory. Larger entries are read from
+ * the stream keeping only the windows at the start and end of the entry, which is
+ * where DROID's signatures are found. Those entries cannot be read again as a
+ * whole, so container signatures, which need the whole entry, are not matched
+ * for them.
+ * <p>
+ * The stream is not closed when the request is closed.
+ */
+public class TarEntryIdentificationRequest implements IdentificationRequest<InputStream> {
+
+	// the same top and tail capacity as DROID's ZipEntryIdentificationRequest
+	private static final int TOP_TAIL_CAPACITY = 2 * 1024 * 1024;
+
+	private final RequestMetaData requestMetaData;
+	private final RequestIdentifier identifier;
+	private final String fileName;
+	private final String extension;
+	private final long size;
+	private final long inMemoryLimit;
+	private byte[] bytes;
+	private WindowReader reader;
+
+	/**
+	 * @param metadata metadata of the entry, whose size must be the size of the entry's data
+	 * @param identifier identifier of the request
+	 * @param inMemoryLimit the size up to which an entry is read into memory
+	 */
+	public TarEntryIdentificationRequest(RequestMetaData metadata, RequestIdentifier identifier, long inMemoryLimit) {
+		this.requestMetaData = metadata;
+		this.identifier = identifier;
+		this.fileName = metadata.getName();
+		this.extension = ResourceUtils.getExtension(fileName);
+		this.size = metadata.getSize();
+		this.inMemoryLimit = inMemoryLimit;
+	}
+
+	@Override
+	public void open(InputStream in) throws IOException {
+		if (size > 0 && size <= inMemoryLimit) {
+			bytes = new byte[(int) size];
+			if (IOUtils.readFully(in, bytes) < bytes.length) {
+				throw new IOException("The tar entry " + fileName + " is shorter than its stated size " + size);
+			}
+			reader = new ByteArrayReader(bytes);
+		}
+		else if (size > 0) {
+			reader = new InputStreamReader(in, new TopAndTailFixedLengthCache(size, TOP_TAIL_CAPACITY), false);
+		}
+		else {
+			reader = new InputStreamReader(in, new TopAndTailStreamCache(TOP_TAIL_CAPACITY), false);
+		}
+	}
+
+	@Override
+	public byte getByte(long position) throws IOException {
+		int result = reader.readByte(position);
+		if (result < 0) {
+			throw new IOException("No byte at position " + position);
+		}
+		return (byte) result;
+	}
+
+	@Override
+	public WindowReader getWindowReader() {
+		return reader;
+	}
+
+	@Override
+	public String getFileName() {
+		return fileName;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public String getExtension() {
+		return extension;
+	}
+
+	@Override
+	public InputStream getSourceInputStream() throws IOException {
+		if (bytes != null) {
+			return new ByteArrayInputStream(bytes);
+		}
+		if (size == 0) {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		throw new IOException("The tar entry " + fileName + " is too large to be read again from the stream");
+	}
+
+	@Override
+	public RequestMetaData getRequestMetaData() {
+		return requestMetaData;
+	}
+
+	@Override
+	public RequestIdentifier getIdentifier() {
+		return identifier;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+		bytes = null;
+	}
+
+}
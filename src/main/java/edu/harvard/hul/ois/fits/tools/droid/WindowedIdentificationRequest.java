@@ -0,0 +1,244 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import edu.harvard.hul.ois.fits.tools.FileContext;
+import net.byteseek.io.reader.AbstractReader;
+import net.byteseek.io.reader.ReaderInputStream;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
+import net.byteseek.io.reader.windows.HardWindow;
+import net.byteseek.io.reader.windows.Window;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
+
+/**
+ * A DROID identification request for a file that only lets DROID read the first
+ * and last bytes of the file, up to a scan limit at each end. Windows of the file
+ * outside those two ranges do not exist as far as DROID's signature searches are
+ * concerned, so a search for a signature stops at the edge of the range instead
+ * of running on through the rest of the file. The size of the file is still
+ * reported in full, so that end of file offsets are unchanged.
+ * <p>
+ * Windows are read with positional reads of the file, or copied from the header
+ * and trailer of the FileContext for the file when it holds them, and the number
+ * of bytes read into windows is counted so that it can be reported.
+ * <p>
+ * The scan limit can be changed while the request is open. Container identifiers
+ * need to read the structure of the whole file, so the limit should be removed
+ * before a request is handed to them.
+ */
+public class WindowedIdentificationRequest implements IdentificationRequest<Path> {
+
+	private static final int WINDOW_SIZE = 4096;
+	// the same top and tail capacity as DROID's FileSystemIdentificationRequest
+	private static final int TOP_TAIL_CACHE_CAPACITY = 8 * 1024 * 1024;
+
+	private final RequestMetaData requestMetaData;
+	private final RequestIdentifier identifier;
+	private final String fileName;
+	private final String extension;
+	private final long size;
+	private final FileContext fileContext;
+	private volatile long scanLimit;
+	private Path file;
+	private WindowedReader reader;
+
+	/**
+	 * @param metadata metadata of the file; its size is the size DROID sees
+	 * @param identifier identifier of the request
+	 * @param scanLimit the number of bytes at each end of the file that may be read, or a negative value to read all of it
+	 * @param fileContext the shared context for the file, or null
+	 */
+	public WindowedIdentificationRequest(RequestMetaData metadata, RequestIdentifier identifier, long scanLimit, FileContext fileContext) {
+		this.requestMetaData = metadata;
+		this.identifier = identifier;
+		this.size = metadata.getSize();
+		this.fileName = metadata.getName();
+		this.extension = ResourceUtils.getExtension(fileName);
+		this.scanLimit = scanLimit;
+		this.fileContext = fileContext;
+	}
+
+	@Override
+	public void open(Path path) throws IOException {
+		this.file = path;
+		this.reader = new WindowedReader(FileChannel.open(path, StandardOpenOption.READ));
+	}
+
+	/** Returns the number of bytes at each end of the file that may be read, or a negative value if there is no limit. */
+	public long getScanLimit() {
+		return scanLimit;
+	}
+
+	/**
+	 * Changes the number of bytes at each end of the file that may be read. The
+	 * windows cached so far are dropped when the limit is made smaller.
+	 */
+	public void setScanLimit(long limit) throws IOException {
+		long old = scanLimit;
+		scanLimit = limit;
+		if (reader != null && limit >= 0 && (old < 0 || limit < old)) {
+			reader.clearCache();
+		}
+	}
+
+	/** Returns the number of bytes read from the file so far, counting a window read again after being dropped each time. */
+	public long getBytesRead() {
+		return reader == null ? 0 : reader.bytesRead;
+	}
+
+	@Override
+	public byte getByte(long position) throws IOException {
+		int result = reader.readByte(position);
+		if (result < 0) {
+			throw new IOException("No byte at position " + position);
+		}
+		return (byte) result;
+	}
+
+	@Override
+	public WindowReader getWindowReader() {
+		return reader;
+	}
+
+	@Override
+	public String getFileName() {
+		return fileName;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public String getExtension() {
+		return extension;
+	}
+
+	@Override
+	public InputStream getSourceInputStream() throws IOException {
+		return new ReaderInputStream(reader, false);
+	}
+
+	@Override
+	public RequestMetaData getRequestMetaData() {
+		return requestMetaData;
+	}
+
+	@Override
+	public RequestIdentifier getIdentifier() {
+		return identifier;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+	}
+
+	private class WindowedReader extends AbstractReader {
+
+		private final FileChannel channel;
+		private final long length;
+		private long bytesRead;
+
+		private WindowedReader(FileChannel channel) throws IOException {
+			this(channel, channel.size());
+		}
+
+		private WindowedReader(FileChannel channel, long length) {
+			super(WINDOW_SIZE, new TopAndTailFixedLengthCache(length, TOP_TAIL_CACHE_CAPACITY));
+			this.channel = channel;
+			this.length = length;
+		}
+
+		@Override
+		public long length() {
+			return length;
+		}
+
+		private void clearCache() throws IOException {
+			cache.clear();
+		}
+
+		@Override
+		protected Window createWindow(long windowStart) throws IOException {
+			if (windowStart < 0 || windowStart >= length) {
+				return null;
+			}
+			int windowLength = (int) Math.min(windowSize, length - windowStart);
+			long limit = scanLimit;
+			if (limit >= 0 && windowStart >= limit && windowStart + windowLength <= length - limit) {
+				return null;
+			}
+			byte[] bytes = new byte[windowLength];
+			if (!copyFromContext(bytes, windowStart)) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining()) {
+					if (channel.read(buffer, windowStart + buffer.position()) < 0) {
+						throw new EOFException("Unexpected end of " + fileName + " at " + (windowStart + buffer.position()));
+					}
+				}
+			}
+			bytesRead += windowLength;
+			return new HardWindow(bytes, windowStart, windowLength);
+		}
+
+		// copies the window from the header or trailer already read for the other tools, if it lies within one of them
+		private boolean copyFromContext(byte[] bytes, long windowStart) throws IOException {
+			if (fileContext == null || fileContext.getSize() != length) {
+				return false;
+			}
+			ByteBuffer header = fileContext.getHeader();
+			if (windowStart + bytes.length <= header.remaining()) {
+				header.position((int) windowStart);
+				header.get(bytes);
+				return true;
+			}
+			ByteBuffer trailer = fileContext.getTrailer();
+			long trailerStart = length - trailer.remaining();
+			if (windowStart >= trailerStart) {
+				trailer.position((int) (windowStart - trailerStart));
+				trailer.get(bytes);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+
+}
@@ -34,34 +34,58 @@
  */
 package edu.harvard.hul.ois.fits.tools.droid;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.apache.commons.compress.archivers.zip.UnsupportedZipFeatureException;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.nationalarchives.droid.command.action.CommandExecutionException;
 import uk.gov.nationalarchives.droid.container.ContainerSignatureDefinitions;
 import uk.gov.nationalarchives.droid.core.BinarySignatureIdentifier;
-import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
 import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
 import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
-import uk.gov.nationalarchives.droid.core.interfaces.resource.ZipEntryIdentificationRequest;
 import uk.gov.nationalarchives.droid.profile.referencedata.Format;
 
 /**
  * Identifier for files held in a ZIP archive.
+ * <p>
+ * The entries are listed from the central directory of the archive, which also
+ * gives their sizes, and each one is read by random access to the archive, so
+ * entries can be identified in parallel on an executor and ZIP64 archives are
+ * handled. Entries up to a size limit are read into memory rather than spilled
+ * to temporary files.
+ * <p>
+ * Archives beyond the {@link ContainerLimits} have only a sample of their entries
+ * identified, and the aggregated data is marked as sampled.
  * 
  * @author rbrennan
  */
 public class ZipArchiveContentIdentifier extends ArchiveContentIdentifier {
 
     private static final Logger logger = LoggerFactory.getLogger(ZipArchiveContentIdentifier.class);
+
+    /** Default size up to which entries are read into memory. */
+    public static final long DEFAULT_IN_MEMORY_LIMIT = 8 * 1024 * 1024;
+
+    private ExecutorService executor;
+    private int maxPendingEntries = 1;
+    private long inMemoryLimit = DEFAULT_IN_MEMORY_LIMIT;
+    private ContainerLimits limits = ContainerLimits.NONE;
 	 
     /**
      * 
@@ -80,77 +104,223 @@ public class ZipArchiveContentIdentifier extends ArchiveContentIdentifier {
             super(binarySignatureIdentifier, containerSignatureDefinitions,
         path, slash, slash1, false, puidFormatMap);
     }
+
+    /**
+     * Identifies entries on an executor rather than on the calling thread.
+     *
+     * @param executor the executor, or null to identify entries on the calling thread
+     * @param maxPendingEntries the most entries of one archive waiting for or being identified at once
+     */
+    public void setExecutor(ExecutorService executor, int maxPendingEntries) {
+        this.executor = executor;
+        this.maxPendingEntries = Math.max(1, maxPendingEntries);
+    }
+
+    /**
+     * @param inMemoryLimit the size in bytes up to which entries are read into memory
+     */
+    public void setInMemoryLimit(long inMemoryLimit) {
+        this.inMemoryLimit = inMemoryLimit;
+    }
+
+    /**
+     * @param limits the limits beyond which only a sample of the entries is identified
+     */
+    public void setLimits(ContainerLimits limits) {
+        this.limits = limits;
+    }
     
     /**
      * @param uri The URI of the file to identify
-     * @param request The Identification Request
+     * @param file The ZIP file
      * @return The aggregated data of the examined ZIP file
      * @throws CommandExecutionException When an exception happens during execution
      * @throws CommandExecutionException When an exception happens during archive file access
      */
-    public ContainerAggregator identify(final URI uri, final IdentificationRequest  request)
+    public ContainerAggregator identify(final URI uri, final File file)
         throws CommandExecutionException {
 
-        final String newPath = makeContainerURI("zip", request.getFileName());
+        final long start = System.currentTimeMillis();
+        final String newPath = makeContainerURI("zip", file.getName());
         setSlash1("");
-        InputStream zipIn = null;
         ContainerAggregator aggregator = new ContainerAggregator();
+        // the format counts of the entries kept when the time budget runs out, and of the others
+        ContainerAggregator budgetSample = new ContainerAggregator();
+        ContainerAggregator rest = new ContainerAggregator();
+        boolean outOfTime = false;
+        ZipFile zipFile = null;
+        List<Future<?>> pending = new ArrayList<>();
+        List<Future<?>> pendingRest = new ArrayList<>();
+        // each submitted entry holds a permit until its task has finished
+        final int maxPending = maxPendingEntries;
+        final Semaphore permits = new Semaphore(maxPending);
+        // checked by the tasks between entries and reads; the rest stop when the time budget runs out
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final AtomicBoolean restStopped = new AtomicBoolean(false);
         try {
-            zipIn = request.getSourceInputStream();
-            final ZipArchiveInputStream in = new ZipArchiveInputStream(zipIn);
-            try {
-                ZipArchiveEntry entry = null;
-                Integer compressionMethod = null;
-                while ((entry = (ZipArchiveEntry) in.getNextZipEntry()) != null) {
-                    final String name = entry.getName();
-                    if (!entry.isDirectory()) {
-                        final RequestMetaData metaData = new RequestMetaData(entry.getSize(), 2L, name);
-                        final RequestIdentifier identifier = new RequestIdentifier(uri);
-                        final ZipEntryIdentificationRequest zipRequest =
-                            new ZipEntryIdentificationRequest(metaData, identifier, getTmpDir().toPath(), false);
-                        
-                        if (compressionMethod != null && !compressionMethod.equals(entry.getMethod())) {
-                        	logger.warn("Different compression method: " + compressionMethod + ", entry method: " + entry.getMethod());
-                        }
+            // the local file headers are only read when an entry is opened
+            zipFile = new ZipFile(file, "UTF8", true, true);
+            List<ZipArchiveEntry> files = new ArrayList<>();
+            long uncompressedSize = 0;
+            Integer compressionMethod = null;
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                final ZipArchiveEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (!zipFile.canReadEntryData(entry)) {
+                    // For now this indicates that we're attempting (and failing) to read from an encrypted ZIP file.
+                    aggregator.setEncrypted(true);
+                    break;
+                }
+                if (compressionMethod != null && !compressionMethod.equals(entry.getMethod())) {
+                    logger.warn("Different compression method: " + compressionMethod + ", entry method: " + entry.getMethod());
+                }
+                compressionMethod = entry.getMethod();
+                logger.debug("entry.getCompressedSize(): " + entry.getCompressedSize() + " -- entry.getSize(): " + entry.getSize());
+                if (entry.getCompressedSize() > 0) {
+                    aggregator.incrementCompressedSize(entry.getCompressedSize());
+                }
+                if (entry.getSize() > 0) {
+                    aggregator.incrementOriginalSize(entry.getSize());
+                    uncompressedSize += entry.getSize();
+                }
+                files.add(entry);
+            }
+            aggregator.setDirectoryEntriesCount(files.size());
 
-                        compressionMethod = entry.getMethod(); // throws UnsupportedZipFeatureException
-                        expandContainer(zipRequest, in, newPath, aggregator);  // zipRequest.size() is uncompressed
-                        logger.debug("zipRequest size(): " + zipRequest.size() + " -- entry.getCompressedSize(): " + entry.getCompressedSize() + " -- entry.getSize(): " + entry.getSize());
-                        if (entry.getCompressedSize() > 0) {
-                        	aggregator.incrementCompressedSize(entry.getCompressedSize());
-                        }
-                        // in some situations the value returned is -1
-                        if (entry.getSize() > 0) {
-                        	aggregator.incrementOriginalSize(entry.getSize());
-                        } else if (zipRequest.size() > 0) {
-                        	aggregator.incrementOriginalSize(zipRequest.size());
-                        }
+            // every stride-th entry is identified, and the first pass covers the entries kept if time runs out
+            int stride = limits.getStride(files.size(), uncompressedSize);
+            int budgetStride = limits.getBudgetStride(files.size(), stride);
+            aggregator.setSampled(stride > 1);
+            for (int i = 0; i < files.size(); i += budgetStride) {
+                pending.add(submit(zipFile, files.get(i), uri, newPath, budgetSample, permits, stopped));
+            }
+            int examined = pending.size();
+            if (budgetStride > stride) {
+                for (int i = 0; i < files.size(); i += stride) {
+                    if (i % budgetStride == 0) {
+                        continue;
                     }
+                    if (System.currentTimeMillis() - start > limits.getTimeBudgetMillis()) {
+                        outOfTime = true;
+                        restStopped.set(true);
+                        break;
+                    }
+                    pendingRest.add(submit(zipFile, files.get(i), uri, newPath, rest, permits, restStopped));
+                }
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+            for (Future<?> future : pendingRest) {
+                if (!outOfTime && System.currentTimeMillis() - start > limits.getTimeBudgetMillis()) {
+                    outOfTime = true;
+                    restStopped.set(true);
                 }
-            } catch (UnsupportedZipFeatureException e) {
-            	// For now this indicates that we're attempting (and failing) to read from an encrypted ZIP file.
-            	aggregator.setEncrypted(true);
-            } finally {
-                if (in != null) {
-                    in.close();
+                if (outOfTime) {
+                    break;
                 }
-                // shows collection of files within ZIP file
-                logger.debug("--------------");
-                logger.debug("{}", aggregator);
-                logger.debug("--------------");
+                future.get();
+            }
+            aggregator.addFormats(budgetSample);
+            if (outOfTime) {
+                aggregator.setSampled(true);
+            }
+            else {
+                aggregator.addFormats(rest);
+                examined += pendingRest.size();
+            }
+            aggregator.setExaminedEntriesCount(examined);
+            if (aggregator.isSampled()) {
+                logger.info("Identified a sample of " + aggregator.getExaminedEntriesCount() + " of the "
+                    + files.size() + " entries in " + newPath);
             }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CommandExecutionException) {
+                throw (CommandExecutionException) e.getCause();
+            }
+            throw new CommandExecutionException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommandExecutionException("Interrupted while identifying the contents of " + newPath, e);
         } catch (IOException ioe) {
         	logger.warn(ioe + " (" + newPath + ")"); // continue after corrupt archive 
         } finally {
-            if (zipIn != null) {
+            // the entries must be finished with before the archive is closed: the tasks still
+            // queued or running stop at their next check, and each returns its permit when done
+            stopped.set(true);
+            restStopped.set(true);
+            permits.acquireUninterruptibly(maxPending);
+            if (zipFile != null) {
                 try {
-                    zipIn.close();
+                    zipFile.close();
                 } catch (IOException ioe) {
                     throw new CommandExecutionException(ioe.getMessage(), ioe);
                 }
             }
+            // shows collection of files within ZIP file
+            logger.debug("--------------");
+            logger.debug("{}", aggregator);
+            logger.debug("--------------");
         }
         return aggregator;
     }
-}
 
+    // identifies the entry on the executor, or on this thread if there is none
+    private Future<?> submit(final ZipFile zipFile, final ZipArchiveEntry entry, final URI uri, final String newPath,
+            final ContainerAggregator aggregator, final Semaphore permits, final AtomicBoolean stopped)
+            throws InterruptedException {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!stopped.get()) {
+                        identifyEntry(zipFile, entry, uri, newPath, aggregator, stopped);
+                    }
+                } finally {
+                    permits.release();
+                }
+            }
+        };
+        permits.acquire();
+        if (executor != null) {
+            try {
+                return executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                // fall through and run it here
+            }
+        }
+        FutureTask<?> future = new FutureTask<Object>(task, null);
+        future.run();
+        return future;
+    }
+
+    private void identifyEntry(ZipFile zipFile, ZipArchiveEntry entry, URI uri, String newPath, ContainerAggregator aggregator,
+            AtomicBoolean stopped) {
+        final RequestMetaData metaData = new RequestMetaData(entry.getSize(), 2L, entry.getName());
+        final RequestIdentifier identifier = new RequestIdentifier(uri);
+        final ZipFileEntryIdentificationRequest request =
+            new ZipFileEntryIdentificationRequest(metaData, identifier, zipFile, inMemoryLimit, stopped);
+        try {
+            request.open(entry);
+            if (!stopped.get()) {
+                identifyOpenRequest(request, newPath, aggregator);
+            }
+        } catch (IOException | CommandExecutionException e) {
+            if (stopped.get()) {
+                logger.debug("Stopped identifying " + newPath + entry.getName());
+            }
+            else {
+                logger.warn(e + " " + newPath + entry.getName());
+            }
+        } finally {
+            try {
+                request.close();
+            } catch (IOException ioe) {
+                logger.warn("Failed to close Container request:" + ioe);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+
+import net.byteseek.io.reader.ByteArrayReader;
+import net.byteseek.io.reader.InputStreamReader;
+import net.byteseek.io.reader.WindowReader;
+import net.byteseek.io.reader.cache.TopAndTailFixedLengthCache;
+import net.byteseek.io.reader.cache.TopAndTailStreamCache;
+import uk.gov.nationalarchives.droid.core.interfaces.IdentificationRequest;
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.ResourceUtils;
+
+/**
+ * A DROID identification request for an entry of a ZIP file opened for random
+ * access, so that entries can be identified in any order and on several threads
+ * at once without copying them to temporary files.
+ * <p>
+ * Entries up to a size limit are read into memory. Larger entries are read as a
+ * stream that keeps only the windows at the start and end of the entry, which is
+ * where DROID's signatures are found; the stream is opened again from the ZIP file
+ * for anything that needs the whole entry, such as a container identifier.
+ */
+public class ZipFileEntryIdentificationRequest implements IdentificationRequest<ZipArchiveEntry> {
+
+	// the same top and tail capacity as DROID's ZipEntryIdentificationRequest
+	private static final int TOP_TAIL_CAPACITY = 2 * 1024 * 1024;
+
+	private final RequestMetaData requestMetaData;
+	private final RequestIdentifier identifier;
+	private final String fileName;
+	private final String extension;
+	private final ZipFile zipFile;
+	private final long inMemoryLimit;
+	private final AtomicBoolean stopped;
+	private ZipArchiveEntry entry;
+	private byte[] bytes;
+	private WindowReader reader;
+
+	/**
+	 * @param metadata metadata of the entry
+	 * @param identifier identifier of the request
+	 * @param zipFile the ZIP file holding the entry, which must stay open until the request is closed
+	 * @param inMemoryLimit the size up to which an entry is read into memory
+	 */
+	public ZipFileEntryIdentificationRequest(RequestMetaData metadata, RequestIdentifier identifier, ZipFile zipFile, long inMemoryLimit) {
+		this(metadata, identifier, zipFile, inMemoryLimit, null);
+	}
+
+	/**
+	 * @param metadata metadata of the entry
+	 * @param identifier identifier of the request
+	 * @param zipFile the ZIP file holding the entry, which must stay open until the request is closed
+	 * @param inMemoryLimit the size up to which an entry is read into memory
+	 * @param stopped when set, further reads of the entry fail with an IOException; may be null
+	 */
+	public ZipFileEntryIdentificationRequest(RequestMetaData metadata, RequestIdentifier identifier, ZipFile zipFile, long inMemoryLimit,
+			AtomicBoolean stopped) {
+		this.requestMetaData = metadata;
+		this.identifier = identifier;
+		this.fileName = metadata.getName();
+		this.extension = ResourceUtils.getExtension(fileName);
+		this.zipFile = zipFile;
+		this.inMemoryLimit = inMemoryLimit;
+		this.stopped = stopped;
+	}
+
+	@Override
+	public void open(ZipArchiveEntry zipEntry) throws IOException {
+		this.entry = zipEntry;
+		long size = zipEntry.getSize();
+		if (size > 0 && size <= inMemoryLimit) {
+			bytes = new byte[(int) size];
+			try (InputStream in = openEntry()) {
+				if (IOUtils.readFully(in, bytes) < bytes.length) {
+					throw new IOException("The zip entry " + zipEntry.getName() + " is shorter than its stated size " + size);
+				}
+			}
+			reader = new ByteArrayReader(bytes);
+		}
+		else if (size > 0) {
+			reader = new InputStreamReader(openEntry(), new TopAndTailFixedLengthCache(size, TOP_TAIL_CAPACITY), true);
+		}
+		else {
+			reader = new InputStreamReader(openEntry(), new TopAndTailStreamCache(TOP_TAIL_CAPACITY), true);
+		}
+	}
+
+	// Reading the entry's local header to find its data is not thread safe when the
+	// ZipFile skipped the local headers on opening, but reading the data itself is.
+	private InputStream openEntry() throws IOException {
+		checkStopped();
+		InputStream in;
+		synchronized (zipFile) {
+			in = zipFile.getInputStream(entry);
+		}
+		return stopped == null ? in : new StoppableInputStream(in);
+	}
+
+	private void checkStopped() throws IOException {
+		if (stopped != null && stopped.get()) {
+			throw new IOException("Reading of the zip entry " + entry.getName() + " was stopped");
+		}
+	}
+
+	@Override
+	public byte getByte(long position) throws IOException {
+		int result = reader.readByte(position);
+		if (result < 0) {
+			throw new IOException("No byte at position " + position);
+		}
+		return (byte) result;
+	}
+
+	@Override
+	public WindowReader getWindowReader() {
+		return reader;
+	}
+
+	@Override
+	public String getFileName() {
+		return fileName;
+	}
+
+	@Override
+	public long size() {
+		if (entry.getSize() >= 0) {
+			return entry.getSize();
+		}
+		try {
+			return reader.length();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public String getExtension() {
+		return extension;
+	}
+
+	@Override
+	public InputStream getSourceInputStream() throws IOException {
+		if (bytes != null) {
+			return new ByteArrayInputStream(bytes);
+		}
+		return openEntry();
+	}
+
+	@Override
+	public RequestMetaData getRequestMetaData() {
+		return requestMetaData;
+	}
+
+	@Override
+	public RequestIdentifier getIdentifier() {
+		return identifier;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+		bytes = null;
+	}
+
+	// checks the stop flag before each read, so that a large entry is not read to its end once stopped
+	private final class StoppableInputStream extends FilterInputStream {
+
+		StoppableInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkStopped();
+			return super.read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			checkStopped();
+			return super.read(b, off, len);
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			checkStopped();
+			return super.skip(n);
+		}
+	}
+
+}
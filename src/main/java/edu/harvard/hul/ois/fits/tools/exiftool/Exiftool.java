@@ -29,6 +29,7 @@ import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolInfo;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.ToolOutputMapper;
 import edu.harvard.hul.ois.fits.tools.utils.CommandLine;
 import edu.harvard.hul.ois.fits.tools.utils.XsltTransformMap;
 import org.slf4j.Logger;
@@ -44,6 +45,8 @@ public class Exiftool extends ToolBase {
 	private final static String TOOL_NAME = "Exiftool";
 	private boolean enabled = true;
     private final Fits fits;
+    // converts the raw output in place of the generic XSLT when enabled in fits.xml
+    private ToolOutputMapper genericMapper = null;
 
     private final static String exiftoolFitsConfig = Fits.FITS_XML_DIR+"exiftool"+File.separator;
     private final static String genericTransform = "exiftool_generic_to_fits.xslt";
@@ -73,6 +76,9 @@ public class Exiftool extends ToolBase {
 		versionOutput = CommandLine.exec(infoCommand,null);
 		info.setVersion(versionOutput.trim());
 		transformMap = XsltTransformMap.getMap(exiftoolFitsConfig+"exiftool_xslt_map.xml");
+		if (isNativeMapperEnabled(fits)) {
+			genericMapper = new ExiftoolGenericMapper();
+		}
 	}
 
 	public ToolOutput extractInfo(File file) throws FitsToolException {
@@ -125,6 +131,9 @@ public class Exiftool extends ToolBase {
 		if(xsltTransform != null) {
 			fitsXml = transform(exiftoolFitsConfig+xsltTransform,rawOut);
 		}
+		else if(genericMapper != null) {
+			fitsXml = genericMapper.map(rawOut);
+		}
 		else {
 			//use generic transform
 			fitsXml = transform(exiftoolFitsConfig+genericTransform,rawOut);
@@ -0,0 +1,301 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.exiftool;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.tools.ToolOutputMapper;
+
+/**
+ * Java implementation of exiftool_generic_to_fits.xslt (that is, of exiftool_common_to_fits.xslt),
+ * used for files whose format has no specific stylesheet in exiftool_xslt_map.xml.
+ */
+public class ExiftoolGenericMapper implements ToolOutputMapper {
+
+	private static final Namespace ns = Namespace.getNamespace(Fits.XML_NAMESPACE);
+
+	private static final Map<String,String> mimetypes = new HashMap<String,String>();
+	private static final Map<String,String> formats = new HashMap<String,String>();
+	private static final List<String> wordMimetypes = Arrays.asList(
+			"application/msword",
+			"application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+			"application/vnd.ms-word.document.macroEnabled",
+			"application/vnd.ms-word.document.macroEnabled.12");
+
+	static {
+		mimetypes.put("application/rdf+xml", "text/xml");
+		mimetypes.put("application/xml", "text/xml");
+		mimetypes.put("audio/x-wav", "audio/x-wave");
+		mimetypes.put("audio/aiff", "audio/x-aiff");
+		mimetypes.put("application/vnd.adobe.photoshop", "image/vnd.adobe.photoshop");
+		mimetypes.put("audio/x-ogg", "audio/ogg");
+		mimetypes.put("audio/flac", "audio/x-flac");
+		mimetypes.put("text/rtf", "application/rtf");
+		mimetypes.put("application/vnd.ms-word.document.macroEnabled", "application/vnd.ms-word.document.macroEnabled.12");
+		mimetypes.put("application/photoshop", "image/vnd.adobe.photoshop");
+		mimetypes.put("application/vnd.adobe.illustrator", "application/postscript");
+		mimetypes.put("application/vnd.rn-realmedia-vbr", "application/vnd.rn-realmedia");
+		mimetypes.put("video/x-pn-realvideo", "application/vnd.rn-realmedia");
+		mimetypes.put("video/x-m4v", "video/mp4");
+		mimetypes.put("", "application/octet-stream");
+		mimetypes.put("application/unknown", "application/octet-stream");
+
+		formats.put("JPEG JFIF", "JPEG File Interchange Format");
+		formats.put("PSD EXIF", "Adobe Photoshop");
+		formats.put("PSD", "Adobe Photoshop");
+		formats.put("PNG", "Portable Network Graphics");
+		formats.put("GIF", "Graphics Interchange Format");
+		formats.put("TIFF", "Tagged Image File Format");
+		formats.put("AVI", "Audio/Video Interleaved Format");
+		formats.put("BMP", "Windows Bitmap");
+		formats.put("HTML", "Hypertext Markup Language");
+		formats.put("XML", "Extensible Markup Language");
+		formats.put("WAV", "Waveform Audio");
+		formats.put("RM", "RealMedia");
+		formats.put("DNG", "Digital Negative (DNG)");
+		formats.put("DNG EXIF", "Digital Negative (DNG)");
+		formats.put("PDF", "Portable Document Format");
+		formats.put("DOC", "Microsoft Word Binary File Format");
+		formats.put("DOCX", "Office Open XML Document");
+		formats.put("DOCM", "Office Open XML Document (Macros Enabled)");
+		formats.put("XLSX", "Office Open XML Workbook");
+		formats.put("PPTX", "Office Open XML Presentation");
+		formats.put("RTF", "Rich Text Format (RTF)");
+		formats.put("WP", "Word Perfect");
+		formats.put("WPD", "Word Perfect");
+		formats.put("GZIP", "GZIP Format");
+		formats.put("AIFF", "Audio Interchange File Format");
+		formats.put("OGG", "Ogg Vorbis Codec Compressed Multimedia File");
+		formats.put("ODP", "OpenDocument Presentation");
+		formats.put("ODT", "OpenDocument Text");
+		formats.put("ODS", "OpenDocument Spreadsheet");
+		formats.put("ODF", "OpenDocument Formula");
+		formats.put("ODG", "OpenDocument Graphics");
+		formats.put("PPT", "Microsoft Powerpoint Presentation");
+		formats.put("M4A", "MPEG-4 Audio");
+		formats.put("MP3", "MPEG 1/2 Audio Layer 3");
+		formats.put("FLAC", "Free Lossless Audio Codec");
+		formats.put("MP4", "MPEG-4");
+		formats.put("M4V", "MPEG-4");
+		formats.put("MOV", "Quicktime");
+		formats.put("SVG", "Scalable Vector Graphics (SVG)");
+		formats.put("ZIP", "ZIP Format");
+		formats.put("FLV", "Flash Video (FLV)");
+		formats.put("PS", "Postscript");
+		formats.put("XLS", "Microsoft Excel");
+		formats.put("XMP", "Extensible Markup Language");
+		formats.put("XMP EXIF", "Extensible Markup Language");
+		formats.put("AI", "Adobe Illustrator");
+		formats.put("WMV", "Windows Media Video");
+		formats.put("RMVB", "RealMedia");
+		formats.put("MXF", "Material Exchange Format (MXF)");
+		formats.put("CSV", "Comma-Separated Values (CSV)");
+		formats.put("TXT", "Plain text");
+		formats.put("", "Unknown Binary");
+	}
+
+	public Document map(Document rawOutput) {
+		Element fits = new Element("fits", ns);
+		Element exiftool = rawOutput.getRootElement();
+		if(!exiftool.getName().equals("exiftool")) {
+			// none of the stylesheet's paths would select anything
+			exiftool = new Element("exiftool");
+		}
+		String mime = first(exiftool, "MIMEType");
+
+		Element identity = new Element("identity", ns);
+		identity.setAttribute("mimetype", mapMimetype(exiftool, mime));
+		identity.setAttribute("format", mapFormat(exiftool));
+		String version = null;
+		if(exiftool.getChild("JFIFVersion") != null) {
+			version = first(exiftool, "JFIFVersion");
+		}
+		else if(exiftool.getChild("GIFVersion") != null) {
+			version = first(exiftool, "GIFVersion");
+		}
+		else if(exiftool.getChild("VorbisVersion") != null) {
+			version = first(exiftool, "VorbisVersion");
+		}
+		else if(exiftool.getChild("Version") != null) {
+			version = first(exiftool, "Version");
+		}
+		else if(exiftool.getChild("ZipVersion") != null) {
+			// reported as e.g. 20 rather than 2.0, so not used
+		}
+		else if(exiftool.getChild("DNGVersion") != null) {
+			version = first(exiftool, "DNGVersion");
+		}
+		if(version != null) {
+			identity.addContent(textElement("version", version));
+		}
+		Element identification = new Element("identification", ns);
+		identification.addContent(identity);
+		fits.addContent(identification);
+
+		Element fileinfo = new Element("fileinfo", ns);
+		if(exiftool.getChild("ModifyDate") != null) {
+			fileinfo.addContent(textElement("lastmodified", first(exiftool, "ModifyDate")));
+		}
+		String created = "";
+		if(exiftool.getChild("DateTime") != null) {
+			created = first(exiftool, "DateTime");
+		}
+		else if(exiftool.getChild("DateTimeDigitized") != null) {
+			created = first(exiftool, "DateTimeDigitized");
+		}
+		else if(exiftool.getChild("CreateDate") != null) {
+			created = first(exiftool, "CreateDate");
+		}
+		fileinfo.addContent(textElement("created", created));
+		fileinfo.addContent(textElement("creatingApplicationName", mapCreatingApplicationName(exiftool, mime)));
+		String appVersion = "";
+		if(wordMimetypes.contains(mime) && exiftool.getChild("AppVersion") != null) {
+			appVersion = first(exiftool, "AppVersion");
+		}
+		fileinfo.addContent(textElement("creatingApplicationVersion", appVersion));
+		boolean isPdf = mime.equals("application/pdf");
+		fileinfo.addContent(textElement("inhibitorType", isPdf ? first(exiftool, "Encryption") : ""));
+		fileinfo.addContent(textElement("copyrightNote", isPdf ? first(exiftool, "Rights") : ""));
+		fits.addContent(fileinfo);
+
+		return new Document(fits);
+	}
+
+	private String mapMimetype(Element exiftool, String mime) {
+		if(mime.equals("image/x-raw") && anyEquals(exiftool, "FileType", "DNG")) {
+			return "image/tiff";
+		}
+		String mapped = mimetypes.get(mime);
+		return mapped != null ? mapped : mime;
+	}
+
+	private String mapFormat(Element exiftool) {
+		String fileType = first(exiftool, "FileType");
+		boolean isJp2 = anyEquals(exiftool, "FileType", "JP2");
+		String format;
+		if(first(exiftool, "ExifVersion").length() > 0 && !isJp2) {
+			format = fileType + " EXIF";
+		}
+		else if(first(exiftool, "JFIFVersion").length() > 0 && !isJp2) {
+			format = fileType + " JFIF";
+		}
+		else if(first(exiftool, "ExifByteOrder").length() > 0 && !(isJp2 || anyEquals(exiftool, "FileType", "TIFF"))) {
+			format = fileType + " EXIF";
+		}
+		else if(all(exiftool, "GTS_PDFXVersion").contains("PDF/X")) {
+			format = "PDF/X";
+		}
+		else if(all(exiftool, "SchemasSchema").contains("PDF/A")) {
+			format = "PDF/A";
+		}
+		else {
+			format = fileType;
+		}
+
+		if(format.equals("JP2")) {
+			return first(exiftool, "CompatibleBrands").contains("jp2") ? "JPEG 2000 JP2" : "JPEG 2000";
+		}
+		if(format.equals("JPX")) {
+			String brands = first(exiftool, "CompatibleBrands");
+			if(brands.contains("jpx")) {
+				return "JPEG 2000 JPX";
+			}
+			return brands.contains("jp2") ? "JPEG 2000 JP2" : "JPEG 2000";
+		}
+		String mapped = formats.get(format);
+		return mapped != null ? mapped : format;
+	}
+
+	@SuppressWarnings("unchecked")
+	private String mapCreatingApplicationName(Element exiftool, String mime) {
+		if(mime.equals("image/tiff")) {
+			return first(exiftool, "Software");
+		}
+		if(mime.equals("image/jpeg")) {
+			if(exiftool.getChild("Model") != null) {
+				return first(exiftool, "Model");
+			}
+			return first(exiftool, "Comment");
+		}
+		if(mime.equals("image/jp2")) {
+			return first(exiftool, "Model");
+		}
+		if(mime.equals("application/pdf")) {
+			if(exiftool.getChild("Producer") != null && exiftool.getChild("CreatorTool") != null) {
+				return first(exiftool, "Producer") + "/" + first(exiftool, "CreatorTool");
+			}
+			return "";
+		}
+		if(mime.equals("application/msword")) {
+			// every Software value mentioning Word, run together
+			StringBuilder sb = new StringBuilder();
+			for(Element software : (List<Element>)exiftool.getChildren("Software")) {
+				if(software.getValue().contains("Word")) {
+					sb.append(software.getValue());
+				}
+			}
+			return sb.toString();
+		}
+		if(mime.equals("application/vnd.oasis.opendocument.text")) {
+			return all(exiftool, "Generator");
+		}
+		return "";
+	}
+
+	// value of the first child with the given name, or an empty string if there is none
+	private static String first(Element parent, String name) {
+		Element child = parent.getChild(name);
+		return child == null ? "" : child.getValue();
+	}
+
+	// values of all children with the given name separated by spaces, as xsl:value-of outputs them
+	@SuppressWarnings("unchecked")
+	private static String all(Element parent, String name) {
+		StringBuilder sb = new StringBuilder();
+		boolean separate = false;
+		for(Element child : (List<Element>)parent.getChildren(name)) {
+			if(separate) {
+				sb.append(' ');
+			}
+			sb.append(child.getValue());
+			separate = true;
+		}
+		return sb.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static boolean anyEquals(Element parent, String name, String value) {
+		for(Element child : (List<Element>)parent.getChildren(name)) {
+			if(child.getValue().equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// an empty value leaves the element empty, as a zero length text node does in XSLT
+	private static Element textElement(String name, String value) {
+		Element element = new Element(name, ns);
+		if(value.length() > 0) {
+			element.setText(value);
+		}
+		return element;
+	}
+
+}
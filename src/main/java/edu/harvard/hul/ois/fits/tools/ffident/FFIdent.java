@@ -23,9 +23,11 @@ import org.jdom.Document;
 
 import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+import edu.harvard.hul.ois.fits.tools.FileContext;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolInfo;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.ToolOutputMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +44,8 @@ public class FFIdent extends ToolBase {
 	private final static String xslt =Fits.FITS_XML_DIR+"/ffident/ffident_to_fits.xslt";
 	private boolean enabled = true;
     private Fits fits;
+    // converts the raw output in place of the XSLT when enabled in fits.xml
+    private ToolOutputMapper mapper = null;
 
 	private static final Logger logger = LoggerFactory.getLogger(FFIdent.class);
 
@@ -57,12 +61,16 @@ public class FFIdent extends ToolBase {
 		} catch (FileNotFoundException e) {
 			throw new FitsToolException(Fits.FITS_TOOLS_DIR+"ffident/formats.txt could not be found",e);
 		}
+		if (isNativeMapperEnabled(fits)) {
+			mapper = new FFIdentMapper();
+		}
 	}
 
 	public ToolOutput extractInfo(File file) throws FitsToolException {
 	    logger.debug ("FFIdent.extractInfo starting on " + file.getName());
 		long startTime = System.currentTimeMillis();
-		FormatDescription desc = identifier.identify(file);
+		FileContext context = getFileContext(file);
+		FormatDescription desc = context != null ? identifier.identify(context) : identifier.identify(file);
 		//FileIdentity identity = null;
 		Document rawOut = null;
 		Document fitsXml = null;
@@ -71,7 +79,12 @@ public class FFIdent extends ToolBase {
 			//desc.getMimeTypes();
 			//identity = new FileIdentity(desc.getMimeType(),desc.getShortName(),null);
 			rawOut = createXml(desc);
-			fitsXml = transform(xslt,rawOut);
+			if (mapper != null) {
+				fitsXml = mapper.map(rawOut);
+			}
+			else {
+				fitsXml = transform(xslt,rawOut);
+			}
 		//}
 		output = new ToolOutput(this,fitsXml,rawOut, fits);
 		duration = System.currentTimeMillis()-startTime;
@@ -0,0 +1,79 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.ffident;
+
+import java.util.List;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.tools.ToolOutputMapper;
+
+/**
+ * Java implementation of ffident_to_fits.xslt.
+ */
+public class FFIdentMapper implements ToolOutputMapper {
+
+	private static final Namespace ns = Namespace.getNamespace(Fits.XML_NAMESPACE);
+
+	@SuppressWarnings("unchecked")
+	public Document map(Document rawOutput) {
+		Element fits = new Element("fits", ns);
+		Element identification = new Element("identification", ns);
+		fits.addContent(identification);
+
+		Element root = rawOutput.getRootElement();
+		if(root.getName().equals("ffidentOutput")) {
+			String format = root.getChildText("longName");
+			if(format == null) {
+				format = "";
+			}
+			// the stylesheet compares and outputs every mimetype element
+			StringBuilder mimeValue = new StringBuilder();
+			boolean isRtf = false;
+			boolean separate = false;
+			Element mimetypes = root.getChild("mimetypes");
+			if(mimetypes != null) {
+				for(Element mimetype : (List<Element>)mimetypes.getChildren("mimetype")) {
+					String mime = mimetype.getValue();
+					if(mime.equals("text/rtf")) {
+						isRtf = true;
+					}
+					if(separate) {
+						mimeValue.append(' ');
+					}
+					mimeValue.append(mime);
+					separate = true;
+				}
+			}
+
+			Element identity = new Element("identity", ns);
+			if(format.equals("Rich Text Format")) {
+				identity.setAttribute("format", "Rich Text Format (RTF)");
+			}
+			else if(format.equals("Microsoft Word Document")) {
+				identity.setAttribute("format", "Microsoft Word Binary File Format");
+			}
+			else if(format.equals("Microsoft Excel Format")) {
+				identity.setAttribute("format", "Microsoft Excel");
+			}
+			else {
+				identity.setAttribute("format", format);
+			}
+			identity.setAttribute("mimetype", isRtf ? "application/rtf" : mimeValue.toString());
+			identification.addContent(identity);
+		}
+		return new Document(fits);
+	}
+
+}
@@ -16,12 +16,13 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import edu.harvard.hul.ois.fits.tools.FileContext;
+
 /**
  * helper class that tries to identify the file format for a given file
  * or byte array representing the first bytes of a file.
@@ -30,6 +31,7 @@ import org.slf4j.LoggerFactory;
  */
 public class FormatIdentification {
 	private static List<FormatDescription> descriptions;
+	private static SignatureTrie signatures;
 	private static int minBufferSize;
 	private static final Logger logger = LoggerFactory.getLogger(FormatIdentification.class);
 
@@ -41,14 +43,8 @@ public class FormatIdentification {
 		if (data == null || data.length < 1) {
 			return null;
 		}
-		Iterator<FormatDescription> iter = descriptions.iterator();
-		while (iter.hasNext()) {
-			FormatDescription desc = (FormatDescription) iter.next();
-			if (desc.matches(data)) {
-				return desc;
-			}
-		}
-		return null;
+		// same result as trying each description in order with desc.matches(data)
+		return signatures.identify(data);
 	}
 
 	public FormatDescription identify(File file) {
@@ -82,6 +78,26 @@ public class FormatIdentification {
 		return identify(data);
 	}
 
+	/**
+	 * Identifies the file from the header bytes held by the context, reading
+	 * the file only if the header is too short to hold the bytes needed.
+	 */
+	public FormatDescription identify(FileContext context) {
+		if (!context.isRegularFile()) {
+			return null;
+		}
+		byte[] data;
+		try {
+			data = context.getHeaderBytes(minBufferSize);
+		} catch (IOException ioe) {
+			return null;
+		}
+		if (data == null) {
+			return identify(context.getFile());
+		}
+		return identify(data);
+	}
+
 	private static void init(String configFile) throws FileNotFoundException {
 		descriptions = new ArrayList<FormatDescription>();
 		minBufferSize = 1;
@@ -114,5 +130,8 @@ public class FormatIdentification {
 				logger.info("Problem closing FileReader for file: " + configFile, e);
 			}
 		}
+
+		// compile the signatures once rather than scanning them all for every file
+		signatures = new SignatureTrie(descriptions);
 	}
 }
@@ -0,0 +1,126 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.ffident;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * The magic byte sequences of a list of FormatDescriptions compiled into one trie
+ * per offset. Identifying a file walks its header once for each distinct offset
+ * instead of comparing the header with every signature in turn.
+ * <p>
+ * The result is the same as testing the descriptions in list order and returning
+ * the first one that matches: each trie node remembers the lowest list index of
+ * the signatures ending at it, and the lowest index found over all offsets wins.
+ * Walks stop early once no signature below a node can beat the best match so far.
+ */
+public class SignatureTrie {
+
+	private static final int NO_MATCH = Integer.MAX_VALUE;
+
+	private static final class Node {
+		private byte[] keys = new byte[0];
+		private Node[] children = new Node[0];
+		// lowest index of a description whose signature ends at this node
+		private int match = NO_MATCH;
+		// lowest index of a description whose signature ends at or below this node
+		private int minBelow = NO_MATCH;
+
+		private Node child(byte b) {
+			byte[] k = keys;
+			for (int i = 0; i < k.length; i++) {
+				if (k[i] == b) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node addChild(byte b) {
+			Node child = child(b);
+			if (child == null) {
+				child = new Node();
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				keys[keys.length - 1] = b;
+				children = Arrays.copyOf(children, children.length + 1);
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+
+	private final FormatDescription[] descriptions;
+	private final int[] offsets;
+	private final Node[] roots;
+
+	/**
+	 * @param descriptions the descriptions in priority order; those without an
+	 * offset or magic bytes never match, as with {@link FormatDescription#matches(byte[])}
+	 */
+	public SignatureTrie(List<FormatDescription> descriptions) {
+		this.descriptions = descriptions.toArray(new FormatDescription[descriptions.size()]);
+		TreeMap<Integer,Node> byOffset = new TreeMap<Integer,Node>();
+		for (int i = 0; i < this.descriptions.length; i++) {
+			FormatDescription desc = this.descriptions[i];
+			byte[] magic = desc.getMagicBytes();
+			Integer offset = desc.getOffset();
+			if (magic == null || magic.length == 0 || offset == null || offset.intValue() < 0) {
+				continue;
+			}
+			Node node = byOffset.get(offset);
+			if (node == null) {
+				node = new Node();
+				byOffset.put(offset, node);
+			}
+			node.minBelow = Math.min(node.minBelow, i);
+			for (byte b : magic) {
+				node = node.addChild(b);
+				node.minBelow = Math.min(node.minBelow, i);
+			}
+			node.match = Math.min(node.match, i);
+		}
+		offsets = new int[byOffset.size()];
+		roots = new Node[byOffset.size()];
+		int n = 0;
+		for (Integer offset : byOffset.keySet()) {
+			offsets[n] = offset.intValue();
+			roots[n++] = byOffset.get(offset);
+		}
+	}
+
+	/**
+	 * Returns the first description, in list order, whose magic bytes appear at
+	 * their offset in the data, or null if none do.
+	 */
+	public FormatDescription identify(byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		int best = NO_MATCH;
+		for (int r = 0; r < roots.length; r++) {
+			Node node = roots[r];
+			int pos = offsets[r];
+			while (node.minBelow < best && pos < data.length) {
+				node = node.child(data[pos++]);
+				if (node == null) {
+					break;
+				}
+				if (node.match < best) {
+					best = node.match;
+				}
+			}
+		}
+		return best == NO_MATCH ? null : descriptions[best];
+	}
+
+}
@@ -27,6 +27,7 @@ import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolInfo;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.ToolOutputMapper;
 import edu.harvard.hul.ois.fits.tools.utils.CommandLine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,8 @@ public class FileUtility extends ToolBase {
 	private final List<String> FILE_TEST_COMMAND = new ArrayList<String>(Arrays.asList("which", "file"));
 	private boolean enabled = true;
     private final Fits fits;
+    // converts the raw output in place of the XSLT when enabled in fits.xml
+    private ToolOutputMapper mapper = null;
 
 	private static final Logger logger = LoggerFactory.getLogger(FileUtility.class);
 
@@ -70,6 +73,9 @@ public class FileUtility extends ToolBase {
 		info.setVersion(nameVersion[nameVersion.length-1].trim());
 		info.setNote(lines[1]);
 
+		if (isNativeMapperEnabled(fits)) {
+			mapper = new FileUtilityMapper();
+		}
 	}
 
 	public ToolOutput extractInfo(File file) throws FitsToolException {
@@ -150,7 +156,13 @@ public class FileUtility extends ToolBase {
 		}
 
 		Document rawOut = createXml(mime,format,charset,linebreaks,execOut+"\n"+execMimeOut);
-		Document fitsXml = transform(xslt,rawOut);
+		Document fitsXml;
+		if (mapper != null) {
+			fitsXml = mapper.map(rawOut);
+		}
+		else {
+			fitsXml = transform(xslt,rawOut);
+		}
 
 		output = new ToolOutput(this,fitsXml,rawOut, fits);
 
@@ -0,0 +1,395 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.fileutility;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.tools.ToolOutputMapper;
+
+/**
+ * Java implementation of fileutility_to_fits.xslt. The tests are made in the
+ * same order as the stylesheet's, so the first one that applies wins as it does there.
+ */
+public class FileUtilityMapper implements ToolOutputMapper {
+
+	private static final Namespace ns = Namespace.getNamespace(Fits.XML_NAMESPACE);
+
+	private static final Pattern JPEG_VERSION = Pattern.compile("(\\D*?)(\\d+\\.*\\d+)(.*)");
+	private static final Pattern GIF = Pattern.compile("(.*),(.*\\s(.*)),(.*)");
+	private static final Pattern BMP = Pattern.compile("(.*),(.*\\s((\\d)\\.\\D)\\s.*),(.*)");
+	private static final Pattern PNG = Pattern.compile("(\\D*?)(,)(.*)");
+	private static final Pattern PDF = Pattern.compile("([^,]*), version ([^,]*).*");
+	private static final Pattern XML = Pattern.compile("XML ([\\d\\.]*).*");
+	private static final Pattern HTML = Pattern.compile("HTML.*?document.*");
+	private static final Pattern WAV = Pattern.compile("(\\D*?),(\\D*?),(.*)");
+	private static final Pattern MP3 = Pattern.compile("(.*),(.*)");
+	private static final Pattern MP4 = Pattern.compile("(.*),(.*),(.*)");
+	private static final Pattern OGG = Pattern.compile("(\\D*?, \\D*?),(.*)\\((.*)\\)");
+	private static final Pattern FLAC = Pattern.compile("(\\D*?),(.*)");
+	private static final Pattern ZIP = Pattern.compile("([^,]*),(.*)");
+	private static final Pattern POSTSCRIPT = Pattern.compile("(.*) level (.*)");
+
+	// mimetype replacements keyed by the mimetype reported by file
+	private static final Map<String,String> mimeByMime = new HashMap<String,String>();
+	// mimetype replacements keyed by the format reported by file
+	private static final Map<String,String> mimeByFormat = new HashMap<String,String>();
+
+	static {
+		mimeByMime.put("image/x-ms-bmp", "image/bmp");
+		mimeByMime.put("application/xml", "text/xml");
+		mimeByMime.put("audio/x-wav", "audio/x-wave");
+		mimeByMime.put("text/rtf", "application/rtf");
+		mimeByMime.put("video/x-m4v", "video/mp4");
+
+		mimeByFormat.put("OpenDocument Text", "application/vnd.oasis.opendocument.text");
+		mimeByFormat.put("OpenDocument Text Template", "application/vnd.oasis.opendocument.text-template");
+		mimeByFormat.put("OpenDocument Drawing", "application/vnd.oasis.opendocument.graphics");
+		mimeByFormat.put("OpenDocument Drawing Template", "application/vnd.oasis.opendocument.graphics-template");
+		mimeByFormat.put("OpenDocument Presentation", "application/vnd.oasis.opendocument.presentation");
+		mimeByFormat.put("OpenDocument Presentation Template", "application/vnd.oasis.opendocument.presentation-template");
+		mimeByFormat.put("OpenDocument Spreadsheet", "application/vnd.oasis.opendocument.spreadsheet");
+		mimeByFormat.put("OpenDocument Spreadsheet Template", "application/vnd.oasis.opendocument.spreadsheet-template");
+		mimeByFormat.put("OpenDocument Chart", "application/vnd.oasis.opendocument.chart");
+		mimeByFormat.put("OpenDocument Chart Template", "application/vnd.oasis.opendocument.chart-template");
+		mimeByFormat.put("OpenDocument Image", "application/vnd.oasis.opendocument.image");
+		mimeByFormat.put("OpenDocument Image Template", "application/vnd.oasis.opendocument.image-template");
+		mimeByFormat.put("OpenDocument Formula", "application/vnd.oasis.opendocument.formula");
+		mimeByFormat.put("OpenDocument Formula Template", "application/vnd.oasis.opendocument.formula-template");
+		mimeByFormat.put("OpenDocument Master Document", "application/vnd.oasis.opendocument.text-master");
+		mimeByFormat.put("OpenDocument HTML Document Template", "application/vnd.oasis.opendocument.text-web");
+		mimeByFormat.put("(Corel/WP)", "application/vnd.wordperfect");
+		mimeByFormat.put("ColorSync ICC Profile", "application/vnd.iccprofile");
+		mimeByFormat.put("Kodak Color Management System, ICC Profile", "application/vnd.iccprofile");
+	}
+
+	// creating OS descriptions in the order the stylesheet tests for them
+	private static final String[][] creatingOs = {
+		{"from FAT filesystem (MS-DOS, OS/2, NT)", "FAT filesystem (MS-DOS, OS/2, NT/Win32)"},
+		{"from Amiga", "Amiga"},
+		{"from VMS", "VMS (or OpenVMS)"},
+		{"from Unix", "Unix"},
+		{"from VM/CMS", "VM/CMS"},
+		{"from Atari", "Atari TOS"},
+		{"from HPFS filesystem (OS/2, NT)", "HPFS filesystem (OS/2, NT)"},
+		{"from MacOS", "Macintosh"},
+		{"from Z-System", "Z-System"},
+		{"from CP/M", "CP/M"},
+		{"from TOPS/20", "TOPS-20"},
+		{"from NTFS filesystem (NT)", "NTFS filesystem (NT)"},
+		{"from QDOS", "QDOS"},
+		{"from Acorn RISCOS", "Acorn RISCOS"}
+	};
+
+	@SuppressWarnings("unchecked")
+	public Document map(Document rawOutput) {
+		Element fits = new Element("fits", ns);
+		Element root = rawOutput.getRootElement();
+		if(!root.getName().equals("fileUtilityOutput")) {
+			return new Document(fits);
+		}
+
+		String format = childValue(root, "format");
+		String rawoutput = childValue(root, "rawOutput");
+		String mime = childValue(root, "mimetype");
+
+		Element identification = new Element("identification", ns);
+		Element identity = new Element("identity", ns);
+		identity.setAttribute("mimetype", mapMimetype(mime, format));
+		mapFormat(identity, mime, format, rawoutput);
+		identification.addContent(identity);
+		fits.addContent(identification);
+
+		if(format.contains("gzip compressed data")) {
+			Element creatingos = new Element("creatingos", ns);
+			for(String[] os : creatingOs) {
+				if(rawoutput.contains(os[0])) {
+					creatingos.setText(os[1]);
+					break;
+				}
+			}
+			Element fileinfo = new Element("fileinfo", ns);
+			fileinfo.addContent(creatingos);
+			fits.addContent(fileinfo);
+		}
+
+		if(mime.startsWith("text/")) {
+			Element text = new Element("text", ns);
+			List<Element> charsets = root.getChildren("charset");
+			if(!charsets.isEmpty()) {
+				text.addContent(textElement("charset", joinValues(charsets)));
+			}
+			// every linebreak is output if any of them is something other than "no"
+			List<Element> linebreaks = root.getChildren("linebreak");
+			boolean hasLinebreak = false;
+			for(Element linebreak : linebreaks) {
+				if(!linebreak.getValue().equals("no")) {
+					hasLinebreak = true;
+				}
+			}
+			if(hasLinebreak) {
+				for(Element linebreak : linebreaks) {
+					text.addContent(textElement("linebreak", linebreak.getValue()));
+				}
+			}
+			Element metadata = new Element("metadata", ns);
+			metadata.addContent(text);
+			fits.addContent(metadata);
+		}
+
+		return new Document(fits);
+	}
+
+	private String mapMimetype(String mime, String format) {
+		if(mimeByMime.containsKey(mime)) {
+			return mimeByMime.get(mime);
+		}
+		if(mime.equals("application/ogg") && format.contains("audio")) {
+			return "audio/ogg";
+		}
+		if(mimeByFormat.containsKey(format)) {
+			return mimeByFormat.get(format);
+		}
+		return mime;
+	}
+
+	private void mapFormat(final Element identity, String mime, final String format, String rawoutput) {
+		// what the stylesheet does for text that the regular expression does not match
+		Runnable originalFormat = () -> identity.setAttribute("format", format);
+
+		if(format.startsWith("JPEG image data, JFIF standard")) {
+			identity.setAttribute("format", "JPEG File Interchange Format");
+			analyze(format, JPEG_VERSION, m -> identity.addContent(textElement("version", m.group(2))), null);
+		}
+		else if(format.toUpperCase(Locale.ENGLISH).startsWith("JPEG IMAGE DATA, EXIF STANDARD")) {
+			identity.setAttribute("format", "JPEG EXIF");
+			analyze(format, JPEG_VERSION, m -> identity.addContent(textElement("version", m.group(2))), null);
+		}
+		else if(mime.equals("image/gif")) {
+			analyze(format, GIF, m -> {
+				identity.setAttribute("format", m.group(1).equals("GIF image data") ? "Graphics Interchange Format" : "");
+				identity.addContent(textElement("version", m.group(3)));
+			}, originalFormat);
+		}
+		else if(mime.equals("image/tiff")) {
+			boolean isTiff = format.equals("TIFF image data, big-endian") || format.equals("TIFF image data, little-endian");
+			identity.setAttribute("format", isTiff ? "Tagged Image File Format" : "");
+		}
+		else if(mime.equals("image/x-ms-bmp") || mime.equals("image/bmp")) {
+			analyze(format, BMP, m -> {
+				identity.setAttribute("format", m.group(1).equals("PC bitmap") ? "Windows Bitmap" : "");
+				identity.addContent(textElement("version", m.group(4)));
+			}, originalFormat);
+		}
+		else if(mime.equals("image/png")) {
+			analyze(format, PNG, m -> identity.setAttribute("format",
+					m.group(1).equals("PNG image") ? "Portable Network Graphics" : ""), originalFormat);
+		}
+		else if(mime.equals("application/pdf")) {
+			analyze(format, PDF, m -> {
+				identity.setAttribute("format", m.group(1).equals("PDF document") ? "Portable Document Format" : "");
+				identity.addContent(textElement("version", m.group(2)));
+			}, originalFormat);
+		}
+		else if(mime.equals("application/xml") || mime.equals("text/xml")) {
+			analyze(format, XML, m -> {
+				identity.setAttribute("format", "Extensible Markup Language");
+				if(m.group(1).length() > 0) {
+					identity.addContent(textElement("version", m.group(1)));
+				}
+			}, originalFormat);
+		}
+		else if(mime.equals("text/html")) {
+			analyze(format, HTML, m -> identity.setAttribute("format", "Hypertext Markup Language"), originalFormat);
+		}
+		else if(rawoutput.contains("Rich Text Format")) {
+			identity.setAttribute("format", "Rich Text Format (RTF)");
+		}
+		else if(format.equals("US-ASCII")) {
+			identity.setAttribute("format", "ASCII");
+		}
+		else if(mime.equals("image/jp2")) {
+			identity.setAttribute("format", "JPEG 2000 JP2");
+		}
+		else if(mime.equals("audio/x-wav")) {
+			analyze(format, WAV, m -> identity.setAttribute("format",
+					m.group(2).equals(" WAVE audio") ? "Waveform Audio" : ""), originalFormat);
+		}
+		else if(mime.equals("audio/mpeg")) {
+			analyze(format, MP3, m -> identity.setAttribute("format",
+					m.group(2).equals(" MP3 encoding") ? "MPEG 1/2 Audio Layer 3" : ""), originalFormat);
+		}
+		else if(mime.equals("audio/x-aiff")) {
+			identity.setAttribute("format", format.equals("IFF data, AIFF audio") ? "Audio Interchange File Format" : "");
+		}
+		else if(mime.equals("audio/mp4")) {
+			analyze(format, MP4, m -> identity.setAttribute("format",
+					m.group(2).equals(" MPEG v4 system") ? "MPEG-4 Audio" : ""), originalFormat);
+		}
+		else if(mime.equals("application/ogg")) {
+			analyze(format, OGG, m -> identity.setAttribute("format",
+					m.group(1).equals("Ogg data, Vorbis audio") ? "Ogg Vorbis Codec Compressed Multimedia File" : ""), originalFormat);
+		}
+		else if(mime.equals("audio/x-flac")) {
+			analyze(format, FLAC, m -> identity.setAttribute("format",
+					m.group(1).equals("FLAC audio bitstream data") ? "Free Lossless Audio Codec" : ""), originalFormat);
+		}
+		else if(mime.equals("application/vnd.rn-realmedia")) {
+			identity.setAttribute("format", format.equals("RealMedia file") ? "RealMedia" : "");
+		}
+		else if(mime.equals("application/msword")) {
+			identity.setAttribute("format", "Microsoft Word Binary File Format");
+		}
+		else if(mime.equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")) {
+			identity.setAttribute("format", "Office Open XML Document");
+		}
+		else if(mime.equals("application/vnd.ms-excel")) {
+			identity.setAttribute("format", "Microsoft Excel");
+		}
+		else if(mime.equals("application/vnd.ms-powerpoint")) {
+			identity.setAttribute("format", "Microsoft Powerpoint Presentation");
+		}
+		else if(mime.equals("application/vnd.openxmlformats-officedocument.presentationml.presentation")) {
+			identity.setAttribute("format", "Office Open XML Presentation");
+		}
+		else if(mime.equals("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")) {
+			identity.setAttribute("format", "Office Open XML Workbook");
+		}
+		else if(mime.equals("application/zip")) {
+			analyze(format, ZIP, m -> identity.setAttribute("format",
+					m.group(1).equals("Zip archive data") ? "ZIP Format" : ""), originalFormat);
+			String version = "";
+			if(rawoutput.contains("at least v0.9 to extract") || rawoutput.contains("at least v1.0 to extract")) {
+				version = "1.0";
+			}
+			else if(rawoutput.contains("at least v1.1 to extract")) {
+				version = "1.1";
+			}
+			else if(rawoutput.contains("at least v2.0 to extract")) {
+				version = "2.0";
+			}
+			identity.addContent(textElement("version", version));
+		}
+		else if(format.contains("gzip compressed data")) {
+			identity.setAttribute("format", "GZIP Format");
+		}
+		else if(format.equals("Adobe Photoshop Image")) {
+			identity.setAttribute("format", "Adobe Photoshop (PSD)");
+		}
+		else if(mime.equals("application/postscript")) {
+			analyze(format, POSTSCRIPT, m -> {
+				identity.setAttribute("format", m.group(1).contains("PostScript document") ? "Postscript" : "");
+				identity.addContent(textElement("version", m.group(2)));
+			}, originalFormat);
+		}
+		else if(format.equals("SVG Scalable Vector Graphics image")) {
+			identity.setAttribute("format", "Scalable Vector Graphics (SVG)");
+		}
+		else if(format.equals("Macromedia Flash Video")) {
+			identity.setAttribute("format", "Flash Video (FLV)");
+		}
+		else if(format.equals("Material exchange container format")) {
+			identity.setAttribute("format", "Material Exchange Format (MXF)");
+		}
+		else if(format.contains("Apple QuickTime movie")) {
+			identity.setAttribute("format", "Quicktime");
+		}
+		else if(format.equals("ISO Media, MPEG v4 system, version 2")
+				|| format.startsWith("ISO Media, MP4")
+				|| format.startsWith("ISO Media, Apple iTunes Video")) {
+			identity.setAttribute("format", "MPEG-4");
+		}
+		else if(format.equals("data")) {
+			identity.setAttribute("format", "Unknown Binary");
+		}
+		else if(format.equals("OpenDocument Drawing")) {
+			identity.setAttribute("format", "OpenDocument Graphics");
+		}
+		else if(format.startsWith("x86 boot sector")) {
+			identity.setAttribute("format", "x86 boot sector");
+		}
+		else if(format.startsWith("Adobe Photoshop Image")) {
+			identity.setAttribute("format", "Adobe Photoshop");
+		}
+		else if(format.startsWith("RIFF (little-endian) data, AVI")) {
+			identity.setAttribute("format", "Audio/Video Interleaved Format");
+		}
+		else if(format.startsWith("MPEG ADTS, AAC")) {
+			identity.setAttribute("format", "AAC");
+		}
+		else if(format.endsWith("ICC Profile")) {
+			identity.setAttribute("format", "ICC");
+		}
+		else if(format.equals("(Corel/WP)")) {
+			identity.setAttribute("format", "WordPerfect Document");
+		}
+		else {
+			identity.setAttribute("format", format);
+		}
+	}
+
+	/*
+	 * Works like xsl:analyze-string: onMatch is called for each match of the regular
+	 * expression in the input and onNonMatch, if not null, for each run of text between them.
+	 */
+	private static void analyze(String input, Pattern regex, Consumer<Matcher> onMatch, Runnable onNonMatch) {
+		Matcher m = regex.matcher(input);
+		int end = 0;
+		while(m.find()) {
+			if(m.start() > end && onNonMatch != null) {
+				onNonMatch.run();
+			}
+			onMatch.accept(m);
+			end = m.end();
+		}
+		if(end < input.length() && onNonMatch != null) {
+			onNonMatch.run();
+		}
+	}
+
+	private static String childValue(Element parent, String name) {
+		Element child = parent.getChild(name);
+		return child == null ? "" : child.getValue();
+	}
+
+	private static String joinValues(List<Element> elements) {
+		StringBuilder sb = new StringBuilder();
+		boolean separate = false;
+		for(Element e : elements) {
+			if(separate) {
+				sb.append(' ');
+			}
+			sb.append(e.getValue());
+			separate = true;
+		}
+		return sb.toString();
+	}
+
+	// an empty value leaves the element empty, as a zero length text node does in XSLT
+	private static Element textElement(String name, String value) {
+		Element element = new Element(name, ns);
+		if(value != null && value.length() > 0) {
+			element.setText(value);
+		}
+		return element;
+	}
+
+}
@@ -11,12 +11,11 @@
 
 package edu.harvard.hul.ois.fits.tools.jhove;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
 
+import org.apache.commons.configuration.XMLConfiguration;
 import org.jdom.Document;
 
 import edu.harvard.hul.ois.fits.Fits;
@@ -25,13 +24,10 @@ import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolInfo;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
-import edu.harvard.hul.ois.fits.tools.utils.XmlUtils;
+import edu.harvard.hul.ois.fits.tools.utils.BoundedPool;
 import edu.harvard.hul.ois.fits.tools.utils.XsltTransformMap;
 import edu.harvard.hul.ois.jhove.App;
-import edu.harvard.hul.ois.jhove.JhoveBase;
 import edu.harvard.hul.ois.jhove.JhoveException;
-import edu.harvard.hul.ois.jhove.Module;
-import edu.harvard.hul.ois.jhove.handler.XmlHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,10 +35,9 @@ import org.slf4j.LoggerFactory;
  */
 public class Jhove extends ToolBase {
 
-    private App jhoveApp;
-    private JhoveBase jhove;
-    private XmlHandler xh;
-    private String jhoveConf;
+    // one engine per file being examined at once, as an engine holds per-file state;
+    // shared by every Jhove instance, so that jhove_engines[@max] caps the engines of the JVM
+    private static BoundedPool<JhoveEngine, JhoveException> engines;
     private boolean enabled = true;
     private Fits fits;
 
@@ -58,61 +53,64 @@ public class Jhove extends ToolBase {
             //Initialize Jhove
             File config = new File(Fits.FITS_XML_DIR+"jhove"+File.separator+"jhove.conf");
             //= new File((this.getClass().getResource("jhove.conf")).toURI());
-            jhoveConf = config.getPath();
-            jhove = new JhoveBase ();
-            jhove.init (jhoveConf, "org.apache.xerces.parsers.SAXParser");
-            jhove.setChecksumFlag(false);
-            jhove.setSignatureFlag(false);
-            jhove.setShowRawFlag(false);
-      	    xh = new XmlHandler();
-            jhoveApp = new App ("Jhove","1.25.2-wisc", new int[] {2021, 8, 5}, "","");
-            xh.setApp(jhoveApp);
-            xh.setBase(jhove);
+            String jhoveConf = config.getPath();
+            int maxEngines = Runtime.getRuntime().availableProcessors();
+            JhoveReportLimits limits = JhoveReportLimits.NONE;
+            if (fits != null && fits.getConfig() != null) {
+                maxEngines = fits.getConfig().getInt("jhove_engines[@max]", maxEngines);
+                limits = readLimits(fits.getConfig());
+            }
+            createEngines(jhoveConf, limits, maxEngines);
+
+            //initialize tool info
+            JhoveEngine engine = engines.borrow();
+            try {
+                App jhoveApp = engine.getApp();
+                info = new ToolInfo(jhoveApp.getName(),jhoveApp.getRelease(),engine.getDate().toString());
+            }
+            finally {
+                engines.release(engine);
+            }
 		}
 		catch (JhoveException e) {
 		    logger.error ("Error initializing Jhove: " + e.getClass().getName());
 			throw new FitsToolException("Error initializing Jhove",e);
 		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FitsToolException("Interrupted waiting for a Jhove engine",e);
+		}
 
-		//initialize tool info
-		info = new ToolInfo(jhoveApp.getName(),jhoveApp.getRelease(),jhove.getDate().toString());
 		transformMap = XsltTransformMap.getMap(jhoveFitsConfig+"jhove_xslt_map.xml");
 	}
 
-    /**
-     * Invokes Jhove in 'signature mode', where the header of the file is examined to determine
-     * the format, and thus which Jhove Module should be used to validate the file
-     * @param file the File object to characterize
-     * @return the dom representation of the Jhove XML
-     * @throws Exception
-     */
-    private Document characterize(File file) throws Exception {
-    	jhove.setSignatureFlag(true);
-    	Document dom = getFileInfo(file,null);
-    	jhove.setSignatureFlag(false);
-		return dom;
-    }
-
-    /**
-     * Invokes Jhove against a file, returning the DOM representation of the Jhove XML.
-     * @param file the File object to operate on
-     * @param mod the module to use
-     * @return Document object
-     * @throws Exception
-     */
-    private Document getFileInfo(File file,Module mod) throws Exception {
-        String filepath = file.getAbsolutePath();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-		OutputStreamWriter out2 = new OutputStreamWriter(out,"UTF-8");
-		PrintWriter pWriter = new PrintWriter(out2);
-		xh.setWriter(pWriter);
-		jhove.process(jhoveApp, mod, xh, filepath);
-		pWriter.close();
-		out2.close();
-		Document dom = saxBuilder.build(new StringReader(out.toString()));
-		out.close();
-		return dom;
-    }
+	/**
+	 * Creates the pool of engines shared by all instances, if it does not exist yet.
+	 * The configuration of the first instance created applies.
+	 */
+	private static synchronized void createEngines(final String jhoveConf, final JhoveReportLimits limits, int maxEngines) throws JhoveException {
+		if (engines == null) {
+			engines = new BoundedPool<JhoveEngine, JhoveException>(new BoundedPool.Factory<JhoveEngine, JhoveException>() {
+				@Override
+				public JhoveEngine create() throws JhoveException {
+					return new JhoveEngine(jhoveConf, limits);
+				}
+			}, maxEngines);
+		}
+	}
+
+	private static JhoveReportLimits readLimits(XMLConfiguration config) {
+		Set<String> skipProperties = new HashSet<String>();
+		for (Object name : config.getList("jhove_limits[@skip-properties]")) {
+			if (!name.toString().trim().isEmpty()) {
+				skipProperties.add(name.toString().trim());
+			}
+		}
+		return new JhoveReportLimits(config.getInt("jhove_limits[@max-pages]", 0),
+				config.getInt("jhove_limits[@max-ifds]", 0),
+				skipProperties,
+				config.getLong("jhove_limits[@max-report-kb]", 0) * 1024);
+	}
 
 	/**
 	 * processes the file with Jhove using the automatically determined module
@@ -122,11 +120,18 @@ public class Jhove extends ToolBase {
         logger.debug("Jhove.extractInfo starting on " + file.getName());
 		long startTime = System.currentTimeMillis();
 		Document dom = null;
+		JhoveEngine engine;
+		try {
+			engine = engines.borrow();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FitsToolException("Interrupted waiting for a Jhove engine for " + file.getName(), e);
+		} catch (JhoveException e) {
+		    logger.error ("Error initializing Jhove: " + e.getClass().getName());
+			throw new FitsToolException("Error initializing Jhove",e);
+		}
 		try {
-			dom = characterize(file);
-			String jhoveModule = XmlUtils.getDomValue(dom,"reportingModule");
-			Module mod = jhove.getModule(jhoveModule);
-			dom = getFileInfo(file,mod);
+			dom = engine.characterize(file);
 		} catch (Exception e) {
 		    logger.error("Jhove error while processing "+file.getName() + ": " +
                     e.getClass().getName() + ", message = " + e.getMessage());
@@ -136,7 +141,10 @@ public class Jhove extends ToolBase {
             logger.error("Jhove OutOfMemoryError while processing "+file.getName());
 			throw new FitsToolException("Jhove OutOfMemoryError while processing "+file.getName(), e);
 		}
-		String format = XmlUtils.getDomValue(dom,"format");
+		finally {
+			engines.release(engine);
+		}
+		String format = JhoveEngine.getRepInfoValue(dom,"format");
 		String xsltTransform = (String)transformMap.get(format.toUpperCase());
 
 		Document fitsXml = null;
@@ -147,11 +155,14 @@ public class Jhove extends ToolBase {
 			fitsXml = transform(jhoveFitsConfig+"jhove_text_to_fits.xslt",dom);
 		}
 
-		output = new ToolOutput(this,fitsXml,dom, fits);
+		// with an engine borrowed per file, other files can be going through this instance
+		// at the same time and set the output field too, so the output made here is returned
+		ToolOutput toolOutput = new ToolOutput(this,fitsXml,dom, fits);
+		output = toolOutput;
 		duration = System.currentTimeMillis()-startTime;
 		runStatus = RunStatus.SUCCESSFUL;
         logger.debug("Jhove.extractInfo finished on " + file.getName());
-		return output;
+		return toolOutput;
 	}
 
 	public boolean isEnabled() {
@@ -0,0 +1,233 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.jhove;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.input.JDOMParseException;
+import org.jdom.input.SAXBuilder;
+import org.xml.sax.InputSource;
+
+import edu.harvard.hul.ois.jhove.App;
+import edu.harvard.hul.ois.jhove.JhoveBase;
+import edu.harvard.hul.ois.jhove.JhoveException;
+import edu.harvard.hul.ois.jhove.Module;
+import edu.harvard.hul.ois.jhove.handler.XmlHandler;
+
+/**
+ * An independently initialized instance of Jhove: a JhoveBase with its own
+ * module instances, the XmlHandler writing its output, and the SAXBuilder
+ * reading that output back. The signature flag and the handler's writer are
+ * set for each file, so an engine examines one file at a time.
+ * <p>
+ * The report is cut down to the {@link JhoveReportLimits} while it is read back;
+ * when a limit cuts it, an info message saying so is added to the report.
+ */
+class JhoveEngine {
+
+	private final App jhoveApp;
+	private final JhoveBase jhove;
+	private final XmlHandler xh;
+	private final SAXBuilder saxBuilder = new SAXBuilder();
+	private final JhoveReportLimits limits;
+
+	/**
+	 * @param jhoveConf the path of jhove.conf
+	 * @param limits the caps on the detail kept from each report
+	 */
+	JhoveEngine(String jhoveConf, JhoveReportLimits limits) throws JhoveException {
+		this.limits = limits;
+		jhove = new JhoveBase ();
+		jhove.init (jhoveConf, "org.apache.xerces.parsers.SAXParser");
+		jhove.setChecksumFlag(false);
+		jhove.setSignatureFlag(false);
+		jhove.setShowRawFlag(false);
+		xh = new XmlHandler();
+		jhoveApp = new App ("Jhove","1.25.2-wisc", new int[] {2021, 8, 5}, "","");
+		xh.setApp(jhoveApp);
+		xh.setBase(jhove);
+	}
+
+	App getApp() {
+		return jhoveApp;
+	}
+
+	Date getDate() {
+		return jhove.getDate();
+	}
+
+	/**
+	 * Finds the module for the file in 'signature mode', where the header of the
+	 * file is examined to determine the format, then validates the file with it.
+	 * @param file the File object to characterize
+	 * @return the dom representation of the Jhove XML
+	 * @throws Exception
+	 */
+	Document characterize(File file) throws Exception {
+		jhove.setSignatureFlag(true);
+		Document dom;
+		try {
+			dom = getFileInfo(file,null);
+		} finally {
+			jhove.setSignatureFlag(false);
+		}
+		String jhoveModule = getRepInfoValue(dom,"reportingModule");
+		Module mod = jhove.getModule(jhoveModule);
+		return getFileInfo(file,mod);
+	}
+
+	/**
+	 * Returns the text of a child of the report's repInfo element, or null if it has none.
+	 * The report is navigated from its root rather than searched, since a report of a
+	 * large file holds many elements.
+	 */
+	static String getRepInfoValue(Document dom, String name) {
+		Element root = dom.getRootElement();
+		Namespace ns = root.getNamespace();
+		Element repInfo = root.getChild("repInfo", ns);
+		return repInfo == null ? null : repInfo.getChildText(name, ns);
+	}
+
+	/**
+	 * Holds the report up to the byte limit and drops the rest.
+	 */
+	private static final class ReportOutputStream extends ByteArrayOutputStream {
+		private final long limit;
+		private boolean truncated;
+
+		ReportOutputStream(long limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public synchronized void write(int b) {
+			if (limit > 0 && count >= limit) {
+				truncated = true;
+				return;
+			}
+			super.write(b);
+		}
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			if (limit > 0 && count + (long) len > limit) {
+				truncated = true;
+				len = (int) Math.max(0, limit - count);
+			}
+			super.write(b, off, len);
+		}
+
+		/**
+		 * Reads the report as held, up to the end of the last whole tag if it was
+		 * cut, so that no partial text is read.
+		 */
+		InputStream toInputStream() {
+			int end = count;
+			if (truncated) {
+				while (end > 0 && buf[end - 1] != '>') {
+					end--;
+				}
+			}
+			return new ByteArrayInputStream(buf, 0, end);
+		}
+	}
+
+	/**
+	 * Invokes Jhove against a file, returning the DOM representation of the Jhove XML.
+	 * @param file the File object to operate on
+	 * @param mod the module to use
+	 * @return Document object
+	 * @throws Exception
+	 */
+	private Document getFileInfo(File file,Module mod) throws Exception {
+		String filepath = file.getAbsolutePath();
+		ReportOutputStream out = new ReportOutputStream(limits.getMaxReportBytes());
+		OutputStreamWriter out2 = new OutputStreamWriter(out,"UTF-8");
+		PrintWriter pWriter = new PrintWriter(out2);
+		xh.setWriter(pWriter);
+		jhove.process(jhoveApp, mod, xh, filepath);
+		pWriter.close();
+		out2.close();
+
+		// the builder keeps its parser together with the filter, so a filtering one is built per report
+		JhoveReportFilter filter = null;
+		SAXBuilder builder = saxBuilder;
+		if (limits.filtersProperties()) {
+			filter = new JhoveReportFilter(limits);
+			builder = new SAXBuilder();
+			builder.setXMLFilter(filter);
+		}
+		Document dom;
+		try {
+			dom = builder.build(new InputSource(out.toInputStream()));
+		} catch (JDOMParseException e) {
+			// the elements still open where the report was cut are left unclosed
+			if (!out.truncated || e.getPartialDocument() == null) {
+				throw e;
+			}
+			dom = e.getPartialDocument();
+		}
+
+		List<String> cuts = new ArrayList<String>();
+		if (out.truncated) {
+			cuts.add("the report was cut at " + limits.getMaxReportBytes() + " bytes");
+		}
+		if (filter != null && filter.getCappedItems() > 0) {
+			cuts.add(filter.getCappedItems() + " pages or IFDs past the limit were reduced to their names");
+		}
+		if (filter != null && filter.getSkippedProperties() > 0) {
+			cuts.add(filter.getSkippedProperties() + " properties were skipped by name");
+		}
+		if (!cuts.isEmpty()) {
+			addTruncationMessage(dom, cuts);
+		}
+		return dom;
+	}
+
+	/**
+	 * Adds an info message to the report's repInfo, which the FITS stylesheets
+	 * copy to the filestatus of the output.
+	 */
+	private static void addTruncationMessage(Document dom, List<String> cuts) {
+		Element root = dom.getRootElement();
+		Namespace ns = root.getNamespace();
+		Element repInfo = root.getChild("repInfo", ns);
+		if (repInfo == null) {
+			repInfo = new Element("repInfo", ns);
+			root.addContent(repInfo);
+		}
+		Element messages = repInfo.getChild("messages", ns);
+		if (messages == null) {
+			messages = new Element("messages", ns);
+			repInfo.addContent(messages);
+		}
+		StringBuilder text = new StringBuilder("Jhove report truncated within the configured limits:");
+		for (int i = 0; i < cuts.size(); i++) {
+			text.append(i == 0 ? " " : "; ").append(cuts.get(i));
+		}
+		Element message = new Element("message", ns);
+		message.setAttribute("severity", "info");
+		message.setText(text.toString());
+		messages.addContent(message);
+	}
+
+}
@@ -0,0 +1,231 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.jhove;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Drops detail from a Jhove XML report as it is parsed, before it reaches the
+ * JDOM tree. A property is only known by its first child, the name element, so
+ * the start of each property is held back until its name has been read:
+ * <ul>
+ * <li>a property whose name is skipped is dropped with everything in it;</li>
+ * <li>a Page of a PDF's Pages, or an IFD of a TIFF's IFDs, past the limit keeps
+ * only its name, so that counts of pages in the FITS stylesheets stay right.</li>
+ * </ul>
+ */
+class JhoveReportFilter extends XMLFilterImpl {
+
+	private static final String PROPERTY = "property";
+	private static final String NAME = "name";
+	private static final String VALUES = "values";
+
+	/** An element passed on to the content handler. */
+	private static final class Frame {
+		// for a property: its name, once read
+		final String propertyName;
+		// for the values of a capped list: the name of its items, the limit and the number seen
+		String itemName;
+		int cap;
+		int items;
+
+		Frame(String propertyName) {
+			this.propertyName = propertyName;
+		}
+	}
+
+	private final JhoveReportLimits limits;
+	private final Deque<Frame> open = new ArrayDeque<Frame>();
+
+	// the property whose name is being read
+	private boolean pending;
+	private boolean inName;
+	private Frame pendingParent;
+	private String propertyUri;
+	private String propertyQName;
+	private Attributes propertyAtts;
+	private String nameUri;
+	private String nameQName;
+	private Attributes nameAtts;
+	private final StringBuilder nameText = new StringBuilder();
+
+	// the depth within a property being dropped, and whether its start was passed on
+	private int skipDepth;
+	private boolean stub;
+
+	private int cappedItems;
+	private int skippedProperties;
+
+	JhoveReportFilter(JhoveReportLimits limits) {
+		this.limits = limits;
+	}
+
+	/** The number of pages and IFDs reduced to their name. */
+	int getCappedItems() {
+		return cappedItems;
+	}
+
+	/** The number of properties dropped by name. */
+	int getSkippedProperties() {
+		return skippedProperties;
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+		if (skipDepth > 0) {
+			skipDepth++;
+			return;
+		}
+		if (pending) {
+			if (!inName && NAME.equals(localName)) {
+				inName = true;
+				nameUri = uri;
+				nameQName = qName;
+				nameAtts = new AttributesImpl(atts);
+				return;
+			}
+			// a property that does not start with its name is passed on as it is
+			releaseProperty(null);
+		}
+		if (PROPERTY.equals(localName)) {
+			pendingParent = open.peek();
+			pending = true;
+			propertyUri = uri;
+			propertyQName = qName;
+			propertyAtts = new AttributesImpl(atts);
+			nameText.setLength(0);
+			return;
+		}
+		Frame parent = open.peek();
+		Frame frame = new Frame(null);
+		if (VALUES.equals(localName) && parent != null) {
+			if ("Pages".equals(parent.propertyName)) {
+				frame.itemName = "Page";
+				frame.cap = limits.getMaxPages();
+			} else if ("IFDs".equals(parent.propertyName)) {
+				frame.itemName = "IFD";
+				frame.cap = limits.getMaxIfds();
+			}
+		}
+		open.push(frame);
+		super.startElement(uri, localName, qName, atts);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (skipDepth > 0) {
+			skipDepth--;
+			if (skipDepth == 0 && stub) {
+				open.pop();
+				super.endElement(uri, localName, qName);
+			}
+			return;
+		}
+		if (pending) {
+			if (inName && NAME.equals(localName)) {
+				inName = false;
+				String name = nameText.toString().trim();
+				if (limits.getSkipProperties().contains(name)) {
+					pending = false;
+					skippedProperties++;
+					skipDepth = 1;
+					stub = false;
+				} else {
+					releaseProperty(name);
+					if (isOverCap(name)) {
+						cappedItems++;
+						skipDepth = 1;
+						stub = true;
+					}
+				}
+				return;
+			}
+			releaseProperty(null);
+		}
+		open.pop();
+		super.endElement(uri, localName, qName);
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (skipDepth > 0) {
+			return;
+		}
+		if (pending) {
+			// whitespace before the name is dropped with the held back start
+			if (inName) {
+				nameText.append(ch, start, length);
+			}
+			return;
+		}
+		super.characters(ch, start, length);
+	}
+
+	@Override
+	public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+		if (skipDepth > 0 || pending) {
+			return;
+		}
+		super.ignorableWhitespace(ch, start, length);
+	}
+
+	@Override
+	public void startPrefixMapping(String prefix, String uri) throws SAXException {
+		if (skipDepth > 0) {
+			return;
+		}
+		super.startPrefixMapping(prefix, uri);
+	}
+
+	@Override
+	public void endPrefixMapping(String prefix) throws SAXException {
+		if (skipDepth > 0) {
+			return;
+		}
+		super.endPrefixMapping(prefix);
+	}
+
+	/**
+	 * Passes on the held back start of the property, and its name element if it
+	 * was read.
+	 */
+	private void releaseProperty(String name) throws SAXException {
+		pending = false;
+		open.push(new Frame(name));
+		super.startElement(propertyUri, PROPERTY, propertyQName, propertyAtts);
+		if (name != null) {
+			super.startElement(nameUri, NAME, nameQName, nameAtts);
+			char[] text = nameText.toString().toCharArray();
+			super.characters(text, 0, text.length);
+			super.endElement(nameUri, NAME, nameQName);
+		}
+	}
+
+	/**
+	 * Counts the property if it is an item of a capped list, such as the Number
+	 * of IFDs is not, and tells whether it is past the limit.
+	 */
+	private boolean isOverCap(String name) {
+		Frame list = pendingParent;
+		if (list == null || list.cap == 0 || !name.equals(list.itemName)) {
+			return false;
+		}
+		list.items++;
+		return list.items > list.cap;
+	}
+
+}
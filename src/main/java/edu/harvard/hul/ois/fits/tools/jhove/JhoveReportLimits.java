@@ -0,0 +1,68 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.jhove;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Caps on the detail kept from a Jhove report, so that the report of a PDF with
+ * thousands of pages or a TIFF with thousands of IFDs does not have to be held
+ * in memory in full. A value of 0 means no limit.
+ */
+class JhoveReportLimits {
+
+	static final JhoveReportLimits NONE = new JhoveReportLimits(0, 0, Collections.<String>emptySet(), 0);
+
+	private final int maxPages;
+	private final int maxIfds;
+	private final Set<String> skipProperties;
+	private final long maxReportBytes;
+
+	/**
+	 * @param maxPages the number of PDF pages reported in full; later pages keep only their name
+	 * @param maxIfds the number of TIFF IFDs reported in full; later IFDs keep only their name
+	 * @param skipProperties names of properties left out of the report with everything in them
+	 * @param maxReportBytes the most bytes of the Jhove XML report read
+	 */
+	JhoveReportLimits(int maxPages, int maxIfds, Set<String> skipProperties, long maxReportBytes) {
+		this.maxPages = Math.max(0, maxPages);
+		this.maxIfds = Math.max(0, maxIfds);
+		this.skipProperties = Collections.unmodifiableSet(new HashSet<String>(skipProperties));
+		this.maxReportBytes = Math.max(0, maxReportBytes);
+	}
+
+	int getMaxPages() {
+		return maxPages;
+	}
+
+	int getMaxIfds() {
+		return maxIfds;
+	}
+
+	Set<String> getSkipProperties() {
+		return skipProperties;
+	}
+
+	long getMaxReportBytes() {
+		return maxReportBytes;
+	}
+
+	/**
+	 * Whether any property is capped or skipped, so the report must go through a
+	 * {@link JhoveReportFilter}.
+	 */
+	boolean filtersProperties() {
+		return maxPages > 0 || maxIfds > 0 || !skipProperties.isEmpty();
+	}
+
+}
@@ -12,15 +12,21 @@ package edu.harvard.hul.ois.fits.tools.mediainfo;
 
 import java.io.File;
 import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.configuration.XMLConfiguration;
 import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
 
 import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolInfo;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.utils.BoundedPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +42,20 @@ public class MediaInfo extends ToolBase {
     private final static String xsltTransform = "mediainfo_video_to_fits.xslt";
 
 	private static final Logger logger = LoggerFactory.getLogger(MediaInfo.class);
-    private static MediaInfoNativeWrapper mi = null;
+
+    // Options such as Complete and Inform are global to the native library, so
+    // setting them and reading the output they shape must not interleave between handles
+    private final static Object INFORM_LOCK = new Object();
+
+    // shared by every MediaInfo instance, so that mediainfo_handles[@max] caps the handles of the JVM
+    private static BoundedPool<MediaInfoNativeWrapper, RuntimeException> handles;
+
+    // the complete output, kept as the raw tool output, is only asked for when it is displayed
+    private boolean displayToolOutput;
+
+    // files with these extensions are read up to readLimit bytes; -1 for no limit
+    private List<String> readLimitExts = Collections.emptyList();
+    private long readLimit = -1;
 
     /**
      * Instantiate this class.
@@ -46,19 +65,52 @@ public class MediaInfo extends ToolBase {
      * @param fits
      * @throws FitsToolException
      */
+	@SuppressWarnings("unchecked")
 	public MediaInfo(Fits fits) throws FitsToolException {
 		super();
 		this.fits = fits;
 		info = new ToolInfo();
 		info.setName(TOOL_NAME);
 
+		XMLConfiguration config = fits != null ? fits.getConfig() : null;
+		String parseSpeed = null;
+		if (config != null) {
+			readLimitExts = (List<String>)(List<?>)config.getList("mediainfo_read_limit[@include-exts]");
+			String limit = config.getString("mediainfo_read_limit[@read-limit-kb]");
+			if (limit != null) {
+				try {
+					readLimit = Long.parseLong(limit) * 1024;
+				} catch (NumberFormatException nfe) {
+					throw new FitsToolException("Invalid long value in fits.xml mediainfo_read_limit[@read-limit-kb]: " + limit, nfe);
+				}
+			}
+			displayToolOutput = config.getBoolean("output.display-tool-output", false);
+			parseSpeed = config.getString("mediainfo_parse_speed");
+			if (parseSpeed != null) {
+				try {
+					Float.parseFloat(parseSpeed);
+				} catch (NumberFormatException nfe) {
+					throw new FitsToolException("Invalid value in fits.xml mediainfo_parse_speed: " + parseSpeed, nfe);
+				}
+			}
+		}
+
 		try {
 		    String versionOutput = MediaInfoNativeWrapper.Option_Static("Info_Version");
 		    // Strip "MediaInfoLib - v" from the version
 		    info.setVersion(versionOutput.replace("MediaInfoLib - v",""));
 
-		    // Initialize the native library 
-		    mi = new MediaInfoNativeWrapper();
+		    // Initialize the native library, with a handle for each file being examined at once
+		    int maxHandles = Runtime.getRuntime().availableProcessors();
+		    if (config != null) {
+		        maxHandles = config.getInt("mediainfo_handles[@max]", maxHandles);
+		    }
+		    createHandles(maxHandles);
+
+		    // ParseSpeed is global to the native library, so it is set once for all files
+		    if (parseSpeed != null) {
+		        MediaInfoNativeWrapper.Option_Static("ParseSpeed", parseSpeed);
+		    }
 
 		} catch (Throwable e) {
 			String message = "Error loading native library for this operating system for tool: " + TOOL_NAME;
@@ -68,94 +120,74 @@ public class MediaInfo extends ToolBase {
 
 	}
 
+	/**
+	 * Creates the pool of handles shared by all instances, if it does not exist yet.
+	 * The maximum of the first instance created applies.
+	 */
+	private static synchronized void createHandles(int maxHandles) {
+		if (handles == null) {
+			handles = new BoundedPool<MediaInfoNativeWrapper, RuntimeException>(new BoundedPool.Factory<MediaInfoNativeWrapper, RuntimeException>() {
+				@Override
+				public MediaInfoNativeWrapper create() {
+					return new MediaInfoNativeWrapper();
+				}
+			}, maxHandles);
+		}
+	}
+
 	@Override
 	public ToolOutput extractInfo(File file) throws FitsToolException {
 
 	   logger.debug("MediaInfo.extractInfo starting on " + file.getName());
 	   long startTime = System.currentTimeMillis();
 
-		// TODO: should we initialize the library via a static block?
-	    // Initialize the library
-	    // MediaInfoViaJNA mi = new MediaInfoViaJNA();
+		MediaInfoNativeWrapper mi;
+		try {
+			mi = handles.borrow();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FitsToolException("Interrupted waiting for a MediaInfo handle for " + file.getName(), e);
+		}
 
-	    // Open the file with mediainfo native library
+		String execOutRaw = null;
+		String execOut;
+		MediaInfoStreams streams;
+		long partialBytes = -1;
 		try {
-		    if (!(mi.Open(file.getCanonicalPath())>0)) {
-		    	throw new FitsToolException("Error opening " + file.getName());
+			// Open the file with mediainfo native library, or feed it a limited
+			// number of bytes of the file for extensions with a read limit
+			try {
+				if (readLimit > 0 && readLimitExts.contains(getExtension(file))) {
+					partialBytes = MediaInfoChannelReader.open(mi, file, readLimit);
+				}
+				else if (!(mi.Open(file.getCanonicalPath())>0)) {
+			    	throw new FitsToolException("Error opening " + file.getName());
+				}
+		    } catch (FitsToolException e) {
+		    	throw e;
+		    } catch (Exception e) {
+			    throw new FitsToolException("Error opening " + file.getName() ,e);
+		    }
+
+			synchronized (INFORM_LOCK) {
+				if (displayToolOutput) {
+					execOutRaw = inform(mi, "1");
+				}
+				execOut = inform(mi, "");
+
+			    // ----------------------------------------------------------------
+			    // Retrieve additional information for audio/video tracks not
+			    // contained in the general XML, for all tracks at once rather than
+			    // with a native call per value
+			    // ----------------------------------------------------------------
+				streams = MediaInfoStreams.extract(mi, MediaInfoUtil.FIELDS);
 			}
-	    } catch (Exception e) {
-		    throw new FitsToolException("Error opening " + file.getName() ,e);
-	    }
-
-	    // --------------------------------------------------------------------
-	    // OUTPUT Options for the Native MediaInfo Library are:
-	    // 		(From MediaInfo_Inform.cpp)
-	    //
-		// NOTE: Default is Text - when no options set
-		//
-	    // "EBUCore"
-	    // "EBUCore_1.5"
-	    //
-	    // "MPEG-7"
-	    //
-	    // "PBCore"
-	    // "PBCore_1.2"
-	    // "PBCore2"
-	    // "PBCore_2.0"
-	    //
-	    // NOTE: "reVTMD is disabled due to its non-free licensing
-	    //
-	    // XML
-	    // HTML
-	    // CSV
-	    //
-	    // Separate details are available via the API on various data types/tracks
-	    //
-	    //	     "General"
-	    //	     "Video"
-	    //	     "Audio"
-	    //	     "Text"
-	    //	     "Chapters"
-	    //	     "Image"
-	    //	     "Menu"
-	    // --------------------------------------------------------------------
-		//
-		// No format, so output is pure text
-		// String textOutput = mi.Inform();
-		// System.out.println("\nTEXT:\n" + textOutput);
-		//
-	    // Set the option:
-	    // Complete details
-	    // mi.Option("Complete", "1");
-	    //
-	    //// Complete = false, use a subset
-	    //mi.Option("Complete", "");
-
-	    // Get MediaInfoLib Output as standard RAW XML
-	    mi.Option("Complete", "1");
-	    mi.Option("Output", "OLDXML");
-	    String execOutRaw = mi.Inform();
-
-	    // DEBUG
-	    // System.out.println("\nMediaInfo RAW output:\n" + execOutRaw + "\n\n");
-
-	    // Get MediaInfoLib Output as standard XML
-	    mi.Option("Complete", "");
-	    mi.Option("Output", "OLDXML");
-	    String execOut = mi.Inform();
-
-	    //// Get MediaInfoLib Output as EBUCore 1.5
-	    //mi.Option("Output", "EBUCore_1.5");
-	    //String ebuOut = mi.Inform();;
-
-	    // DEBUG
-	    // System.out.println("\nMediaInfo output:\n" + execOut + "\n\n");
-
-	    // --------------------------------------------------------------------
-	    // Retrieve additional information for audio/video tracks not contained
-	    // in the general XML
-	    // --------------------------------------------------------------------
-	    MediaInfoUtil mutil = new MediaInfoUtil(mi);
+		} finally {
+			mi.Close();
+			handles.release(mi);
+		}
+
+	    MediaInfoUtil mutil = new MediaInfoUtil(streams);
 
 	    // Maps to hold data that are obtained via explicit MediaInfo API call.
 	    // These values are either not exposed in the XML returned by the Inform()
@@ -167,14 +199,13 @@ public class MediaInfo extends ToolBase {
 	    Map<String, Map<String, String>> audioTrackValuesMap =
 	    		mutil.loadAudioDataMap ();
 
-	    mi.Close();
-
 		// ====================================================================
 	    // Create a Document out of the generated XML text
 	    // And transform via XSLT
 		// ====================================================================
 		Document outputMetaDoc = createXml(execOut);
-		Document rawOut = createXml(execOutRaw);
+		// without the complete output, the output transformed stands for the raw tool output
+		Document rawOut = execOutRaw != null ? createXml(execOutRaw) : outputMetaDoc;
 
 		Document fitsXml = transform(mediaInfoFitsConfig+xsltTransform,outputMetaDoc);
 
@@ -198,6 +229,10 @@ public class MediaInfo extends ToolBase {
 
 		mutil.removeEmptyElements(fitsXml);
 
+		if (partialBytes >= 0) {
+			addPartialParseMessage(fitsXml, partialBytes, file.length());
+		}
+
 		// DEBUG
 		// String finalXml = new XMLOutputter(Format.getPrettyFormat()).outputString(fitsXml);
 		// System.out.println("\nFINAL XML:\n" + finalXml);
@@ -214,6 +249,83 @@ public class MediaInfo extends ToolBase {
 		return output;
 	}
 
+	/**
+	 * Returns the MediaInfo output for the file open in the handle as OLDXML,
+	 * with the Complete option set to the given value: "1" for all values,
+	 * used for the raw output, and "" for the subset the XSLT transforms.
+	 * Must be called holding INFORM_LOCK.
+	 */
+	private static String inform(MediaInfoNativeWrapper mi, String complete) {
+		// --------------------------------------------------------------------
+		// OUTPUT Options for the Native MediaInfo Library are:
+		// 		(From MediaInfo_Inform.cpp)
+		//
+		// NOTE: Default is Text - when no options set
+		//
+		// "EBUCore"
+		// "EBUCore_1.5"
+		//
+		// "MPEG-7"
+		//
+		// "PBCore"
+		// "PBCore_1.2"
+		// "PBCore2"
+		// "PBCore_2.0"
+		//
+		// NOTE: "reVTMD is disabled due to its non-free licensing
+		//
+		// XML
+		// HTML
+		// CSV
+		//
+		// Separate details are available via the API on various data types/tracks
+		//
+		//		 "General"
+		//		 "Video"
+		//		 "Audio"
+		//		 "Text"
+		//		 "Chapters"
+		//		 "Image"
+		//		 "Menu"
+		// --------------------------------------------------------------------
+		//
+		// No format, so output is pure text
+		// String textOutput = mi.Inform();
+		// System.out.println("\nTEXT:\n" + textOutput);
+
+		mi.Option("Complete", complete);
+		mi.Option("Output", "OLDXML");
+		return mi.Inform();
+	}
+
+	private static String getExtension(File file) {
+		String name = file.getName();
+		int lastDot = name.lastIndexOf('.');
+		return lastDot < 0 ? "" : name.substring(lastDot + 1).toLowerCase();
+	}
+
+	/**
+	 * Notes in the filestatus section that MediaInfo stopped at the read limit,
+	 * so values it estimates from the data it has seen, such as the duration or
+	 * bit rate, may not be those of the whole file.
+	 */
+	private static void addPartialParseMessage(Document fitsXml, long bytesRead, long fileSize) {
+		Element root = fitsXml.getRootElement();
+		Namespace ns = root.getNamespace();
+		Element fileStatus = root.getChild("filestatus", ns);
+		if (fileStatus == null) {
+			fileStatus = new Element("filestatus", ns);
+			// filestatus comes before metadata in the FITS output
+			Element metadata = root.getChild("metadata", ns);
+			int index = metadata != null ? root.indexOf(metadata) : root.getContentSize();
+			root.addContent(index, fileStatus);
+		}
+		Element message = new Element("message", ns);
+		message.setText("Partial parsing: MediaInfo read " + bytesRead + " of " + fileSize
+				+ " bytes within the configured read limit; some values may be estimated");
+		fileStatus.addContent(message);
+	}
+
 	private Document createXml(String out) throws FitsToolException {
         Document doc = null;
 		try {
@@ -0,0 +1,84 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.mediainfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Feeds a file to a MediaInfo handle through its buffer API, reading from a
+ * FileChannel, so that FITS rather than the native library decides how much of
+ * the file is read. MediaInfo asks for the byte ranges it needs by seeking, for
+ * instance to an index at the end of a file; those requests are followed until
+ * the number of bytes read reaches a limit.
+ */
+class MediaInfoChannelReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// bit of Open_Buffer_Continue's result set when no more data is needed
+	private static final int STATUS_FINALIZED = 0x08;
+
+	private MediaInfoChannelReader() {
+	}
+
+	/**
+	 * Parses the file with the MediaInfo handle, reading at most readLimit bytes.
+	 * The handle must be closed afterwards, as for a file opened by name.
+	 *
+	 * @param mi the MediaInfo handle
+	 * @param file the file to parse
+	 * @param readLimit the most bytes to read from the file
+	 * @return the number of bytes read if MediaInfo wanted more data when the
+	 *         limit was reached, or -1 if it parsed all the data it wanted
+	 * @throws IOException if the file cannot be read
+	 */
+	static long open(MediaInfoNativeWrapper mi, File file, long readLimit) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			long position = 0;
+			long read = 0;
+			boolean done = false;
+
+			// lets MediaInfo use the name and extension, as when it opens the file itself
+			mi.Option("File_FileName", file.getCanonicalPath());
+			mi.Open_Buffer_Init(size, 0);
+			while (read < readLimit) {
+				buffer.clear();
+				buffer.limit((int) Math.min(BUFFER_SIZE, readLimit - read));
+				int count = channel.read(buffer, position);
+				if (count <= 0) {
+					done = true;
+					break;
+				}
+				read += count;
+				position += count;
+				if ((mi.Open_Buffer_Continue(buffer.array(), count) & STATUS_FINALIZED) != 0) {
+					done = true;
+					break;
+				}
+				long goTo = mi.Open_Buffer_Continue_GoTo_Get();
+				if (goTo != -1) {
+					position = goTo;
+					mi.Open_Buffer_Init(size, goTo);
+				}
+			}
+			mi.Open_Buffer_Finalize();
+			// a limit reached at the end of the data is no limit
+			return done || position >= size ? -1 : read;
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.mediainfo;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The values of a fixed set of MediaInfo fields for every stream of a file,
+ * fetched together rather than with one native <code>Get</code> call per field.
+ * <p>
+ * For each stream kind, MediaInfo is given a custom <code>Inform</code> template
+ * that lists the fields of the kind between separator characters, so a single
+ * <code>Inform</code> call returns the fields of all streams of that kind. A value
+ * is the same as <code>Get(kind, stream, field, Text, Name)</code> returns. If the
+ * output of a template cannot be split into the expected fields, the values for
+ * that kind are fetched with <code>Get</code> instead.
+ */
+class MediaInfoStreams {
+
+	// unit and record separators, which do not occur in MediaInfo values
+	static final char FIELD_SEPARATOR = '\u001F';
+	static final char STREAM_SEPARATOR = '\u001E';
+
+	private static final Logger logger = LoggerFactory.getLogger(MediaInfoStreams.class);
+
+	private final Map<MediaInfoNativeWrapper.StreamKind, List<Map<String, String>>> streams =
+			new EnumMap<MediaInfoNativeWrapper.StreamKind, List<Map<String, String>>>(MediaInfoNativeWrapper.StreamKind.class);
+
+	/**
+	 * Fetches the fields of every stream of the file open in the MediaInfo handle.
+	 * The <code>Inform</code> option is global to the MediaInfo library, so callers
+	 * must not set options or call <code>Inform</code> on other handles meanwhile.
+	 *
+	 * @param mi a MediaInfo handle with a file open
+	 * @param fields the names of the fields to fetch, by stream kind
+	 * @return the values of the fields
+	 */
+	static MediaInfoStreams extract(MediaInfoNativeWrapper mi,
+			Map<MediaInfoNativeWrapper.StreamKind, List<String>> fields) {
+		MediaInfoStreams result = new MediaInfoStreams();
+		for (Map.Entry<MediaInfoNativeWrapper.StreamKind, List<String>> entry : fields.entrySet()) {
+			MediaInfoNativeWrapper.StreamKind kind = entry.getKey();
+			List<String> names = entry.getValue();
+			mi.Option("Inform", template(kind, names));
+			List<Map<String, String>> values = parse(mi.Inform(), names);
+			if (values == null || values.size() != mi.Count_Get(kind)) {
+				logger.debug("Unexpected MediaInfo template output for " + kind + " streams, reading fields one at a time");
+				values = get(mi, kind, names);
+			}
+			result.streams.put(kind, values);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the custom <code>Inform</code> template that lists the fields of each
+	 * stream of the given kind.
+	 */
+	static String template(MediaInfoNativeWrapper.StreamKind kind, List<String> names) {
+		StringBuilder template = new StringBuilder(kind.name()).append(';');
+		for (String name : names) {
+			template.append('%').append(name).append('%').append(FIELD_SEPARATOR);
+		}
+		return template.append(STREAM_SEPARATOR).toString();
+	}
+
+	/**
+	 * Splits the output of a template into the values of each stream.
+	 *
+	 * @return the values of each stream, or null if the output does not hold the fields
+	 */
+	static List<Map<String, String>> parse(String output, List<String> names) {
+		if (output == null) {
+			return null;
+		}
+		List<Map<String, String>> values = new ArrayList<Map<String, String>>();
+		int start = 0;
+		int end;
+		while ((end = output.indexOf(STREAM_SEPARATOR, start)) >= 0) {
+			String[] fields = output.substring(start, end).split(String.valueOf(FIELD_SEPARATOR), -1);
+			// each value is followed by a separator, so the last element is empty
+			if (fields.length != names.size() + 1) {
+				return null;
+			}
+			Map<String, String> stream = new HashMap<String, String>();
+			for (int i = 0; i < names.size(); i++) {
+				stream.put(names.get(i), fields[i]);
+			}
+			values.add(stream);
+			start = end + 1;
+		}
+		// anything other than line breaks after the last stream means the template was not used
+		if (!output.substring(start).trim().isEmpty()) {
+			return null;
+		}
+		return values;
+	}
+
+	private static List<Map<String, String>> get(MediaInfoNativeWrapper mi,
+			MediaInfoNativeWrapper.StreamKind kind, List<String> names) {
+		List<Map<String, String>> values = new ArrayList<Map<String, String>>();
+		int count = mi.Count_Get(kind);
+		for (int ndx = 0; ndx < count; ndx++) {
+			Map<String, String> stream = new HashMap<String, String>();
+			for (String name : names) {
+				stream.put(name, mi.Get(kind, ndx, name,
+						MediaInfoNativeWrapper.InfoKind.Text,
+						MediaInfoNativeWrapper.InfoKind.Name));
+			}
+			values.add(stream);
+		}
+		return values;
+	}
+
+	/**
+	 * @return the number of streams of the kind, or 0 if its fields were not fetched
+	 */
+	int count(MediaInfoNativeWrapper.StreamKind kind) {
+		List<Map<String, String>> values = streams.get(kind);
+		return values == null ? 0 : values.size();
+	}
+
+	/**
+	 * @return the value of the field of the stream, or an empty string if the
+	 *         stream or the field has no value, as MediaInfo's <code>Get</code> returns
+	 */
+	String get(MediaInfoNativeWrapper.StreamKind kind, int streamNumber, String name) {
+		List<Map<String, String>> values = streams.get(kind);
+		if (values == null || streamNumber >= values.size()) {
+			return "";
+		}
+		String value = values.get(streamNumber).get(name);
+		return value == null ? "" : value;
+	}
+
+}
@@ -11,7 +11,9 @@
 package edu.harvard.hul.ois.fits.tools.mediainfo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -125,12 +127,36 @@ public class MediaInfoUtil {
 
 		    }});
 
+	/**
+	 * The MediaInfo fields read by this class, by stream kind, which are fetched
+	 * for all streams of a file at once.
+	 */
+	@SuppressWarnings("serial")
+	static final Map<MediaInfoNativeWrapper.StreamKind, List<String>> FIELDS = Collections.unmodifiableMap(
+		    new EnumMap<MediaInfoNativeWrapper.StreamKind, List<String>>(MediaInfoNativeWrapper.StreamKind.class) {{
+                put(MediaInfoNativeWrapper.StreamKind.General, Arrays.asList(
+                		"File_Modified_Date", "BitRate", "Duration", "FileSize"));
+                put(MediaInfoNativeWrapper.StreamKind.Other, Arrays.asList(
+                		"TimeCode_FirstFrame"));
+                put(MediaInfoNativeWrapper.StreamKind.Video, Arrays.asList(
+                		"ID", "Duration", "Delay", "FrameCount", "BitRate", "BitRate_Maximum",
+                		"BitRate_Mode", "StreamSize", "FrameRate_Maximum", "FrameRate_Mode",
+                		"FrameRate", "ScanOrder", "CodecID", "Codec/CC", "Codec", "Codec_Profile",
+                		"Codec/Info", "Format_Profile"));
+                put(MediaInfoNativeWrapper.StreamKind.Audio, Arrays.asList(
+                		"ID", "Delay", "SamplingCount", "BitRate", "BitRate_Maximum", "BitRate_Mode",
+                		"Duration", "StreamSize", "SamplingRate", "Channels", "CodecID", "Codec/Family"));
+		    }});
+
 	private final static String TOOL_NAME = "MediaInfo";
 	private static final Logger logger = LoggerFactory.getLogger(MediaInfoUtil.class);
-	private static MediaInfoNativeWrapper mi = null;
+	private final MediaInfoStreams streams;
 
-	protected MediaInfoUtil(MediaInfoNativeWrapper mi) {
-		MediaInfoUtil.mi = mi;
+	/**
+	 * @param streams the values of the fields in {@link #FIELDS} for the file
+	 */
+	protected MediaInfoUtil(MediaInfoStreams streams) {
+		this.streams = streams;
 	}
 
 	protected  Map<String, String> loadGeneralDataMap () {
@@ -196,7 +222,7 @@ public class MediaInfoUtil {
 	    Map<String, Map<String, String>> videoTrackValuesMap =
 	    	    new HashMap<String, Map<String, String>>();
 
-	    int numVideoTracks = mi.Count_Get(MediaInfoNativeWrapper.StreamKind.Video);
+	    int numVideoTracks = streams.count(MediaInfoNativeWrapper.StreamKind.Video);
 	    for (int ndx = 0; ndx < numVideoTracks; ndx++) {
 
 		    String id = getMediaInfoString(ndx, "ID",
@@ -331,7 +357,7 @@ public class MediaInfoUtil {
 		Map<String, Map<String, String>> audioTrackValuesMap =
 	    	    new HashMap<String, Map<String, String>>();
 
-	    int numAudioTracks = mi.Count_Get(MediaInfoNativeWrapper.StreamKind.Audio);
+	    int numAudioTracks = streams.count(MediaInfoNativeWrapper.StreamKind.Audio);
 	    for (int ndx = 0; ndx < numAudioTracks; ndx++) {
 
 		    String id = getMediaInfoString(ndx, "ID",
@@ -661,8 +687,8 @@ public class MediaInfoUtil {
 	}
 
 	/**
-	 * Wrapper to the MediaInfo Get method to retrieve a MediaInfo String from
-	 * stream number 0, of info type text, using a named field.
+	 * Retrieves a MediaInfo String from stream number 0, of info type text,
+	 * using a named field, from the values fetched for the file.
 	 *
 	 * @param fieldName MediaInfo Field
 	 * @param streamType MediaInfoNativeWrapper.InfoKind
@@ -674,8 +700,9 @@ public class MediaInfoUtil {
 	}
 
 	/**
-	 * Wrapper to the MediaInfo Get method to retrieve a MediaInfo String from
-	 * the stream number passed in, of info type text, using a named field.
+	 * Retrieves a MediaInfo String from the stream number passed in, of info
+	 * type text, using a named field, from the values fetched for the file.
+	 * The field must be listed in {@link #FIELDS}.
 	 *
 	 * @param streamNumber MediaInfo stream number
 	 * @param fieldName MediaInfo Field
@@ -684,9 +711,7 @@ public class MediaInfoUtil {
 	 */
 	private String getMediaInfoString(int streamNumber, String fieldName,
 			MediaInfoNativeWrapper.StreamKind streamType) {
-		return mi.Get(streamType, streamNumber, fieldName,
-				MediaInfoNativeWrapper.InfoKind.Text,
-	    		MediaInfoNativeWrapper.InfoKind.Name);
+		return streams.get(streamType, streamNumber, fieldName);
 	}
 
 	private String convertToNormalizedData(String originalString, String labelToPreserve) {
@@ -0,0 +1,168 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.nlnz;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import org.jdom.Comment;
+import org.jdom.Content;
+import org.jdom.DocType;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jdom.Text;
+
+import nz.govt.natlib.fx.ParserEvent;
+import nz.govt.natlib.fx.ParserListener;
+
+/**
+ * Builds the JDOM document of an adapter's output from its parse events, in
+ * place of writing the XML with a DTDXmlParserListener and parsing it back. The
+ * document is the one that parsing would give: the writer's leading comment,
+ * element names in upper case, text without the characters the NLNZ writer
+ * leaves out, and line breaks normalized as an XML parser does. No DTD is read;
+ * the DTDs of the output declare no default attributes.
+ */
+class JdomParserListener implements ParserListener {
+
+	// the comment that XMLParserListener writes before the document type
+	private static final String COMMENT = " National Library New Zealand ";
+
+	private final String dtd;
+	private final Deque<Element> open = new ArrayDeque<Element>();
+	private Document document;
+	private RuntimeException error;
+
+	/**
+	 * @param dtd the system ID of the output DTD for the document type, or null for none
+	 */
+	JdomParserListener(String dtd) {
+		this.dtd = dtd;
+	}
+
+	@Override
+	public void handleParseEvent(ParserEvent event) {
+		if (error != null || event.isInternal()) {
+			return;
+		}
+		try {
+			switch (event.getID()) {
+			case ParserEvent.OPEN_EVENT:
+				open(event);
+				break;
+			case ParserEvent.VALUE_EVENT:
+				text(String.valueOf(event.getValue()));
+				break;
+			case ParserEvent.CLOSE_EVENT:
+				if (open.isEmpty()) {
+					throw new IllegalStateException("Close of " + event.getValue() + " with no element open");
+				}
+				open.pop();
+				break;
+			default:
+				break;
+			}
+		} catch (RuntimeException e) {
+			// what the adapter writes after a bad event would not have parsed either
+			error = e;
+		}
+	}
+
+	/**
+	 * @return the document built from the events
+	 * @throws JDOMException if the events did not make a well-formed document
+	 */
+	Document getDocument() throws JDOMException {
+		if (error != null) {
+			throw new JDOMException("Invalid NLNZ Metadata Extractor XML output", error);
+		}
+		if (document == null) {
+			throw new JDOMException("No NLNZ Metadata Extractor XML output");
+		}
+		if (!open.isEmpty()) {
+			throw new JDOMException("Unclosed element " + open.peek().getName() + " in NLNZ Metadata Extractor XML output");
+		}
+		return document;
+	}
+
+	private void open(ParserEvent event) {
+		Element element = new Element(clean(event.getValue().toString().toUpperCase(), false));
+		String[] names = event.getParameterNames();
+		if (names != null) {
+			for (String name : names) {
+				element.setAttribute(name, normalizeAttribute(String.valueOf(event.getParameter(name))));
+			}
+		}
+		if (!open.isEmpty()) {
+			open.peek().addContent(element);
+		} else if (document == null) {
+			document = new Document(element);
+			if (dtd != null) {
+				document.setDocType(new DocType(element.getName(), dtd));
+			}
+			document.addContent(0, new Comment(COMMENT));
+		} else {
+			throw new IllegalStateException("Second root element " + element.getName());
+		}
+		open.push(element);
+	}
+
+	private void text(String value) {
+		if (open.isEmpty()) {
+			throw new IllegalStateException("Text outside the root element");
+		}
+		String text = normalizeLineBreaks(clean(value, true));
+		if (text.isEmpty()) {
+			return;
+		}
+		// a parser reads adjacent values as one text node
+		List<?> content = open.peek().getContent();
+		Content last = content.isEmpty() ? null : (Content) content.get(content.size() - 1);
+		if (last instanceof Text) {
+			((Text) last).append(text);
+		} else {
+			open.peek().addContent(new Text(text));
+		}
+	}
+
+	/**
+	 * Leaves out the characters that XMLParserListener does not write: those
+	 * outside printable ASCII, except line breaks in text.
+	 */
+	static String clean(String value, boolean keepLineBreaks) {
+		StringBuilder sb = null;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			boolean keep = (c >= 32 && c <= 126) || (keepLineBreaks && (c == '\r' || c == '\n'));
+			if (!keep && sb == null) {
+				sb = new StringBuilder(value.length());
+				sb.append(value, 0, i);
+			} else if (keep && sb != null) {
+				sb.append(c);
+			}
+		}
+		return sb == null ? value : sb.toString();
+	}
+
+	static String normalizeLineBreaks(String text) {
+		if (text.indexOf('\r') < 0) {
+			return text;
+		}
+		return text.replace("\r\n", "\n").replace('\r', '\n');
+	}
+
+	static String normalizeAttribute(String value) {
+		return normalizeLineBreaks(value).replace('\n', ' ').replace('\t', ' ');
+	}
+
+}
@@ -10,10 +10,9 @@
 
 package edu.harvard.hul.ois.fits.tools.nlnz;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.IOException;
-import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.jdom.Document;
 import org.jdom.JDOMException;
@@ -28,9 +27,7 @@ import edu.harvard.hul.ois.fits.tools.utils.XsltTransformMap;
 import nz.govt.natlib.AdapterFactory;
 import nz.govt.natlib.adapter.DataAdapter;
 import nz.govt.natlib.fx.ParserContext;
-import nz.govt.natlib.fx.ParserListener;
 import nz.govt.natlib.meta.config.Config;
-import nz.govt.natlib.meta.harvester.DTDXmlParserListener;
 import nz.govt.natlib.meta.log.LogManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,9 +43,21 @@ public class MetadataExtractor extends ToolBase {
     private static String nlnzFitsConfig;
 	private boolean enabled = true;
     private Fits fits;
+    // the directory of the output DTDs, named in the document type of the output
+    private String dtdBaseUrl;
 
 	private static final Logger logger = LoggerFactory.getLogger(MetadataExtractor.class);
 
+	// Several adapters keep the state of the file being read in fields, so each
+	// thread adapts files with instances of its own rather than those in the
+	// AdapterFactory, which are only used to choose the adapter for a file.
+	private static final ThreadLocal<Map<Class<?>, DataAdapter>> threadAdapters = new ThreadLocal<Map<Class<?>, DataAdapter>>() {
+		@Override
+		protected Map<Class<?>, DataAdapter> initialValue() {
+			return new HashMap<Class<?>, DataAdapter>();
+		}
+	};
+
     static {
     	nlnzFitsConfig = Fits.FITS_XML_DIR+"nlnz"+File.separator+"fits"+File.separator;
     	logger.debug("nlnzFitsConfig: " + nlnzFitsConfig);
@@ -67,6 +76,30 @@ public class MetadataExtractor extends ToolBase {
 		// Use custom logger so that NLNZ code doesn't log to System.out by default
 		// (see what happens in nz.govt.natlib.meta.log.LogManager source code)
 		LogManager.getInstance().addLog(new SLF4JLogger());
+
+		// Set once rather than for each file, as the Config is shared by all threads
+		Config.getInstance().setXMLBaseURL(Fits.FITS_XML_DIR+"nlnz");
+		dtdBaseUrl = Config.getInstance().getXMLBaseURL();
+	}
+
+	/**
+	 * Returns this thread's instance of the adapter class, falling back to the
+	 * shared instance for an adapter that cannot be created again. No adapter
+	 * parameters are set in config.xml, so a new instance is set up the same way.
+	 */
+	private static DataAdapter adapterForThread(DataAdapter shared) {
+		Map<Class<?>, DataAdapter> adapters = threadAdapters.get();
+		DataAdapter adapter = adapters.get(shared.getClass());
+		if (adapter == null) {
+			try {
+				adapter = shared.getClass().getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				logger.debug("Using the shared instance of " + shared.getClass().getName() + ": " + e.getMessage());
+				adapter = shared;
+			}
+			adapters.put(shared.getClass(), adapter);
+		}
+		return adapter;
 	}
 
 	public ToolOutput extractInfo(File file) throws FitsToolException {
@@ -75,56 +108,41 @@ public class MetadataExtractor extends ToolBase {
 		Document dom = null;
 		//Document rawDom = null;
 
-		// Make sure the Harvester System is initialized.
-		//Config.getInstance();
-
-		String baseUrl = Fits.FITS_XML_DIR+"nlnz";
-		Config.getInstance().setXMLBaseURL(baseUrl);
-
 		// Get the appropriate adapter.
-		DataAdapter adapter = AdapterFactory.getInstance().getAdapter(file);
+		DataAdapter shared = AdapterFactory.getInstance().getAdapter(file);
+		DataAdapter adapter = adapterForThread(shared);
 
 		//The adapter's DTD to use for output
 		String outDTD = adapter.getOutputType();
 
-		//output stream to hold raw output from adapter
-		ByteArrayOutputStream adapterOutput = new ByteArrayOutputStream(2048);
-
-		//holder for the transformed adapter output
-		//ByteArrayOutputStream tAdapterOutput = new ByteArrayOutputStream(2048);
-
-		// Set up the parser context and listener to hold the adapter output
+		// Set up the parser context and listener to build the adapter output
 		ParserContext pContext = new ParserContext();
 
-		ParserListener listener= new DTDXmlParserListener(adapterOutput, outDTD == null ? null
-				: Config.getInstance().getXMLBaseURL() + "/" + outDTD);
+		JdomParserListener listener = new JdomParserListener(outDTD == null ? null
+				: dtdBaseUrl + "/" + outDTD);
 		pContext.addListener(listener);
 
 		// Attempt to harvest the metadata.
 		try {
 			// Extract the metadata.
-			adapter.adapt(file, pContext);
-			dom = saxBuilder.build(new StringReader(adapterOutput.toString()));
+			if (adapter == shared) {
+				synchronized (shared) {
+					adapter.adapt(file, pContext);
+				}
+			} else {
+				adapter.adapt(file, pContext);
+			}
+			dom = listener.getDocument();
 		}
 		catch (JDOMException e) {
-            logger.error("Error parsing NLNZ Metadata Extractor XML output: " + e.getClass().getName());
-			throw new FitsToolException("Error parsing NLNZ Metadata Extractor XML output",e);
+            logger.error("Error building NLNZ Metadata Extractor XML output: " + e.getClass().getName());
+			throw new FitsToolException("Error building NLNZ Metadata Extractor XML output",e);
 		}
 		catch (Exception e) {
 			// harvesting metadata failed
             logger.error("NLNZ Metadata Extractor error while harvesting file: " + e.getClass().getName());
 			throw new FitsToolException("NLNZ Metadata Extractor error while harvesting file "+file.getName(),e);
 		}
-		finally {
-			//done with the adapter output streams so close them
-			try {
-				adapterOutput.close();
-				//tAdapterOutput.close();
-			} catch (IOException e) {
-			    logger.error("Error closing NLNZ Metadata Extractor XML output stream: " + e.getClass().getName());
-				throw new FitsToolException("Error closing NLNZ Metadata Extractor XML output stream",e);
-			}
-		}
 
 		//FileIdentity identity = null;
 		Document fitsXml = null;
@@ -141,11 +159,14 @@ public class MetadataExtractor extends ToolBase {
 
 		//XmlUtils.printToConsole(dom);
 
-		output = new ToolOutput(this,fitsXml,dom, fits);
+		// files on other threads run through this instance with their own adapters and
+		// set the output field too, so this file's output is returned from the local
+		ToolOutput toolOutput = new ToolOutput(this,fitsXml,dom, fits);
+		output = toolOutput;
 		duration = System.currentTimeMillis()-startTime;
         logger.debug("MetadataExtractor.extractInfo finished on " + file.getName());
 		runStatus = RunStatus.SUCCESSFUL;
-		return output;
+		return toolOutput;
 	}
 	/*
 	public boolean isIdentityKnown(FileIdentity identity) {
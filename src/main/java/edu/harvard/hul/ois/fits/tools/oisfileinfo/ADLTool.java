@@ -10,9 +10,8 @@
 
 package edu.harvard.hul.ois.fits.tools.oisfileinfo;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.util.Scanner;
 
 import org.jdom.Attribute;
 import org.jdom.Document;
@@ -25,6 +24,7 @@ import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.utils.HeaderLineReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +40,10 @@ public class ADLTool extends ToolBase {
 	private final static Namespace fitsNS = Namespace.getNamespace(Fits.XML_NAMESPACE);
 	private final static Namespace xsiNS = Namespace.getNamespace("xsi","http://www.w3.org/2001/XMLSchema-instance");
 	private static final Logger logger = LoggerFactory.getLogger(ADLTool.class);
+	// the most bytes read looking for the lines of the VERSION section
+	private final static int VERSION_SECTION_LIMIT = 64 * 1024;
+	// files larger than this are not parsed in full to validate them
+	private final long validationLimit;
 
 	public ADLTool(Fits fits) throws FitsToolException {
 		super();
@@ -47,6 +51,8 @@ public class ADLTool extends ToolBase {
 		info.setName("ADL Tool");
 		info.setVersion("0.1");
 		info.setDate("10/24/11");
+		long limitKb = fits.getConfig().getLong("adl_validation[@max-size-kb]", 16384);
+		validationLimit = limitKb < 0 ? -1 : limitKb * 1024;
 	}
 
 	public ToolOutput extractInfo(File file) throws FitsToolException {
@@ -73,15 +79,32 @@ public class ADLTool extends ToolBase {
 			String adlCreator = null;
 			String adlCreatorVersion = null;
 
+			boolean validate = validationLimit < 0 || file.length() <= validationLimit;
 			try	{
-				//creating an ADL object should be enough to validate it as ADL
-				new ADL(file);
-
-				Scanner scanner = new Scanner(new FileReader(file));
-			    try {
-			      //first use a Scanner to get each line
-			      while ( scanner.hasNextLine() ){
-			    	  String line = scanner.nextLine();
+				//creating an ADL object should be enough to validate it as ADL, but it parses the whole file
+				if(validate) {
+					new ADL(file);
+				}
+
+			    //the version lines are in the VERSION section at the start of the file
+			    boolean adlStart = false;
+			    boolean startRead = false;
+			    try (BufferedReader reader = HeaderLineReader.open(file, getFileContext(file), VERSION_SECTION_LIMIT)) {
+			      String line;
+			      while ( (line = reader.readLine()) != null ){
+			    	  if(!startRead) {
+			    		  String start = stripByteOrderMark(line).trim();
+			    		  //skip blank lines and an XML declaration or comments before the ADL start tag
+			    		  if(start.length() == 0 || start.startsWith("<?") || start.startsWith("<!")) {
+			    			  continue;
+			    		  }
+			    		  startRead = true;
+			    		  adlStart = start.equalsIgnoreCase("<ADL>");
+			    		  //a file too large to validate has to start as an ADL document
+			    		  if(!adlStart && !validate) {
+			    			  break;
+			    		  }
+			    	  }
 			    	  if(line.contains("(VER_ADL_VERSION)")) {
 			    		  adlVersion = getLineVal(line);
 			    	  }
@@ -91,11 +114,17 @@ public class ADLTool extends ToolBase {
 			    	  else if(line.contains("(VER_CRTR)")) {
 			    		  adlCreatorVersion = getLineVal(line);
 			    	  }
+			    	  else if(line.trim().equalsIgnoreCase("</VERSION>")) {
+			    		  break;
+			    	  }
+			    	  if(adlVersion != null && adlCreator != null && adlCreatorVersion != null) {
+			    		  break;
+			    	  }
 			      }
 			    }
-			    finally {
-			      //ensure the underlying stream is always closed
-			      scanner.close();
+			    //a file too large to parse is only checked for the start of an ADL document and its version
+			    if(!validate && (!adlStart || adlVersion == null)) {
+			    	throw new FitsToolException("No ADL start tag and version in the first " + VERSION_SECTION_LIMIT + " bytes");
 			    }
 			}
 			catch (Exception e)	{
@@ -152,6 +181,20 @@ public class ADLTool extends ToolBase {
 
 	}
 
+	/**
+	 * Removes a UTF-8 byte order mark from the start of the first line, decoded
+	 * either as UTF-8 or, with a single byte default charset, as its three bytes.
+	 */
+	private static String stripByteOrderMark(String line) {
+		if(line.startsWith("\uFEFF")) {
+			return line.substring(1);
+		}
+		if(line.startsWith("\u00EF\u00BB\u00BF")) {
+			return line.substring(3);
+		}
+		return line;
+	}
+
 	private String getLineVal(String line) {
 		String[] parts = line.split("\t");
 		return parts[parts.length-1];
@@ -20,19 +20,19 @@ import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
 
-import edu.harvard.hcl.hclaps.bwav.InvalidWaveHeaderException;
-import edu.harvard.hcl.hclaps.bwav.WAVEFile;
 import edu.harvard.hcl.hclaps.bwav.chunks.FormatChunk;
 import edu.harvard.hcl.hclaps.util.ByteConvertor;
 import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+import edu.harvard.hul.ois.fits.tools.FileContext;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This uses the audio file parsing library hclaps.jar provided by Dave Ackerman
+ * This reads the header of a WAVE file with {@link WaveHeader}, and uses the audio
+ * file parsing library hclaps.jar provided by Dave Ackerman for the names of formats
  * @author spencer
  *
  */
@@ -83,7 +83,7 @@ public class AudioInfo extends ToolBase {
 		catch(IOException e) {
 			throw new FitsToolException("Error getting magic number for file", e);
 		}
-		if(magicNum == 0x57415645) {
+		if(magicNum == WaveHeader.WAVE) {
 			doWav(root,file);
 		}
 		else {
@@ -94,15 +94,15 @@ public class AudioInfo extends ToolBase {
     }
 
 	private Element doWav(Element root, File file) throws FitsToolException {
-		WAVEFile wav = null;
+		WaveHeader wav = null;
 		try {
-			wav = new WAVEFile(file.getPath());
+			wav = WaveHeader.read(file);
 		}
 		catch (FileNotFoundException e) {
 			throw new FitsToolException("File "+file.getName() + " not found",e);
 		}
-		catch (InvalidWaveHeaderException e) {
-			throw new FitsToolException("Problem with HCLAPS Wave Header: " + e.getMessage(), e);
+		catch (IOException e) {
+			throw new FitsToolException("Problem with Wave Header: " + e.getMessage(), e);
 		}
 
 		Element metadata = new Element("metadata",fitsNS);
@@ -118,48 +118,48 @@ public class AudioInfo extends ToolBase {
 		root.addContent(identification);
 
 		Element numSamples = new Element("numSamples",fitsNS);
-		numSamples.setText(String.valueOf(wav.dataChunk().getNumberOfSampleFrames()));
+		numSamples.setText(String.valueOf(wav.getNumberOfSampleFrames()));
 		audioMetadata.addContent(numSamples);
 
 		Element samplesPerSecond = new Element("sampleRate",fitsNS);
-		samplesPerSecond.setText(String.valueOf(wav.formatChunk().getSamplesPerSecond()));
+		samplesPerSecond.setText(String.valueOf(wav.getSamplesPerSecond()));
 		audioMetadata.addContent(samplesPerSecond);
 
 		Element audioDataEncoding = new Element("audioDataEncoding",fitsNS);
-		audioDataEncoding.setText(String.valueOf(FormatChunk.FormatTagDescription.getFormatTagDescription(wav.formatChunk().getFormatTag())));
+		audioDataEncoding.setText(String.valueOf(FormatChunk.FormatTagDescription.getFormatTagDescription(wav.getFormatTag())));
 		audioMetadata.addContent(audioDataEncoding);
 
 		Element blockAlign = new Element("blockAlign",fitsNS);
-		blockAlign.setText(String.valueOf(wav.formatChunk().getBlockAlign()));
+		blockAlign.setText(String.valueOf(wav.getBlockAlign()));
 		audioMetadata.addContent(blockAlign);
 
 		Element time = new Element("time",fitsNS);
-		if(wav.bextChunk() != null) {
-			time.setText(String.valueOf(wav.bextChunk().getTimeReference()));
+		if(wav.getTimeReference() != null) {
+			time.setText(String.valueOf(wav.getTimeReference()));
 		}
 		audioMetadata.addContent(time);
 
 		Element numChannels = new Element("channels",fitsNS);
-		numChannels.setText(String.valueOf(wav.formatChunk().getNumberOfChannels()));
+		numChannels.setText(String.valueOf(wav.getNumberOfChannels()));
 		audioMetadata.addContent(numChannels);
 
 		Element bitDepth = new Element("bitDepth",fitsNS);
-		bitDepth.setText(String.valueOf(wav.formatChunk().getBitsPerSample()));
+		bitDepth.setText(String.valueOf(wav.getBitsPerSample()));
 		audioMetadata.addContent(bitDepth);
 
 		Element wordSize = new Element("wordSize",fitsNS);
-		wordSize.setText(String.valueOf(wav.formatChunk().getBlockAlign() / wav.formatChunk().getNumberOfChannels()));
+		wordSize.setText(String.valueOf(wav.getBlockAlign() / wav.getNumberOfChannels()));
 		audioMetadata.addContent(wordSize);
 
 		Element offset = new Element("offset",fitsNS);
-		offset.setText(Long.toString(wav.dataChunk().getPositionInFile() + 8));
+		offset.setText(Long.toString(wav.getDataOffset()));
 		audioMetadata.addContent(offset);
 
 		Element soundField = new Element("soundField",fitsNS);
-		if (wav.formatChunk().getNumberOfChannels() == 1) {
+		if (wav.getNumberOfChannels() == 1) {
 			soundField.setText("MONO");
 		}
-		else if (wav.formatChunk().getNumberOfChannels() == 2) {
+		else if (wav.getNumberOfChannels() == 2) {
 			soundField.setText("STEREO");
 		}
 		else {
@@ -187,9 +187,17 @@ public class AudioInfo extends ToolBase {
 		byte[] mn = new byte[12];
 		int rval = -1;
 
-		FileInputStream fis = new FileInputStream(file);
-		fis.read(mn);
-		fis.close();
+		// the header is usually already in memory, shared with the other tools
+		FileContext context = getFileContext(file);
+		byte[] header = context != null ? context.getHeaderBytes(mn.length) : null;
+		if (header != null) {
+			System.arraycopy(header, 0, mn, 0, header.length);
+		}
+		else {
+			FileInputStream fis = new FileInputStream(file);
+			fis.read(mn);
+			fis.close();
+		}
 
 		byte[] buffer = new byte[4];
 		for (int i = 0; i < 4; i++)
@@ -199,7 +207,7 @@ public class AudioInfo extends ToolBase {
 
 		rval = (int)ByteConvertor.uIntForBytes(buffer, ByteConvertor.BIG);
 
-		if (rval == 0x52494646) //RIFF
+		if (rval == WaveHeader.RIFF || rval == WaveHeader.RF64 || rval == WaveHeader.BW64)
 		{
 			buffer = new byte[4];
 			for (int i = 8; i < 12; i++)
@@ -0,0 +1,364 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checksums read from manifests that accompany the files being examined, so that
+ * FileInfo can report them instead of reading the whole file again.
+ * <p>
+ * Three line formats are understood, with paths relative to the directory holding
+ * the manifest:
+ * <ul>
+ * <li>BagIt manifests (manifest-&lt;algorithm&gt;.txt and tagmanifest-&lt;algorithm&gt;.txt):
+ * <code>checksum path</code></li>
+ * <li>md5sum/sha256sum style: <code>checksum  path</code> or <code>checksum *path</code></li>
+ * <li>BSD tag style, as written by "sha256sum --tag": <code>SHA256 (path) = checksum</code></li>
+ * </ul>
+ * The algorithm of untagged lines is taken from the manifest file name
+ * (manifest-sha256.txt, files.md5, ...) or, failing that, from the length of the checksum.
+ * <p>
+ * When BagIt detection is on, the bag enclosing each file looked up (the nearest
+ * ancestor directory holding a bagit.txt) has its manifests loaded the first time
+ * one of its files is seen. The manifests of the {@value #MAX_BAGS} most recently
+ * used bags are kept.
+ * <p>
+ * A manifest is read again when its size or modification time has changed since
+ * it was read, and a bag when a manifest is added to or removed from its root.
+ * So that each lookup does not stat every manifest, a manifest, bag or directory is
+ * checked for changes at most once every {@value #CHECK_INTERVAL_MILLIS} ms.
+ */
+public class ChecksumManifests {
+
+	private static final Pattern BAGIT_MANIFEST = Pattern.compile("(?:tag)?manifest-([A-Za-z0-9-]+)\\.txt");
+	private static final Pattern BSD_TAG_LINE = Pattern.compile("([A-Za-z0-9-]+) \\((.*)\\) = ([0-9A-Fa-f]+)");
+	private static final Pattern PLAIN_LINE = Pattern.compile("([0-9A-Fa-f]+)\\s+\\*?(.*)");
+
+	static final int MAX_BAGS = 16;
+	static final int MAX_DIRECTORIES = 4096;
+	static final long CHECK_INTERVAL_MILLIS = 2000;
+
+	private static final Logger logger = LoggerFactory.getLogger(ChecksumManifests.class);
+
+	private final boolean detectBagIt;
+	private final long checkIntervalNanos;
+	// manifests given with load()
+	private final List<Manifest> manifests = new CopyOnWriteArrayList<Manifest>();
+	// bag root to its manifests, least recently used first
+	private final Map<Path,Bag> bags = new LruMap<Bag>(MAX_BAGS);
+	// directories already checked for bagit.txt, and whether they are bag roots
+	private final Map<Path,BagRoot> bagRoots = new LruMap<BagRoot>(MAX_DIRECTORIES);
+
+	public ChecksumManifests(boolean detectBagIt) {
+		this(detectBagIt, CHECK_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param checkIntervalMillis the time for which manifests and directories are not checked for changes again
+	 */
+	ChecksumManifests(boolean detectBagIt, long checkIntervalMillis) {
+		this.detectBagIt = detectBagIt;
+		this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+	}
+
+	/**
+	 * Reads the checksums in a manifest file.
+	 *
+	 * @throws IOException if the manifest cannot be read
+	 */
+	public void load(File manifest) throws IOException {
+		manifests.add(Manifest.read(manifest.getAbsoluteFile().toPath()));
+	}
+
+	/**
+	 * Returns the checksums the manifests give for a file, as a map from algorithm
+	 * (e.g. MD5, SHA-256) to lower case hex value. The map is empty if no manifest
+	 * lists the file.
+	 */
+	public Map<String,String> lookup(File file) {
+		Path path = file.getAbsoluteFile().toPath().normalize();
+		Map<String,String> values = new LinkedHashMap<String,String>();
+		long now = System.nanoTime();
+		for (int i = 0; i < manifests.size(); i++) {
+			Manifest manifest = manifests.get(i);
+			if (!manifest.isCurrent(now, checkIntervalNanos)) {
+				try {
+					manifest = Manifest.read(manifest.path);
+					manifests.set(i, manifest);
+				} catch (IOException e) {
+					logger.warn("Could not read checksum manifest " + manifest.path + " again: " + e.getMessage());
+					continue;
+				}
+			}
+			manifest.addTo(path, values);
+		}
+		if (detectBagIt) {
+			Bag bag = getEnclosingBag(path, now);
+			if (bag != null) {
+				for (Manifest manifest : bag.manifests) {
+					manifest.addTo(path, values);
+				}
+			}
+		}
+		return values;
+	}
+
+	private Bag getEnclosingBag(Path file, long now) {
+		for (Path dir = file.getParent(); dir != null; dir = dir.getParent()) {
+			BagRoot bagRoot;
+			synchronized (bagRoots) {
+				bagRoot = bagRoots.get(dir);
+			}
+			// a bagit.txt may have been added or removed since the directory was checked
+			if (bagRoot == null || now - bagRoot.checkedAt >= checkIntervalNanos) {
+				bagRoot = new BagRoot(Files.isRegularFile(dir.resolve("bagit.txt")), now);
+				synchronized (bagRoots) {
+					bagRoots.put(dir, bagRoot);
+				}
+			}
+			if (bagRoot.isRoot) {
+				return getBag(dir, now);
+			}
+		}
+		return null;
+	}
+
+	private Bag getBag(Path root, long now) {
+		synchronized (bags) {
+			Bag bag = bags.get(root);
+			if (bag == null || !bag.isCurrent(now, checkIntervalNanos)) {
+				bag = Bag.read(root);
+				bags.put(root, bag);
+			}
+			return bag;
+		}
+	}
+
+	private static String algorithmForLength(int hexLength) {
+		switch (hexLength) {
+		case 32: return FixityCalculator.MD5;
+		case 40: return FixityCalculator.SHA1;
+		case 64: return FixityCalculator.SHA256;
+		case 128: return FixityCalculator.SHA512;
+		default: return null;
+		}
+	}
+
+	// BagIt percent-encodes CR, LF and % in manifest paths
+	private static String decodeBagItPath(String path) {
+		if (path.indexOf('%') < 0) {
+			return path;
+		}
+		return path.replace("%0D", "\r").replace("%0d", "\r").replace("%0A", "\n").replace("%0a", "\n").replace("%25", "%");
+	}
+
+	/** Returns the size and modification time of a file, or null if it no longer exists. */
+	private static BasicFileAttributes stat(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/** The checksums of one manifest file, with its size and modification time when read. */
+	private static final class Manifest {
+		final Path path;
+		final long size;
+		final long lastModified;
+		// absolute file path to algorithm to checksum
+		final Map<Path,Map<String,String>> checksums = new HashMap<Path,Map<String,String>>();
+		// System.nanoTime() when the file was last found unchanged
+		private volatile long checkedAt = System.nanoTime();
+
+		private Manifest(Path path, BasicFileAttributes attributes) {
+			this.path = path;
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+		}
+
+		static Manifest read(Path path) throws IOException {
+			Manifest manifest = new Manifest(path, Files.readAttributes(path, BasicFileAttributes.class));
+			Path base = path.getParent();
+			String name = path.getFileName().toString();
+			Matcher bagitName = BAGIT_MANIFEST.matcher(name);
+			boolean bagit = bagitName.matches();
+			String fileAlgorithm = bagit ? FixityCalculator.normalizeAlgorithm(bagitName.group(1))
+					: FixityCalculator.normalizeAlgorithm(name.substring(name.lastIndexOf('.') + 1));
+
+			int count = 0;
+			try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.trim().isEmpty() || line.startsWith("#")) {
+						continue;
+					}
+					String algorithm;
+					String file;
+					String value;
+					Matcher tagged = BSD_TAG_LINE.matcher(line);
+					Matcher plain = PLAIN_LINE.matcher(line);
+					if (tagged.matches()) {
+						algorithm = FixityCalculator.normalizeAlgorithm(tagged.group(1));
+						file = tagged.group(2);
+						value = tagged.group(3);
+					}
+					else if (plain.matches()) {
+						value = plain.group(1);
+						file = plain.group(2);
+						algorithm = fileAlgorithm != null ? fileAlgorithm : algorithmForLength(value.length());
+					}
+					else {
+						logger.debug("Skipping unrecognized line in " + path + ": " + line);
+						continue;
+					}
+					if (algorithm == null) {
+						continue;
+					}
+					if (bagit) {
+						file = decodeBagItPath(file);
+					}
+					manifest.add(base.resolve(file).normalize(), algorithm, value.toLowerCase());
+					count++;
+				}
+			}
+			logger.debug("Read " + count + " checksums from " + path);
+			return manifest;
+		}
+
+		private void add(Path file, String algorithm, String value) {
+			Map<String,String> values = checksums.get(file);
+			if (values == null) {
+				values = new LinkedHashMap<String,String>();
+				checksums.put(file, values);
+			}
+			values.put(algorithm, value);
+		}
+
+		void addTo(Path file, Map<String,String> values) {
+			Map<String,String> listed = checksums.get(file);
+			if (listed != null) {
+				values.putAll(listed);
+			}
+		}
+
+		/** Whether the file is unchanged, or was found unchanged less than the interval before now. */
+		boolean isCurrent(long now, long intervalNanos) {
+			if (now - checkedAt < intervalNanos) {
+				return true;
+			}
+			BasicFileAttributes attributes = stat(path);
+			boolean current = attributes != null && attributes.size() == size
+					&& attributes.lastModifiedTime().toMillis() == lastModified;
+			if (current) {
+				checkedAt = now;
+			}
+			return current;
+		}
+	}
+
+	/** The manifests of a BagIt bag, with the modification time of its root when read. */
+	private static final class Bag {
+		final Path root;
+		final long lastModified;
+		final List<Manifest> manifests = new ArrayList<Manifest>();
+		// System.nanoTime() when the root and manifests were last found unchanged, guarded by the bags map
+		private long checkedAt = System.nanoTime();
+
+		private Bag(Path root, long lastModified) {
+			this.root = root;
+			this.lastModified = lastModified;
+		}
+
+		static Bag read(Path root) {
+			logger.debug("Loading manifests of BagIt bag " + root);
+			BasicFileAttributes attributes = stat(root);
+			Bag bag = new Bag(root, attributes == null ? -1 : attributes.lastModifiedTime().toMillis());
+			try (DirectoryStream<Path> manifests = Files.newDirectoryStream(root, "*manifest-*.txt")) {
+				for (Path manifest : manifests) {
+					if (BAGIT_MANIFEST.matcher(manifest.getFileName().toString()).matches()) {
+						bag.manifests.add(Manifest.read(manifest));
+					}
+				}
+			} catch (IOException e) {
+				logger.warn("Could not read the manifests of BagIt bag " + root + ": " + e.getMessage());
+			}
+			return bag;
+		}
+
+		// a manifest added to or removed from the root changes its modification time
+		boolean isCurrent(long now, long intervalNanos) {
+			if (now - checkedAt < intervalNanos) {
+				return true;
+			}
+			BasicFileAttributes attributes = stat(root);
+			if (attributes == null || attributes.lastModifiedTime().toMillis() != lastModified) {
+				return false;
+			}
+			for (Manifest manifest : manifests) {
+				// checked now, whatever the time the manifest was last checked
+				if (!manifest.isCurrent(now, 0)) {
+					return false;
+				}
+			}
+			checkedAt = now;
+			return true;
+		}
+	}
+
+	/** Whether a directory held a bagit.txt, and the System.nanoTime() when it was checked. */
+	private static final class BagRoot {
+		final boolean isRoot;
+		final long checkedAt;
+
+		BagRoot(boolean isRoot, long checkedAt) {
+			this.isRoot = isRoot;
+			this.checkedAt = checkedAt;
+		}
+	}
+
+	/** A map that drops its least recently used entry past a maximum size. */
+	private static final class LruMap<V> extends LinkedHashMap<Path,V> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		LruMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path,V> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+}
@@ -12,7 +12,17 @@ package edu.harvard.hul.ois.fits.tools.oisfileinfo;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.io.FilenameUtils;
 import org.jdom.Attribute;
@@ -20,10 +30,9 @@ import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
 
-import com.twmacinta.util.MD5;
-
 import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+import edu.harvard.hul.ois.fits.tools.FileContext;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
 import org.slf4j.Logger;
@@ -31,9 +40,11 @@ import org.slf4j.LoggerFactory;
 
 /**
  * The FileInfo tool uses Java system calls to get basic information about
- * a file, as well as calculating an MD5 digest.
+ * a file, as well as calculating checksums (MD5 by default, optionally SHA-1,
+ * SHA-256, SHA-512 and CRC32C) in a single read of the file. Checksums listed in
+ * configured manifests or BagIt bag manifests can be reported instead of computed.
  *
- *  @see <a href="http://www.twmacinta.com/myjava/fast_md5.php">Fast MD5 Implementation in Java</a>
+ * @see FixityCalculator
  */
 public class FileInfo extends ToolBase {
 
@@ -48,6 +59,10 @@ public class FileInfo extends ToolBase {
 
     private boolean enabled = true;
     private Fits fits;
+    private final List<String> checksumAlgorithms;
+    private final long deferredChecksumMinSize;
+    private final ChecksumManifests manifests;
+    private final double manifestVerifyRate;
 
 	public FileInfo(Fits fits) throws FitsToolException{
 		super();
@@ -56,6 +71,45 @@ public class FileInfo extends ToolBase {
         info.setName(TOOL_NAME);
 		info.setVersion(TOOL_VERSION);
 		info.setDate(TOOL_DATE);
+
+		// algorithms to compute when checksums are enabled, MD5 only unless configured
+		checksumAlgorithms = new ArrayList<String>();
+		List<?> configured = fits.getConfig().getList("output.checksum-algorithms", Arrays.asList(FixityCalculator.MD5));
+		for (Object name : configured) {
+			if (name == null || name.toString().trim().isEmpty()) {
+				continue;
+			}
+			String algorithm = FixityCalculator.normalizeAlgorithm(name.toString());
+			if (algorithm == null) {
+				throw new FitsToolException("Unsupported algorithm in fits.xml output/checksum-algorithms: " + name
+						+ " (supported: " + FixityCalculator.ALGORITHMS + ")");
+			}
+			if (!checksumAlgorithms.contains(algorithm)) {
+				checksumAlgorithms.add(algorithm);
+			}
+		}
+
+		// files at least this large have their checksums finished after the rest of the output
+		long minSizeMb = fits.getConfig().getLong("output.deferred-checksum[@min-size-mb]", -1);
+		deferredChecksumMinSize = minSizeMb < 0 ? -1 : minSizeMb * 1024 * 1024;
+
+		// checksums can be taken from trusted manifests, such as those of BagIt bags
+		List<?> manifestFiles = fits.getConfig().getList("output.checksum-manifests.manifest");
+		boolean detectBagIt = fits.getConfig().getBoolean("output.checksum-manifests[@detect-bagit]", false);
+		manifestVerifyRate = fits.getConfig().getDouble("output.checksum-manifests[@verify-sample-rate]", 0);
+		if (detectBagIt || !manifestFiles.isEmpty()) {
+			manifests = new ChecksumManifests(detectBagIt);
+			for (Object manifest : manifestFiles) {
+				try {
+					manifests.load(new File(manifest.toString().trim()));
+				} catch (IOException e) {
+					throw new FitsToolException("Could not read checksum manifest " + manifest, e);
+				}
+			}
+		}
+		else {
+			manifests = null;
+		}
 	}
 
 	public ToolOutput extractInfo(File file) throws FitsToolException {
@@ -71,6 +125,40 @@ public class FileInfo extends ToolBase {
 
 	private Document createXml(File file) throws FitsToolException {
 
+		FileContext context = getFileContext(file);
+
+		// start reading the file for the checksums while the rest is gathered. Checksums
+		// listed in a trusted manifest are reported without reading the file.
+		Map<String,String> fromManifest = new LinkedHashMap<String,String>();
+		CompletableFuture<Map<String,String>> checksums = null;
+		if (fits.getConfig().getBoolean("output.enable-checksum") && !checksumAlgorithms.isEmpty()) {
+			@SuppressWarnings("unchecked")
+			List<String> checsumExcludes = (List<String>)(List<?>)fits.getConfig().getList("output.checksum-exclusions[@exclude-exts]");
+			String ext = FilenameUtils.getExtension(file.getPath());
+			if(!hasExcludedExtensionForMD5(ext, checsumExcludes)) {
+				List<String> toCompute = new ArrayList<String>(checksumAlgorithms);
+				if (manifests != null) {
+					Map<String,String> listed = manifests.lookup(file);
+					for (String algorithm : checksumAlgorithms) {
+						if (listed.containsKey(algorithm)) {
+							fromManifest.put(algorithm, listed.get(algorithm));
+							toCompute.remove(algorithm);
+						}
+					}
+					verifySample(file, fromManifest, context);
+				}
+				if (!toCompute.isEmpty()) {
+					checksums = FixityCalculator.submit(file, toCompute);
+				}
+			}
+		}
+		// large files: let Fits finish without the checksums and hand it the future instead
+		if (checksums != null && deferredChecksumMinSize >= 0 && context != null
+				&& context.getSize() >= deferredChecksumMinSize) {
+			logger.debug("Deferring checksums for " + file.getName());
+			context.deferChecksums(checksums, info);
+			checksums = null;
+		}
 
 		Element root = new Element("fits",fitsNS);
 		root.setAttribute(new Attribute("schemaLocation",
@@ -88,34 +176,74 @@ public class FileInfo extends ToolBase {
 		fileInfo.addContent(fileName);
 		//size
 		Element size = new Element("size",fitsNS);
-		size.setText(String.valueOf(file.length()));
+		size.setText(String.valueOf(context != null ? context.getSize() : file.length()));
 		fileInfo.addContent(size);
-		//Calculate the MD5 checksum
-		if (fits.getConfig().getBoolean("output.enable-checksum")) {
-			@SuppressWarnings("unchecked")
-			List<String> checsumExcludes = (List<String>)(List<?>)fits.getConfig().getList("output.checksum-exclusions[@exclude-exts]");
-			String ext = FilenameUtils.getExtension(file.getPath());
-			if(!hasExcludedExtensionForMD5(ext, checsumExcludes)) {
-				try {
-					String md5Hash = MD5.asHex(MD5.getHash(new File(file.getPath())));
-					Element signature = new Element("md5checksum",fitsNS);
-					signature.setText(md5Hash);
-					fileInfo.addContent(signature);
-				} catch (IOException e) {
-					throw new FitsToolException("Could not calculate the MD5 for "+file.getPath(),e);
+		//checksums (md5checksum, sha256checksum, ...)
+		Map<String,String> computed = checksums != null ? awaitChecksums(checksums, file) : Collections.<String,String>emptyMap();
+		for (String algorithm : checksumAlgorithms) {
+			String value = fromManifest.get(algorithm);
+			boolean listed = value != null;
+			if (!listed) {
+				value = computed.get(algorithm);
+			}
+			if (value != null) {
+				Element signature = new Element(FixityCalculator.getElementName(algorithm),fitsNS);
+				if (listed) {
+					signature.setAttribute("source","manifest");
 				}
+				signature.setText(value);
+				fileInfo.addContent(signature);
 			}
-
 		}
 		//fslastmodified
 		Element fslastmodified = new Element("fslastmodified",fitsNS);
-		fslastmodified.setText(String.valueOf(file.lastModified()));
+		fslastmodified.setText(String.valueOf(context != null ? context.getLastModified() : file.lastModified()));
 		fileInfo.addContent(fslastmodified);
 		root.addContent(fileInfo);
 
 		return new Document(root);
     }
 
+	/*
+	 * For the configured fraction of files, computes the checksums taken from a manifest
+	 * in the background and logs an error if they do not match.
+	 */
+	private void verifySample(final File file, final Map<String,String> expected, FileContext context) {
+		if (expected.isEmpty() || manifestVerifyRate <= 0 || ThreadLocalRandom.current().nextDouble() >= manifestVerifyRate) {
+			return;
+		}
+		CompletableFuture<Void> verification = FixityCalculator.submit(file, new ArrayList<String>(expected.keySet()))
+				.thenAccept(actual -> {
+					for (Map.Entry<String,String> checksum : expected.entrySet()) {
+						String value = actual.get(checksum.getKey());
+						if (!checksum.getValue().equals(value)) {
+							logger.error("Checksum mismatch for " + file.getPath() + ": manifest " + checksum.getKey()
+									+ " is " + checksum.getValue() + " but the file's is " + value);
+						}
+					}
+				})
+				.exceptionally(e -> {
+					logger.error("Could not verify the manifest checksums for " + file.getPath() + ": " + e.getMessage());
+					return null;
+				});
+		if (context != null) {
+			context.addBackgroundWork(verification);
+		}
+	}
+
+	private Map<String,String> awaitChecksums(Future<Map<String,String>> checksums, File file) throws FitsToolException {
+		try {
+			return checksums.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+			throw new FitsToolException("Could not calculate the checksums for "+file.getPath(),cause);
+		} catch (InterruptedException e) {
+			checksums.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new FitsToolException("Interrupted calculating the checksums for "+file.getPath(),e);
+		}
+	}
+
 	// NOTE: This check is separate from the tool extension exclusions
 	public boolean hasExcludedExtensionForMD5(String ext, List<String> excludedExtensions) {
 		for(String extension : excludedExtensions) {
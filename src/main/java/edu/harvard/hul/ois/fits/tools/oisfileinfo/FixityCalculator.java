@@ -0,0 +1,199 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.harvard.hul.ois.fits.tools.utils.Crc32c;
+
+/**
+ * Computes any combination of the supported fixity algorithms (MD5, SHA-1, SHA-256,
+ * SHA-512 and CRC32C) in a single sequential pass over a file.
+ * <p>
+ * Files are read in large blocks through a FileChannel into a direct buffer, and each
+ * block is fed to every requested algorithm before the next block is read. Work
+ * submitted through {@link #submit(File, List)} runs on a small dedicated pool of I/O
+ * threads, so that hashing large files is not counted against the tool threads and
+ * several files are not all read from disk at once.
+ */
+public class FixityCalculator {
+
+	public static final String MD5 = "MD5";
+	public static final String SHA1 = "SHA-1";
+	public static final String SHA256 = "SHA-256";
+	public static final String SHA512 = "SHA-512";
+	public static final String CRC32C = "CRC32C";
+
+	/** Supported algorithms, in the order their elements appear in the output. */
+	public static final List<String> ALGORITHMS = Collections.unmodifiableList(Arrays.asList(MD5, SHA1, SHA256, SHA512, CRC32C));
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+	private static final int IO_THREADS = 2;
+
+	private static final ExecutorService ioExecutor = Executors.newFixedThreadPool(IO_THREADS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "FITS fixity I/O " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	// one read buffer and one copy of each block per thread
+	private static final ThreadLocal<ByteBuffer> readBuffer = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BLOCK_SIZE);
+		}
+	};
+	private static final ThreadLocal<byte[]> blockArray = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[BLOCK_SIZE];
+		}
+	};
+
+	private FixityCalculator() {
+	}
+
+	/**
+	 * Returns the supported algorithm matching the given name, ignoring case and
+	 * an optional hyphen (e.g. "sha256" gives "SHA-256"), or null if it is not supported.
+	 */
+	public static String normalizeAlgorithm(String name) {
+		if (name == null) {
+			return null;
+		}
+		String key = name.trim().replace("-", "");
+		for (String algorithm : ALGORITHMS) {
+			if (algorithm.replace("-", "").equalsIgnoreCase(key)) {
+				return algorithm;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the name of the fileinfo element holding the checksum for an algorithm,
+	 * e.g. md5checksum or sha256checksum.
+	 */
+	public static String getElementName(String algorithm) {
+		return algorithm.replace("-", "").toLowerCase() + "checksum";
+	}
+
+	/**
+	 * Starts computing the checksums on the I/O pool.
+	 *
+	 * @return a future for a map from algorithm to lower case hex value, in the order
+	 * the algorithms were given. If the file cannot be read the future completes
+	 * exceptionally with an UncheckedIOException.
+	 */
+	public static CompletableFuture<Map<String,String>> submit(final File file, final List<String> algorithms) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return compute(file, algorithms);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, ioExecutor);
+	}
+
+	/**
+	 * Computes the checksums on the calling thread.
+	 *
+	 * @return a map from algorithm to lower case hex value, in the order the algorithms were given
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if an algorithm is not supported
+	 */
+	public static Map<String,String> compute(File file, List<String> algorithms) throws IOException {
+		List<MessageDigest> digests = new ArrayList<MessageDigest>(algorithms.size());
+		Crc32c crc = null;
+		for (String algorithm : algorithms) {
+			if (CRC32C.equals(algorithm)) {
+				crc = new Crc32c();
+			}
+			else if (ALGORITHMS.contains(algorithm)) {
+				try {
+					digests.add(MessageDigest.getInstance(algorithm));
+				} catch (NoSuchAlgorithmException e) {
+					throw new IllegalStateException("Required digest algorithm not available: " + algorithm, e);
+				}
+			}
+			else {
+				throw new IllegalArgumentException("Unsupported checksum algorithm: " + algorithm);
+			}
+		}
+
+		ByteBuffer buffer = readBuffer.get();
+		byte[] block = blockArray.get();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			while (true) {
+				buffer.clear();
+				int read = channel.read(buffer);
+				if (read < 0) {
+					break;
+				}
+				buffer.flip();
+				int length = buffer.remaining();
+				// a single copy out of the direct buffer serves all of the digests
+				buffer.get(block, 0, length);
+				for (MessageDigest digest : digests) {
+					digest.update(block, 0, length);
+				}
+				if (crc != null) {
+					crc.update(block, 0, length);
+				}
+			}
+		}
+
+		Map<String,String> values = new LinkedHashMap<String,String>();
+		int d = 0;
+		for (String algorithm : algorithms) {
+			if (CRC32C.equals(algorithm)) {
+				values.put(algorithm, String.format("%08x", crc.getValue()));
+			}
+			else {
+				values.put(algorithm, toHex(digests.get(d++).digest()));
+			}
+		}
+		return values;
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		final char[] digits = "0123456789abcdef".toCharArray();
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = digits[(bytes[i] >> 4) & 0x0f];
+			hex[i * 2 + 1] = digits[bytes[i] & 0x0f];
+		}
+		return new String(hex);
+	}
+
+}
@@ -0,0 +1,216 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The image metadata of a JPEG, TIFF or JPEG 2000 file, read from the headers
+ * in a window on the file: JPEG markers up to the start of scan with their EXIF
+ * and ICC segments, the first TIFF IFD with its EXIF IFD, or the JP2 header boxes
+ * and the main header of the codestream. The values are held by the name of the
+ * FITS image element they fill, in the wording Jhove gives them, so that the two
+ * tools agree where they overlap.
+ */
+class ImageHeader {
+
+	static final String BYTE_ORDER = "byteOrder";
+	static final String COMPRESSION_SCHEME = "compressionScheme";
+	static final String IMAGE_WIDTH = "imageWidth";
+	static final String IMAGE_HEIGHT = "imageHeight";
+	static final String COLOR_SPACE = "colorSpace";
+	static final String ICC_PROFILE_NAME = "iccProfileName";
+	static final String ICC_PROFILE_VERSION = "iccProfileVersion";
+	static final String TILE_WIDTH = "tileWidth";
+	static final String TILE_HEIGHT = "tileHeight";
+	static final String QUALITY_LAYERS = "qualityLayers";
+	static final String RESOLUTION_LEVELS = "resolutionLevels";
+	static final String ORIENTATION = "orientation";
+	static final String SAMPLING_FREQUENCY_UNIT = "samplingFrequencyUnit";
+	static final String X_SAMPLING_FREQUENCY = "xSamplingFrequency";
+	static final String Y_SAMPLING_FREQUENCY = "ySamplingFrequency";
+	static final String BITS_PER_SAMPLE = "bitsPerSample";
+	static final String SAMPLES_PER_PIXEL = "samplesPerPixel";
+	static final String SCANNER_MANUFACTURER = "scannerManufacturer";
+	static final String SCANNER_MODEL_NAME = "scannerModelName";
+	static final String SCANNING_SOFTWARE_NAME = "scanningSoftwareName";
+	static final String DIGITAL_CAMERA_MANUFACTURER = "digitalCameraManufacturer";
+	static final String DIGITAL_CAMERA_MODEL_NAME = "digitalCameraModelName";
+	static final String F_NUMBER = "fNumber";
+	static final String EXPOSURE_TIME = "exposureTime";
+	static final String ISO_SPEED_RATING = "isoSpeedRating";
+	static final String EXIF_VERSION = "exifVersion";
+	static final String FOCAL_LENGTH = "focalLength";
+
+	static final String BIG_ENDIAN = "big endian";
+	static final String LITTLE_ENDIAN = "little endian";
+
+	private static final String[] SAMPLING_FREQUENCY_UNITS = {
+		null, "no absolute unit of measurement", "in.", "cm" };
+
+	private String format;
+	private String mimeType;
+	private final Map<String,String> values = new HashMap<String,String>();
+
+	/**
+	 * Reads the image metadata from a window on the start of a file, which has to
+	 * reach as far into the file as the headers do; a TIFF's IFD can be anywhere.
+	 * @return the metadata, or null if the window does not start with the
+	 *         signature of a JPEG, TIFF or JPEG 2000 file
+	 * @throws IOException if the headers are cut short or corrupt
+	 */
+	static ImageHeader read(ByteBuffer window) throws IOException {
+		ByteBuffer buf = window.duplicate().order(ByteOrder.BIG_ENDIAN);
+		buf.position(0);
+		ImageHeader header = new ImageHeader();
+		try {
+			if (JpegHeaderReader.matches(buf)) {
+				JpegHeaderReader.read(buf, header);
+			}
+			else if (TiffHeaderReader.matches(buf)) {
+				TiffHeaderReader.readTiff(buf, header);
+			}
+			else if (Jp2HeaderReader.matches(buf)) {
+				Jp2HeaderReader.read(buf, header);
+			}
+			else {
+				return null;
+			}
+		}
+		catch (IndexOutOfBoundsException e) {
+			// an offset or length in the headers points past the window
+			throw new IOException("Image header is truncated or corrupt", e);
+		}
+		return header;
+	}
+
+	String getFormat() {
+		return format;
+	}
+
+	String getMimeType() {
+		return mimeType;
+	}
+
+	void setIdentity(String format, String mimeType) {
+		this.format = format;
+		this.mimeType = mimeType;
+	}
+
+	/** Returns the value for a FITS image element, or null if none was read. */
+	String get(String element) {
+		return values.get(element);
+	}
+
+	/** Sets the value of a FITS image element, unless it is null or empty. */
+	void set(String element, Object value) {
+		if (value != null && value.toString().trim().length() > 0) {
+			values.put(element, value.toString().trim());
+		}
+	}
+
+	/** Sets the value of a FITS image element that has not been set yet. */
+	void setIfAbsent(String element, Object value) {
+		if (!values.containsKey(element)) {
+			set(element, value);
+		}
+	}
+
+	/**
+	 * Sets the sampling frequencies with a TIFF or JFIF resolution unit: 1 for
+	 * none, 2 for inches, 3 for centimeters. Frequencies are rounded as the FITS
+	 * Jhove stylesheet rounds them.
+	 */
+	void setSamplingFrequency(int unit, double x, double y, boolean ifAbsent) {
+		if (ifAbsent && values.containsKey(X_SAMPLING_FREQUENCY)) {
+			return;
+		}
+		if (unit > 0 && unit < SAMPLING_FREQUENCY_UNITS.length) {
+			set(SAMPLING_FREQUENCY_UNIT, SAMPLING_FREQUENCY_UNITS[unit]);
+		}
+		if (x > 0) {
+			set(X_SAMPLING_FREQUENCY, Math.round(x));
+		}
+		if (y > 0) {
+			set(Y_SAMPLING_FREQUENCY, Math.round(y));
+		}
+	}
+
+	/**
+	 * Sets the name and version of an ICC profile from its header and its 'desc'
+	 * tag, when the tag is of the version 2 'desc' type and within the window.
+	 */
+	void readIccProfile(ByteBuffer buf, int offset, int length) {
+		if (length < 132 || offset + length > buf.limit()) {
+			return;
+		}
+		ByteBuffer icc = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int major = icc.get(offset + 8) & 0xFF;
+		int minor = icc.get(offset + 9) & 0xFF;
+		setIfAbsent(ICC_PROFILE_VERSION, major + "." + (minor >> 4) + "." + (minor & 0x0F));
+		long tags = icc.getInt(offset + 128) & 0xFFFFFFFFL;
+		for (int i = 0; i < tags && offset + 132 + 12 * (i + 1) <= offset + length; i++) {
+			int entry = offset + 132 + 12 * i;
+			if (icc.getInt(entry) != 0x64657363) { // desc
+				continue;
+			}
+			int tag = offset + icc.getInt(entry + 4);
+			int size = icc.getInt(entry + 8);
+			if (size < 12 || tag < offset || tag + size > offset + length || icc.getInt(tag) != 0x64657363) {
+				return;
+			}
+			int count = icc.getInt(tag + 8);
+			if (count > 0 && count <= size - 12) {
+				setIfAbsent(ICC_PROFILE_NAME, ascii(icc, tag + 12, count));
+			}
+			return;
+		}
+	}
+
+	/** Reads ASCII text, ending at the first NUL. */
+	static String ascii(ByteBuffer buf, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buf.get(offset + i);
+		}
+		int end = 0;
+		while (end < length && bytes[end] != 0) {
+			end++;
+		}
+		return new String(bytes, 0, end, StandardCharsets.ISO_8859_1);
+	}
+
+	/** Formats a decimal value as Jhove does for the EXIF values in its MIX output. */
+	static String decimal(double value) {
+		return new DecimalFormat("0.###", DecimalFormatSymbols.getInstance(Locale.US)).format(value);
+	}
+
+	/** Repeats the bits per sample of each component, separated by spaces. */
+	static String bitsPerSample(int[] bits) {
+		StringBuilder sb = new StringBuilder();
+		for (int b : bits) {
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(b);
+		}
+		return sb.toString();
+	}
+
+}
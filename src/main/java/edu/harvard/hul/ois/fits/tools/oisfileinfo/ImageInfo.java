@@ -0,0 +1,147 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jdom.Attribute;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.XmlContentConverter;
+import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+import edu.harvard.hul.ois.fits.tools.FileContext;
+import edu.harvard.hul.ois.fits.tools.ToolBase;
+import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Identifies JPEG, TIFF and JPEG 2000 files and reads their image metadata from
+ * the headers with {@link ImageHeader}, in the JVM and without reading the image
+ * data. The values are given as Jhove gives them in its MIX output, so the image
+ * element of the FITS output is the same whichever tool it comes from. With this
+ * tool enabled, the slower image tools can be left out for these formats.
+ */
+public class ImageInfo extends ToolBase {
+
+	private final static String TOOL_NAME = "OIS Image Information";
+	private final static String TOOL_VERSION = "0.1";
+	private final static String TOOL_DATE = "10/19/26";
+
+	private boolean enabled = true;
+	private Fits fits;
+	private final static Namespace fitsNS = Namespace.getNamespace(Fits.XML_NAMESPACE);
+	private final static Namespace xsiNS = Namespace.getNamespace("xsi","http://www.w3.org/2001/XMLSchema-instance");
+
+	private static final Logger logger = LoggerFactory.getLogger(ImageInfo.class);
+
+	public ImageInfo(Fits fits) throws FitsToolException {
+		super();
+		this.fits = fits;
+		info.setName(TOOL_NAME);
+		info.setVersion(TOOL_VERSION);
+		info.setDate(TOOL_DATE);
+	}
+
+	public ToolOutput extractInfo(File file) throws FitsToolException {
+		logger.debug("ImageInfo.extractInfo starting on " + file.getName());
+		long startTime = System.currentTimeMillis();
+		Document doc = createXml(file);
+		output = new ToolOutput(this,(Document)doc.clone(),doc, fits);
+		duration = System.currentTimeMillis()-startTime;
+		runStatus = RunStatus.SUCCESSFUL;
+		logger.debug("ImageInfo.extractInfo finished on " + file.getName());
+		return output;
+	}
+
+	private Document createXml(File file) throws FitsToolException {
+
+		Element root = new Element("fits",fitsNS);
+		root.setAttribute(new Attribute("schemaLocation",
+										"http://hul.harvard.edu/ois/xml/ns/fits/fits_output " + fits.getExternalOutputSchema(),
+										xsiNS));
+
+		ImageHeader header = null;
+		try {
+			header = readHeader(file);
+		}
+		catch (IOException e) {
+			throw new FitsToolException("Problem with image header of " + file.getName() + ": " + e.getMessage(), e);
+		}
+		if (header == null) {
+			// not a format this tool reads
+			return new Document(root);
+		}
+
+		Element identification = new Element("identification",fitsNS);
+		Element identity = new Element("identity",fitsNS);
+		identity.setAttribute("format",header.getFormat());
+		identity.setAttribute("mimetype",header.getMimeType());
+		identification.addContent(identity);
+		root.addContent(identification);
+
+		Element metadata = new Element("metadata",fitsNS);
+		Element imageMetadata = new Element("image",fitsNS);
+		for (XmlContentConverter.ImageElement imageElement : XmlContentConverter.ImageElement.values()) {
+			String value = header.get(imageElement.getName());
+			if (value != null) {
+				Element element = new Element(imageElement.getName(),fitsNS);
+				element.setText(value);
+				imageMetadata.addContent(element);
+			}
+		}
+		metadata.addContent(imageMetadata);
+		root.addContent(metadata);
+
+		return new Document(root);
+	}
+
+	/**
+	 * Reads the image header from the header buffer shared by the tools if it holds
+	 * the whole file. Otherwise the file is mapped, so that only the pages the
+	 * headers are on are read, wherever in the file they are.
+	 */
+	private ImageHeader readHeader(File file) throws IOException {
+		FileContext context = getFileContext(file);
+		if (context != null) {
+			ByteBuffer shared = context.getHeader();
+			if (context.getSize() <= shared.remaining()) {
+				return ImageHeader.read(shared);
+			}
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			// headers past 2 GB are not read; the window ends there
+			long length = Math.min(channel.size(), Integer.MAX_VALUE);
+			return ImageHeader.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+}
@@ -0,0 +1,232 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the boxes of a JPEG 2000 file up to the codestream, and the main header
+ * of the codestream up to its first tile.
+ */
+class Jp2HeaderReader {
+
+	static final String JP2_FORMAT = "JPEG 2000 JP2";
+	static final String JP2_MIME_TYPE = "image/jp2";
+	static final String JPX_FORMAT = "JPEG 2000 JPX";
+	static final String JPX_MIME_TYPE = "image/jpx";
+
+	private static final int SIGNATURE = 0x6A502020;
+	private static final int SIGNATURE_CONTENT = 0x0D0A870A;
+	private static final int FTYP = 0x66747970;
+	private static final int JP2H = 0x6A703268;
+	private static final int IHDR = 0x69686472;
+	private static final int BPCC = 0x62706363;
+	private static final int COLR = 0x636F6C72;
+	private static final int RES = 0x72657320;
+	private static final int RESC = 0x72657363;
+	private static final int RESD = 0x72657364;
+	private static final int JP2C = 0x6A703263;
+	private static final int JPX_BRAND = 0x6A707820;
+
+	private static final int SIZ = 0xFF51;
+	private static final int COD = 0xFF52;
+	private static final int SOT = 0xFF90;
+	private static final int SOD = 0xFF93;
+
+	// the color spaces of a colr box with the enumerated method, by EnumCS
+	private static final String[] ENUMERATED_COLOR_SPACES = {
+		"Bilevel (1 = black)", "YCbCr (1)", "", "YCbCr (2)", "YCbCr (3)", "", "", "", "",
+		"PhotoYCC", "", "CMY", "CMYK", "YCCK", "CIELab", "", "sRGB", "Greyscale",
+		"Bilevel (1 = white)", "CIEJab", "e-sRGB", "ROMM-RGB", "sRGB based YCbCr",
+		"YPbPr (1125/60)", "YPbPr (1250/50)" };
+
+	private Jp2HeaderReader() {
+	}
+
+	static boolean matches(ByteBuffer buf) {
+		return buf.limit() >= 12 && buf.getInt(0) == 12 && buf.getInt(4) == SIGNATURE
+				&& buf.getInt(8) == SIGNATURE_CONTENT;
+	}
+
+	static void read(ByteBuffer buf, ImageHeader header) throws IOException {
+		boolean jpx = false;
+		boolean codestream = false;
+		int pos = 12;
+		while (pos + 8 <= buf.limit() && !codestream) {
+			int type = buf.getInt(pos + 4);
+			int body = boxBody(buf, pos);
+			int end = boxEnd(buf, pos);
+			if (type == FTYP && end - body >= 4) {
+				jpx = buf.getInt(body) == JPX_BRAND;
+			}
+			else if (type == JP2H) {
+				readHeader(buf, body, end, header);
+			}
+			else if (type == RES) {
+				// misplaced outside the header box by some writers
+				readResolution(buf, body, end, header);
+			}
+			else if (type == JP2C) {
+				readCodestream(buf, body, end, header);
+				codestream = true;
+			}
+			pos = end;
+		}
+
+		if (header.get(ImageHeader.IMAGE_WIDTH) == null) {
+			throw new IOException("No JP2 image header box");
+		}
+		header.set(ImageHeader.BYTE_ORDER, ImageHeader.BIG_ENDIAN);
+		if (jpx) {
+			header.setIdentity(JPX_FORMAT, JPX_MIME_TYPE);
+		}
+		else {
+			header.setIdentity(JP2_FORMAT, JP2_MIME_TYPE);
+		}
+	}
+
+	/** The start of the contents of the box at a position, after its extended length if it has one. */
+	private static int boxBody(ByteBuffer buf, int pos) {
+		return buf.getInt(pos) == 1 ? pos + 16 : pos + 8;
+	}
+
+	/** The end of the box at a position: from its length, its extended length, or the end of the file. */
+	private static int boxEnd(ByteBuffer buf, int pos) throws IOException {
+		long length = buf.getInt(pos) & 0xFFFFFFFFL;
+		if (length == 0) {
+			return buf.limit();
+		}
+		if (length == 1) {
+			length = buf.getLong(pos + 8);
+		}
+		if (length < boxBody(buf, pos) - pos || pos + length > buf.limit()) {
+			throw new IOException("Invalid length of JP2 box at " + pos);
+		}
+		return (int) (pos + length);
+	}
+
+	private static void readHeader(ByteBuffer buf, int pos, int end, ImageHeader header) throws IOException {
+		int components = 0;
+		while (pos + 8 <= end) {
+			int type = buf.getInt(pos + 4);
+			int body = boxBody(buf, pos);
+			int boxEnd = boxEnd(buf, pos);
+			if (boxEnd > end) {
+				throw new IOException("JP2 box at " + pos + " runs past its superbox");
+			}
+			if (type == IHDR && boxEnd - body >= 14) {
+				header.set(ImageHeader.IMAGE_HEIGHT, buf.getInt(body) & 0xFFFFFFFFL);
+				header.set(ImageHeader.IMAGE_WIDTH, buf.getInt(body + 4) & 0xFFFFFFFFL);
+				components = buf.getShort(body + 8) & 0xFFFF;
+				header.set(ImageHeader.SAMPLES_PER_PIXEL, components);
+				int bpc = buf.get(body + 10) & 0xFF;
+				// 255 if the components differ, which the bpcc box then gives one by one
+				if (bpc != 0xFF) {
+					int[] bits = new int[components];
+					for (int i = 0; i < components; i++) {
+						bits[i] = (bpc & 0x7F) + 1;
+					}
+					header.set(ImageHeader.BITS_PER_SAMPLE, ImageHeader.bitsPerSample(bits));
+				}
+			}
+			else if (type == BPCC) {
+				int[] bits = new int[boxEnd - body];
+				for (int i = 0; i < bits.length; i++) {
+					bits[i] = (buf.get(body + i) & 0x7F) + 1;
+				}
+				header.setIfAbsent(ImageHeader.BITS_PER_SAMPLE, ImageHeader.bitsPerSample(bits));
+			}
+			else if (type == COLR && boxEnd - body >= 3) {
+				int method = buf.get(body);
+				if (method == 1 && boxEnd - body >= 7) {
+					int enumCs = buf.getInt(body + 3);
+					if (enumCs >= 0 && enumCs < ENUMERATED_COLOR_SPACES.length) {
+						header.setIfAbsent(ImageHeader.COLOR_SPACE, ENUMERATED_COLOR_SPACES[enumCs]);
+					}
+				}
+				else if (method == 2) {
+					header.readIccProfile(buf, body + 3, boxEnd - body - 3);
+				}
+			}
+			else if (type == RES) {
+				readResolution(buf, body, boxEnd, header);
+			}
+			pos = boxEnd;
+		}
+	}
+
+	/**
+	 * Reads the capture resolution, or else the default display resolution, of a
+	 * res box. Both are in grid points per meter, which are given per centimeter.
+	 */
+	private static void readResolution(ByteBuffer buf, int pos, int end, ImageHeader header) throws IOException {
+		double[] display = null;
+		while (pos + 8 <= end) {
+			int type = buf.getInt(pos + 4);
+			int body = boxBody(buf, pos);
+			int boxEnd = boxEnd(buf, pos);
+			if ((type == RESC || type == RESD) && boxEnd - body >= 10) {
+				int vn = buf.getShort(body) & 0xFFFF;
+				int vd = buf.getShort(body + 2) & 0xFFFF;
+				int hn = buf.getShort(body + 4) & 0xFFFF;
+				int hd = buf.getShort(body + 6) & 0xFFFF;
+				int ve = buf.get(body + 8);
+				int he = buf.get(body + 9);
+				if (vd != 0 && hd != 0) {
+					double[] resolution = {
+						hn / (double) hd * Math.pow(10, he) / 100,
+						vn / (double) vd * Math.pow(10, ve) / 100 };
+					if (type == RESC) {
+						header.setSamplingFrequency(3, resolution[0], resolution[1], false);
+						return;
+					}
+					display = resolution;
+				}
+			}
+			pos = boxEnd;
+		}
+		if (display != null) {
+			header.setSamplingFrequency(3, display[0], display[1], false);
+		}
+	}
+
+	/** Reads the SIZ and COD marker segments of the main header of the codestream. */
+	private static void readCodestream(ByteBuffer buf, int pos, int end, ImageHeader header) throws IOException {
+		if (pos + 2 > end || (buf.getShort(pos) & 0xFFFF) != 0xFF4F) {
+			throw new IOException("No JPEG 2000 codestream at " + pos);
+		}
+		pos += 2;
+		while (pos + 4 <= end) {
+			int marker = buf.getShort(pos) & 0xFFFF;
+			if (marker == SOT || marker == SOD) {
+				break;
+			}
+			int length = buf.getShort(pos + 2) & 0xFFFF;
+			int segment = pos + 4;
+			if (length < 2 || pos + 2 + length > end) {
+				throw new IOException("Invalid length of JPEG 2000 marker segment at " + pos);
+			}
+			if (marker == SIZ && length >= 38) {
+				header.set(ImageHeader.TILE_WIDTH, buf.getInt(segment + 18) & 0xFFFFFFFFL);
+				header.set(ImageHeader.TILE_HEIGHT, buf.getInt(segment + 22) & 0xFFFFFFFFL);
+			}
+			else if (marker == COD && length >= 12) {
+				header.set(ImageHeader.QUALITY_LAYERS, buf.getShort(segment + 2) & 0xFFFF);
+				header.set(ImageHeader.RESOLUTION_LEVELS, buf.get(segment + 5) & 0xFF);
+				int transformation = buf.get(segment + 9) & 0xFF;
+				header.set(ImageHeader.COMPRESSION_SCHEME, transformation == 1 ? "JPEG 2000 Lossless" : "JPEG 2000 Lossy");
+			}
+			pos += 2 + length;
+		}
+	}
+
+}
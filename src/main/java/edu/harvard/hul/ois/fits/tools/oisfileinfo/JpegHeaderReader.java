@@ -0,0 +1,187 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the markers of a JPEG file up to the start of scan: the JFIF, EXIF, ICC
+ * and Adobe application segments and the start of frame.
+ */
+class JpegHeaderReader {
+
+	static final String JFIF_FORMAT = "JPEG File Interchange Format";
+	static final String EXIF_FORMAT = "JPEG EXIF";
+	static final String RAW_FORMAT = "Raw JPEG Stream";
+	static final String MIME_TYPE = "image/jpeg";
+
+	private static final int SOI = 0xD8;
+	private static final int EOI = 0xD9;
+	private static final int SOS = 0xDA;
+	private static final int APP0 = 0xE0;
+	private static final int APP1 = 0xE1;
+	private static final int APP2 = 0xE2;
+	private static final int APP14 = 0xEE;
+
+	// an ICC profile segment: the identifier, then the sequence number and count of the chunk
+	private static final String ICC_PROFILE = "ICC_PROFILE";
+	private static final int ICC_PROFILE_DATA = 14;
+
+	private JpegHeaderReader() {
+	}
+
+	static boolean matches(ByteBuffer buf) {
+		return buf.limit() >= 4 && (buf.get(0) & 0xFF) == 0xFF && (buf.get(1) & 0xFF) == SOI;
+	}
+
+	static void read(ByteBuffer buf, ImageHeader header) throws IOException {
+		boolean jfif = false;
+		boolean exif = false;
+		boolean frame = false;
+		int adobeTransform = -1;
+		int components = 0;
+
+		int pos = 2;
+		while (pos + 4 <= buf.limit()) {
+			if ((buf.get(pos) & 0xFF) != 0xFF) {
+				throw new IOException("No JPEG marker at " + pos);
+			}
+			int marker = buf.get(pos + 1) & 0xFF;
+			if (marker == 0xFF) {
+				// fill byte before a marker
+				pos++;
+				continue;
+			}
+			if (marker == SOS || marker == EOI) {
+				break;
+			}
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+				// markers without a segment
+				pos += 2;
+				continue;
+			}
+			int length = buf.getShort(pos + 2) & 0xFFFF;
+			if (length < 2) {
+				throw new IOException("Invalid length of JPEG segment at " + pos);
+			}
+			int segment = pos + 4;
+			int segmentLength = length - 2;
+
+			if (marker == APP0 && startsWith(buf, segment, segmentLength, "JFIF\0") && segmentLength >= 12) {
+				jfif = true;
+				int units = buf.get(segment + 7) & 0xFF;
+				int x = buf.getShort(segment + 8) & 0xFFFF;
+				int y = buf.getShort(segment + 10) & 0xFFFF;
+				// JFIF units are 0 for none, 1 for inches, 2 for centimeters
+				header.setSamplingFrequency(units + 1, x, y, false);
+			}
+			else if (marker == APP1 && startsWith(buf, segment, segmentLength, "Exif\0")) {
+				exif = true;
+				// the TIFF structure follows a pad byte and starts with an 8 byte header
+				ByteBuffer tiff = segmentLength >= 6 + 8 ? slice(buf, segment + 6, segmentLength - 6) : null;
+				if (tiff != null && TiffHeaderReader.matches(tiff)) {
+					TiffHeaderReader.readExif(tiff, header);
+				}
+			}
+			else if (marker == APP2 && startsWith(buf, segment, segmentLength, ICC_PROFILE + "\0")
+					&& segmentLength > ICC_PROFILE_DATA) {
+				// only a profile in one segment is read; the desc tag of a longer one may be past the first
+				int sequence = buf.get(segment + 12) & 0xFF;
+				int count = buf.get(segment + 13) & 0xFF;
+				if (sequence == 1 && count == 1) {
+					header.readIccProfile(buf, segment + ICC_PROFILE_DATA, segmentLength - ICC_PROFILE_DATA);
+				}
+			}
+			else if (marker == APP14 && startsWith(buf, segment, segmentLength, "Adobe") && segmentLength >= 12) {
+				adobeTransform = buf.get(segment + 11) & 0xFF;
+			}
+			else if (isStartOfFrame(marker) && !frame && segmentLength >= 6) {
+				frame = true;
+				int precision = buf.get(segment) & 0xFF;
+				header.set(ImageHeader.IMAGE_HEIGHT, buf.getShort(segment + 1) & 0xFFFF);
+				header.set(ImageHeader.IMAGE_WIDTH, buf.getShort(segment + 3) & 0xFFFF);
+				components = buf.get(segment + 5) & 0xFF;
+				int[] bits = new int[components];
+				for (int i = 0; i < components; i++) {
+					bits[i] = precision;
+				}
+				header.set(ImageHeader.BITS_PER_SAMPLE, ImageHeader.bitsPerSample(bits));
+				header.set(ImageHeader.SAMPLES_PER_PIXEL, components);
+			}
+			pos = segment + segmentLength;
+		}
+
+		if (!frame) {
+			throw new IOException("No JPEG start of frame");
+		}
+		header.set(ImageHeader.BYTE_ORDER, ImageHeader.BIG_ENDIAN);
+		header.set(ImageHeader.COMPRESSION_SCHEME, "JPEG");
+		header.set(ImageHeader.COLOR_SPACE, colorSpace(components, adobeTransform));
+		if (jfif) {
+			header.setIdentity(JFIF_FORMAT, MIME_TYPE);
+		}
+		else if (exif) {
+			header.setIdentity(EXIF_FORMAT, MIME_TYPE);
+		}
+		else {
+			header.setIdentity(RAW_FORMAT, MIME_TYPE);
+		}
+	}
+
+	/**
+	 * The start of frame markers; C4, C8 and CC, which fall in their range, are
+	 * the Huffman table, extension and arithmetic conditioning markers.
+	 */
+	private static boolean isStartOfFrame(int marker) {
+		return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+	}
+
+	/**
+	 * The color space the components are taken to be in, by the JFIF and Adobe
+	 * conventions: an Adobe transform of 0 leaves three components as RGB, and one
+	 * of 2 makes four components YCCK.
+	 */
+	private static String colorSpace(int components, int adobeTransform) {
+		switch (components) {
+		case 1:
+			return "BlackIsZero";
+		case 3:
+			return adobeTransform == 0 ? "RGB" : "YCbCr";
+		case 4:
+			return adobeTransform == 2 ? "YCCK" : "CMYK";
+		default:
+			return null;
+		}
+	}
+
+	private static boolean startsWith(ByteBuffer buf, int offset, int length, String id) {
+		if (length < id.length() || offset + id.length() > buf.limit()) {
+			return false;
+		}
+		for (int i = 0; i < id.length(); i++) {
+			if (buf.get(offset + i) != (byte) id.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** The bytes from offset of the given length, cut short at the end of the buffer. */
+	private static ByteBuffer slice(ByteBuffer buf, int offset, int length) {
+		ByteBuffer dup = buf.duplicate();
+		int start = Math.min(offset, buf.limit());
+		dup.limit(Math.max(start, Math.min(buf.limit(), offset + length)));
+		dup.position(start);
+		return dup.slice();
+	}
+
+}
@@ -0,0 +1,335 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The character set and line breaks of a text file, found in one pass over its
+ * bytes, which are given a block at a time. The checks follow those of the file
+ * utility: a byte order mark gives UTF-8, UTF-16 or UTF-32; otherwise the bytes
+ * are tried as US-ASCII, UTF-8, ISO-8859 and extended ASCII in turn. Files with
+ * control characters that text does not have are not text. The names are those
+ * that file --mime gives, upper cased as FileUtility gives them.
+ */
+class TextCharacteristics {
+
+	static final String US_ASCII = "US-ASCII";
+	static final String UTF_8 = "UTF-8";
+	static final String UTF_16LE = "UTF-16LE";
+	static final String UTF_16BE = "UTF-16BE";
+	static final String UTF_32LE = "UTF-32LE";
+	static final String UTF_32BE = "UTF-32BE";
+	static final String ISO_8859_1 = "ISO-8859-1";
+	static final String UNKNOWN_8BIT = "UNKNOWN-8BIT";
+
+	static final String CRLF = "CR/LF";
+	static final String CR = "CR";
+	static final String LF = "LF";
+
+	private static final int MAX_CODE_POINT = 0x10FFFF;
+
+	// the byte order mark is looked for in the first four bytes
+	private final byte[] start = new byte[4];
+	private int startLength;
+	private String bomCharset;
+	private int unitSize;
+	private boolean bigEndian;
+
+	// the code unit being put together from its bytes
+	private int unit;
+	private int unitBytes;
+	private boolean highSurrogate;
+
+	private boolean text = true;
+	private boolean utf8 = true;
+	private boolean ascii = true;
+	private boolean iso8859 = true;
+	// the continuation bytes still due in a UTF-8 sequence, and the range of the next one
+	private int continuations;
+	private int nextLow = 0x80;
+	private int nextHigh = 0xBF;
+
+	private long size;
+	private boolean lastWasCr;
+	private long crlfCount;
+	private long crCount;
+	private long lfCount;
+
+	/** Adds the next block of bytes of the file. */
+	void update(byte[] bytes, int offset, int length) {
+		size += length;
+		int end = offset + length;
+		int i = offset;
+		// the bytes of the byte order mark are held back until it is known
+		while (i < end && startLength < start.length && text) {
+			start[startLength++] = bytes[i++];
+			if (startLength == start.length) {
+				readStart();
+			}
+		}
+		for (; i < end && text; i++) {
+			add(bytes[i] & 0xFF);
+		}
+	}
+
+	/** Adds the next block of bytes of the file, from the position to the limit of the buffer. */
+	void update(ByteBuffer buf) {
+		if (buf.hasArray()) {
+			update(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+			buf.position(buf.limit());
+			return;
+		}
+		byte[] block = new byte[Math.min(buf.remaining(), 64 * 1024)];
+		while (buf.hasRemaining() && text) {
+			int n = Math.min(block.length, buf.remaining());
+			buf.get(block, 0, n);
+			update(block, 0, n);
+		}
+	}
+
+	/** Whether the bytes seen so far could still be text. Once false, the rest need not be read. */
+	boolean isText() {
+		return text;
+	}
+
+	/**
+	 * Ends the file.
+	 * @return the character set, or null if the file is not text
+	 */
+	String finish() {
+		if (startLength < start.length) {
+			readStart();
+		}
+		if (lastWasCr) {
+			crCount++;
+			lastWasCr = false;
+		}
+		if (unitBytes != 0 || highSurrogate || continuations != 0) {
+			// a character cut short
+			if (unitSize != 0) {
+				text = false;
+			}
+			utf8 = false;
+		}
+		// a file marked as UTF-8 has to be UTF-8 throughout
+		if (UTF_8.equals(bomCharset) && !utf8) {
+			text = false;
+		}
+		// file gives an empty file no character set
+		if (!text || size == 0) {
+			return null;
+		}
+		if (bomCharset != null) {
+			return bomCharset;
+		}
+		if (ascii) {
+			return US_ASCII;
+		}
+		if (utf8) {
+			return UTF_8;
+		}
+		return iso8859 ? ISO_8859_1 : UNKNOWN_8BIT;
+	}
+
+	/** The kinds of line break in the file, as textMD names them: CR/LF, CR and LF. */
+	List<String> getLinebreaks() {
+		List<String> linebreaks = new ArrayList<String>();
+		if (crlfCount > 0) {
+			linebreaks.add(CRLF);
+		}
+		if (crCount > 0) {
+			linebreaks.add(CR);
+		}
+		if (lfCount > 0) {
+			linebreaks.add(LF);
+		}
+		return linebreaks;
+	}
+
+	/** Looks for a byte order mark in the first bytes, then adds the bytes after it. */
+	private void readStart() {
+		int b0 = startLength > 0 ? start[0] & 0xFF : -1;
+		int b1 = startLength > 1 ? start[1] & 0xFF : -1;
+		int b2 = startLength > 2 ? start[2] & 0xFF : -1;
+		int b3 = startLength > 3 ? start[3] & 0xFF : -1;
+		int bomLength = 0;
+		// UTF-32LE before UTF-16LE, whose mark it begins with
+		if (b0 == 0xFF && b1 == 0xFE && b2 == 0 && b3 == 0) {
+			setBom(UTF_32LE, 4, false);
+			bomLength = 4;
+		}
+		else if (b0 == 0 && b1 == 0 && b2 == 0xFE && b3 == 0xFF) {
+			setBom(UTF_32BE, 4, true);
+			bomLength = 4;
+		}
+		else if (b0 == 0xFF && b1 == 0xFE) {
+			setBom(UTF_16LE, 2, false);
+			bomLength = 2;
+		}
+		else if (b0 == 0xFE && b1 == 0xFF) {
+			setBom(UTF_16BE, 2, true);
+			bomLength = 2;
+		}
+		else if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+			bomCharset = UTF_8;
+			bomLength = 3;
+		}
+		int length = startLength;
+		// no more bytes are held back
+		startLength = start.length;
+		for (int i = bomLength; i < length && text; i++) {
+			add(start[i] & 0xFF);
+		}
+	}
+
+	private void setBom(String charset, int size, boolean bigEndian) {
+		this.bomCharset = charset;
+		this.unitSize = size;
+		this.bigEndian = bigEndian;
+	}
+
+	private void add(int b) {
+		if (unitSize == 0) {
+			addByte(b);
+			return;
+		}
+		unit = bigEndian ? (unit << 8) | b : unit | (b << (8 * unitBytes));
+		if (++unitBytes < unitSize) {
+			return;
+		}
+		int u = unit;
+		unit = 0;
+		unitBytes = 0;
+		if (unitSize == 2) {
+			addUtf16(u);
+		}
+		else if (u < 0 || u > MAX_CODE_POINT || (u >= 0xD800 && u <= 0xDFFF)) {
+			text = false;
+		}
+		else {
+			addCharacter(u);
+		}
+	}
+
+	private void addUtf16(int u) {
+		if (highSurrogate) {
+			highSurrogate = false;
+			if (u < 0xDC00 || u > 0xDFFF) {
+				text = false;
+			}
+		}
+		else if (u >= 0xD800 && u <= 0xDBFF) {
+			highSurrogate = true;
+		}
+		else if (u >= 0xDC00 && u <= 0xDFFF) {
+			text = false;
+		}
+		else {
+			addCharacter(u);
+		}
+	}
+
+	/** Adds a byte of a file without a UTF-16 or UTF-32 byte order mark. */
+	private void addByte(int b) {
+		if (b < 0x80) {
+			if (continuations != 0) {
+				utf8 = false;
+				continuations = 0;
+			}
+			addCharacter(b);
+			return;
+		}
+		// a CR before a byte of a character other than LF is a line break of its own
+		if (lastWasCr) {
+			crCount++;
+			lastWasCr = false;
+		}
+		ascii = false;
+		// C1 controls are not in ISO-8859, but file takes them as extended ASCII
+		if (b < 0xA0) {
+			iso8859 = false;
+		}
+		if (utf8) {
+			addUtf8(b);
+		}
+	}
+
+	/** Checks a byte of 0x80 or over against the UTF-8 encoding: no overlong forms or surrogates. */
+	private void addUtf8(int b) {
+		if (continuations > 0) {
+			if (b < nextLow || b > nextHigh) {
+				utf8 = false;
+				return;
+			}
+			continuations--;
+			nextLow = 0x80;
+			nextHigh = 0xBF;
+			return;
+		}
+		if (b >= 0xC2 && b <= 0xDF) {
+			continuations = 1;
+		}
+		else if (b == 0xE0) {
+			continuations = 2;
+			nextLow = 0xA0;
+		}
+		else if (b == 0xED) {
+			continuations = 2;
+			nextHigh = 0x9F;
+		}
+		else if (b >= 0xE1 && b <= 0xEF) {
+			continuations = 2;
+		}
+		else if (b == 0xF0) {
+			continuations = 3;
+			nextLow = 0x90;
+		}
+		else if (b == 0xF4) {
+			continuations = 3;
+			nextHigh = 0x8F;
+		}
+		else if (b >= 0xF1 && b <= 0xF3) {
+			continuations = 3;
+		}
+		else {
+			utf8 = false;
+		}
+	}
+
+	/**
+	 * Adds a character below 0x80, or one of a UTF-16 or UTF-32 file, counting its
+	 * line breaks. Of the controls only BEL, BS, HT, LF, VT, FF, CR and ESC are taken
+	 * as text, as file takes them.
+	 */
+	private void addCharacter(int c) {
+		if (c == '\n') {
+			if (lastWasCr) {
+				crlfCount++;
+				lastWasCr = false;
+			}
+			else {
+				lfCount++;
+			}
+			return;
+		}
+		if (lastWasCr) {
+			crCount++;
+		}
+		lastWasCr = c == '\r';
+		if (c < 0x07 || (c > 0x0D && c < 0x20 && c != 0x1B) || c == 0x7F) {
+			text = false;
+		}
+	}
+
+}
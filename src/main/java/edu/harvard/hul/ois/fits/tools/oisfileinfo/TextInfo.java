@@ -0,0 +1,147 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.jdom.Attribute;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
+import edu.harvard.hul.ois.fits.tools.FileContext;
+import edu.harvard.hul.ois.fits.tools.ToolBase;
+import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Identifies plain text files and finds their character set and line breaks with
+ * {@link TextCharacteristics}, in one read of the file, in place of the two runs
+ * of the file utility that FileUtility makes for them. The text element it outputs
+ * has the charset and linebreak values that FileUtility and Jhove give.
+ */
+public class TextInfo extends ToolBase {
+
+	private final static String TOOL_NAME = "OIS Text Information";
+	private final static String TOOL_VERSION = "0.1";
+	private final static String TOOL_DATE = "10/19/26";
+
+	// the file is read a megabyte at a time
+	private final static int BUFFER_SIZE = 1024 * 1024;
+
+	private boolean enabled = true;
+	private Fits fits;
+	private final static Namespace fitsNS = Namespace.getNamespace(Fits.XML_NAMESPACE);
+	private final static Namespace xsiNS = Namespace.getNamespace("xsi","http://www.w3.org/2001/XMLSchema-instance");
+
+	private static final Logger logger = LoggerFactory.getLogger(TextInfo.class);
+
+	public TextInfo(Fits fits) throws FitsToolException {
+		super();
+		this.fits = fits;
+		info.setName(TOOL_NAME);
+		info.setVersion(TOOL_VERSION);
+		info.setDate(TOOL_DATE);
+	}
+
+	public ToolOutput extractInfo(File file) throws FitsToolException {
+		logger.debug("TextInfo.extractInfo starting on " + file.getName());
+		long startTime = System.currentTimeMillis();
+		Document doc = createXml(file);
+		output = new ToolOutput(this,(Document)doc.clone(),doc, fits);
+		duration = System.currentTimeMillis()-startTime;
+		runStatus = RunStatus.SUCCESSFUL;
+		logger.debug("TextInfo.extractInfo finished on " + file.getName());
+		return output;
+	}
+
+	private Document createXml(File file) throws FitsToolException {
+
+		Element root = new Element("fits",fitsNS);
+		root.setAttribute(new Attribute("schemaLocation",
+										"http://hul.harvard.edu/ois/xml/ns/fits/fits_output " + fits.getExternalOutputSchema(),
+										xsiNS));
+
+		TextCharacteristics characteristics = new TextCharacteristics();
+		try {
+			read(file, characteristics);
+		}
+		catch (IOException e) {
+			throw new FitsToolException("Error reading text file " + file.getName(), e);
+		}
+		String charset = characteristics.finish();
+		if (charset == null) {
+			// not text
+			return new Document(root);
+		}
+
+		Element identification = new Element("identification",fitsNS);
+		Element identity = new Element("identity",fitsNS);
+		identity.setAttribute("format","Plain text");
+		identity.setAttribute("mimetype","text/plain");
+		identification.addContent(identity);
+		root.addContent(identification);
+
+		Element metadata = new Element("metadata",fitsNS);
+		Element textMetadata = new Element("text",fitsNS);
+		Element charsetElement = new Element("charset",fitsNS);
+		charsetElement.setText(charset);
+		textMetadata.addContent(charsetElement);
+		for (String linebreak : characteristics.getLinebreaks()) {
+			Element linebreakElement = new Element("linebreak",fitsNS);
+			linebreakElement.setText(linebreak);
+			textMetadata.addContent(linebreakElement);
+		}
+		metadata.addContent(textMetadata);
+		root.addContent(metadata);
+
+		return new Document(root);
+	}
+
+	/**
+	 * Passes the bytes of the file to the characteristics, from the header buffer
+	 * shared by the tools if it holds the whole file. The reading stops at the first
+	 * bytes that text does not have.
+	 */
+	private void read(File file, TextCharacteristics characteristics) throws IOException {
+		FileContext context = getFileContext(file);
+		if (context != null) {
+			ByteBuffer shared = context.getHeader();
+			if (context.getSize() <= shared.remaining()) {
+				characteristics.update(shared);
+				return;
+			}
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int n;
+			while (characteristics.isText() && (n = in.read(buffer)) > 0) {
+				characteristics.update(buffer, 0, n);
+			}
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+}
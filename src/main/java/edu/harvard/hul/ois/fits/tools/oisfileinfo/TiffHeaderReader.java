@@ -0,0 +1,382 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads the first IFD of a TIFF file, and the EXIF IFD it points to. The same
+ * reader takes the TIFF structure in the EXIF segment of a JPEG file, where the
+ * tags that describe the image data are left to the JPEG markers.
+ */
+class TiffHeaderReader {
+
+	static final String FORMAT = "Tagged Image File Format";
+	static final String MIME_TYPE = "image/tiff";
+
+	private static final int IMAGE_WIDTH = 256;
+	private static final int IMAGE_LENGTH = 257;
+	private static final int BITS_PER_SAMPLE = 258;
+	private static final int COMPRESSION = 259;
+	private static final int PHOTOMETRIC_INTERPRETATION = 262;
+	private static final int MAKE = 271;
+	private static final int MODEL = 272;
+	private static final int ORIENTATION = 274;
+	private static final int SAMPLES_PER_PIXEL = 277;
+	private static final int X_RESOLUTION = 282;
+	private static final int Y_RESOLUTION = 283;
+	private static final int RESOLUTION_UNIT = 296;
+	private static final int SOFTWARE = 305;
+	private static final int TILE_WIDTH = 322;
+	private static final int TILE_LENGTH = 323;
+	private static final int EXPOSURE_TIME = 33434;
+	private static final int F_NUMBER = 33437;
+	private static final int EXIF_IFD = 34665;
+	private static final int ICC_PROFILE = 34675;
+	private static final int ISO_SPEED_RATINGS = 34855;
+	private static final int EXIF_VERSION = 36864;
+	private static final int FOCAL_LENGTH = 37386;
+
+	// the sizes of the field types, by type number; 0 for an unknown type
+	private static final int[] TYPE_SIZES = { 0, 1, 1, 2, 4, 8, 1, 1, 2, 4, 8, 4, 8 };
+	private static final int RATIONAL = 5;
+	private static final int SRATIONAL = 10;
+
+	private static final String[] ORIENTATIONS = {
+		"unknown",
+		"normal*",
+		"normal, image flipped",
+		"normal, rotated 180\u00b0",
+		"normal, image flipped, rotated 180\u00b0",
+		"normal, image flipped, rotated cw 90\u00b0",
+		"normal, rotated ccw 90\u00b0",
+		"normal, image flipped, rotated ccw 90\u00b0",
+		"normal, rotated cw 90\u00b0" };
+
+	private final ByteBuffer buf;
+	private final ImageHeader header;
+	// whether the TIFF structure is the EXIF segment of a JPEG file
+	private final boolean exif;
+
+	private TiffHeaderReader(ByteBuffer buf, ImageHeader header, boolean exif) {
+		this.buf = buf;
+		this.header = header;
+		this.exif = exif;
+	}
+
+	static boolean matches(ByteBuffer buf) {
+		if (buf.limit() < 8) {
+			return false;
+		}
+		int order = buf.getShort(0);
+		return (order == 0x4949 && buf.get(2) == 42 && buf.get(3) == 0)
+				|| (order == 0x4D4D && buf.get(2) == 0 && buf.get(3) == 42);
+	}
+
+	/** Reads a TIFF file. */
+	static void readTiff(ByteBuffer window, ImageHeader header) throws IOException {
+		new TiffHeaderReader(ordered(window), header, false).read();
+		header.setIdentity(FORMAT, MIME_TYPE);
+	}
+
+	/** Reads the TIFF structure of the EXIF segment of a JPEG file. */
+	static void readExif(ByteBuffer segment, ImageHeader header) throws IOException {
+		new TiffHeaderReader(ordered(segment), header, true).read();
+	}
+
+	private static ByteBuffer ordered(ByteBuffer buf) {
+		ByteBuffer dup = buf.duplicate();
+		return dup.order(dup.getShort(0) == 0x4949 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+	}
+
+	private void read() throws IOException {
+		long ifd0 = buf.getInt(4) & 0xFFFFFFFFL;
+		String make = null;
+		String model = null;
+		int unit = 2;
+		double x = 0;
+		double y = 0;
+		long exifIfd = 0;
+		int compression = 1;
+		int samplesPerPixel = 1;
+
+		int entries = entries(ifd0);
+		for (int i = 0; i < entries; i++) {
+			int entry = (int) ifd0 + 2 + 12 * i;
+			int tag = buf.getShort(entry) & 0xFFFF;
+			switch (tag) {
+			case MAKE:
+				make = ascii(entry);
+				break;
+			case MODEL:
+				model = ascii(entry);
+				break;
+			case SOFTWARE:
+				header.set(ImageHeader.SCANNING_SOFTWARE_NAME, ascii(entry));
+				break;
+			case ORIENTATION:
+				int orientation = (int) number(entry, 0);
+				if (orientation >= 0 && orientation < ORIENTATIONS.length) {
+					header.set(ImageHeader.ORIENTATION, ORIENTATIONS[orientation]);
+				}
+				break;
+			case X_RESOLUTION:
+				x = decimal(entry, 0);
+				break;
+			case Y_RESOLUTION:
+				y = decimal(entry, 0);
+				break;
+			case RESOLUTION_UNIT:
+				unit = (int) number(entry, 0);
+				break;
+			case EXIF_IFD:
+				exifIfd = number(entry, 0);
+				break;
+			case ICC_PROFILE:
+				long offset = valueOffset(entry);
+				if (offset >= 0) {
+					header.readIccProfile(buf, (int) offset, (int) count(entry));
+				}
+				break;
+			default:
+				if (!exif) {
+					// the tags of the image data, which in a JPEG file are given by its markers
+					switch (tag) {
+					case IMAGE_WIDTH:
+						header.set(ImageHeader.IMAGE_WIDTH, number(entry, 0));
+						break;
+					case IMAGE_LENGTH:
+						header.set(ImageHeader.IMAGE_HEIGHT, number(entry, 0));
+						break;
+					case BITS_PER_SAMPLE:
+						int[] bits = new int[(int) Math.min(count(entry), 16)];
+						for (int b = 0; b < bits.length; b++) {
+							bits[b] = (int) number(entry, b);
+						}
+						header.set(ImageHeader.BITS_PER_SAMPLE, ImageHeader.bitsPerSample(bits));
+						break;
+					case COMPRESSION:
+						compression = (int) number(entry, 0);
+						break;
+					case PHOTOMETRIC_INTERPRETATION:
+						header.set(ImageHeader.COLOR_SPACE, photometricInterpretation((int) number(entry, 0)));
+						break;
+					case SAMPLES_PER_PIXEL:
+						samplesPerPixel = (int) number(entry, 0);
+						break;
+					case TILE_WIDTH:
+						header.set(ImageHeader.TILE_WIDTH, number(entry, 0));
+						break;
+					case TILE_LENGTH:
+						header.set(ImageHeader.TILE_HEIGHT, number(entry, 0));
+						break;
+					default:
+						break;
+					}
+				}
+				break;
+			}
+		}
+
+		header.setSamplingFrequency(unit, x, y, exif);
+		if (exif || exifIfd > 0) {
+			header.set(ImageHeader.DIGITAL_CAMERA_MANUFACTURER, make);
+			header.set(ImageHeader.DIGITAL_CAMERA_MODEL_NAME, model);
+		}
+		else {
+			header.set(ImageHeader.SCANNER_MANUFACTURER, make);
+			header.set(ImageHeader.SCANNER_MODEL_NAME, model);
+		}
+		if (exifIfd > 0) {
+			readExifIfd(exifIfd);
+		}
+		if (!exif) {
+			header.set(ImageHeader.BYTE_ORDER, buf.order() == ByteOrder.LITTLE_ENDIAN
+					? ImageHeader.LITTLE_ENDIAN : ImageHeader.BIG_ENDIAN);
+			header.set(ImageHeader.COMPRESSION_SCHEME, compressionScheme(compression));
+			header.set(ImageHeader.SAMPLES_PER_PIXEL, samplesPerPixel);
+		}
+	}
+
+	private void readExifIfd(long ifd) throws IOException {
+		int entries = entries(ifd);
+		for (int i = 0; i < entries; i++) {
+			int entry = (int) ifd + 2 + 12 * i;
+			switch (buf.getShort(entry) & 0xFFFF) {
+			case EXPOSURE_TIME:
+				setPositive(ImageHeader.EXPOSURE_TIME, decimal(entry, 0));
+				break;
+			case F_NUMBER:
+				setPositive(ImageHeader.F_NUMBER, decimal(entry, 0));
+				break;
+			case ISO_SPEED_RATINGS:
+				setPositive(ImageHeader.ISO_SPEED_RATING, number(entry, 0));
+				break;
+			case EXIF_VERSION:
+				if (count(entry) == 4) {
+					header.set(ImageHeader.EXIF_VERSION, ImageHeader.ascii(buf, entry + 8, 4));
+				}
+				break;
+			case FOCAL_LENGTH:
+				setPositive(ImageHeader.FOCAL_LENGTH, decimal(entry, 0));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	/** Sets an EXIF value, unless it is 0 as cameras write it for a value they do not record. */
+	private void setPositive(String element, double value) {
+		if (value > 0) {
+			header.set(element, ImageHeader.decimal(value));
+		}
+	}
+
+	/** The number of entries of the IFD at an offset, checked against the window. */
+	private int entries(long ifd) throws IOException {
+		if (ifd < 8 || ifd + 2 > buf.limit()) {
+			throw new IOException("TIFF IFD offset " + ifd + " is outside the file");
+		}
+		int entries = buf.getShort((int) ifd) & 0xFFFF;
+		if (ifd + 2 + 12L * entries > buf.limit()) {
+			throw new IOException("TIFF IFD at " + ifd + " with " + entries + " entries is cut short");
+		}
+		return entries;
+	}
+
+	private long count(int entry) {
+		return buf.getInt(entry + 4) & 0xFFFFFFFFL;
+	}
+
+	private int typeSize(int entry) {
+		int type = buf.getShort(entry + 2) & 0xFFFF;
+		return type < TYPE_SIZES.length ? TYPE_SIZES[type] : 0;
+	}
+
+	/**
+	 * The offset of the value of an entry: within the entry for a value of up to
+	 * four bytes, else where the entry points. -1 if the value is outside the window.
+	 */
+	private long valueOffset(int entry) {
+		long size = typeSize(entry) * count(entry);
+		if (size <= 4) {
+			return entry + 8;
+		}
+		long offset = buf.getInt(entry + 8) & 0xFFFFFFFFL;
+		return offset + size <= buf.limit() ? offset : -1;
+	}
+
+	/** The index'th value of an entry of an integer type, or 0 if there is none. */
+	private long number(int entry, int index) {
+		long offset = valueOffset(entry);
+		if (offset < 0 || index >= count(entry)) {
+			return 0;
+		}
+		int size = typeSize(entry);
+		int at = (int) offset + size * index;
+		switch (size) {
+		case 1:
+			return buf.get(at) & 0xFF;
+		case 2:
+			return buf.getShort(at) & 0xFFFF;
+		case 4:
+			return buf.getInt(at) & 0xFFFFFFFFL;
+		default:
+			return 0;
+		}
+	}
+
+	/** The index'th value of a rational entry, or that of an integer one; 0 if there is none. */
+	private double decimal(int entry, int index) {
+		int type = buf.getShort(entry + 2) & 0xFFFF;
+		if (type != RATIONAL && type != SRATIONAL) {
+			return number(entry, index);
+		}
+		long offset = valueOffset(entry);
+		if (offset < 0 || index >= count(entry)) {
+			return 0;
+		}
+		int at = (int) offset + 8 * index;
+		double numerator = type == RATIONAL ? buf.getInt(at) & 0xFFFFFFFFL : buf.getInt(at);
+		double denominator = type == RATIONAL ? buf.getInt(at + 4) & 0xFFFFFFFFL : buf.getInt(at + 4);
+		return denominator == 0 ? 0 : numerator / denominator;
+	}
+
+	private String ascii(int entry) {
+		long offset = valueOffset(entry);
+		if (offset < 0) {
+			return null;
+		}
+		return ImageHeader.ascii(buf, (int) offset, (int) count(entry));
+	}
+
+	private static String compressionScheme(int compression) {
+		switch (compression) {
+		case 1:
+			return "Uncompressed";
+		case 2:
+			return "CCITT 1D";
+		case 3:
+			return "Group 3 Fax";
+		case 4:
+			return "Group 4 Fax";
+		case 5:
+			return "LZW";
+		case 6:
+			return "JPEG";
+		case 32773:
+			return "PackBits";
+		case 34713:
+			return "JPEG2000 Lossy";
+		case 34714:
+			return "JPEG2000 Lossless";
+		default:
+			return "Unknown";
+		}
+	}
+
+	private static String photometricInterpretation(int value) {
+		switch (value) {
+		case 0:
+			return "WhiteIsZero";
+		case 1:
+			return "BlackIsZero";
+		case 2:
+			return "RGB";
+		case 3:
+			return "PaletteColor";
+		case 4:
+			return "TransparencyMask";
+		case 5:
+			return "CMYK";
+		case 6:
+			return "YCbCr";
+		case 8:
+			return "CIELab";
+		case 9:
+			return "ICCLab";
+		case 10:
+			return "ITULab";
+		case 32803:
+			return "CFA";
+		case 34892:
+			return "LinearRaw";
+		case 65535:
+			return "YCCK";
+		default:
+			return null;
+		}
+	}
+
+}
@@ -10,9 +10,8 @@
 
 package edu.harvard.hul.ois.fits.tools.oisfileinfo;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.util.Scanner;
 
 import org.jdom.Attribute;
 import org.jdom.Document;
@@ -23,6 +22,7 @@ import edu.harvard.hul.ois.fits.Fits;
 import edu.harvard.hul.ois.fits.exceptions.FitsToolException;
 import edu.harvard.hul.ois.fits.tools.ToolBase;
 import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.utils.HeaderLineReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +39,8 @@ public class VTTTool extends ToolBase {
 
 	private final static String VTT_TOOL_VERSION = "0.1";
 	private final static String VTT_IDENTIFIER = "WEBVTT";
+	// the most bytes read looking for the end of the 1st line
+	private final static int FIRST_LINE_LIMIT = 4096;
 
 	public VTTTool(Fits fits) throws FitsToolException {
 		super();
@@ -71,20 +73,19 @@ public class VTTTool extends ToolBase {
 			boolean isVtt = false;
 			try	{
 
-				Scanner scanner = new Scanner(new FileReader(file));
-				try {
+				// only the 1st line is needed, so a huge file is not read through
+				try (BufferedReader reader = HeaderLineReader.open(file, getFileContext(file), FIRST_LINE_LIMIT)) {
 					// Should be on the 1st line
-					String firstLine = scanner.nextLine();
+					String firstLine = reader.readLine();
+					if(firstLine == null) {
+						throw new FitsToolException("Empty VTT file");
+					}
 
 					// Identifier should be on the 1st line
 					if(firstLine.trim().contains(VTT_IDENTIFIER)) {
 						isVtt = true;
 					}
 				}
-				finally {
-					//ensure the underlying stream is always closed
-					scanner.close();
-				}
 			}
 			catch (Exception e)	{
 				throw new FitsToolException("Error parsing VTT file", e);
@@ -0,0 +1,229 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The header of a WAVE file, read by walking its RIFF chunks on a FileChannel.
+ * Only the chunks with header information are read; each other chunk, the sample
+ * data among them, is passed over with a seek to the next chunk. RF64 and BW64
+ * files, whose 64-bit sizes are kept in a ds64 chunk, are read as well.
+ */
+class WaveHeader {
+
+	static final int RIFF = 0x52494646;
+	static final int RF64 = 0x52463634;
+	static final int BW64 = 0x42573634;
+	static final int WAVE = 0x57415645;
+
+	private static final int DS64 = 0x64733634;
+	private static final int FMT = 0x666d7420;
+	private static final int DATA = 0x64617461;
+	private static final int BEXT = 0x62657874;
+
+	// a 32-bit size that stands for the 64-bit size in the ds64 chunk
+	private static final long SIZE_IN_DS64 = 0xFFFFFFFFL;
+	// the offset of the TimeReference in the bext chunk, after the description, originator and origination fields
+	private static final int BEXT_TIME_REFERENCE = 338;
+
+	private short formatTag;
+	private int channels;
+	private long samplesPerSecond;
+	private int blockAlign;
+	private int bitsPerSample;
+	private long dataOffset = -1;
+	private long dataSize;
+	private Long timeReference;
+	private boolean rf64;
+	private boolean hasFormat;
+
+	private WaveHeader() {
+	}
+
+	/**
+	 * Reads the header of a WAVE file.
+	 * @param file the RIFF, RF64 or BW64 file of form WAVE
+	 * @throws IOException if the file cannot be read or is not a WAVE file with fmt and data chunks
+	 */
+	static WaveHeader read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			WaveHeader header = new WaveHeader();
+			header.walk(raf.getChannel());
+			return header;
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private void walk(FileChannel channel) throws IOException {
+		ByteBuffer buf = read(channel, 0, 12);
+		int id = buf.order(ByteOrder.BIG_ENDIAN).getInt(0);
+		if ((id != RIFF && id != RF64 && id != BW64) || buf.getInt(8) != WAVE) {
+			throw new IOException("Not a RIFF WAVE file");
+		}
+		rf64 = id != RIFF;
+
+		// 64-bit sizes of an RF64 file, by chunk ID
+		Map<Integer, Long> sizes = new HashMap<Integer, Long>();
+		// the RIFF size is left at 0 by some writers, so the walk goes to the end of the file
+		long end = channel.size();
+		long pos = 12;
+		boolean first = true;
+		while (pos + 8 <= end) {
+			buf = read(channel, pos, 8);
+			int chunkId = buf.order(ByteOrder.BIG_ENDIAN).getInt(0);
+			long size = buf.order(ByteOrder.LITTLE_ENDIAN).getInt(4) & 0xFFFFFFFFL;
+			long body = pos + 8;
+			if (rf64 && first) {
+				if (chunkId != DS64) {
+					throw new IOException("RF64 file without a ds64 chunk");
+				}
+				readDs64(channel, body, size, sizes);
+			}
+			else if (rf64 && size == SIZE_IN_DS64 && sizes.containsKey(chunkId)) {
+				size = sizes.get(chunkId);
+			}
+			if (size < 0) {
+				throw new IOException("Invalid size of chunk at " + pos);
+			}
+			first = false;
+
+			switch (chunkId) {
+			case FMT:
+				readFormat(channel, body, size);
+				break;
+			case DATA:
+				if (dataOffset < 0) {
+					dataOffset = body;
+					dataSize = size;
+				}
+				break;
+			case BEXT:
+				if (size >= BEXT_TIME_REFERENCE + 8) {
+					timeReference = read(channel, body + BEXT_TIME_REFERENCE, 8).order(ByteOrder.LITTLE_ENDIAN).getLong(0);
+				}
+				break;
+			default:
+				// LIST, iXML and the rest are not part of the header information
+				break;
+			}
+			// chunks are padded to an even length
+			pos = body + size + (size & 1);
+		}
+
+		if (!hasFormat) {
+			throw new IOException("No fmt chunk");
+		}
+		if (dataOffset < 0) {
+			throw new IOException("No data chunk");
+		}
+		if (blockAlign == 0 || channels == 0) {
+			throw new IOException("Invalid fmt chunk: " + channels + " channels, block align " + blockAlign);
+		}
+	}
+
+	/**
+	 * Reads the ds64 chunk: the 64-bit RIFF and data sizes, the sample count and
+	 * the table of sizes of other chunks. Only the sizes are kept.
+	 */
+	private void readDs64(FileChannel channel, long body, long size, Map<Integer, Long> sizes) throws IOException {
+		if (size < 28) {
+			throw new IOException("Invalid ds64 chunk of " + size + " bytes");
+		}
+		ByteBuffer buf = read(channel, body, (int) Math.min(size, 28 + 12 * 1024)).order(ByteOrder.LITTLE_ENDIAN);
+		sizes.put(DATA, buf.getLong(8));
+		long tableLength = buf.getInt(24) & 0xFFFFFFFFL;
+		for (int i = 0; i < tableLength && 28 + 12 * (i + 1) <= buf.limit(); i++) {
+			int offset = 28 + 12 * i;
+			sizes.put(buf.order(ByteOrder.BIG_ENDIAN).getInt(offset), buf.order(ByteOrder.LITTLE_ENDIAN).getLong(offset + 4));
+		}
+	}
+
+	private void readFormat(FileChannel channel, long body, long size) throws IOException {
+		if (size < 16) {
+			throw new IOException("Invalid fmt chunk of " + size + " bytes");
+		}
+		ByteBuffer buf = read(channel, body, 16).order(ByteOrder.LITTLE_ENDIAN);
+		formatTag = buf.getShort(0);
+		channels = buf.getShort(2) & 0xFFFF;
+		samplesPerSecond = buf.getInt(4) & 0xFFFFFFFFL;
+		blockAlign = buf.getShort(12) & 0xFFFF;
+		bitsPerSample = buf.getShort(14) & 0xFFFF;
+		hasFormat = true;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new EOFException("WAVE header ends at " + (position + buf.position()));
+			}
+		}
+		return buf;
+	}
+
+	/** The format tag of the fmt chunk, signed as HCLAPS reads it for its format descriptions. */
+	short getFormatTag() {
+		return formatTag;
+	}
+
+	int getNumberOfChannels() {
+		return channels;
+	}
+
+	long getSamplesPerSecond() {
+		return samplesPerSecond;
+	}
+
+	int getBlockAlign() {
+		return blockAlign;
+	}
+
+	int getBitsPerSample() {
+		return bitsPerSample;
+	}
+
+	/** The position in the file of the first byte of sample data. */
+	long getDataOffset() {
+		return dataOffset;
+	}
+
+	/** The size in bytes of the sample data, as given by the data or ds64 chunk. */
+	long getDataSize() {
+		return dataSize;
+	}
+
+	long getNumberOfSampleFrames() {
+		return dataSize / blockAlign;
+	}
+
+	/** The TimeReference of the bext chunk, or null for a file without one. */
+	Long getTimeReference() {
+		return timeReference;
+	}
+
+	/** Whether the file is an RF64 or BW64 file. */
+	boolean isRf64() {
+		return rf64;
+	}
+
+}
@@ -10,8 +10,22 @@
 
 package edu.harvard.hul.ois.fits.tools.oisfileinfo;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.util.List;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.stax2.DTDInfo;
 
 import org.jdom.Attribute;
 import org.jdom.Document;
@@ -26,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /** A FITS-native tool for getting informationa about XML files.
+ *  Only the start of the file, up to the start tag of the root element, is read.
  */
 public class XmlMetadata extends ToolBase {
 
@@ -35,6 +50,10 @@ public class XmlMetadata extends ToolBase {
     private final static String XML_SCHEMA_INSTANCE = "http://www.w3.org/2001/XMLSchema-instance";
 	private final static String XML_FORMAT = "Extensible Markup Language";
 	private final static String XML_MIME = "text/xml";
+	// the system identifier of a DOCTYPE declaration, after SYSTEM or after the public identifier
+	private final static Pattern DOCTYPE_SYSTEM_ID = Pattern.compile(
+			"<!DOCTYPE\\s+[^\\s\\[>]+\\s+(?:SYSTEM\\s+(\"[^\"]*\"|'[^']*')|PUBLIC\\s+(?:\"[^\"]*\"|'[^']*')\\s+(\"[^\"]*\"|'[^']*'))");
+	private final static XMLInputFactory xmlInputFactory = createInputFactory();
 
     private final static String TOOL_NAME = "OIS XML Metadata";
     private final static String TOOL_VERSION = "0.2";
@@ -77,17 +96,15 @@ public class XmlMetadata extends ToolBase {
 			Element metadata = new Element("metadata",fitsNS);
 			Element textMetadata = new Element("text",fitsNS);
 
-			Document xml = null;
+			RootElement xmlRoot = null;
 			try {
-				saxBuilder.setFeature("http://apache.org/xml/features/validation/schema",false);
-				saxBuilder.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-				xml = saxBuilder.build(file);
+				xmlRoot = readRootElement(file);
 			} catch (Exception e) {
 			    logger.error ("Error parsing "+file.getPath() +
 			            ": " + e.getClass().getName());
 				throw new FitsToolException("Error parsing "+file.getPath(),e);
 			}
-			if(xml != null) {
+			if(xmlRoot != null) {
 				//assume we have at least well formed XML
 				Element identification = new Element("identification",fitsNS);
 				Element identity = new Element("identity",fitsNS);
@@ -98,30 +115,14 @@ public class XmlMetadata extends ToolBase {
 				//add identification section to root
 				root.addContent(identification);
 
-				Element xmlRoot = xml.getRootElement();
-				String defaultNamespaceURI = xmlRoot.getNamespaceURI();
-				@SuppressWarnings("unchecked")
-				List<Namespace> namespaces = xmlRoot.getAdditionalNamespaces();
-				String schemaPrefix = null;
-				for(Namespace n : namespaces) {
-					if(n.getURI().equalsIgnoreCase(XML_SCHEMA_INSTANCE)) {
-						schemaPrefix = n.getPrefix();
-						break;
-					}
-				}
-
-				Namespace schemaNS = xmlRoot.getNamespace(schemaPrefix);
-				String schemaLocations = null;
-				String noNamespaceSchemaLocation = null;
-				if(schemaNS != null) {
-					schemaLocations = xmlRoot.getAttributeValue("schemaLocation",schemaNS);
-					noNamespaceSchemaLocation = xmlRoot.getAttributeValue("noNamespaceSchemaLocation",schemaNS);
-				}
+				String defaultNamespaceURI = xmlRoot.namespaceURI;
+				String schemaLocations = xmlRoot.schemaLocation;
+				String noNamespaceSchemaLocation = xmlRoot.noNamespaceSchemaLocation;
 
 				String schemaURI = null;
 				if(schemaLocations != null && schemaLocations.length() > 0)  {
 					String[] locations = schemaLocations.split("\\s+");
-					for(int i=0;i<locations.length;i++) {
+					for(int i=0;i<locations.length - 1;i++) {
 						if(locations[i].equalsIgnoreCase(defaultNamespaceURI)) {
 							schemaURI = locations[i+1];
 							break;
@@ -137,12 +138,10 @@ public class XmlMetadata extends ToolBase {
 				textMetadata.addContent(markupLanguage);
 
 				//check for doctype DTD
-				if(xml.getDocType() != null) {
-					if(xml.getDocType().getSystemID() != null) {
-						Element dtd = new Element("markupLanguage",fitsNS);
-						dtd.setText(xml.getDocType().getSystemID());
-						textMetadata.addContent(dtd);
-					}
+				if(xmlRoot.dtdSystemId != null) {
+					Element dtd = new Element("markupLanguage",fitsNS);
+					dtd.setText(xmlRoot.dtdSystemId);
+					textMetadata.addContent(dtd);
 				}
 
 
@@ -156,6 +155,97 @@ public class XmlMetadata extends ToolBase {
 		return new Document(root);
     }
 
+	/**
+	 * Reads the file only as far as the start tag of the root element, which holds
+	 * everything needed from it, rather than building the whole document.
+	 */
+	private static RootElement readRootElement(File file) throws IOException, XMLStreamException {
+		String dtdSystemId = null;
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+			XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(file.toURI().toString(), in);
+			try {
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.DTD) {
+						dtdSystemId = getDtdSystemId(reader);
+					}
+					else if (event == XMLStreamConstants.START_ELEMENT) {
+						return new RootElement(reader, dtdSystemId);
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		throw new XMLStreamException("No root element in " + file.getPath());
+	}
+
+	private static String getDtdSystemId(XMLStreamReader reader) {
+		if (reader instanceof DTDInfo) {
+			return ((DTDInfo) reader).getDTDSystemId();
+		}
+		// other StAX parsers give the text of the DOCTYPE declaration
+		Matcher m = DOCTYPE_SYSTEM_ID.matcher(reader.getText());
+		if (m.find()) {
+			String quoted = m.group(1) != null ? m.group(1) : m.group(2);
+			return quoted.substring(1, quoted.length() - 1);
+		}
+		return null;
+	}
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.IS_VALIDATING, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		// the DOCTYPE is still reported, but no external DTD is loaded
+		factory.setXMLResolver(new XMLResolver() {
+			@Override
+			public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace) {
+				return new ByteArrayInputStream(new byte[0]);
+			}
+		});
+		return factory;
+	}
+
+	/** What is needed from the start tag of the root element of an XML file. */
+	private static class RootElement {
+
+		private final String namespaceURI;
+		private final String schemaLocation;
+		private final String noNamespaceSchemaLocation;
+		private final String dtdSystemId;
+
+		private RootElement(XMLStreamReader reader, String dtdSystemId) {
+			String uri = reader.getNamespaceURI();
+			this.namespaceURI = uri == null ? "" : uri;
+			this.dtdSystemId = dtdSystemId;
+			// the schema instance namespace as declared on the root element, other than as its own namespace
+			String rootPrefix = reader.getPrefix() == null ? "" : reader.getPrefix();
+			String schemaNamespace = null;
+			for (int i = 0; i < reader.getNamespaceCount(); i++) {
+				String prefix = reader.getNamespacePrefix(i) == null ? "" : reader.getNamespacePrefix(i);
+				String nsURI = reader.getNamespaceURI(i);
+				if (prefix.equals(rootPrefix) && nsURI.equals(namespaceURI)) {
+					continue;
+				}
+				if (nsURI.equalsIgnoreCase(XML_SCHEMA_INSTANCE)) {
+					schemaNamespace = nsURI;
+					break;
+				}
+			}
+			if (schemaNamespace != null) {
+				schemaLocation = reader.getAttributeValue(schemaNamespace, "schemaLocation");
+				noNamespaceSchemaLocation = reader.getAttributeValue(schemaNamespace, "noNamespaceSchemaLocation");
+			}
+			else {
+				schemaLocation = null;
+				noNamespaceSchemaLocation = null;
+			}
+		}
+	}
+
 	public boolean isEnabled() {
 		return enabled;
 	}
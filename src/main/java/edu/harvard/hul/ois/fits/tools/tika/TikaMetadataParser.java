@@ -0,0 +1,87 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.tika;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.extractor.EmbeddedDocumentExtractor;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.metadata.TikaCoreProperties;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Fills a Tika Metadata object for a file, the part of TikaTool that runs either
+ * in the FITS JVM or in a {@link TikaWorker} process.
+ */
+class TikaMetadataParser {
+
+	/** Parses no embedded documents, so that their content is not extracted. */
+	private static final EmbeddedDocumentExtractor NO_EMBEDDED_DOCUMENTS = new EmbeddedDocumentExtractor() {
+		@Override
+		public boolean shouldParseEmbedded(Metadata metadata) {
+			return false;
+		}
+
+		@Override
+		public void parseEmbedded(InputStream stream, ContentHandler handler, Metadata metadata, boolean outputHtml) {
+		}
+	};
+
+	private final Parser parser;
+
+	/**
+	 * @param tikaConfigPath the path of tika-config.xml
+	 */
+	TikaMetadataParser(String tikaConfigPath) throws TikaException, IOException, SAXException {
+		parser = new AutoDetectParser(new TikaConfig(tikaConfigPath));
+	}
+
+	/**
+	 * Parses the stream into the metadata. When metadataOnly is set, Tika stops once
+	 * the document body reaches writeLimit characters and skips embedded documents;
+	 * otherwise the whole file is parsed. Metadata found before an exception is
+	 * left in the metadata object.
+	 */
+	void parse(InputStream stream, Metadata metadata, boolean metadataOnly, int writeLimit)
+			throws IOException, SAXException, TikaException {
+		ParseContext context = new ParseContext();
+		ContentHandler handler;
+		if (metadataOnly) {
+			context.set(EmbeddedDocumentExtractor.class, NO_EMBEDDED_DOCUMENTS);
+			handler = new WriteOutContentHandler(new DefaultHandler(), writeLimit);
+		} else {
+			context.set(Parser.class, parser);
+			handler = new DefaultHandler();
+		}
+		try {
+			parser.parse(stream, handler, metadata, context);
+		} catch (SAXException e) {
+			// reaching the write limit is how a metadata-only parse ends early
+			if (!WriteLimitReachedException.isWriteLimitReached(e)) {
+				throw e;
+			}
+		} finally {
+			// parsers that catch the write limit themselves record it in the metadata
+			metadata.remove(TikaCoreProperties.WRITE_LIMIT_REACHED.getName());
+		}
+	}
+
+}
@@ -19,7 +19,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.EncryptedDocumentException;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.io.TikaInputStream;
@@ -29,14 +28,10 @@ import org.apache.tika.metadata.Office;
 import org.apache.tika.metadata.OfficeOpenXMLCore;
 import org.apache.tika.metadata.OfficeOpenXMLExtended;
 import org.apache.tika.metadata.PDF;
-import org.apache.tika.metadata.TikaCoreProperties;
 import org.apache.tika.metadata.XMP;
 import org.apache.tika.mime.MimeType;
 import org.apache.tika.mime.MimeTypeException;
 import org.apache.tika.mime.MimeTypes;
-import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.parser.ParseContext;
-import org.apache.tika.parser.Parser;
 import org.jdom.Attribute;
 import org.jdom.Document;
 import org.jdom.Element;
@@ -52,7 +47,6 @@ import edu.harvard.hul.ois.fits.tools.ToolOutput;
 import edu.harvard.hul.ois.fits.tools.utils.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.helpers.DefaultHandler;
 
 public class TikaTool extends ToolBase {
 
@@ -204,21 +198,41 @@ public class TikaTool extends ToolBase {
     private final static String TOOL_VERSION = "2.2.1";  // Hard-coded version till we can do better
 
     private final static MimeTypes mimeTypes = MimeTypes.getDefaultMimeTypes();
-    private final Parser tikaParser;
+    private final TikaMetadataParser tikaParser;
 
     private static final Logger logger = LoggerFactory.getLogger(TikaTool.class);
     private boolean enabled = true;
     private Fits fits;
 
+    // FITS only uses the Metadata, so by default Tika stops once the document
+    // body reaches writeLimit characters and does not parse embedded documents
+    private boolean metadataOnly = true;
+    private int writeLimit = 0;
+
+    // when configured, files are parsed in separate JVMs so that a parser failure cannot take down FITS;
+    // the pool is shared by all TikaTool instances
+    private TikaWorkerPool workers;
+
     public TikaTool(Fits fits) throws FitsToolException {
 		super();
+		String tikaConfigPath = Fits.FITS_XML_DIR + "tika" + File.separator + "tika-config.xml";
 		try {
-			TikaConfig config = new TikaConfig(Fits.FITS_XML_DIR + "tika" + File.separator + "tika-config.xml");
-			tikaParser = new AutoDetectParser(config);
+			tikaParser = new TikaMetadataParser(tikaConfigPath);
 		} catch (Exception e) {
 			throw new FitsToolException("Problem loading tika-config.xml", e);
 		}
 		this.fits = fits;
+		if (fits != null && fits.getConfig() != null) {
+			metadataOnly = fits.getConfig().getBoolean("tika_parse[@metadata-only]", metadataOnly);
+			writeLimit = fits.getConfig().getInt("tika_parse[@write-limit]", writeLimit);
+			if (fits.getConfig().getBoolean("tika_workers[@enabled]", false)) {
+				workers = TikaWorkerPool.getShared(tikaConfigPath,
+						fits.getConfig().getInt("tika_workers[@size]", 2),
+						fits.getConfig().getInt("tika_workers[@heap-mb]", 512),
+						fits.getConfig().getLong("tika_workers[@timeout-seconds]", 120) * 1000,
+						fits.getConfig().getInt("tika_workers[@max-files]", 1000));
+			}
+		}
         logger.debug ("Initializing TikaTool");
         info = new ToolInfo(TOOL_NAME, TOOL_VERSION,"");
     }
@@ -228,6 +242,33 @@ public class TikaTool extends ToolBase {
     	long startTime = System.currentTimeMillis();
         Metadata metadata = new Metadata();
 
+        if (workers != null) {
+            try {
+                workers.parse(file, metadata, metadataOnly, writeLimit);
+            } catch (EncryptedDocumentException e) {
+                logger.debug("Tika cannot parse file " + file.getAbsolutePath() + " because it is encrypted");
+            } catch (TikaException e) {
+                logger.debug("Tika encountered an issue parsing file", e);
+            } catch (IOException e) {
+                logger.debug(e.getClass().getName() + " in Tika: " + e.getMessage(), e);
+                throw new FitsToolException("Tika failed", e);
+            }
+        } else {
+            parseInProcess(file, metadata);
+        }
+
+        // Now we start constructing the tool output JDOM document
+        Document toolData = buildToolData (metadata);
+        // Now construct the raw data JDOM document
+        Document rawData = buildRawData (metadata);
+        ToolOutput output = new ToolOutput (this, toolData, rawData, fits);
+        duration = System.currentTimeMillis()-startTime;
+        runStatus = RunStatus.SUCCESSFUL;
+        logger.debug ("Tika.extractInfo finished on " + file.getName());
+        return output;
+    }
+
+    private void parseInProcess(File file, Metadata metadata) throws FitsToolException {
         InputStream instrm = null;
         try {
             instrm = TikaInputStream.get(file.toPath(), metadata);
@@ -240,9 +281,7 @@ public class TikaTool extends ToolBase {
         }
 
         try {
-            ParseContext context = new ParseContext();
-            context.set(Parser.class, tikaParser);
-            tikaParser.parse(instrm, new DefaultHandler(), metadata, context);
+            tikaParser.parse(instrm, metadata, metadataOnly, writeLimit);
         } catch (EncryptedDocumentException e) {
             logger.debug("Tika cannot parse file " + file.getAbsolutePath() + " because it is encrypted");
         } catch (TikaException e) {
@@ -257,16 +296,6 @@ public class TikaTool extends ToolBase {
                 logger.debug("Failed to close input stream for file " + file.getAbsolutePath());
             }
         }
-
-        // Now we start constructing the tool output JDOM document
-        Document toolData = buildToolData (metadata);
-        // Now construct the raw data JDOM document
-        Document rawData = buildRawData (metadata);
-        ToolOutput output = new ToolOutput (this, toolData, rawData, fits);
-        duration = System.currentTimeMillis()-startTime;
-        runStatus = RunStatus.SUCCESSFUL;
-        logger.debug ("Tika.extractInfo finished on " + file.getName());
-        return output;
     }
 
 	public boolean isEnabled() {
@@ -277,6 +306,15 @@ public class TikaTool extends ToolBase {
 		enabled = value;
 	}
 
+	/**
+	 * Sets whether Tika extracts only metadata, stopping once the document body
+	 * reaches the write limit and skipping embedded documents, or parses files
+	 * in full. Metadata-only is the default.
+	 */
+	public void setMetadataOnly(boolean metadataOnly) {
+		this.metadataOnly = metadataOnly;
+	}
+
 	/* Create the tool data from the Metadata object */
 	private Document buildToolData (Metadata metadata) throws FitsToolException {
         //String mimeType =  DocumentTypes.normalizeMimeType(metadata.get (P_CONTENT_TYPE));
@@ -0,0 +1,136 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.tika;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import org.apache.tika.exception.EncryptedDocumentException;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+
+/**
+ * The main class of a Tika worker process started by {@link TikaWorkerPool}. It
+ * builds the Tika parser once, then reads requests from standard input and writes
+ * responses to standard output until standard input is closed.
+ * <p>
+ * A request is the path of a file, whether to parse only metadata, and the write
+ * limit. A response is a status, a message, and the metadata found, which is sent
+ * whatever the status, as TikaTool uses the metadata found before an exception.
+ * Anything the parsers print is sent to standard error.
+ */
+public final class TikaWorker {
+
+	/** Written once the parser has been built. */
+	static final int READY = 'R';
+
+	static final int OK = 0;
+	static final int ENCRYPTED = 1;
+	static final int TIKA_ERROR = 2;
+	static final int FAILED = 3;
+
+	private TikaWorker() {
+	}
+
+	/**
+	 * @param args the path of tika-config.xml
+	 */
+	public static void main(String[] args) throws Exception {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		// parsers must not write into the responses
+		System.setOut(System.err);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+
+		TikaMetadataParser parser = new TikaMetadataParser(args[0]);
+		out.writeByte(READY);
+		out.flush();
+
+		while (true) {
+			String path;
+			try {
+				path = readString(in);
+			} catch (EOFException e) {
+				// FITS has closed the pool or exited
+				break;
+			}
+			boolean metadataOnly = in.readBoolean();
+			int writeLimit = in.readInt();
+
+			Metadata metadata = new Metadata();
+			int status = OK;
+			String message = "";
+			try (InputStream stream = TikaInputStream.get(Paths.get(path), metadata)) {
+				parser.parse(stream, metadata, metadataOnly, writeLimit);
+			} catch (EncryptedDocumentException e) {
+				status = ENCRYPTED;
+				message = String.valueOf(e.getMessage());
+			} catch (TikaException e) {
+				status = TIKA_ERROR;
+				message = String.valueOf(e.getMessage());
+			} catch (Exception e) {
+				status = FAILED;
+				message = e.toString();
+			}
+			out.writeByte(status);
+			writeString(out, message);
+			writeMetadata(out, metadata);
+			out.flush();
+		}
+		System.exit(0);
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void writeMetadata(DataOutputStream out, Metadata metadata) throws IOException {
+		String[] names = metadata.names();
+		out.writeInt(names.length);
+		for (String name : names) {
+			String[] values = metadata.getValues(name);
+			writeString(out, name);
+			out.writeInt(values.length);
+			for (String value : values) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	static void readMetadata(DataInputStream in, Metadata metadata) throws IOException {
+		int names = in.readInt();
+		for (int i = 0; i < names; i++) {
+			String name = readString(in);
+			int values = in.readInt();
+			for (int j = 0; j < values; j++) {
+				metadata.add(name, readString(in));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,330 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.tika;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.tika.exception.EncryptedDocumentException;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of {@link TikaWorker} processes, so that a parser that runs out of memory,
+ * crashes or does not finish on a malformed file takes down only its worker and
+ * not the FITS JVM. Workers are started as needed up to the pool size and reused
+ * while they are warm. A worker is stopped when a parse takes longer than the
+ * timeout, and replaced by a new one on the next parse; one that exits, for instance
+ * when it runs out of its heap, is replaced the same way. One pool is shared by
+ * the JVM, see {@link #getShared}, and its workers are stopped when the JVM exits.
+ */
+class TikaWorkerPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(TikaWorkerPool.class);
+
+	// building the parser loads every Tika parser class
+	private static final long START_TIMEOUT_MILLIS = 120000;
+
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "tika-worker-watchdog");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private final List<String> command;
+	private final int size;
+	private final long timeoutMillis;
+	private final int maxFilesPerWorker;
+	private static TikaWorkerPool shared;
+
+	private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<Worker>();
+	private final Set<Worker> running = Collections.newSetFromMap(new ConcurrentHashMap<Worker, Boolean>());
+	private int started;
+	private volatile boolean closed;
+
+	/**
+	 * @param tikaConfigPath the path of tika-config.xml
+	 * @param classpath the class path of the worker processes
+	 * @param size the most workers to run at once
+	 * @param heapMb the maximum heap of each worker in MB, or 0 for the JVM's default
+	 * @param timeoutMillis the longest a parse may take, or 0 for no limit
+	 * @param maxFilesPerWorker the number of files after which a worker is replaced, or 0 for no limit
+	 */
+	TikaWorkerPool(String tikaConfigPath, String classpath, int size, int heapMb, long timeoutMillis, int maxFilesPerWorker) {
+		command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		if (heapMb > 0) {
+			command.add("-Xmx" + heapMb + "m");
+		}
+		command.add("-XX:+ExitOnOutOfMemoryError");
+		command.add("-Djava.awt.headless=true");
+		command.add("-cp");
+		command.add(classpath);
+		command.add(TikaWorker.class.getName());
+		command.add(tikaConfigPath);
+		this.size = Math.max(1, size);
+		this.timeoutMillis = timeoutMillis;
+		this.maxFilesPerWorker = maxFilesPerWorker;
+	}
+
+	/**
+	 * Returns the pool of this JVM, creating it on the first call with the given
+	 * settings and the {@link #defaultClasspath() default class path}; later calls
+	 * get the same pool whatever their settings. The pool is closed by a shutdown hook.
+	 */
+	static synchronized TikaWorkerPool getShared(String tikaConfigPath, int size, int heapMb, long timeoutMillis, int maxFilesPerWorker) {
+		if (shared == null) {
+			final TikaWorkerPool pool = new TikaWorkerPool(tikaConfigPath, defaultClasspath(), size, heapMb, timeoutMillis, maxFilesPerWorker);
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					pool.close();
+				}
+			}, "tika-worker-shutdown"));
+			shared = pool;
+		}
+		return shared;
+	}
+
+	/**
+	 * Returns a class path for the workers: the directory of the Tika jars, the
+	 * location of the FITS classes, and the class path of this JVM.
+	 */
+	static String defaultClasspath() {
+		Set<String> entries = new LinkedHashSet<String>();
+		File tikaJar = codeSource(AutoDetectParser.class);
+		if (tikaJar != null && tikaJar.isFile()) {
+			entries.add(tikaJar.getParent() + File.separator + "*");
+		}
+		File fitsClasses = codeSource(TikaWorker.class);
+		if (fitsClasses != null) {
+			entries.add(fitsClasses.getPath());
+		}
+		for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+			if (!entry.isEmpty()) {
+				entries.add(entry);
+			}
+		}
+		StringBuilder classpath = new StringBuilder();
+		for (String entry : entries) {
+			if (classpath.length() > 0) {
+				classpath.append(File.pathSeparator);
+			}
+			classpath.append(entry);
+		}
+		return classpath.toString();
+	}
+
+	private static File codeSource(Class<?> cls) {
+		CodeSource source = cls.getProtectionDomain().getCodeSource();
+		if (source == null || source.getLocation() == null) {
+			return null;
+		}
+		try {
+			return new File(source.getLocation().toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the file in a worker, filling the metadata with what the worker found.
+	 * Exceptions that Tika threw in the worker are thrown again here with the same
+	 * meaning; an IOException is also thrown when the worker timed out or exited.
+	 */
+	void parse(File file, Metadata metadata, boolean metadataOnly, int writeLimit) throws IOException, TikaException {
+		Worker worker = borrow();
+		boolean reusable = false;
+		int status;
+		String message;
+		try {
+			AtomicBoolean timedOut = new AtomicBoolean();
+			ScheduledFuture<?> stop = timeoutMillis > 0 ? worker.stopAfter(timeoutMillis, timedOut) : null;
+			try {
+				TikaWorker.writeString(worker.out, file.getAbsolutePath());
+				worker.out.writeBoolean(metadataOnly);
+				worker.out.writeInt(writeLimit);
+				worker.out.flush();
+				status = worker.in.readUnsignedByte();
+				message = TikaWorker.readString(worker.in);
+				TikaWorker.readMetadata(worker.in, metadata);
+			} catch (IOException e) {
+				if (timedOut.get()) {
+					throw new IOException("Tika worker timed out after " + timeoutMillis + " ms on " + file.getName(), e);
+				}
+				throw new IOException("Tika worker exited while parsing " + file.getName(), e);
+			} finally {
+				if (stop != null) {
+					stop.cancel(false);
+				}
+			}
+			worker.files++;
+			// the flag is set before the worker is stopped, so it is seen here if the stop ran
+			reusable = !timedOut.get() && (maxFilesPerWorker <= 0 || worker.files < maxFilesPerWorker);
+		} finally {
+			release(worker, reusable);
+		}
+
+		switch (status) {
+		case TikaWorker.OK:
+			return;
+		case TikaWorker.ENCRYPTED:
+			throw new EncryptedDocumentException(message);
+		case TikaWorker.TIKA_ERROR:
+			throw new TikaException(message);
+		default:
+			throw new IOException(message);
+		}
+	}
+
+	private Worker borrow() throws IOException {
+		while (true) {
+			if (closed) {
+				throw new IOException("The Tika worker pool is closed");
+			}
+			Worker worker = idle.poll();
+			if (worker != null) {
+				return worker;
+			}
+			boolean start;
+			synchronized (this) {
+				start = started < size;
+				if (start) {
+					started++;
+				}
+			}
+			if (start) {
+				try {
+					return start();
+				} catch (IOException | RuntimeException e) {
+					synchronized (this) {
+						started--;
+					}
+					throw e;
+				}
+			}
+			// wait for a worker to be returned, or for one to exit so that another can be started
+			try {
+				worker = idle.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for a Tika worker", e);
+			}
+			if (worker != null) {
+				return worker;
+			}
+		}
+	}
+
+	private Worker start() throws IOException {
+		Worker worker = new Worker(command);
+		running.add(worker);
+		AtomicBoolean timedOut = new AtomicBoolean();
+		ScheduledFuture<?> stop = worker.stopAfter(START_TIMEOUT_MILLIS, timedOut);
+		try {
+			if (worker.in.readUnsignedByte() != TikaWorker.READY) {
+				throw new IOException("Unexpected output from a Tika worker");
+			}
+		} catch (IOException e) {
+			worker.stop();
+			running.remove(worker);
+			throw new IOException("Could not start a Tika worker" + (timedOut.get() ? " within " + START_TIMEOUT_MILLIS + " ms" : ""), e);
+		} finally {
+			stop.cancel(false);
+		}
+		logger.debug("Started a Tika worker");
+		return worker;
+	}
+
+	private void release(Worker worker, boolean reusable) {
+		if (reusable && !closed) {
+			idle.add(worker);
+			return;
+		}
+		worker.stop();
+		running.remove(worker);
+		synchronized (this) {
+			started--;
+		}
+		logger.debug("Stopped a Tika worker after " + worker.files + " files");
+	}
+
+	/**
+	 * Stops all workers. A parse still running in one fails with an IOException.
+	 */
+	void close() {
+		closed = true;
+		idle.clear();
+		for (Worker worker : running) {
+			worker.stop();
+		}
+	}
+
+	private static final class Worker {
+		private final Process process;
+		private final DataOutputStream out;
+		private final DataInputStream in;
+		private int files;
+
+		Worker(List<String> command) throws IOException {
+			ProcessBuilder builder = new ProcessBuilder(command);
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			process = builder.start();
+			out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+			in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+		}
+
+		/**
+		 * Stops the worker after the given time unless the returned future is
+		 * cancelled, setting the flag first.
+		 */
+		ScheduledFuture<?> stopAfter(long millis, final AtomicBoolean stopped) {
+			return watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					stopped.set(true);
+					stop();
+				}
+			}, millis, TimeUnit.MILLISECONDS);
+		}
+
+		void stop() {
+			process.destroyForcibly();
+		}
+	}
+
+}
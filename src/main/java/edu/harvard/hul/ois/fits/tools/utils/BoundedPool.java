@@ -0,0 +1,78 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.utils;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A pool of objects that hold the state of one file at a time, such as native
+ * MediaInfo handles or Jhove engines. Each file is examined with an object of its
+ * own, checked out of the pool for the time it takes. Objects are created as needed
+ * up to a maximum; beyond that, callers wait for one to be returned.
+ *
+ * @param <T> the pooled objects
+ * @param <E> the exception the factory throws
+ */
+public class BoundedPool<T, E extends Exception> {
+
+	/** Creates the objects of a pool. */
+	public interface Factory<T, E extends Exception> {
+		T create() throws E;
+	}
+
+	private final BlockingQueue<T> idle = new LinkedBlockingQueue<T>();
+	private final Factory<T, E> factory;
+	private final int max;
+	private int created;
+
+	/**
+	 * Creates the pool and its first object, so that an object which cannot be
+	 * created is reported here.
+	 *
+	 * @param factory creates the objects
+	 * @param max the most objects to create, at least 1
+	 */
+	public BoundedPool(Factory<T, E> factory, int max) throws E {
+		this.factory = factory;
+		this.max = Math.max(1, max);
+		idle.add(factory.create());
+		created = 1;
+	}
+
+	/**
+	 * Checks out an object, waiting for one to be returned if the maximum number
+	 * of objects are in use.
+	 */
+	public T borrow() throws InterruptedException, E {
+		T object = idle.poll();
+		if (object != null) {
+			return object;
+		}
+		synchronized (this) {
+			if (created < max) {
+				object = factory.create();
+				created++;
+				return object;
+			}
+		}
+		return idle.take();
+	}
+
+	/**
+	 * Returns an object to the pool. The caller must have cleared the state of
+	 * its file.
+	 */
+	public void release(T object) {
+		idle.add(object);
+	}
+
+}
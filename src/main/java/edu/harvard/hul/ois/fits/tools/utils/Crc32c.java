@@ -0,0 +1,81 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.utils;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli) checksum, as used by iSCSI, ext4 and several cloud storage
+ * services. java.util.zip.CRC32C is only available from Java 9, so this is a table
+ * driven implementation processing eight bytes per step.
+ */
+public class Crc32c implements Checksum {
+
+	// reflected Castagnoli polynomial
+	private static final int POLYNOMIAL = 0x82F63B78;
+	private static final int[][] TABLES = new int[8][256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+			}
+			TABLES[0][i] = crc;
+		}
+		for (int i = 0; i < 256; i++) {
+			for (int t = 1; t < 8; t++) {
+				int previous = TABLES[t - 1][i];
+				TABLES[t][i] = (previous >>> 8) ^ TABLES[0][previous & 0xff];
+			}
+		}
+	}
+
+	private int crc = 0xffffffff;
+
+	@Override
+	public void update(int b) {
+		crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+	}
+
+	@Override
+	public void update(byte[] b, int off, int len) {
+		int c = crc;
+		int end = off + len;
+		int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+		int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+		while (end - off >= 8) {
+			int lo = c ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+			c = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24]
+					^ t3[b[off + 4] & 0xff] ^ t2[b[off + 5] & 0xff] ^ t1[b[off + 6] & 0xff] ^ t0[b[off + 7] & 0xff];
+			off += 8;
+		}
+		while (off < end) {
+			c = (c >>> 8) ^ t0[(c ^ b[off++]) & 0xff];
+		}
+		crc = c;
+	}
+
+	public void update(byte[] b) {
+		update(b, 0, b.length);
+	}
+
+	@Override
+	public long getValue() {
+		return (~crc) & 0xffffffffL;
+	}
+
+	@Override
+	public void reset() {
+		crc = 0xffffffff;
+	}
+
+}
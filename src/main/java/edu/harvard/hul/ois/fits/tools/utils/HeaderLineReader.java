@@ -0,0 +1,56 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+import edu.harvard.hul.ois.fits.tools.FileContext;
+
+/**
+ * Opens the start of a text file for reading line by line, without reading more
+ * than a given number of bytes of it, for tools that only look at the first lines
+ * of a file. The bytes are taken from the header of the file's FileContext when it
+ * holds them. A line running past the limit is cut short at the limit.
+ */
+public final class HeaderLineReader {
+
+	private HeaderLineReader() {
+	}
+
+	/**
+	 * @param file the file to read
+	 * @param context the shared context for the file, or null
+	 * @param maxBytes the most bytes to read from the start of the file
+	 * @return a reader over at most maxBytes of the file, decoded with the default charset
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static BufferedReader open(File file, FileContext context, int maxBytes) throws IOException {
+		byte[] header = context != null ? context.getHeaderBytes(maxBytes) : null;
+		InputStream in;
+		if (header != null) {
+			in = new ByteArrayInputStream(header);
+		}
+		else {
+			in = new BoundedInputStream(new FileInputStream(file), maxBytes);
+		}
+		return new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()));
+	}
+
+}
@@ -53,6 +53,7 @@ public class ParentLastClassLoader extends ClassLoader {
 		loadByParentClassLoader.add("edu.harvard.hul.ois.fits.exceptions.FitsToolException");
 		loadByParentClassLoader.add("edu.harvard.hul.ois.fits.tools.Tool");
 		loadByParentClassLoader.add("edu.harvard.hul.ois.fits.tools.ToolInfo");
+		loadByParentClassLoader.add("edu.harvard.hul.ois.fits.tools.FileContext");
 		loadByParentClassLoader.add("org.apache.xerces");
 		loadByParentClassLoader.add("org.w3c");
 		loadByParentClassLoader.add("org.jdom");
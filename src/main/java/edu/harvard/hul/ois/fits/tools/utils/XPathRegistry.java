@@ -0,0 +1,88 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.JDOMException;
+import org.jdom.Namespace;
+import org.jdom.xpath.XPath;
+
+import edu.harvard.hul.ois.fits.Fits;
+
+/**
+ * Central registry of compiled XPath expressions. Each expression is compiled once
+ * per thread, with the "fits" prefix bound to the FITS output namespace, and reused
+ * for that thread's subsequent queries.
+ * <p>
+ * JDOM's XPath objects keep per-evaluation state, so each thread has its own
+ * compiled copies and no evaluation waits on another thread. A thread keeps at most
+ * {@value #MAX_EXPRESSIONS} expressions, dropping the least recently used, so
+ * expressions built from varying input do not accumulate.
+ */
+public class XPathRegistry {
+
+	/** The FITS output namespace, bound to the "fits" prefix in every expression. */
+	public static final Namespace FITS_NS = Namespace.getNamespace("fits", Fits.XML_NAMESPACE);
+
+	static final int MAX_EXPRESSIONS = 64;
+
+	private static final ThreadLocal<Map<String,XPath>> expressions = new ThreadLocal<Map<String,XPath>>() {
+		@Override
+		protected Map<String,XPath> initialValue() {
+			return new LinkedHashMap<String,XPath>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String,XPath> eldest) {
+					return size() > MAX_EXPRESSIONS;
+				}
+			};
+		}
+	};
+
+	private XPathRegistry() {
+	}
+
+	/**
+	 * @param name local name of an element in the FITS namespace
+	 * @return an expression selecting all such elements anywhere in the document
+	 */
+	public static String fitsDescendant(String name) {
+		return "//fits:" + name;
+	}
+
+	/**
+	 * Returns the calling thread's compiled form of the expression, compiling it on
+	 * first use. The result must not be passed to other threads.
+	 */
+	public static XPath get(String expression) throws JDOMException {
+		Map<String,XPath> compiled = expressions.get();
+		XPath xpath = compiled.get(expression);
+		if (xpath == null) {
+			xpath = XPath.newInstance(expression);
+			xpath.addNamespace(FITS_NS);
+			compiled.put(expression, xpath);
+		}
+		return xpath;
+	}
+
+	public static List<?> selectNodes(String expression, Object context) throws JDOMException {
+		return get(expression).selectNodes(context);
+	}
+
+	public static Object selectSingleNode(String expression, Object context) throws JDOMException {
+		return get(expression).selectSingleNode(context);
+	}
+
+}
@@ -18,7 +18,6 @@ import org.jdom.Attribute;
 import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.JDOMException;
-import org.jdom.xpath.XPath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +34,7 @@ public class XmlUtils {
      */
 	public static String getDomValue(Document dom, String element) {
 		try {
-			Element e = (Element)XPath.selectSingleNode(dom,"//"+element);
+			Element e = (Element)XPathRegistry.selectSingleNode("//"+element, dom);
 			if(e != null) {
 				return e.getText();
 			}
@@ -54,7 +53,7 @@ public class XmlUtils {
 	public static String getChildDomValues(Document dom, String element) {
 		String s = "";
 		try {
-			Element e = (Element)XPath.selectSingleNode(dom,"//"+element);
+			Element e = (Element)XPathRegistry.selectSingleNode("//"+element, dom);
 			if(e != null) {
 				for(Element ee : (List<Element>)e.getChildren()) {
 					s = s + ee.getText() + " ";
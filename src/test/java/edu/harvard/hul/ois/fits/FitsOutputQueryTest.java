@@ -0,0 +1,116 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.input.SAXBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.harvard.hul.ois.fits.tests.AbstractLoggingTest;
+import edu.harvard.hul.ois.fits.tools.ToolInfo;
+
+public class FitsOutputQueryTest extends AbstractLoggingTest {
+
+	private static final Namespace ns = Namespace.getNamespace(Fits.XML_NAMESPACE);
+
+	private FitsOutput fitsOutput;
+
+	@Before
+	public void setUp() throws Exception {
+		try (Reader in = new FileReader(new File("testfiles/FitsOutputTest.xml"))) {
+			Document fitsXml = new SAXBuilder().build(in);
+			fitsOutput = new FitsOutput(fitsXml);
+		}
+	}
+
+	@Test
+	public void testMetadataElementLookup() {
+		FitsMetadataElement size = fitsOutput.getMetadataElement("size");
+		assertEquals("26328", size.getValue());
+		assertEquals("OIS File Information", size.getReportingToolName());
+		assertEquals("SINGLE_RESULT", size.getStatus());
+
+		assertTrue(fitsOutput.hasMetadataElement("md5checksum"));
+		assertTrue(fitsOutput.hasMetadataElement("author"));
+		assertEquals(1, fitsOutput.getMetadataElements("author").size());
+		// a single element can not conflict
+		assertNull(fitsOutput.hasConflictingMetadataElements("size"));
+	}
+
+	@Test
+	public void testMissingMetadataElement() {
+		assertNull(fitsOutput.getMetadataElement("noSuchElement"));
+		assertTrue(fitsOutput.getMetadataElements("noSuchElement").isEmpty());
+		assertFalse(fitsOutput.hasMetadataElement("noSuchElement"));
+		assertNull(fitsOutput.hasConflictingMetadataElements("noSuchElement"));
+	}
+
+	@Test
+	public void testLookupAfterSetFitsXml() {
+		// query once so that the original document has been indexed
+		assertEquals(1, fitsOutput.getMetadataElements("created").size());
+
+		Document changed = (Document)fitsOutput.getFitsXml().clone();
+		Element fileinfo = changed.getRootElement().getChild("fileinfo", ns);
+		fileinfo.getChild("created", ns).setAttribute("status", "CONFLICT");
+		Element other = new Element("created", ns);
+		other.setAttribute("toolname", "Tika");
+		other.setAttribute("status", "CONFLICT");
+		other.setText("2015:09:24 12:16:30");
+		fileinfo.addContent(other);
+		fitsOutput.setFitsXml(changed);
+
+		List<FitsMetadataElement> created = fitsOutput.getMetadataElements("created");
+		assertEquals(2, created.size());
+		assertEquals("Exiftool", created.get(0).getReportingToolName());
+		assertEquals("Tika", created.get(1).getReportingToolName());
+		assertTrue(fitsOutput.hasConflictingMetadataElements("created"));
+	}
+
+	@Test
+	public void testAddDeferredChecksums() {
+		assertNull(fitsOutput.getDeferredChecksums());
+		assertFalse(fitsOutput.hasMetadataElement("sha256checksum"));
+
+		fitsOutput.setDeferredChecksums(null, new ToolInfo("OIS File Information", "1.0", null));
+		Map<String,String> checksums = new LinkedHashMap<String,String>();
+		checksums.put("SHA-256", "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+		checksums.put("CRC32C", "364b3fb7");
+		fitsOutput.addChecksums(checksums);
+
+		FitsMetadataElement sha256 = fitsOutput.getMetadataElement("sha256checksum");
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", sha256.getValue());
+		assertEquals("OIS File Information", sha256.getReportingToolName());
+		assertEquals("364b3fb7", fitsOutput.getMetadataElement("crc32cchecksum").getValue());
+
+		// added directly after the file size
+		Element fileInfo = fitsOutput.getFitsXml().getRootElement().getChild("fileinfo", ns);
+		List<?> children = fileInfo.getChildren();
+		int size = children.indexOf(fileInfo.getChild("size", ns));
+		assertEquals("sha256checksum", ((Element)children.get(size + 1)).getName());
+		assertEquals("crc32cchecksum", ((Element)children.get(size + 2)).getName());
+	}
+}
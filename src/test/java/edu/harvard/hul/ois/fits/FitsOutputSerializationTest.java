@@ -0,0 +1,135 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.jdom.Document;
+import org.jdom.input.SAXBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import edu.harvard.hul.ois.fits.serialization.CborStructuredWriter;
+import edu.harvard.hul.ois.fits.tests.AbstractLoggingTest;
+
+public class FitsOutputSerializationTest extends AbstractLoggingTest {
+
+	private FitsOutput fitsOutput;
+
+	@Before
+	public void setUp() throws Exception {
+		try (Reader in = new FileReader(new File("testfiles/FitsOutputTest.xml"))) {
+			Document fitsXml = new SAXBuilder().build(in);
+			fitsOutput = new FitsOutput(fitsXml);
+		}
+	}
+
+	private JsonObject toJson(boolean includeStandard) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		fitsOutput.outputJson(out, includeStandard);
+		return new JsonParser().parse(new String(out.toByteArray(), StandardCharsets.UTF_8)).getAsJsonObject();
+	}
+
+	@Test
+	public void testJsonLayout() throws Exception {
+		JsonObject json = toJson(false);
+		assertEquals("1.1.0", json.get("version").getAsString());
+		assertFalse("raw xsi attributes should not be output", json.has("schemaLocation"));
+
+		JsonObject identity = json.getAsJsonObject("identification").getAsJsonArray("identity").get(0).getAsJsonObject();
+		assertEquals("application/rtf", identity.get("mimetype").getAsString());
+		assertEquals(4, identity.getAsJsonArray("tool").size());
+		JsonObject puid = identity.getAsJsonArray("externalIdentifier").get(0).getAsJsonObject();
+		assertEquals("puid", puid.get("type").getAsString());
+		assertEquals("fmt/355", puid.get("#text").getAsString());
+
+		JsonArray size = json.getAsJsonObject("fileinfo").getAsJsonArray("size");
+		assertEquals(1, size.size());
+		assertEquals("26328", size.get(0).getAsJsonObject().get("#text").getAsString());
+		assertEquals("SINGLE_RESULT", size.get(0).getAsJsonObject().get("status").getAsString());
+
+		assertEquals(0, json.getAsJsonObject("filestatus").entrySet().size());
+
+		JsonObject document = json.getAsJsonObject("metadata").getAsJsonArray("document").get(0).getAsJsonObject();
+		assertEquals("Aloisio, Paul G.", document.getAsJsonArray("author").get(0).getAsJsonObject().get("#text").getAsString());
+		assertFalse("standard block should only be output on request", document.has("standard"));
+	}
+
+	@Test
+	public void testJsonWithStandardSchema() throws Exception {
+		JsonObject json = toJson(true);
+		JsonObject document = json.getAsJsonObject("metadata").getAsJsonArray("document").get(0).getAsJsonObject();
+		assertTrue(document.has("standard"));
+		JsonObject docmd = document.getAsJsonArray("standard").get(0).getAsJsonObject()
+				.getAsJsonArray("docmd:document").get(0).getAsJsonObject();
+		assertEquals("1", docmd.getAsJsonArray("docmd:PageCount").get(0).getAsJsonObject().get("#text").getAsString());
+	}
+
+	@Test
+	public void testJsonNameCollisions() throws Exception {
+		String xml = "<fits xmlns=\"" + Fits.XML_NAMESPACE + "\" version=\"1.1.0\">"
+				+ "<fileinfo><size value=\"attribute\">26328<value>child</value></size></fileinfo>"
+				+ "<metadata><document><author>A</author><standard>"
+				+ "<author xmlns=\"http://example.com/other\">B</author><docmd:author xmlns:docmd=\"http://www.fcla.edu/docmd\">C</docmd:author>"
+				+ "</standard></document></metadata></fits>";
+		fitsOutput = new FitsOutput(new SAXBuilder().build(new StringReader(xml)));
+		JsonObject json = toJson(true);
+
+		JsonObject size = json.getAsJsonObject("fileinfo").getAsJsonArray("size").get(0).getAsJsonObject();
+		assertEquals("attribute", size.get("value").getAsString());
+		assertEquals("26328", size.get("#text").getAsString());
+		assertEquals("child", size.getAsJsonArray("value").get(0).getAsJsonObject().get("#text").getAsString());
+
+		JsonObject document = json.getAsJsonObject("metadata").getAsJsonArray("document").get(0).getAsJsonObject();
+		assertEquals(1, document.getAsJsonArray("author").size());
+		JsonObject standard = document.getAsJsonArray("standard").get(0).getAsJsonObject();
+		assertFalse("elements of other namespaces should not be grouped with FITS elements", standard.has("author"));
+		assertEquals("B", standard.getAsJsonArray("{http://example.com/other}author").get(0).getAsJsonObject().get("#text").getAsString());
+		assertEquals("C", standard.getAsJsonArray("docmd:author").get(0).getAsJsonObject().get("#text").getAsString());
+	}
+
+	@Test
+	public void testCborEncoding() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CborStructuredWriter writer = new CborStructuredWriter(out);
+		writer.beginObject(1);
+		writer.name("a");
+		writer.beginArray(2);
+		writer.value("b");
+		writer.value("");
+		writer.endArray();
+		writer.endObject();
+		writer.flush();
+		// {"a": ["b", ""]} from RFC 7049 appendix A
+		assertArrayEquals(new byte[] {(byte)0xa1, 0x61, 0x61, (byte)0x82, 0x61, 0x62, 0x60}, out.toByteArray());
+
+		out.reset();
+		fitsOutput.outputCbor(out, false);
+		byte[] cbor = out.toByteArray();
+		// root map with the version and timestamp attributes and four sections
+		assertEquals((byte)0xa6, cbor[0]);
+	}
+
+}
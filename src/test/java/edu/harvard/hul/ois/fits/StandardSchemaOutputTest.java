@@ -0,0 +1,204 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.custommonkey.xmlunit.Diff;
+import org.custommonkey.xmlunit.XMLUnit;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.XMLOutputter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ctc.wstx.stax.WstxOutputFactory;
+
+import edu.harvard.hul.ois.fits.tests.AbstractLoggingTest;
+import edu.harvard.hul.ois.ots.schemas.XmlContent.XmlContent;
+
+/**
+ * Checks that the standard schema output written through IndentingXMLStreamWriter
+ * and built with JDOMStreamWriter is the same as the output of the serialize,
+ * prettyprint.xslt and parse passes they replace, for the expected output corpus.
+ * Whitespace is compared too, so that differences in indentation show.
+ */
+public class StandardSchemaOutputTest extends AbstractLoggingTest {
+
+	private static final File EXPECTED_OUTPUT_DIR = new File("testfiles/output");
+	private static final String EXPECTED_OUTPUT_FILE_SUFFIX = "_XmlUnitExpectedOutput.xml";
+
+	private static final XMLOutputFactory xmlOutputFactory = XMLOutputFactory.newInstance();
+
+	private boolean ignoreWhitespace;
+	private boolean normalizeWhitespace;
+
+	@Before
+	public void setUp() {
+		ignoreWhitespace = XMLUnit.getIgnoreWhitespace();
+		normalizeWhitespace = XMLUnit.getNormalizeWhitespace();
+		XMLUnit.setIgnoreWhitespace(false);
+		XMLUnit.setNormalizeWhitespace(false);
+	}
+
+	@After
+	public void tearDown() {
+		XMLUnit.setIgnoreWhitespace(ignoreWhitespace);
+		XMLUnit.setNormalizeWhitespace(normalizeWhitespace);
+	}
+
+	/** The standard schema content of each expected output file that has any. */
+	private static int forEachStandardXmlContent(Check check) throws Exception {
+		File[] files = EXPECTED_OUTPUT_DIR.listFiles();
+		assertNotNull("missing " + EXPECTED_OUTPUT_DIR, files);
+		int checked = 0;
+		for (File file : files) {
+			if (!file.getName().endsWith(EXPECTED_OUTPUT_FILE_SUFFIX)) {
+				continue;
+			}
+			FitsOutput fitsOutput = new FitsOutput(new SAXBuilder().build(file));
+			if (fitsOutput.getStandardXmlContent() == null) {
+				continue;
+			}
+			check.run(file.getName(), fitsOutput);
+			checked++;
+		}
+		return checked;
+	}
+
+	private interface Check {
+		void run(String name, FitsOutput fitsOutput) throws Exception;
+	}
+
+	/** The standard xml as the unindented writer serialized it before the pretty print pass. */
+	private static String serialize(XmlContent xml) throws Exception {
+		xml.setRoot(true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLStreamWriter sw = xmlOutputFactory.createXMLStreamWriter(out, "UTF-8");
+		xml.output(sw);
+		sw.flush();
+		sw.close();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/** The output of prettyprint.xslt, as -x wrote it before it was streamed. */
+	private static String prettyPrint(String xml) throws Exception {
+		Transformer transformer = new net.sf.saxon.TransformerFactoryImpl()
+				.newTemplates(new StreamSource(new File("xml/prettyprint.xslt"))).newTransformer();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		transformer.transform(new StreamSource(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))),
+				new StreamResult(out));
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void assertIdentical(String message, String expected, String actual) throws Exception {
+		Diff diff = new Diff(expected, actual);
+		assertTrue(message + ": " + diff.toString() + "\nexpected:\n" + expected + "\nactual:\n" + actual, diff.identical());
+	}
+
+	@Test
+	public void testIndentedOutputMatchesPrettyPrintXslt() throws Exception {
+		int checked = forEachStandardXmlContent(new Check() {
+			@Override
+			public void run(String name, FitsOutput fitsOutput) throws Exception {
+				String expected = prettyPrint(serialize(fitsOutput.getStandardXmlContent()));
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Fits.outputStandardSchemaXml(fitsOutput, out);
+				String actual = new String(out.toByteArray(), StandardCharsets.UTF_8);
+				assertTrue(name + " has no XML declaration", actual.startsWith("<?xml "));
+				assertIdentical(name, expected, actual);
+			}
+		});
+		assertTrue("no expected output file has standard schema content", checked > 0);
+	}
+
+	@Test
+	public void testJdomOutputMatchesParsedOutput() throws Exception {
+		final XMLOutputter outputter = new XMLOutputter();
+		int checked = forEachStandardXmlContent(new Check() {
+			@Override
+			public void run(String name, FitsOutput fitsOutput) throws Exception {
+				Document parsed = new SAXBuilder().build(new StringReader(serialize(fitsOutput.getStandardXmlContent())));
+
+				XmlContent xml = fitsOutput.getStandardXmlContent();
+				xml.setRoot(true);
+				JDOMStreamWriter sw = new JDOMStreamWriter();
+				xml.output(sw);
+				Element built = sw.getRootElement();
+				assertNotNull(name, built);
+
+				assertIdentical(name, outputter.outputString(parsed.getRootElement()), outputter.outputString(built));
+			}
+		});
+		assertTrue("no expected output file has standard schema content", checked > 0);
+	}
+
+	@Test
+	public void testIndentation() throws Exception {
+		StringWriter out = new StringWriter();
+		// the writer FITS gets from XMLOutputFactory, named so that its empty element form is known
+		XMLStreamWriter sw = new IndentingXMLStreamWriter(new WstxOutputFactory().createXMLStreamWriter(out));
+		sw.writeStartElement("t", "root", "http://example.com/t");
+		sw.writeNamespace("t", "http://example.com/t");
+		sw.writeCharacters("\n  ");
+		sw.writeStartElement("t", "empty", "http://example.com/t");
+		sw.writeEndElement();
+		sw.writeStartElement("t", "space", "http://example.com/t");
+		sw.writeCharacters(" ");
+		sw.writeEndElement();
+		sw.writeStartElement("t", "parent", "http://example.com/t");
+		sw.writeStartElement("t", "child", "http://example.com/t");
+		sw.writeAttribute("name", "a & b");
+		sw.writeCharacters("x < y");
+		sw.writeEndElement();
+		sw.writeEndElement();
+		sw.writeStartElement("t", "mixed", "http://example.com/t");
+		sw.writeCharacters("one ");
+		sw.writeStartElement("t", "b", "http://example.com/t");
+		sw.writeCharacters("two");
+		sw.writeEndElement();
+		sw.writeCharacters(" ");
+		sw.writeStartElement("t", "i", "http://example.com/t");
+		sw.writeCharacters("three");
+		sw.writeEndElement();
+		sw.writeEndElement();
+		sw.writeEndDocument();
+		sw.close();
+
+		// each line starts with the four spaces that prettyprint.xslt puts after its newlines
+		assertEquals("\n    <t:root xmlns:t=\"http://example.com/t\">"
+				+ "\n       <t:empty/>"
+				+ "\n       <t:space> </t:space>"
+				+ "\n       <t:parent>"
+				+ "\n          <t:child name=\"a &amp; b\">x &lt; y</t:child>"
+				+ "\n       </t:parent>"
+				+ "\n       <t:mixed>one <t:b>two</t:b> <t:i>three</t:i></t:mixed>"
+				+ "\n    </t:root>", out.toString());
+	}
+
+}
@@ -0,0 +1,109 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.benchmarks;
+
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import edu.harvard.hul.ois.fits.tools.ffident.FormatDescription;
+import edu.harvard.hul.ois.fits.tools.ffident.FormatDescriptionReader;
+import edu.harvard.hul.ois.fits.tools.ffident.SignatureTrie;
+
+/**
+ * Compares the cost of identifying the header of each file in testfiles/ against
+ * the FFIdent signatures in tools/ffident/formats.txt: trying every description in
+ * turn (the old behavior) and walking the compiled {@link SignatureTrie}. Scores
+ * are per pass over all of the test file headers.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code> with, e.g.:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     edu.harvard.hul.ois.fits.benchmarks.FFIdentSignatureBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FFIdentSignatureBenchmark {
+
+	private List<FormatDescription> descriptions;
+	private SignatureTrie trie;
+	private List<byte[]> headers;
+
+	@Setup
+	public void setUp() throws Exception {
+		descriptions = new ArrayList<FormatDescription>();
+		try (FileReader reader = new FileReader("tools/ffident/formats.txt")) {
+			FormatDescriptionReader in = new FormatDescriptionReader(reader);
+			FormatDescription desc;
+			while ((desc = in.read()) != null) {
+				descriptions.add(desc);
+			}
+		}
+		trie = new SignatureTrie(descriptions);
+
+		headers = new ArrayList<byte[]>();
+		for (File f : new File("testfiles").listFiles()) {
+			if (f.isFile()) {
+				byte[] data = Files.readAllBytes(f.toPath());
+				headers.add(Arrays.copyOf(data, Math.min(data.length, 2048)));
+			}
+		}
+	}
+
+	@Benchmark
+	public void linearScan(Blackhole bh) {
+		for (byte[] header : headers) {
+			FormatDescription match = null;
+			for (FormatDescription desc : descriptions) {
+				if (desc.matches(header)) {
+					match = desc;
+					break;
+				}
+			}
+			bh.consume(match);
+		}
+	}
+
+	@Benchmark
+	public void signatureTrie(Blackhole bh) {
+		for (byte[] header : headers) {
+			bh.consume(trie.identify(header));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(FFIdentSignatureBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
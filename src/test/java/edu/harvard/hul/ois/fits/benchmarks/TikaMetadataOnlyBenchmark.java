@@ -0,0 +1,92 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.tools.ToolOutput;
+import edu.harvard.hul.ois.fits.tools.tika.TikaTool;
+
+/**
+ * Compares the time TikaTool takes on one file of each of several formats when
+ * Tika parses the whole file (the old behavior) and when it extracts only the
+ * metadata, stopping at the write limit and skipping embedded documents.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code> with, e.g.:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     edu.harvard.hul.ois.fits.benchmarks.TikaMetadataOnlyBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TikaMetadataOnlyBenchmark {
+
+	@Param({"testfiles/PDF_eng.pdf",
+			"testfiles/Book_pdfx1a.pdf",
+			"testfiles/LibreOffice.doc",
+			"testfiles/valid.xls",
+			"testfiles/ConleyPPLec.ppt",
+			"testfiles/LibreODT-hasTables.odt",
+			"testfiles/Calibre_hasTable_of_Contents.epub",
+			"testfiles/32044020597662.zip",
+			"testfiles/3426592.jpg"})
+	public String inputFile;
+
+	private File file;
+	private TikaTool fullParse;
+	private TikaTool metadataOnly;
+
+	@Setup
+	public void setUp() throws Exception {
+		file = new File(inputFile);
+		Fits fits = new Fits();
+		fullParse = new TikaTool(fits);
+		fullParse.setMetadataOnly(false);
+		metadataOnly = new TikaTool(fits);
+		metadataOnly.setMetadataOnly(true);
+	}
+
+	@Benchmark
+	public ToolOutput fullParse() throws Exception {
+		return fullParse.extractInfo(file);
+	}
+
+	@Benchmark
+	public ToolOutput metadataOnly() throws Exception {
+		return metadataOnly.extractInfo(file);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(TikaMetadataOnlyBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,110 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.input.SAXBuilder;
+import org.jdom.xpath.XPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.tools.utils.XPathRegistry;
+
+/**
+ * Compares the per-file cost of the XPath lookups FITS makes against a consolidated
+ * output document: compiling each expression on every call (the old behavior), using
+ * the precompiled expressions in {@link XPathRegistry}, and navigating directly to
+ * the identity elements.
+ * <p>
+ * Run from the project directory after <code>mvn test-compile</code> with, e.g.:
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     edu.harvard.hul.ois.fits.benchmarks.XPathLookupBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathLookupBenchmark {
+
+	// element names looked up by FitsOutput consumers for a typical file
+	private static final String[] LOOKUPS = {"filename", "size", "md5checksum", "lastmodified", "well-formed", "valid"};
+
+	@Param({"testfiles/output/Book_pdfx1a.pdf_XmlUnitExpectedOutput.xml",
+			"testfiles/output/4072820.tif_XmlUnitExpectedOutput.xml"})
+	public String fitsOutputFile;
+
+	private Document fitsXml;
+	private Namespace ns;
+
+	@Setup
+	public void setUp() throws Exception {
+		fitsXml = new SAXBuilder().build(new File(fitsOutputFile));
+		ns = Namespace.getNamespace("fits", Fits.XML_NAMESPACE);
+	}
+
+	@Benchmark
+	public void compileOnEveryCall(Blackhole bh) throws Exception {
+		XPath identity = XPath.newInstance("//fits:identity");
+		identity.addNamespace(ns);
+		bh.consume(identity.selectNodes(fitsXml));
+		for (String name : LOOKUPS) {
+			XPath xpath = XPath.newInstance("//fits:" + name);
+			xpath.addNamespace(ns);
+			bh.consume(xpath.selectSingleNode(fitsXml));
+		}
+	}
+
+	@Benchmark
+	public void registry(Blackhole bh) throws Exception {
+		bh.consume(XPathRegistry.selectNodes(XPathRegistry.fitsDescendant("identity"), fitsXml));
+		for (String name : LOOKUPS) {
+			bh.consume(XPathRegistry.selectSingleNode(XPathRegistry.fitsDescendant(name), fitsXml));
+		}
+	}
+
+	@Benchmark
+	public void registryWithChildNavigation(Blackhole bh) throws Exception {
+		Element identification = fitsXml.getRootElement().getChild("identification", ns);
+		List<?> identities = identification.getChildren("identity", ns);
+		bh.consume(identities);
+		for (String name : LOOKUPS) {
+			bh.consume(XPathRegistry.selectSingleNode(XPathRegistry.fitsDescendant(name), fitsXml));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(XPathLookupBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,121 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileContextTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File createFile(int size) throws IOException {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte)i;
+		}
+		File file = folder.newFile();
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	@Test
+	public void testSmallFileIsHeldWhole() throws IOException {
+		File file = createFile(100);
+		byte[] expected = Files.readAllBytes(file.toPath());
+		try (FileContext context = new FileContext(file, 1024, 512)) {
+			assertEquals(100, context.getSize());
+			assertEquals(file.lastModified(), context.getLastModified());
+			assertTrue(context.isRegularFile());
+			assertArrayEquals(expected, toArray(context.getHeader()));
+			assertArrayEquals(expected, toArray(context.getTrailer()));
+			// more bytes than the file holds gives the whole file
+			assertArrayEquals(expected, context.getHeaderBytes(4096));
+		}
+	}
+
+	@Test
+	public void testLargeFileHeaderAndTrailer() throws IOException {
+		File file = createFile(10000);
+		byte[] all = Files.readAllBytes(file.toPath());
+		try (FileContext context = new FileContext(file, 1024, 512)) {
+			assertArrayEquals(Arrays.copyOfRange(all, 0, 1024), toArray(context.getHeader()));
+			assertArrayEquals(Arrays.copyOfRange(all, 10000 - 512, 10000), toArray(context.getTrailer()));
+			assertArrayEquals(Arrays.copyOfRange(all, 0, 12), context.getHeaderBytes(12));
+			// not all of the requested bytes are in the header
+			assertNull(context.getHeaderBytes(2048));
+			// each call returns an independent buffer
+			context.getHeader().get();
+			assertEquals(1024, context.getHeader().remaining());
+		}
+	}
+
+	@Test
+	public void testFileShrankBeforeRead() throws IOException {
+		File small = createFile(100);
+		try (FileContext context = new FileContext(small, 1024, 512)) {
+			Files.write(small.toPath(), new byte[] {1, 2, 3});
+			assertArrayEquals(new byte[] {1, 2, 3}, toArray(context.getHeader()));
+			assertArrayEquals(new byte[] {1, 2, 3}, toArray(context.getTrailer()));
+		}
+		File large = createFile(10000);
+		try (FileContext context = new FileContext(large, 1024, 512)) {
+			Files.write(large.toPath(), new byte[] {1, 2, 3});
+			// only the bytes read are visible, not what the pooled buffer held before
+			assertArrayEquals(new byte[] {1, 2, 3}, toArray(context.getHeader()));
+			assertEquals(0, context.getTrailer().remaining());
+		}
+	}
+
+	@Test
+	public void testIsFor() throws IOException {
+		File file = createFile(10);
+		try (FileContext context = new FileContext(file, 1024, 512)) {
+			assertTrue(context.isFor(new File(file.getPath())));
+			assertTrue(!context.isFor(folder.newFile()));
+			assertTrue(!context.isFor(null));
+		}
+	}
+
+	@Test
+	public void testClosedContext() throws IOException {
+		File file = createFile(10);
+		FileContext context = new FileContext(file, 1024, 512);
+		context.close();
+		try {
+			context.getHeader();
+			fail("Expected IOException reading a closed context");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.harvard.hul.ois.fits.Fits;
+import edu.harvard.hul.ois.fits.exceptions.FitsException;
+import edu.harvard.hul.ois.fits.tests.AbstractLoggingTest;
+import edu.harvard.hul.ois.fits.tools.exiftool.Exiftool;
+import edu.harvard.hul.ois.fits.tools.exiftool.ExiftoolGenericMapper;
+import edu.harvard.hul.ois.fits.tools.ffident.FFIdent;
+import edu.harvard.hul.ois.fits.tools.ffident.FFIdentMapper;
+import edu.harvard.hul.ois.fits.tools.fileutility.FileUtility;
+import edu.harvard.hul.ois.fits.tools.fileutility.FileUtilityMapper;
+
+/**
+ * Checks that each ToolOutputMapper produces the same FITS XML as the stylesheet it replaces,
+ * for the raw tool output of every file in the testfiles directory.
+ */
+public class ToolOutputMapperTest extends AbstractLoggingTest {
+
+	private static Fits fits;
+	private static List<File> corpus;
+	private final XMLOutputter outputter = new XMLOutputter(Format.getRawFormat());
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		fits = new Fits();
+		corpus = new ArrayList<File>();
+		for (File file : new File("testfiles").listFiles()) {
+			if (file.isFile()) {
+				corpus.add(file);
+			}
+		}
+	}
+
+	private void assertSameFitsXml(String message, ToolBase tool, String xslt, ToolOutputMapper mapper, Document rawOutput)
+			throws Exception {
+		String expected = outputter.outputString(tool.transform(xslt, rawOutput));
+		String actual = outputter.outputString(mapper.map(rawOutput));
+		assertEquals(message, expected, actual);
+	}
+
+	@Test
+	public void testFFIdentMapper() throws Exception {
+		FFIdent ffident = new FFIdent(fits);
+		String xslt = Fits.FITS_XML_DIR + "ffident/ffident_to_fits.xslt";
+		FFIdentMapper mapper = new FFIdentMapper();
+		for (File file : corpus) {
+			Document rawOutput = ffident.extractInfo(file).getToolOutput();
+			assertSameFitsXml(file.getName(), ffident, xslt, mapper, rawOutput);
+		}
+	}
+
+	@Test
+	public void testFileUtilityMapper() throws Exception {
+		FileUtility fileUtility = null;
+		try {
+			fileUtility = new FileUtility(fits);
+		}
+		catch (FitsException e) {
+			Assume.assumeNoException("file command not available", e);
+		}
+		String xslt = Fits.FITS_XML_DIR + "fileutility/fileutility_to_fits.xslt";
+		FileUtilityMapper mapper = new FileUtilityMapper();
+		for (File file : corpus) {
+			Document rawOutput = fileUtility.extractInfo(file).getToolOutput();
+			assertSameFitsXml(file.getName(), fileUtility, xslt, mapper, rawOutput);
+		}
+	}
+
+	@Test
+	public void testFileUtilityMapperSampleOutput() throws Exception {
+		ToolBase tool = new NoArgumentTestTool();
+		String xslt = Fits.FITS_XML_DIR + "fileutility/fileutility_to_fits.xslt";
+		FileUtilityMapper mapper = new FileUtilityMapper();
+		// format and mimetype pairs in the form FileUtility reports them, for formats the corpus lacks
+		String[][] samples = {
+				{"GIF image data, version 87a, 378 x 775", "image/gif"},
+				{"PC bitmap, Windows 3.x format, 497 x 332 x 24", "image/x-ms-bmp"},
+				{"PNG image data, 240 x 214, 8-bit/color RGB, non-interlaced", "image/png"},
+				{"XML 1.0 document, ASCII text", "text/xml"},
+				{"XML document text", "application/xml"},
+				{"Ogg data, Vorbis audio, stereo, 44100 Hz, ~64000 bps, created by: Xiph.Org libVorbis I (1.0)", "application/ogg"},
+				{"FLAC audio bitstream data, 16 bit, stereo, 44.1 kHz, 411840 samples", "audio/x-flac"},
+				{"Zip archive data, at least v2.0 to extract", "application/zip"},
+				{"gzip compressed data, from Unix, last modified: Mon Jan  4 10:00:00 2016", "application/gzip"},
+				{"PostScript document text conforming DSC level 3.0", "application/postscript"},
+				{"OpenDocument Drawing", "application/vnd.oasis.opendocument.graphics"},
+				{"data", "application/octet-stream"},
+				{"", ""}};
+		for (String[] sample : samples) {
+			Element root = new Element("fileUtilityOutput");
+			root.addContent(new Element("rawOutput").setText(sample[0] + "\n" + sample[1]));
+			root.addContent(new Element("mimetype").setText(sample[1]));
+			root.addContent(new Element("format").setText(sample[0]));
+			assertSameFitsXml(sample[0], tool, xslt, mapper, new Document(root));
+		}
+
+		// plain text with line breaks
+		for (List<String> linebreaks : Arrays.asList(Arrays.asList("CR/LF"), Arrays.asList("no"), Arrays.asList("CR", "LF"))) {
+			Element root = new Element("fileUtilityOutput");
+			root.addContent(new Element("rawOutput").setText("ASCII text\ntext/plain; charset=us-ascii"));
+			root.addContent(new Element("mimetype").setText("text/plain"));
+			root.addContent(new Element("format").setText("Plain text"));
+			root.addContent(new Element("charset").setText("US-ASCII"));
+			for (String linebreak : linebreaks) {
+				root.addContent(new Element("linebreak").setText(linebreak));
+			}
+			assertSameFitsXml(linebreaks.toString(), tool, xslt, mapper, new Document(root));
+		}
+	}
+
+	@Test
+	public void testExiftoolGenericMapper() throws Exception {
+		Exiftool exiftool = null;
+		try {
+			exiftool = new Exiftool(fits);
+		}
+		catch (FitsException e) {
+			Assume.assumeNoException("exiftool not available", e);
+		}
+		// the generic stylesheet is applied to every file, not only those without a specific one
+		String xslt = Fits.FITS_XML_DIR + "exiftool/exiftool_generic_to_fits.xslt";
+		ExiftoolGenericMapper mapper = new ExiftoolGenericMapper();
+		for (File file : corpus) {
+			Document rawOutput = exiftool.extractInfo(file).getToolOutput();
+			assertSameFitsXml(file.getName(), exiftool, xslt, mapper, rawOutput);
+		}
+	}
+
+}
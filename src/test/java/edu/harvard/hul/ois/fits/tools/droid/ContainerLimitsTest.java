@@ -0,0 +1,72 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.Test;
+
+public class ContainerLimitsTest {
+
+	@Test
+	public void testNoLimits() {
+		assertEquals(1, ContainerLimits.NONE.getStride(2000000, Long.MAX_VALUE / 2));
+		assertEquals(1, ContainerLimits.NONE.getBudgetStride(2000000, 1));
+	}
+
+	@Test
+	public void testStrideKeepsWithinLimits() {
+		ContainerLimits limits = new ContainerLimits(1000, 100L * 1024 * 1024, -1, 100);
+		assertEquals(1, limits.getStride(1000, 1024));
+		assertEquals(2, limits.getStride(1001, 1024));
+		assertEquals(2000, limits.getStride(2000000, 1024));
+		// the byte limit wins when it is the tighter one
+		assertEquals(10, limits.getStride(5000, 1000L * 1024 * 1024));
+		// at least the first entry is always identified
+		assertEquals(3, limits.getStride(3, Long.MAX_VALUE));
+		// without a time budget the budget sample is the whole sample
+		assertEquals(2000, limits.getBudgetStride(2000000, 2000));
+	}
+
+	@Test
+	public void testBudgetSampleIsSubsetOfSample() {
+		ContainerLimits limits = new ContainerLimits(100000, -1, 60000, 1000);
+		int stride = limits.getStride(2000000, 0);
+		int budgetStride = limits.getBudgetStride(2000000, stride);
+		assertEquals(20, stride);
+		assertEquals(0, budgetStride % stride);
+		assertTrue((2000000 + budgetStride - 1) / budgetStride <= 1000);
+		// small containers are kept whole
+		assertEquals(1, limits.getBudgetStride(1000, 1));
+	}
+
+	@Test
+	public void testFromConfig() throws Exception {
+		XMLConfiguration config = new XMLConfiguration();
+		config.load(new StringReader("<fits_configuration><droid_container_limits max-entries='500' max-uncompressed-mb='1' "
+				+ "time-budget-seconds='2' sample-entries='10' /></fits_configuration>"));
+		ContainerLimits limits = ContainerLimits.fromConfig(config);
+		assertEquals(2, limits.getStride(1000, 0));
+		assertEquals(3, limits.getStride(10, 3 * 1024 * 1024));
+		assertEquals(2000, limits.getTimeBudgetMillis());
+		assertEquals(100, limits.getBudgetStride(1000, 2));
+
+		ContainerLimits none = ContainerLimits.fromConfig(new XMLConfiguration());
+		assertEquals(1, none.getStride(1000000, Long.MAX_VALUE));
+		assertFalse(none.getTimeBudgetMillis() > 0);
+	}
+
+}
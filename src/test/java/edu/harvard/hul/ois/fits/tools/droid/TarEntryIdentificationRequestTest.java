@@ -0,0 +1,126 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+public class TarEntryIdentificationRequestTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] content(int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (i % 251);
+		}
+		return data;
+	}
+
+	private File createTar(String name, boolean gzip) throws IOException {
+		File file = folder.newFile(name);
+		try (OutputStream fileOut = new FileOutputStream(file);
+				OutputStream compressed = gzip ? new GzipCompressorOutputStream(fileOut) : fileOut;
+				TarArchiveOutputStream out = new TarArchiveOutputStream(compressed)) {
+			for (int size : new int[] {1000, 300000, 0}) {
+				TarArchiveEntry entry = new TarArchiveEntry(size == 0 ? "empty.txt" : size + ".bin");
+				entry.setSize(size);
+				out.putArchiveEntry(entry);
+				out.write(content(size));
+				out.closeArchiveEntry();
+			}
+		}
+		return file;
+	}
+
+	private static TarEntryIdentificationRequest open(TarArchiveInputStream in, TarArchiveEntry entry, File file) throws IOException {
+		RequestMetaData metadata = new RequestMetaData(entry.getSize(), 2L, entry.getName());
+		// entries above 64 KB are streamed rather than held in memory
+		TarEntryIdentificationRequest request = new TarEntryIdentificationRequest(metadata, new RequestIdentifier(file.toURI()), 64 * 1024);
+		request.open(in);
+		return request;
+	}
+
+	@Test
+	public void testEntriesInMemoryAndStreamed() throws IOException {
+		File file = createTar("test.tar", false);
+		try (TarArchiveInputStream in = new TarArchiveInputStream(new FileInputStream(file))) {
+			TarArchiveEntry entry = in.getNextTarEntry();
+			try (TarEntryIdentificationRequest request = open(in, entry, file)) {
+				assertEquals(1000, request.size());
+				assertEquals("bin", request.getExtension());
+				assertEquals((byte) (999 % 251), request.getByte(999));
+				try (InputStream data = request.getSourceInputStream()) {
+					assertArrayEquals(content(1000), IOUtils.toByteArray(data));
+				}
+			}
+
+			entry = in.getNextTarEntry();
+			try (TarEntryIdentificationRequest request = open(in, entry, file)) {
+				assertEquals(300000, request.size());
+				assertEquals((byte) 0, request.getByte(0));
+				assertEquals((byte) (299999 % 251), request.getByte(299999));
+				try {
+					request.getSourceInputStream();
+					fail("a streamed entry cannot be read again");
+				} catch (IOException expected) {
+					// expected
+				}
+			}
+
+			// the rest of the streamed entry is skipped
+			entry = in.getNextTarEntry();
+			assertEquals("empty.txt", entry.getName());
+			try (TarEntryIdentificationRequest request = open(in, entry, file)) {
+				assertEquals(0, request.size());
+				assertEquals(-1, request.getWindowReader().readByte(0));
+			}
+			assertNull(in.getNextTarEntry());
+		}
+	}
+
+	@Test
+	public void testIsTar() throws IOException {
+		assertTrue(TarArchiveContentIdentifier.isTar(createTar("test.tar.gz", true), TarArchiveContentIdentifier.Compression.GZIP));
+		File gzip = folder.newFile("test.txt.gz");
+		try (OutputStream out = new GzipCompressorOutputStream(new FileOutputStream(gzip))) {
+			out.write(content(5000));
+		}
+		assertFalse(TarArchiveContentIdentifier.isTar(gzip, TarArchiveContentIdentifier.Compression.GZIP));
+		// a tar file that is not compressed is not a gzip file
+		assertFalse(TarArchiveContentIdentifier.isTar(createTar("test.tar", false), TarArchiveContentIdentifier.Compression.GZIP));
+	}
+
+}
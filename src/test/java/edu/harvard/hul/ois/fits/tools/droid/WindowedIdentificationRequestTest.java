@@ -0,0 +1,109 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+public class WindowedIdentificationRequestTest {
+
+	private static final int SIZE = 1024 * 1024;
+	private static final int LIMIT = 16 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File createFile() throws IOException {
+		byte[] data = new byte[SIZE];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 251);
+		}
+		File file = folder.newFile("data.bin");
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	private static WindowedIdentificationRequest open(File file, long limit) throws IOException {
+		RequestMetaData metadata = new RequestMetaData(file.length(), file.lastModified(), file.getName());
+		WindowedIdentificationRequest request = new WindowedIdentificationRequest(metadata, new RequestIdentifier(file.toURI()), limit, null);
+		request.open(file.toPath());
+		return request;
+	}
+
+	@Test
+	public void testOnlyEndsAreRead() throws IOException {
+		File file = createFile();
+		try (WindowedIdentificationRequest request = open(file, LIMIT)) {
+			assertEquals(SIZE, request.size());
+			assertEquals((byte) 0, request.getByte(0));
+			assertEquals((byte) ((LIMIT - 1) % 251), request.getByte(LIMIT - 1));
+			assertEquals((byte) ((SIZE - 1) % 251), request.getByte(SIZE - 1));
+			assertEquals((byte) ((SIZE - LIMIT) % 251), request.getByte(SIZE - LIMIT));
+			long bytesRead = request.getBytesRead();
+			assertTrue(bytesRead > 0 && bytesRead <= 2 * LIMIT);
+			// the middle of the file is out of reach
+			assertEquals(-1, request.getWindowReader().readByte(SIZE / 2));
+			assertNull(request.getWindowReader().getWindow(SIZE / 2));
+			assertEquals(bytesRead, request.getBytesRead());
+
+			request.setScanLimit(DroidScanLimits.UNLIMITED);
+			assertEquals((byte) ((SIZE / 2) % 251), request.getByte(SIZE / 2));
+		}
+	}
+
+	@Test
+	public void testUnlimitedReadsWholeFile() throws IOException {
+		File file = createFile();
+		try (WindowedIdentificationRequest request = open(file, DroidScanLimits.UNLIMITED)) {
+			byte[] read = new byte[SIZE];
+			InputStream in = request.getSourceInputStream();
+			int n = 0;
+			int count;
+			while (n < SIZE && (count = in.read(read, n, SIZE - n)) > 0) {
+				n += count;
+			}
+			assertEquals(SIZE, n);
+			assertEquals((byte) ((SIZE / 2) % 251), read[SIZE / 2]);
+		}
+	}
+
+	@Test
+	public void testScanLimitsConfig() throws Exception {
+		XMLConfiguration config = new XMLConfiguration();
+		config.load(new StringReader("<fits_configuration><droid_scan_limit max-bytes-kb=\"1024\">"
+				+ "<extension exts=\"mov,MXF\" max-bytes-kb=\"64\"/>"
+				+ "<format puids=\"fmt/199,fmt/5\" max-bytes-kb=\"-1\"/>"
+				+ "</droid_scan_limit></fits_configuration>"));
+		DroidScanLimits limits = DroidScanLimits.fromConfig(config);
+		assertEquals(1024 * 1024, limits.getLimit("pdf"));
+		assertEquals(1024 * 1024, limits.getLimit(null));
+		assertEquals(64 * 1024, limits.getLimit("mov"));
+		assertEquals(64 * 1024, limits.getLimit("mxf"));
+
+		assertEquals(DroidScanLimits.UNLIMITED, DroidScanLimits.fromConfig(new XMLConfiguration()).getLimit("mov"));
+	}
+
+}
@@ -0,0 +1,111 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.droid;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.nationalarchives.droid.core.interfaces.RequestIdentifier;
+import uk.gov.nationalarchives.droid.core.interfaces.resource.RequestMetaData;
+
+public class ZipFileEntryIdentificationRequestTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] content(int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (i % 251);
+		}
+		return data;
+	}
+
+	private File createZip() throws IOException {
+		File file = folder.newFile("test.zip");
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+			out.putNextEntry(new ZipEntry("small.bin"));
+			out.write(content(1000));
+			out.putNextEntry(new ZipEntry("large.bin"));
+			out.write(content(300000));
+			out.putNextEntry(new ZipEntry("empty.txt"));
+		}
+		return file;
+	}
+
+	private static ZipFileEntryIdentificationRequest open(ZipFile zipFile, String name, File file) throws IOException {
+		RequestMetaData metadata = new RequestMetaData(zipFile.getEntry(name).getSize(), 2L, name);
+		// entries above 64 KB are streamed rather than held in memory
+		ZipFileEntryIdentificationRequest request = new ZipFileEntryIdentificationRequest(metadata, new RequestIdentifier(file.toURI()), zipFile, 64 * 1024);
+		request.open(zipFile.getEntry(name));
+		return request;
+	}
+
+	@Test
+	public void testEntriesInMemoryAndStreamed() throws IOException {
+		File file = createZip();
+		try (ZipFile zipFile = new ZipFile(file, "UTF8", true, true)) {
+			for (int size : new int[] {1000, 300000}) {
+				String name = size == 1000 ? "small.bin" : "large.bin";
+				try (ZipFileEntryIdentificationRequest request = open(zipFile, name, file)) {
+					assertEquals(size, request.size());
+					assertEquals("bin", request.getExtension());
+					assertEquals((byte) 0, request.getByte(0));
+					assertEquals((byte) ((size - 1) % 251), request.getByte(size - 1));
+					try (InputStream in = request.getSourceInputStream()) {
+						assertArrayEquals(content(size), IOUtils.toByteArray(in));
+					}
+				}
+			}
+			try (ZipFileEntryIdentificationRequest request = open(zipFile, "empty.txt", file)) {
+				assertEquals(0, request.size());
+				assertEquals(-1, request.getWindowReader().readByte(0));
+			}
+		}
+	}
+
+	@Test
+	public void testStoppedRequest() throws IOException {
+		File file = createZip();
+		try (ZipFile zipFile = new ZipFile(file, "UTF8", true, true)) {
+			RequestMetaData metadata = new RequestMetaData(300000L, 2L, "large.bin");
+			AtomicBoolean stopped = new AtomicBoolean(false);
+			try (ZipFileEntryIdentificationRequest request = new ZipFileEntryIdentificationRequest(metadata,
+					new RequestIdentifier(file.toURI()), zipFile, 64 * 1024, stopped)) {
+				request.open(zipFile.getEntry("large.bin"));
+				assertEquals((byte) 0, request.getByte(0));
+				stopped.set(true);
+				try (InputStream in = request.getSourceInputStream()) {
+					fail("expected the stopped request not to be read");
+				}
+				catch (IOException e) {
+					// the entry is not read once stopped
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.ffident;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SignatureTrieTest {
+
+	private static FormatDescription description(String name, int offset, String magic) {
+		FormatDescription desc = new FormatDescription();
+		desc.setShortName(name);
+		desc.setOffset(offset);
+		desc.setMagicBytes(magic);
+		return desc;
+	}
+
+	private static FormatDescription linearScan(List<FormatDescription> descriptions, byte[] data) {
+		for (FormatDescription desc : descriptions) {
+			if (desc.matches(data)) {
+				return desc;
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void testFirstMatchWins() {
+		FormatDescription zip = description("ZIP", 0, "\"PK\"");
+		FormatDescription docx = description("DOCX", 0, "\"PK\u0003\u0004\"");
+		FormatDescription later = description("LATER", 4, "\"ab\"");
+		FormatDescription earlier = description("EARLIER", 2, "\"cd\"");
+		List<FormatDescription> descriptions = Arrays.asList(earlier, zip, docx, later);
+		SignatureTrie trie = new SignatureTrie(descriptions);
+
+		// the shorter ZIP signature comes first in the list, so it wins over DOCX
+		assertSame(zip, trie.identify("PK\u0003\u0004".getBytes()));
+		// matches at different offsets are ordered by list position, not by offset
+		assertSame(earlier, trie.identify("xxcdab".getBytes()));
+		assertSame(later, trie.identify("xxxxab".getBytes()));
+		// a signature running past the end of the data does not match
+		assertNull(trie.identify("xxxxa".getBytes()));
+		assertNull(trie.identify(new byte[0]));
+	}
+
+	@Test
+	public void testMatchesLinearScanOfFormatsFile() throws IOException {
+		List<FormatDescription> descriptions = new ArrayList<FormatDescription>();
+		try (FileReader reader = new FileReader("tools/ffident/formats.txt")) {
+			FormatDescriptionReader in = new FormatDescriptionReader(reader);
+			FormatDescription desc;
+			while ((desc = in.read()) != null) {
+				descriptions.add(desc);
+			}
+		}
+		SignatureTrie trie = new SignatureTrie(descriptions);
+
+		List<byte[]> samples = new ArrayList<byte[]>();
+		File[] testFiles = new File("testfiles").listFiles();
+		for (File f : testFiles) {
+			if (f.isFile()) {
+				byte[] data = Files.readAllBytes(f.toPath());
+				samples.add(Arrays.copyOf(data, Math.min(data.length, 2048)));
+			}
+		}
+		// each signature in random data, complete and cut short by one byte
+		Random random = new Random(42);
+		for (FormatDescription desc : descriptions) {
+			byte[] magic = desc.getMagicBytes();
+			if (magic == null || desc.getOffset() == null) {
+				continue;
+			}
+			int end = desc.getOffset() + magic.length;
+			for (int length : new int[] {end, end - 1, end + 512}) {
+				byte[] data = new byte[length];
+				random.nextBytes(data);
+				System.arraycopy(magic, 0, data, desc.getOffset(), Math.min(magic.length, length - desc.getOffset()));
+				samples.add(data);
+			}
+		}
+
+		for (byte[] data : samples) {
+			assertSame(linearScan(descriptions, data), trie.identify(data));
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.jhove;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+public class JhoveReportFilterTest {
+
+	private static final String NS = " xmlns=\"http://schema.openpreservation.org/ois/xml/ns/jhove\"";
+
+	private static String page(int n) {
+		return "<property><name>Page</name><values arity=\"List\" type=\"Property\">"
+				+ "<property><name>Sequence</name><values arity=\"Scalar\" type=\"Integer\"><value>" + n + "</value></values></property>"
+				+ "</values></property>";
+	}
+
+	private static String pdf(String pages) {
+		return "<jhove" + NS + "><repInfo uri=\"a.pdf\"><properties>"
+				+ "<property><name>PDFMetadata</name><values arity=\"Array\" type=\"Property\">"
+				+ "<property><name>Fonts</name><values arity=\"List\" type=\"Property\"><value>Helvetica</value></values></property>"
+				+ "<property><name>Pages</name><values arity=\"List\" type=\"Property\">" + pages + "</values></property>"
+				+ "</values></property></properties></repInfo></jhove>";
+	}
+
+	private static String filter(String xml, JhoveReportFilter filter) throws Exception {
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		filter.setParent(factory.newSAXParser().getXMLReader());
+		TransformerHandler handler = ((SAXTransformerFactory) TransformerFactory.newInstance()).newTransformerHandler();
+		handler.getTransformer().setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		StringWriter out = new StringWriter();
+		handler.setResult(new StreamResult(out));
+		filter.setContentHandler(handler);
+		filter.parse(new InputSource(new StringReader(xml)));
+		return out.toString();
+	}
+
+	@Test
+	public void passesReportWithinLimitsUnchanged() throws Exception {
+		String xml = pdf(page(1) + page(2));
+		JhoveReportFilter filter = new JhoveReportFilter(
+				new JhoveReportLimits(2, 0, Collections.<String>emptySet(), 0));
+
+		assertEquals(xml, filter(xml, filter));
+		assertEquals(0, filter.getCappedItems());
+	}
+
+	@Test
+	public void pagesPastLimitKeepOnlyTheirName() throws Exception {
+		JhoveReportFilter filter = new JhoveReportFilter(
+				new JhoveReportLimits(1, 0, Collections.<String>emptySet(), 0));
+
+		String stub = "<property><name>Page</name></property>";
+		assertEquals(pdf(page(1) + stub + stub), filter(pdf(page(1) + page(2) + page(3)), filter));
+		assertEquals(2, filter.getCappedItems());
+	}
+
+	@Test
+	public void skippedPropertiesAreDropped() throws Exception {
+		JhoveReportFilter filter = new JhoveReportFilter(
+				new JhoveReportLimits(0, 0, new HashSet<String>(Arrays.asList("Fonts", "Sequence")), 0));
+
+		String page = "<property><name>Page</name><values arity=\"List\" type=\"Property\"/></property>";
+		String expected = "<jhove" + NS + "><repInfo uri=\"a.pdf\"><properties>"
+				+ "<property><name>PDFMetadata</name><values arity=\"Array\" type=\"Property\">"
+				+ "<property><name>Pages</name><values arity=\"List\" type=\"Property\">" + page + "</values></property>"
+				+ "</values></property></properties></repInfo></jhove>";
+		assertEquals(expected, filter(pdf(page(1)), filter));
+		assertEquals(2, filter.getSkippedProperties());
+	}
+
+}
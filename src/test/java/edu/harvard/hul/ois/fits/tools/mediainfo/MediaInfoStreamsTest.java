@@ -0,0 +1,60 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.mediainfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MediaInfoStreamsTest {
+
+	private static final List<String> NAMES = Arrays.asList("ID", "Codec/CC", "Duration");
+
+	private static final String F = String.valueOf(MediaInfoStreams.FIELD_SEPARATOR);
+	private static final String S = String.valueOf(MediaInfoStreams.STREAM_SEPARATOR);
+
+	@Test
+	public void testTemplate() {
+		assertEquals("Audio;%ID%" + F + "%Codec/CC%" + F + "%Duration%" + F + S,
+				MediaInfoStreams.template(MediaInfoNativeWrapper.StreamKind.Audio, NAMES));
+	}
+
+	@Test
+	public void testParseStreams() {
+		List<Map<String, String>> streams = MediaInfoStreams.parse(
+				"1" + F + "apch" + F + "1001" + F + S + "2" + F + F + "" + F + S + "\n", NAMES);
+		assertEquals(2, streams.size());
+		assertEquals("1", streams.get(0).get("ID"));
+		assertEquals("apch", streams.get(0).get("Codec/CC"));
+		assertEquals("1001", streams.get(0).get("Duration"));
+		assertEquals("2", streams.get(1).get("ID"));
+		assertEquals("", streams.get(1).get("Codec/CC"));
+		assertEquals("", streams.get(1).get("Duration"));
+
+		// a file without streams of the kind
+		assertEquals(0, MediaInfoStreams.parse("", NAMES).size());
+	}
+
+	@Test
+	public void testParseUnexpectedOutput() {
+		// too few fields
+		assertNull(MediaInfoStreams.parse("1" + F + "apch" + F + S, NAMES));
+		// output that is not from the template
+		assertNull(MediaInfoStreams.parse("<Mediainfo version=\"0.7\"/>", NAMES));
+		assertNull(MediaInfoStreams.parse(null, NAMES));
+	}
+
+}
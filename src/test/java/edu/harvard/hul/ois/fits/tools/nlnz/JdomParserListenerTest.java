@@ -0,0 +1,154 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.nlnz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.HashMap;
+
+import org.jdom.Document;
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+import org.jdom.output.XMLOutputter;
+import org.junit.Test;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+
+import nz.govt.natlib.fx.ParserContext;
+import nz.govt.natlib.fx.ParserListener;
+import nz.govt.natlib.meta.harvester.DTDXmlParserListener;
+
+public class JdomParserListenerTest {
+
+	private static final String DTD = "xml/nlnz/image.dtd";
+
+	/** The events of an adapter harvesting an image, with the values that the writer and parser change. */
+	private static void harvest(ParserListener listener) {
+		ParserContext context = new ParserContext();
+		context.addListener(listener);
+		context.fireStartParseEvent("image");
+		context.fireParseEvent("width", 640);
+		context.fireParseEvent("Software", "Adobe\u00ae Photoshop\u0001 7.0");
+		HashMap<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put("type", "line\r\nbreak\tand tab");
+		context.fireStartParseEvent("Comment", false, parameters);
+		context.fireParseEvent("first line\r\n");
+		context.fireParseEvent("second line\rthird");
+		context.fireEndParseEvent("Comment");
+		context.fireStartParseEvent("empty");
+		context.fireEndParseEvent("empty");
+		context.fireEndParseEvent("image");
+	}
+
+	/** The document as MetadataExtractor built it before: written by the NLNZ listener and parsed back. */
+	private static Document writeAndParse(String dtd) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		harvest(new DTDXmlParserListener(out, dtd));
+		SAXBuilder builder = new SAXBuilder();
+		builder.setEntityResolver(new EntityResolver() {
+			@Override
+			public InputSource resolveEntity(String publicId, String systemId) {
+				return new InputSource(new StringReader(""));
+			}
+		});
+		return builder.build(new StringReader(out.toString()));
+	}
+
+	@Test
+	public void testSameDocumentAsTheNlnzWriter() throws Exception {
+		JdomParserListener listener = new JdomParserListener(DTD);
+		harvest(listener);
+		Document built = listener.getDocument();
+
+		XMLOutputter outputter = new XMLOutputter();
+		assertEquals(outputter.outputString(writeAndParse(DTD)), outputter.outputString(built));
+
+		assertEquals("IMAGE", built.getDocType().getElementName());
+		assertEquals(DTD, built.getDocType().getSystemID());
+		assertEquals("Adobe Photoshop 7.0", built.getRootElement().getChildText("SOFTWARE"));
+		assertEquals("line break and tab", built.getRootElement().getChild("COMMENT").getAttributeValue("type"));
+		// adjacent values are one text node, as a parser reads them
+		assertEquals(1, built.getRootElement().getChild("COMMENT").getContent().size());
+		assertEquals("first line\nsecond line\nthird", built.getRootElement().getChildText("COMMENT"));
+	}
+
+	@Test
+	public void testNoDocumentType() throws Exception {
+		JdomParserListener listener = new JdomParserListener(null);
+		harvest(listener);
+		Document built = listener.getDocument();
+		assertNull(built.getDocType());
+		XMLOutputter outputter = new XMLOutputter();
+		assertEquals(outputter.outputString(writeAndParse(null)), outputter.outputString(built));
+	}
+
+	private static void assertNotWellFormed(JdomParserListener listener) {
+		try {
+			listener.getDocument();
+			fail("expected a JDOMException");
+		} catch (JDOMException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testEventsThatDoNotMakeADocument() {
+		assertNotWellFormed(new JdomParserListener(DTD));
+
+		JdomParserListener listener = new JdomParserListener(DTD);
+		ParserContext context = new ParserContext();
+		context.addListener(listener);
+		context.fireStartParseEvent("image");
+		assertNotWellFormed(listener);
+
+		listener = new JdomParserListener(DTD);
+		context = new ParserContext();
+		context.addListener(listener);
+		context.fireParseEvent("text before the root");
+		context.fireStartParseEvent("image");
+		context.fireEndParseEvent("image");
+		assertNotWellFormed(listener);
+
+		listener = new JdomParserListener(DTD);
+		context = new ParserContext();
+		context.addListener(listener);
+		context.fireStartParseEvent("image");
+		context.fireEndParseEvent("image");
+		context.fireStartParseEvent("image");
+		context.fireEndParseEvent("image");
+		assertNotWellFormed(listener);
+	}
+
+	@Test
+	public void cleanDropsCharactersTheWriterLeavesOut() {
+		assertEquals("ab", JdomParserListener.clean("a\u00e9\u0001b", false));
+		assertEquals("a\r\nb", JdomParserListener.clean("a\r\n\tb", true));
+		assertEquals("ab", JdomParserListener.clean("a\r\nb", false));
+	}
+
+	@Test
+	public void cleanReturnsPrintableValueAsItIs() {
+		String value = "Adobe Photoshop 7.0";
+		assertSame(value, JdomParserListener.clean(value, false));
+	}
+
+	@Test
+	public void lineBreaksAreNormalizedAsByAParser() {
+		assertEquals("a\nb\nc", JdomParserListener.normalizeLineBreaks("a\r\nb\rc"));
+		assertEquals("a b c d", JdomParserListener.normalizeAttribute("a\r\nb\tc\nd"));
+	}
+
+}
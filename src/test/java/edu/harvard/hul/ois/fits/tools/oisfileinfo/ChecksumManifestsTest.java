@@ -0,0 +1,138 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChecksumManifestsTest {
+
+	private static final String MD5 = "900150983cd24fb0d6963f7d28e17f72";
+	private static final String SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testBagItDetection() throws IOException {
+		File bag = folder.newFolder("bag");
+		write(new File(bag, "bagit.txt"), "BagIt-Version: 1.0\nTag-File-Character-Encoding: UTF-8\n");
+		write(new File(bag, "manifest-sha256.txt"), SHA256 + " data/sub dir/a.txt\n");
+		write(new File(bag, "manifest-md5.txt"), MD5.toUpperCase() + " data/sub dir/a.txt\n" + MD5 + " data/100%25.txt\n");
+		File payload = new File(bag, "data/sub dir/a.txt");
+		write(payload, "abc");
+
+		ChecksumManifests manifests = new ChecksumManifests(true);
+		Map<String,String> checksums = manifests.lookup(payload);
+		assertEquals(SHA256, checksums.get("SHA-256"));
+		assertEquals(MD5, checksums.get("MD5"));
+		// percent-encoded paths are decoded
+		assertEquals(MD5, manifests.lookup(new File(bag, "data/100%.txt")).get("MD5"));
+		// files outside the bag are not listed
+		assertTrue(manifests.lookup(folder.newFile("other.txt")).isEmpty());
+	}
+
+	@Test
+	public void testNoDetectionWithoutFlag() throws IOException {
+		File bag = folder.newFolder("bag");
+		write(new File(bag, "bagit.txt"), "BagIt-Version: 1.0\n");
+		write(new File(bag, "manifest-md5.txt"), MD5 + " data/a.txt\n");
+		assertTrue(new ChecksumManifests(false).lookup(new File(bag, "data/a.txt")).isEmpty());
+	}
+
+	@Test
+	public void testSumAndTagFormats() throws IOException {
+		File dir = folder.newFolder("files");
+		File sums = new File(dir, "checksums.sha256");
+		write(sums, SHA256 + "  a.txt\n" + SHA256 + " *b.bin\n");
+		File tagged = new File(dir, "all.checksums");
+		write(tagged, "MD5 (c.txt) = " + MD5 + "\nSHA256 (c.txt) = " + SHA256 + "\n");
+		File untyped = new File(dir, "list.txt");
+		write(untyped, MD5 + "  d.txt\n");
+
+		ChecksumManifests manifests = new ChecksumManifests(false);
+		manifests.load(sums);
+		manifests.load(tagged);
+		manifests.load(untyped);
+		assertEquals(SHA256, manifests.lookup(new File(dir, "a.txt")).get("SHA-256"));
+		assertEquals(SHA256, manifests.lookup(new File(dir, "b.bin")).get("SHA-256"));
+		Map<String,String> c = manifests.lookup(new File(dir, "c.txt"));
+		assertEquals(MD5, c.get("MD5"));
+		assertEquals(SHA256, c.get("SHA-256"));
+		// algorithm taken from the length of the checksum
+		assertEquals(MD5, manifests.lookup(new File(dir, "d.txt")).get("MD5"));
+	}
+
+	@Test
+	public void testChangedManifestsAreReadAgain() throws IOException {
+		File dir = folder.newFolder("files");
+		File sums = new File(dir, "checksums.md5");
+		write(sums, MD5 + "  a.txt\n");
+		// checked for changes on each lookup
+		ChecksumManifests manifests = new ChecksumManifests(true, 0);
+		manifests.load(sums);
+		assertEquals(MD5, manifests.lookup(new File(dir, "a.txt")).get("MD5"));
+		write(sums, MD5 + "  b.txt\n" + MD5 + "  c.txt\n");
+		assertTrue(manifests.lookup(new File(dir, "a.txt")).isEmpty());
+		assertEquals(MD5, manifests.lookup(new File(dir, "c.txt")).get("MD5"));
+
+		File bag = folder.newFolder("bag");
+		write(new File(bag, "bagit.txt"), "BagIt-Version: 1.0\n");
+		write(new File(bag, "manifest-md5.txt"), MD5 + " data/a.txt\n");
+		File payload = new File(bag, "data/a.txt");
+		assertNull(manifests.lookup(payload).get("SHA-256"));
+		// a manifest added to the bag, whose root then has a new modification time
+		write(new File(bag, "manifest-sha256.txt"), SHA256 + " data/a.txt\n");
+		Files.setLastModifiedTime(bag.toPath(), FileTime.fromMillis(bag.lastModified() + 2000));
+		assertEquals(SHA256, manifests.lookup(payload).get("SHA-256"));
+	}
+
+	@Test
+	public void testChangesAreCheckedOnAnInterval() throws IOException {
+		File dir = folder.newFolder("files");
+		File sums = new File(dir, "checksums.md5");
+		write(sums, MD5 + "  a.txt\n");
+		ChecksumManifests manifests = new ChecksumManifests(true, 60000);
+		manifests.load(sums);
+		write(sums, MD5 + "  b.txt\n");
+		// not stat'ed again until the interval has passed
+		assertEquals(MD5, manifests.lookup(new File(dir, "a.txt")).get("MD5"));
+	}
+
+	@Test
+	public void testBagCreatedLater() throws IOException {
+		File bag = folder.newFolder("bag");
+		File payload = new File(bag, "data/a.txt");
+		ChecksumManifests manifests = new ChecksumManifests(true, 0);
+		assertTrue(manifests.lookup(payload).isEmpty());
+		write(new File(bag, "bagit.txt"), "BagIt-Version: 1.0\n");
+		write(new File(bag, "manifest-md5.txt"), MD5 + " data/a.txt\n");
+		assertEquals(MD5, manifests.lookup(payload).get("MD5"));
+	}
+
+}
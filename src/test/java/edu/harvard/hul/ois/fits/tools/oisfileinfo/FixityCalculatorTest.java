@@ -0,0 +1,86 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.harvard.hul.ois.fits.tools.utils.Crc32c;
+
+public class FixityCalculatorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testKnownValues() throws Exception {
+		File file = folder.newFile();
+		Files.write(file.toPath(), "abc".getBytes(StandardCharsets.US_ASCII));
+
+		Map<String,String> values = FixityCalculator.submit(file, FixityCalculator.ALGORITHMS).get();
+		assertEquals(FixityCalculator.ALGORITHMS, Arrays.asList(values.keySet().toArray()));
+		assertEquals("900150983cd24fb0d6963f7d28e17f72", values.get("MD5"));
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", values.get("SHA-1"));
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", values.get("SHA-256"));
+		assertEquals("ddaf35a193617abacc417349ae20413112e6fa4e89a97ea20a9eeee64b55d39a"
+				+ "2192992a274fc1a836ba3c23a3feebbd454d4423643ce80e2a9ac94fa54ca49f", values.get("SHA-512"));
+		assertEquals("364b3fb7", values.get("CRC32C"));
+	}
+
+	@Test
+	public void testMultipleBlocks() throws Exception {
+		// larger than the read block, with a partial last block
+		byte[] data = new byte[3 * 1024 * 1024 + 17];
+		new Random(42).nextBytes(data);
+		File file = folder.newFile();
+		Files.write(file.toPath(), data);
+
+		Map<String,String> values = FixityCalculator.compute(file, Arrays.asList("SHA-256", "CRC32C"));
+
+		StringBuilder expected = new StringBuilder();
+		for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+			expected.append(String.format("%02x", b));
+		}
+		assertEquals(expected.toString(), values.get("SHA-256"));
+		Crc32c crc = new Crc32c();
+		crc.update(data);
+		assertEquals(String.format("%08x", crc.getValue()), values.get("CRC32C"));
+	}
+
+	@Test
+	public void testCrc32cCheckValue() {
+		Crc32c crc = new Crc32c();
+		crc.update("123456789".getBytes(StandardCharsets.US_ASCII));
+		assertEquals(0xe3069283L, crc.getValue());
+	}
+
+	@Test
+	public void testAlgorithmNames() {
+		assertEquals("SHA-256", FixityCalculator.normalizeAlgorithm("sha256"));
+		assertEquals("CRC32C", FixityCalculator.normalizeAlgorithm(" crc32c "));
+		assertNull(FixityCalculator.normalizeAlgorithm("SHA-3"));
+		assertEquals("md5checksum", FixityCalculator.getElementName("MD5"));
+		assertEquals("sha512checksum", FixityCalculator.getElementName("SHA-512"));
+	}
+
+}
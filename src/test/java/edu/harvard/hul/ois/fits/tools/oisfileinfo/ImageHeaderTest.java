@@ -0,0 +1,200 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ImageHeaderTest {
+
+	/** A little endian TIFF structure with an IFD0 of the given entries, each a tag, type, count and value. */
+	private static byte[] tiff(int[][] entries, int extraSize) {
+		ByteBuffer buf = ByteBuffer.allocate(8 + 2 + 12 * entries.length + 4 + extraSize).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+		buf.putShort((short) entries.length);
+		for (int[] entry : entries) {
+			buf.putShort((short) entry[0]).putShort((short) entry[1]).putInt(entry[2]);
+			if (entry[1] == 3 && entry[2] == 1) {
+				buf.putShort((short) entry[3]).putShort((short) 0);
+			}
+			else {
+				buf.putInt(entry[3]);
+			}
+		}
+		buf.putInt(0);
+		return buf.array();
+	}
+
+	private static byte[] segment(int marker, byte[] body) {
+		ByteBuffer buf = ByteBuffer.allocate(4 + body.length);
+		buf.put((byte) 0xFF).put((byte) marker).putShort((short) (body.length + 2)).put(body);
+		return buf.array();
+	}
+
+	private static byte[] box(String type, byte[]... contents) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (byte[] content : contents) {
+			body.write(content);
+		}
+		ByteBuffer buf = ByteBuffer.allocate(8 + body.size());
+		buf.putInt(8 + body.size()).put(type.getBytes(StandardCharsets.US_ASCII)).put(body.toByteArray());
+		return buf.array();
+	}
+
+	private static byte[] concat(byte[]... parts) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.write(part);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testTiff() throws Exception {
+		byte[] file = tiff(new int[][] {
+			{ 256, 3, 1, 2550 },
+			{ 257, 3, 1, 3300 },
+			{ 258, 3, 1, 1 },
+			{ 259, 3, 1, 4 },
+			{ 262, 3, 1, 0 },
+			{ 274, 3, 1, 1 },
+			{ 322, 4, 1, 256 },
+			{ 323, 4, 1, 128 } }, 0);
+
+		ImageHeader header = ImageHeader.read(ByteBuffer.wrap(file));
+		assertEquals("Tagged Image File Format", header.getFormat());
+		assertEquals("image/tiff", header.getMimeType());
+		assertEquals("little endian", header.get(ImageHeader.BYTE_ORDER));
+		assertEquals("2550", header.get(ImageHeader.IMAGE_WIDTH));
+		assertEquals("3300", header.get(ImageHeader.IMAGE_HEIGHT));
+		assertEquals("Group 4 Fax", header.get(ImageHeader.COMPRESSION_SCHEME));
+		assertEquals("WhiteIsZero", header.get(ImageHeader.COLOR_SPACE));
+		assertEquals("normal*", header.get(ImageHeader.ORIENTATION));
+		assertEquals("1", header.get(ImageHeader.SAMPLES_PER_PIXEL));
+		assertEquals("256", header.get(ImageHeader.TILE_WIDTH));
+		assertEquals("128", header.get(ImageHeader.TILE_HEIGHT));
+	}
+
+	@Test
+	public void testJpegWithExif() throws Exception {
+		// an EXIF segment with the camera's make and an X and Y resolution of 72/1 inch
+		byte[] exif = tiff(new int[][] {
+			{ 271, 2, 4, 0x00414A46 },  // "FJA\0"
+			{ 282, 5, 1, 62 },
+			{ 283, 5, 1, 62 },
+			{ 296, 3, 1, 2 } }, 8);
+		ByteBuffer.wrap(exif).order(ByteOrder.LITTLE_ENDIAN).putInt(62, 72).putInt(66, 1);
+		byte[] app1 = concat("Exif\0\0".getBytes(StandardCharsets.US_ASCII), exif);
+		byte[] adobe = concat("Adobe".getBytes(StandardCharsets.US_ASCII), new byte[] { 0, 100, 0, 0, 0, 0, 1 });
+		byte[] sof = { 8, 0x03, 0x20, 0x02, 0x58, 3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1 };
+		byte[] file = concat(new byte[] { (byte) 0xFF, (byte) 0xD8 },
+				segment(0xE1, app1), segment(0xEE, adobe), segment(0xC0, sof),
+				new byte[] { (byte) 0xFF, (byte) 0xDA });
+
+		ImageHeader header = ImageHeader.read(ByteBuffer.wrap(file));
+		assertEquals("JPEG EXIF", header.getFormat());
+		assertEquals("image/jpeg", header.getMimeType());
+		assertEquals("600", header.get(ImageHeader.IMAGE_WIDTH));
+		assertEquals("800", header.get(ImageHeader.IMAGE_HEIGHT));
+		assertEquals("8 8 8", header.get(ImageHeader.BITS_PER_SAMPLE));
+		assertEquals("YCbCr", header.get(ImageHeader.COLOR_SPACE));
+		assertEquals("FJA", header.get(ImageHeader.DIGITAL_CAMERA_MANUFACTURER));
+		assertEquals("in.", header.get(ImageHeader.SAMPLING_FREQUENCY_UNIT));
+		assertEquals("72", header.get(ImageHeader.X_SAMPLING_FREQUENCY));
+		assertNull(header.get(ImageHeader.SCANNER_MANUFACTURER));
+	}
+
+	@Test
+	public void testShortExifSegments() throws Exception {
+		byte[] sof = { 8, 0x00, 0x10, 0x00, 0x20, 1, 1, 0x11, 0 };
+		// an EXIF segment with only its identifier
+		byte[] file = concat(new byte[] { (byte) 0xFF, (byte) 0xD8 },
+				segment(0xE1, "Exif\0".getBytes(StandardCharsets.US_ASCII)), segment(0xC0, sof),
+				new byte[] { (byte) 0xFF, (byte) 0xDA });
+		ImageHeader header = ImageHeader.read(ByteBuffer.wrap(file));
+		assertEquals("JPEG EXIF", header.getFormat());
+		assertEquals("32", header.get(ImageHeader.IMAGE_WIDTH));
+
+		// an EXIF segment cut off by the end of the bytes read
+		byte[] app1 = concat("Exif\0\0".getBytes(StandardCharsets.US_ASCII), new byte[64]);
+		byte[] cut = concat(new byte[] { (byte) 0xFF, (byte) 0xD8 }, segment(0xE1, app1));
+		try {
+			ImageHeader.read(ByteBuffer.wrap(cut, 0, 10).slice());
+			fail("expected an IOException");
+		}
+		catch (IOException e) {
+			// no start of frame in the bytes read
+		}
+	}
+
+	@Test
+	public void testJp2() throws Exception {
+		byte[] signature = { 0, 0, 0, 12, 'j', 'P', ' ', ' ', 0x0D, 0x0A, (byte) 0x87, 0x0A };
+		byte[] ftyp = box("ftyp", "jp2 ".getBytes(StandardCharsets.US_ASCII), new byte[4], "jp2 ".getBytes(StandardCharsets.US_ASCII));
+		byte[] ihdr = ByteBuffer.allocate(14).putInt(2464).putInt(1542).putShort((short) 3).put((byte) 7).put((byte) 7).array();
+		byte[] colr = ByteBuffer.allocate(7).put((byte) 1).put((byte) 0).put((byte) 0).putInt(16).array();
+		// 300/254 * 10^4 grid points per meter, 118 per centimeter
+		byte[] resc = ByteBuffer.allocate(10).putShort((short) 300).putShort((short) 254)
+				.putShort((short) 300).putShort((short) 254).put((byte) 4).put((byte) 4).array();
+		byte[] jp2h = box("jp2h", box("ihdr", ihdr), box("colr", colr), box("res ", box("resc", resc)));
+		ByteBuffer codestream = ByteBuffer.allocate(2 + 2 + 41 + 2 + 12 + 2);
+		codestream.putShort((short) 0xFF4F);
+		codestream.putShort((short) 0xFF51).putShort((short) 41).putShort((short) 0)
+				.putInt(1542).putInt(2464).putInt(0).putInt(0).putInt(1024).putInt(512).putInt(0).putInt(0)
+				.putShort((short) 1).put((byte) 7).put((byte) 1).put((byte) 1);
+		codestream.putShort((short) 0xFF52).putShort((short) 12).put((byte) 0).put((byte) 0).putShort((short) 8)
+				.put((byte) 1).put((byte) 5).put((byte) 4).put((byte) 4).put((byte) 0).put((byte) 1);
+		codestream.putShort((short) 0xFF90);
+		byte[] file = concat(signature, ftyp, jp2h, box("jp2c", codestream.array()));
+
+		ImageHeader header = ImageHeader.read(ByteBuffer.wrap(file));
+		assertEquals("JPEG 2000 JP2", header.getFormat());
+		assertEquals("1542", header.get(ImageHeader.IMAGE_WIDTH));
+		assertEquals("2464", header.get(ImageHeader.IMAGE_HEIGHT));
+		assertEquals("8 8 8", header.get(ImageHeader.BITS_PER_SAMPLE));
+		assertEquals("sRGB", header.get(ImageHeader.COLOR_SPACE));
+		assertEquals("cm", header.get(ImageHeader.SAMPLING_FREQUENCY_UNIT));
+		assertEquals("118", header.get(ImageHeader.X_SAMPLING_FREQUENCY));
+		assertEquals("1024", header.get(ImageHeader.TILE_WIDTH));
+		assertEquals("512", header.get(ImageHeader.TILE_HEIGHT));
+		assertEquals("8", header.get(ImageHeader.QUALITY_LAYERS));
+		assertEquals("5", header.get(ImageHeader.RESOLUTION_LEVELS));
+		assertEquals("JPEG 2000 Lossless", header.get(ImageHeader.COMPRESSION_SCHEME));
+	}
+
+	@Test
+	public void testOtherFormat() throws Exception {
+		assertNull(ImageHeader.read(ByteBuffer.wrap("GIF89a".getBytes(StandardCharsets.US_ASCII))));
+	}
+
+	@Test
+	public void testTruncatedTiff() throws Exception {
+		byte[] file = tiff(new int[][] { { 256, 3, 1, 100 } }, 0);
+		ByteBuffer.wrap(file).order(ByteOrder.LITTLE_ENDIAN).putShort(8, (short) 500);
+		try {
+			ImageHeader.read(ByteBuffer.wrap(file));
+			fail("expected an IOException");
+		}
+		catch (IOException e) {
+			// the IFD claims more entries than the file holds
+		}
+	}
+
+}
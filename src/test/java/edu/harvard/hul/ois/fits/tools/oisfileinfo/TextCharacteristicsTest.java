@@ -0,0 +1,100 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TextCharacteristicsTest {
+
+	/** Passes the bytes in blocks of the given size, so that characters and line breaks are split across them. */
+	private static TextCharacteristics read(byte[] bytes, int blockSize) {
+		TextCharacteristics characteristics = new TextCharacteristics();
+		for (int i = 0; i < bytes.length; i += blockSize) {
+			characteristics.update(bytes, i, Math.min(blockSize, bytes.length - i));
+		}
+		return characteristics;
+	}
+
+	private static String charset(byte[] bytes) {
+		return read(bytes, 1).finish();
+	}
+
+	@Test
+	public void testAscii() {
+		TextCharacteristics characteristics = read("one\r\ntwo\r\n".getBytes(StandardCharsets.US_ASCII), 4);
+		assertEquals("US-ASCII", characteristics.finish());
+		assertEquals(Collections.singletonList("CR/LF"), characteristics.getLinebreaks());
+	}
+
+	@Test
+	public void testMixedLinebreaks() {
+		TextCharacteristics characteristics = read("a\r\nb\nc\rd\r".getBytes(StandardCharsets.US_ASCII), 1);
+		assertEquals("US-ASCII", characteristics.finish());
+		assertEquals(Arrays.asList("CR/LF", "CR", "LF"), characteristics.getLinebreaks());
+	}
+
+	@Test
+	public void testCrBeforeNonAsciiCharacter() {
+		TextCharacteristics characteristics = read("a\r\u00e9\n".getBytes(StandardCharsets.ISO_8859_1), 1);
+		assertEquals("ISO-8859-1", characteristics.finish());
+		assertEquals(Arrays.asList("CR", "LF"), characteristics.getLinebreaks());
+
+		characteristics = read("a\r\u00e9\n".getBytes(StandardCharsets.UTF_8), 2);
+		assertEquals("UTF-8", characteristics.finish());
+		assertEquals(Arrays.asList("CR", "LF"), characteristics.getLinebreaks());
+	}
+
+	@Test
+	public void testUtf8() {
+		byte[] bytes = "caf\u00e9 \u20ac \ud83d\ude00\n".getBytes(StandardCharsets.UTF_8);
+		assertEquals("UTF-8", charset(bytes));
+		// the lead byte of the e acute without its continuation byte
+		assertEquals("ISO-8859-1", charset(Arrays.copyOf(bytes, 4)));
+	}
+
+	@Test
+	public void testSingleByteCharsets() {
+		assertEquals("ISO-8859-1", charset("caf\u00e9\n".getBytes(StandardCharsets.ISO_8859_1)));
+		// a Windows-1252 quotation mark is a C1 control in ISO-8859
+		assertEquals("UNKNOWN-8BIT", charset(new byte[] { 'a', (byte) 0x93, 'b', (byte) 0x94 }));
+	}
+
+	@Test
+	public void testByteOrderMarks() {
+		assertEquals("UTF-16LE", charset("\ufeffa\r\nb".getBytes(StandardCharsets.UTF_16LE)));
+		assertEquals("UTF-16BE", charset("\ufeffa\nb".getBytes(StandardCharsets.UTF_16BE)));
+		assertEquals("UTF-8", charset("\ufeffplain".getBytes(StandardCharsets.UTF_8)));
+		assertEquals("UTF-32LE", charset(new byte[] { (byte) 0xFF, (byte) 0xFE, 0, 0, 'a', 0, 0, 0 }));
+
+		TextCharacteristics characteristics = read("\ufeffa\r\nb\n".getBytes(StandardCharsets.UTF_16LE), 3);
+		assertEquals("UTF-16LE", characteristics.finish());
+		assertEquals(Arrays.asList("CR/LF", "LF"), characteristics.getLinebreaks());
+	}
+
+	@Test
+	public void testNotText() {
+		TextCharacteristics characteristics = read(new byte[] { 'P', 'K', 3, 4, 0, 0 }, 6);
+		assertFalse(characteristics.isText());
+		assertNull(characteristics.finish());
+		assertNull(charset(new byte[0]));
+		// an odd number of bytes after a UTF-16 byte order mark
+		assertNull(charset(new byte[] { (byte) 0xFF, (byte) 0xFE, 'a' }));
+	}
+
+}
@@ -0,0 +1,131 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.oisfileinfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WaveHeaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] chunk(String id, byte[] body) {
+		ByteBuffer buf = ByteBuffer.allocate(8 + body.length + (body.length & 1)).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put(id.getBytes(StandardCharsets.US_ASCII)).putInt(body.length).put(body);
+		return buf.array();
+	}
+
+	private static byte[] fmt(int channels, int sampleRate, int bitsPerSample) {
+		int blockAlign = channels * bitsPerSample / 8;
+		return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN)
+				.putShort((short) 1).putShort((short) channels).putInt(sampleRate)
+				.putInt(sampleRate * blockAlign).putShort((short) blockAlign).putShort((short) bitsPerSample)
+				.array();
+	}
+
+	private static byte[] bext(long timeReference) {
+		return ByteBuffer.allocate(602).order(ByteOrder.LITTLE_ENDIAN).putLong(338, timeReference).array();
+	}
+
+	private File wave(String riffId, byte[]... chunks) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		body.write("WAVE".getBytes(StandardCharsets.US_ASCII));
+		for (byte[] chunk : chunks) {
+			body.write(chunk);
+		}
+		ByteBuffer buf = ByteBuffer.allocate(8 + body.size()).order(ByteOrder.LITTLE_ENDIAN);
+		buf.put(riffId.getBytes(StandardCharsets.US_ASCII));
+		buf.putInt(riffId.equals("RIFF") ? body.size() : -1);
+		buf.put(body.toByteArray());
+		File file = folder.newFile();
+		Files.write(file.toPath(), buf.array());
+		return file;
+	}
+
+	@Test
+	public void testBroadcastWave() throws Exception {
+		File file = wave("RIFF",
+				chunk("fmt ", fmt(2, 48000, 24)),
+				chunk("bext", bext(0x123456789L)),
+				chunk("iXML", "<BWFXML/>".getBytes(StandardCharsets.US_ASCII)),
+				chunk("data", new byte[600]),
+				chunk("LIST", new byte[5]));
+
+		WaveHeader header = WaveHeader.read(file);
+		assertEquals(1, header.getFormatTag());
+		assertEquals(2, header.getNumberOfChannels());
+		assertEquals(48000, header.getSamplesPerSecond());
+		assertEquals(6, header.getBlockAlign());
+		assertEquals(24, header.getBitsPerSample());
+		assertEquals(100, header.getNumberOfSampleFrames());
+		assertEquals(Long.valueOf(0x123456789L), header.getTimeReference());
+		// RIFF header, fmt, bext and the iXML padded to 10 bytes, then the data chunk header
+		assertEquals(12 + 24 + 610 + 18 + 8, header.getDataOffset());
+		assertFalse(header.isRf64());
+	}
+
+	@Test
+	public void testWaveWithoutBext() throws Exception {
+		File file = wave("RIFF", chunk("fmt ", fmt(1, 44100, 16)), chunk("data", new byte[10]));
+
+		WaveHeader header = WaveHeader.read(file);
+		assertEquals(5, header.getNumberOfSampleFrames());
+		assertNull(header.getTimeReference());
+		assertEquals(44, header.getDataOffset());
+	}
+
+	@Test
+	public void testRf64SizesFromDs64() throws Exception {
+		// a 6 GB data chunk, of which only the header is in the file
+		long dataSize = 6L * 1024 * 1024 * 1024;
+		byte[] ds64 = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN)
+				.putLong(dataSize + 100).putLong(dataSize).putLong(dataSize / 4).putInt(0)
+				.array();
+		byte[] data = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+				.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(-1).array();
+		File file = wave("RF64", chunk("ds64", ds64), chunk("fmt ", fmt(2, 96000, 16)), data);
+
+		WaveHeader header = WaveHeader.read(file);
+		assertTrue(header.isRf64());
+		assertEquals(dataSize, header.getDataSize());
+		assertEquals(dataSize / 4, header.getNumberOfSampleFrames());
+		assertEquals(12 + 36 + 24 + 8, header.getDataOffset());
+	}
+
+	@Test
+	public void testMissingFormat() throws Exception {
+		File file = wave("RIFF", chunk("data", new byte[4]));
+		try {
+			WaveHeader.read(file);
+			fail("expected an IOException");
+		}
+		catch (IOException e) {
+			assertEquals("No fmt chunk", e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.tika;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.junit.After;
+import org.junit.Test;
+
+public class TikaWorkerPoolTest {
+
+	private static final String TIKA_CONFIG = "xml/tika/tika-config.xml";
+	private static final File PDF = new File("testfiles/Book_pdfx1a.pdf");
+
+	private TikaWorkerPool pool;
+
+	@After
+	public void tearDown() {
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void workerMetadataMatchesInProcessParse() throws Exception {
+		Metadata expected = new Metadata();
+		try (InputStream stream = TikaInputStream.get(PDF.toPath(), expected)) {
+			new TikaMetadataParser(TIKA_CONFIG).parse(stream, expected, true, 0);
+		}
+
+		pool = new TikaWorkerPool(TIKA_CONFIG, TikaWorkerPool.defaultClasspath(), 1, 256, 0, 0);
+		for (int i = 0; i < 2; i++) {
+			Metadata actual = new Metadata();
+			pool.parse(PDF, actual, true, 0);
+			assertMetadataEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void parseTimesOut() throws Exception {
+		pool = new TikaWorkerPool(TIKA_CONFIG, TikaWorkerPool.defaultClasspath(), 1, 256, 1, 0);
+		try {
+			pool.parse(PDF, new Metadata(), false, -1);
+			fail("Expected the parse to time out");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void workerIsReplacedAfterMaxFiles() throws Exception {
+		pool = new TikaWorkerPool(TIKA_CONFIG, TikaWorkerPool.defaultClasspath(), 1, 256, 0, 1);
+		for (int i = 0; i < 2; i++) {
+			Metadata metadata = new Metadata();
+			pool.parse(PDF, metadata, true, 0);
+			assertEquals("application/pdf", metadata.get(Metadata.CONTENT_TYPE));
+		}
+	}
+
+	private static void assertMetadataEquals(Metadata expected, Metadata actual) {
+		String[] names = expected.names();
+		Arrays.sort(names);
+		String[] actualNames = actual.names();
+		Arrays.sort(actualNames);
+		assertArrayEquals(names, actualNames);
+		for (String name : names) {
+			assertArrayEquals(name, expected.getValues(name), actual.getValues(name));
+		}
+	}
+
+}
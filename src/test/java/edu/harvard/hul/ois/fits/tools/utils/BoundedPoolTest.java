@@ -0,0 +1,82 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BoundedPoolTest {
+
+	private static class CountingFactory implements BoundedPool.Factory<Object, RuntimeException> {
+		final AtomicInteger created = new AtomicInteger();
+
+		@Override
+		public Object create() {
+			created.incrementAndGet();
+			return new Object();
+		}
+	}
+
+	@Test
+	public void testFilesInFlightGetSeparateObjects() throws Exception {
+		CountingFactory factory = new CountingFactory();
+		BoundedPool<Object, RuntimeException> pool = new BoundedPool<Object, RuntimeException>(factory, 2);
+		// the first object is created with the pool
+		assertEquals(1, factory.created.get());
+		Object first = pool.borrow();
+		Object second = pool.borrow();
+		assertNotSame(first, second);
+		assertEquals(2, factory.created.get());
+
+		pool.release(first);
+		assertSame(first, pool.borrow());
+		assertEquals(2, factory.created.get());
+	}
+
+	@Test
+	public void testBorrowWaitsAtTheMaximum() throws Exception {
+		final BoundedPool<Object, RuntimeException> pool = new BoundedPool<Object, RuntimeException>(new CountingFactory(), 1);
+		Object object = pool.borrow();
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Object> waiting = executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return pool.borrow();
+				}
+			});
+			try {
+				waiting.get(200, TimeUnit.MILLISECONDS);
+				fail("Expected borrow to wait for the object in use");
+			} catch (TimeoutException e) {
+				// expected
+			}
+			pool.release(object);
+			assertSame(object, waiting.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+}
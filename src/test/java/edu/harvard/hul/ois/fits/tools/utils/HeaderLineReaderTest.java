@@ -0,0 +1,72 @@
+//
+// Copyright (c) 2016 by The President and Fellows of Harvard College
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License. You may obtain a copy of the License at:
+// http://www.apache.org/licenses/LICENSE-2.0
+// Unless required by applicable law or agreed to in writing, software distributed under the License is
+// distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permission and limitations under the License.
+//
+
+package edu.harvard.hul.ois.fits.tools.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import edu.harvard.hul.ois.fits.tools.FileContext;
+
+public class HeaderLineReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File createFile() throws IOException {
+		File file = folder.newFile("test.txt");
+		StringBuilder text = new StringBuilder("WEBVTT\n");
+		for (int i = 0; i < 10000; i++) {
+			text.append("line ").append(i).append('\n');
+		}
+		Files.write(file.toPath(), text.toString().getBytes("US-ASCII"));
+		return file;
+	}
+
+	private static void assertLines(BufferedReader reader) throws IOException {
+		// 7 bytes of "WEBVTT\n" and 13 of "line 0\nline 1"
+		assertEquals("WEBVTT", reader.readLine());
+		assertEquals("line 0", reader.readLine());
+		assertEquals("line 1", reader.readLine());
+		assertNull(reader.readLine());
+	}
+
+	@Test
+	public void testReadsNoFurtherThanLimit() throws IOException {
+		try (BufferedReader reader = HeaderLineReader.open(createFile(), null, 20)) {
+			assertLines(reader);
+		}
+	}
+
+	@Test
+	public void testReadsFromFileContext() throws IOException {
+		File file = createFile();
+		// the header holds the first 20 bytes
+		try (FileContext context = new FileContext(file, 64, 16);
+				BufferedReader reader = HeaderLineReader.open(file, context, 20)) {
+			assertLines(reader);
+		}
+		// the header is too short, so the file is read
+		try (FileContext context = new FileContext(file, 16, 16);
+				BufferedReader reader = HeaderLineReader.open(file, context, 20)) {
+			assertLines(reader);
+		}
+	}
+
+}